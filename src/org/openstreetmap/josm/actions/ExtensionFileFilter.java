@@ -44,6 +44,7 @@ public class ExtensionFileFilter extends FileFilter {
                 "org.openstreetmap.josm.io.GpxImporter",
                 "org.openstreetmap.josm.io.NMEAImporter",
                 "org.openstreetmap.josm.io.OsmBzip2Importer",
+                "org.openstreetmap.josm.io.OsmPbfImporter",
                 "org.openstreetmap.josm.io.JpgImporter",
                 "org.openstreetmap.josm.io.AllFormatsImporter"
         };
@@ -62,6 +63,7 @@ public class ExtensionFileFilter extends FileFilter {
                 "org.openstreetmap.josm.io.OsmExporter",
                 "org.openstreetmap.josm.io.OsmGzipExporter",
                 "org.openstreetmap.josm.io.OsmBzip2Exporter",
+                "org.openstreetmap.josm.io.OsmPbfExporter",
                 "org.openstreetmap.josm.io.GeoJSONExporter",
         };
 
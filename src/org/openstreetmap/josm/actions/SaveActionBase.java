@@ -22,6 +22,7 @@ import org.openstreetmap.josm.gui.layer.GpxLayer;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.io.FileExporter;
+import org.openstreetmap.josm.io.OsmExporter;
 import org.openstreetmap.josm.tools.Shortcut;
 
 public abstract class SaveActionBase extends DiskAccessAction {
@@ -70,23 +71,26 @@ public abstract class SaveActionBase extends DiskAccessAction {
             return false;
 
         try {
-            boolean exported = false;
+            FileExporter exported = null;
             for (FileExporter exporter : ExtensionFileFilter.exporters) {
                 if (exporter.acceptFile(file, layer)) {
                     exporter.exportData(file, layer);
-                    exported = true;
+                    exported = exporter;
                     break;
                 }
             }
-            if (!exported) {
+            if (exported == null) {
                 JOptionPane.showMessageDialog(Main.parent, tr("No Exporter found! Nothing saved."), tr("Warning"),
                         JOptionPane.WARNING_MESSAGE);
                 return false;
             }
-            layer.setName(file.getName());
-            layer.setAssociatedFile(file);
-            if (layer instanceof OsmDataLayer) {
-                ((OsmDataLayer) layer).onPostSaveToFile();
+            // the layer is not saved, if the file doesn't keep its changes
+            if (!(exported instanceof OsmExporter) || ((OsmExporter) exported).isLossless()) {
+                layer.setName(file.getName());
+                layer.setAssociatedFile(file);
+                if (layer instanceof OsmDataLayer) {
+                    ((OsmDataLayer) layer).onPostSaveToFile();
+                }
             }
             Main.parent.repaint();
         } catch (IOException e) {
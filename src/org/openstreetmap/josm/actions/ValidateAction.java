@@ -9,16 +9,29 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.SwingUtilities;
 
 import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.osm.event.DatasetEventManager;
+import org.openstreetmap.josm.data.osm.event.DatasetEventManager.FireMode;
+import org.openstreetmap.josm.data.validation.IncrementalValidator;
 import org.openstreetmap.josm.data.validation.OsmValidator;
+import org.openstreetmap.josm.data.validation.ParallelValidator;
 import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.data.validation.util.AggregatePrimitivesVisitor;
 import org.openstreetmap.josm.gui.PleaseWaitRunnable;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.preferences.ValidatorPreference;
 import org.openstreetmap.josm.io.OsmTransferException;
 import org.openstreetmap.josm.tools.Shortcut;
@@ -37,9 +50,29 @@ public class ValidateAction extends JosmAction {
     /** Serializable ID */
     private static final long serialVersionUID = -2304521273582574603L;
 
+    /**
+     * Runs the revalidations after edits. Besides the running one, at most one revalidation waits,
+     * further ones are dropped, as the waiting one tests all changes made until it starts.
+     */
+    private static final ExecutorService revalidationExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Incremental validator");
+                    t.setDaemon(true);
+                    return t;
+                }
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
     /** Last selection used to validate */
     private Collection<OsmPrimitive> lastSelection;
 
+    /** Keeps the errors of the edit layer up to date, once it has been validated completely */
+    private final IncrementalValidator incrementalValidator = new IncrementalValidator();
+
+    /** Whether the validator dialog shows the errors of the whole edit layer */
+    private boolean layerValidated;
+
     /**
      * Constructor
      */
@@ -47,6 +80,13 @@ public class ValidateAction extends JosmAction {
         super(tr("Validation"), "dialogs/validator", tr("Performs the data validation"),
             Shortcut.registerShortcut("tools:validate", tr("Tool: {0}", tr("Validation")),
             KeyEvent.VK_V, Shortcut.SHIFT), true);
+        DatasetEventManager.getInstance().addDatasetListener(incrementalValidator, FireMode.IMMEDIATELY);
+        DatasetEventManager.getInstance().addDatasetListener(new DataSetListenerAdapter(new DataSetListenerAdapter.Listener() {
+            @Override
+            public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+                revalidateChanges();
+            }
+        }), FireMode.IN_EDT_CONSOLIDATED);
     }
 
     public void actionPerformed(ActionEvent ev) {
@@ -92,10 +132,65 @@ public class ValidateAction extends JosmAction {
             }
         }
 
-        ValidationTask task = new ValidationTask(tests, selection, lastSelection);
+        layerValidated = lastSelection == null && IncrementalValidator.isEnabled();
+        ValidationTask task = new ValidationTask(tests, selection, lastSelection,
+                layerValidated ? incrementalValidator : null);
         Main.worker.submit(task);
     }
 
+    /**
+     * Tests the primitives changed since the last validation of the whole edit layer and
+     * updates the errors shown in the validator dialog, without further user interaction.
+     */
+    private void revalidateChanges() {
+        final OsmDataLayer layer = getEditLayer();
+        if (!layerValidated || !IncrementalValidator.isEnabled() || layer == null || Main.map == null
+                || !incrementalValidator.isValidating(layer.data) || !incrementalValidator.hasChanges())
+            return;
+        revalidationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!incrementalValidator.hasChanges())
+                    return;
+                Collection<Test> tests = OsmValidator.getEnabledTests(false);
+                final List<TestError> errors = incrementalValidator.validate(layer.data, tests,
+                        layer.data.allNonDeletedPrimitives(), null);
+                if (errors == null)
+                    return;
+                updateIgnoredErrors(errors);
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (layerValidated && Main.map != null && Main.map.mapView.getEditLayer() == layer) {
+                            Main.map.validatorDialog.tree.setErrors(errors);
+                            Main.map.mapView.repaint();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Marks the errors the user has chosen to ignore.
+     * @param errors the errors
+     */
+    private static void updateIgnoredErrors(List<TestError> errors) {
+        if (!Main.pref.getBoolean(ValidatorPreference.PREF_USE_IGNORE, true))
+            return;
+        for (TestError error : errors) {
+            List<String> s = new ArrayList<String>();
+            s.add(error.getIgnoreState());
+            s.add(error.getIgnoreGroup());
+            s.add(error.getIgnoreSubGroup());
+            for (String state : s) {
+                if (state != null && OsmValidator.hasIgnoredError(state)) {
+                    error.setIgnored(true);
+                }
+            }
+        }
+    }
+
     @Override
     public void updateEnabledState() {
         setEnabled(getEditLayer() != null);
@@ -110,6 +205,8 @@ public class ValidateAction extends JosmAction {
         private Collection<Test> tests;
         private Collection<OsmPrimitive> validatedPrimitives;
         private Collection<OsmPrimitive> formerValidatedPrimitives;
+        private IncrementalValidator incrementalValidator;
+        private DataSet dataSet;
         private boolean canceled;
         private List<TestError> errors;
 
@@ -118,11 +215,16 @@ public class ValidateAction extends JosmAction {
          * @param tests  the tests to run
          * @param validatedPrimitives the collection of primitives to validate.
          * @param formerValidatedPrimitives the last collection of primitives being validates. May be null.
+         * @param incrementalValidator the validator to test only the primitives changed since the last validation,
+         * if the whole edit layer is validated. May be null.
          */
-        public ValidationTask(Collection<Test> tests, Collection<OsmPrimitive> validatedPrimitives, Collection<OsmPrimitive> formerValidatedPrimitives) {
+        public ValidationTask(Collection<Test> tests, Collection<OsmPrimitive> validatedPrimitives, Collection<OsmPrimitive> formerValidatedPrimitives,
+                IncrementalValidator incrementalValidator) {
             super(tr("Validating"), false /*don't ignore exceptions */);
             this.validatedPrimitives  = validatedPrimitives;
             this.formerValidatedPrimitives = formerValidatedPrimitives;
+            this.incrementalValidator = incrementalValidator;
+            this.dataSet = Main.main.getCurrentDataSet();
             this.tests = tests;
         }
 
@@ -157,35 +259,22 @@ public class ValidateAction extends JosmAction {
         OsmTransferException {
             if (tests == null || tests.isEmpty())
                 return;
-            errors = new ArrayList<TestError>(200);
-            getProgressMonitor().setTicksCount(tests.size() * validatedPrimitives.size());
-            int testCounter = 0;
-            for (Test test : tests) {
-                if (canceled)
-                    return;
-                testCounter++;
-                getProgressMonitor().setCustomText(tr("Test {0}/{1}: Starting {2}", testCounter, tests.size(),test.getName()));
-                test.setPartialSelection(formerValidatedPrimitives != null);
-                test.startTest(getProgressMonitor().createSubTaskMonitor(validatedPrimitives.size(), false));
-                test.visit(validatedPrimitives);
-                test.endTest();
-                errors.addAll(test.getErrors());
+            if (incrementalValidator != null) {
+                errors = incrementalValidator.validate(dataSet, tests, validatedPrimitives, getProgressMonitor());
+            } else {
+                for (Test test : tests) {
+                    test.setPartialSelection(formerValidatedPrimitives != null);
+                }
+                errors = ParallelValidator.validate(tests, validatedPrimitives, getProgressMonitor());
+            }
+            if (canceled || errors == null) {
+                canceled = true;
+                return;
             }
             tests = null;
             if (Main.pref.getBoolean(ValidatorPreference.PREF_USE_IGNORE, true)) {
                 getProgressMonitor().subTask(tr("Updating ignored errors ..."));
-                for (TestError error : errors) {
-                    if (canceled) return;
-                    List<String> s = new ArrayList<String>();
-                    s.add(error.getIgnoreState());
-                    s.add(error.getIgnoreGroup());
-                    s.add(error.getIgnoreSubGroup());
-                    for (String state : s) {
-                        if (state != null && OsmValidator.hasIgnoredError(state)) {
-                            error.setIgnored(true);
-                        }
-                    }
-                }
+                updateIgnoredErrors(errors);
             }
         }
     }
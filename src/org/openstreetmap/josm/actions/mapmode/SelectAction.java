@@ -524,7 +524,8 @@ public class SelectAction extends MapMode implements AWTEventListener, Selection
             if (!updateCommandWhileDragging(dx, dy, currentEN)) return;
         }
 
-        mv.repaint();
+        // only the moved primitives have changed, there is no need to paint the whole map
+        mv.repaintChangedAreas();
         if (mode != Mode.scale) {
             lastMousePos = e.getPoint();
         }
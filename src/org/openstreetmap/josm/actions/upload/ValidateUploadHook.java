@@ -15,8 +15,13 @@ import javax.swing.JScrollPane;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.APIDataSet;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.DatasetEventManager;
+import org.openstreetmap.josm.data.osm.event.DatasetEventManager.FireMode;
+import org.openstreetmap.josm.data.validation.IncrementalValidator;
 import org.openstreetmap.josm.data.validation.OsmValidator;
+import org.openstreetmap.josm.data.validation.ParallelValidator;
 import org.openstreetmap.josm.data.validation.Severity;
 import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
@@ -40,6 +45,16 @@ public class ValidateUploadHook implements UploadHook
     /** Serializable ID */
     private static final long serialVersionUID = -2304521273582574603L;
 
+    /** Tests only the primitives changed since the last upload check */
+    private final IncrementalValidator incrementalValidator = new IncrementalValidator();
+
+    /**
+     * Constructor
+     */
+    public ValidateUploadHook() {
+        DatasetEventManager.getInstance().addDatasetListener(incrementalValidator, FireMode.IMMEDIATELY);
+    }
+
     /**
      * Validate the modified data before uploading
      */
@@ -57,19 +72,23 @@ public class ValidateUploadHook implements UploadHook
         for (Test test : tests) {
             test.setBeforeUpload(true);
             test.setPartialSelection(true);
-            test.startTest(null);
-            test.visit(selection);
-            test.endTest();
-            if (Main.pref.getBoolean(ValidatorPreference.PREF_OTHER, false) && 
-                Main.pref.getBoolean(ValidatorPreference.PREF_OTHER_UPLOAD, false))
-            {
-                errors.addAll( test.getErrors() );
-            }
-            else {
-                for (TestError e : test.getErrors()) {
-                    if (e.getSeverity() != Severity.OTHER) {
-                        errors.add(e);
-                    }
+        }
+        List<TestError> testErrors;
+        DataSet ds = Main.main.getCurrentDataSet();
+        if (IncrementalValidator.isEnabled() && ds != null) {
+            testErrors = incrementalValidator.validate(ds, tests, selection, null);
+        } else {
+            testErrors = ParallelValidator.validate(tests, selection, null);
+        }
+        if (Main.pref.getBoolean(ValidatorPreference.PREF_OTHER, false) && 
+            Main.pref.getBoolean(ValidatorPreference.PREF_OTHER_UPLOAD, false))
+        {
+            errors.addAll( testErrors );
+        }
+        else {
+            for (TestError e : testErrors) {
+                if (e.getSeverity() != Severity.OTHER) {
+                    errors.add(e);
                 }
             }
         }
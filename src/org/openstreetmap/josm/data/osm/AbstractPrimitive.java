@@ -439,6 +439,7 @@ public abstract class AbstractPrimitive implements IPrimitive {
     // Note that all methods that read keys first make local copy of keys array reference. This is to ensure thread safety - reading
     // doesn't have to be locked so it's possible that keys array will be modified. But all write methods make copy of keys array so
     // the array itself will be never modified - only reference will be changed
+    // The arrays are shared between primitives with equal tags (see TagSetPool), so they must never be modified in place.
 
     /**
      * The key/value list for this primitive.
@@ -446,6 +447,16 @@ public abstract class AbstractPrimitive implements IPrimitive {
      */
     protected String[] keys;
 
+    /**
+     * Replies an object which is the same instance for all primitives with equal tags,
+     * see {@link TagSetPool}. Can be used to skip tag sets that have already been processed.
+     *
+     * @return the identity of the tag set of this primitive, null if this primitive has no tags
+     */
+    public final Object getTagSetIdentity() {
+        return keys;
+    }
+
     /**
      * Replies the map of key/value pairs. Never replies null. The map can be empty, though.
      *
@@ -485,7 +496,7 @@ public abstract class AbstractPrimitive implements IPrimitive {
             newKeys[index++] = entry.getKey();
             newKeys[index++] = entry.getValue();
         }
-        this.keys = newKeys;
+        this.keys = TagSetPool.intern(newKeys);
         keysChangedImpl(originalKeys);
     }
 
@@ -506,12 +517,14 @@ public abstract class AbstractPrimitive implements IPrimitive {
         else if (value == null) {
             remove(key);
         } else if (keys == null){
-            keys = new String[] {key, value};
+            keys = TagSetPool.intern(new String[] {key, value});
             keysChangedImpl(originalKeys);
         } else {
             for (int i=0; i<keys.length;i+=2) {
                 if (keys[i].equals(key)) {
-                    keys[i+1] = value;  // This modifies the keys array but it doesn't make it invalidate for any time so its ok (see note no top)
+                    String[] newKeys = keys.clone();
+                    newKeys[i+1] = value;
+                    keys = TagSetPool.intern(newKeys);
                     keysChangedImpl(originalKeys);
                     return;
                 }
@@ -523,7 +536,7 @@ public abstract class AbstractPrimitive implements IPrimitive {
             }
             newKeys[keys.length] = key;
             newKeys[keys.length + 1] = value;
-            keys = newKeys;
+            keys = TagSetPool.intern(newKeys);
             keysChangedImpl(originalKeys);
         }
     }
@@ -552,7 +565,7 @@ public abstract class AbstractPrimitive implements IPrimitive {
                 newKeys[j++] = keys[i+1];
             }
         }
-        keys = newKeys;
+        keys = TagSetPool.intern(newKeys);
         keysChangedImpl(originalKeys);
     }
 
@@ -646,11 +659,9 @@ public abstract class AbstractPrimitive implements IPrimitive {
      * @return true if other isn't null and has the same tags (key/value-pairs) as this.
      */
     public boolean hasSameTags(OsmPrimitive other) {
-        // We cannot directly use Arrays.equals(keys, other.keys) as keys is not ordered by key
-        // but we can at least check if both arrays are null or of the same size before creating 
-        // and comparing the key maps (costly operation, see #7159)
-        return (keys == null && other.keys == null) 
-            || (keys != null && other.keys != null && keys.length == other.keys.length && (keys.length == 0 || getKeys().equals(other.getKeys())));
+        // keys is always interned by TagSetPool, sorted by key, so equal tag sets are
+        // usually the same array and never need to be compared as maps (see #7159)
+        return Arrays.equals(keys, other.keys);
     }
 
     /**
@@ -174,6 +174,34 @@ public class BBox {
     public LatLon getBottomRight() {
         return new LatLon(ymin, xmax);
     }
+
+    /**
+     * @return the latitude of the top left corner, i.e. the maximal latitude
+     */
+    public double getTopLeftLat() {
+        return ymax;
+    }
+
+    /**
+     * @return the longitude of the top left corner, i.e. the minimal longitude
+     */
+    public double getTopLeftLon() {
+        return xmin;
+    }
+
+    /**
+     * @return the latitude of the bottom right corner, i.e. the minimal latitude
+     */
+    public double getBottomRightLat() {
+        return ymin;
+    }
+
+    /**
+     * @return the longitude of the bottom right corner, i.e. the maximal longitude
+     */
+    public double getBottomRightLon() {
+        return xmax;
+    }
     
     public LatLon getCenter() {
         return new LatLon(ymin + (ymax-ymin)/2.0, xmin + (xmax-xmin)/2.0);
@@ -9,14 +9,15 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.openstreetmap.josm.Main;
@@ -118,6 +119,8 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
     // provide means to highlight map elements that are not osm primitives
     private Collection<WaySegment> highlightedVirtualNodes = new LinkedList<WaySegment>();
     private Collection<WaySegment> highlightedWaySegments = new LinkedList<WaySegment>();
+    // primitives whose highlighted flag has been set, may contain primitives removed since
+    private final Set<OsmPrimitive> highlightedPrimitives = new HashSet<OsmPrimitive>();
 
     // Number of open calls to beginUpdate
     private int updateCount;
@@ -128,7 +131,7 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
     
     private boolean uploadDiscouraged = false;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private final Object selectionLock = new Object();
 
     public DataSet() {
@@ -234,7 +237,7 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
      * All nodes goes here, even when included in other data (ways etc). This enables the instant
      * conversion of the whole DataSet by iterating over this data structure.
      */
-    private QuadBuckets<Node> nodes = new QuadBuckets<Node>();
+    private STRTree<Node> nodes = new STRTree<Node>();
 
     private <T extends OsmPrimitive> Collection<T> getPrimitives(Predicate<OsmPrimitive> predicate) {
         return new SubclassFilteredCollection<OsmPrimitive, T>(allPrimitives, predicate);
@@ -249,13 +252,19 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
         return getPrimitives(OsmPrimitive.nodePredicate);
     }
 
+    /**
+     * Searches the nodes in the given bbox.
+     *
+     * The search doesn't lock the dataset. Threads other than the one which is currently
+     * changing the dataset see the state of the spatial index at the last {@link #endUpdate()}.
+     *
+     * @param bbox the bbox
+     * @return the nodes in the bbox
+     */
     public List<Node> searchNodes(BBox bbox) {
-        lock.readLock().lock();
-        try {
+        if (lock.isWriteLockedByCurrentThread())
             return nodes.search(bbox);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return nodes.searchSnapshot(bbox);
     }
 
     /**
@@ -263,7 +272,7 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
      *
      * The way nodes are stored only in the way list.
      */
-    private QuadBuckets<Way> ways = new QuadBuckets<Way>();
+    private STRTree<Way> ways = new STRTree<Way>();
 
     /**
      * Replies an unmodifiable collection of ways in this dataset
@@ -274,19 +283,24 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
         return getPrimitives(OsmPrimitive.wayPredicate);
     }
 
+    /**
+     * Searches the ways intersecting the given bbox. Doesn't lock the dataset, see {@link #searchNodes(BBox)}.
+     *
+     * @param bbox the bbox
+     * @return the ways intersecting the bbox
+     */
     public List<Way> searchWays(BBox bbox) {
-        lock.readLock().lock();
-        try {
+        if (lock.isWriteLockedByCurrentThread())
             return ways.search(bbox);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return ways.searchSnapshot(bbox);
     }
 
     /**
      * All relations/relationships
+     *
+     * Relations are indexed by their bbox, which is kept up to date by {@link #reindexRelation(Relation)}.
      */
-    private Collection<Relation> relations = new ArrayList<Relation>();
+    private STRTree<Relation> relations = new STRTree<Relation>();
 
     /**
      * Replies an unmodifiable collection of relations in this dataset
@@ -297,20 +311,16 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
         return getPrimitives(OsmPrimitive.relationPredicate);
     }
 
+    /**
+     * Searches the relations intersecting the given bbox. Doesn't lock the dataset, see {@link #searchNodes(BBox)}.
+     *
+     * @param bbox the bbox
+     * @return the relations intersecting the bbox
+     */
     public List<Relation> searchRelations(BBox bbox) {
-        lock.readLock().lock();
-        try {
-            // QuadBuckets might be useful here (don't forget to do reindexing after some of rm is changed)
-            List<Relation> result = new ArrayList<Relation>();
-            for (Relation r: relations) {
-                if (r.getBBox().intersects(bbox)) {
-                    result.add(r);
-                }
-            }
-            return result;
-        } finally {
-            lock.readLock().unlock();
-        }
+        if (lock.isWriteLockedByCurrentThread())
+            return relations.search(bbox);
+        return relations.searchSnapshot(bbox);
     }
 
     /**
@@ -369,12 +379,71 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
                 throw new RuntimeException("failed to add primitive: "+primitive);
             allPrimitives.add(primitive);
             primitive.setDataset(this);
+            if (primitive.isHighlighted()) {
+                fireHighlightingChanged(primitive);
+            }
             firePrimitivesAdded(Collections.singletonList(primitive), false);
         } finally {
             endUpdate();
         }
     }
 
+    /**
+     * Adds a batch of primitives to the dataset. Nodes, ways and relations of large batches
+     * are bulk loaded into the spatial indexes instead of being inserted one by one.
+     *
+     * Ways and relations can refer to primitives of the same batch.
+     *
+     * @param primitives the primitives
+     */
+    public void addPrimitives(Collection<? extends OsmPrimitive> primitives) {
+        beginUpdate();
+        try {
+            // check the whole batch first, so a failure leaves the dataset unchanged
+            Set<PrimitiveId> ids = new HashSet<PrimitiveId>();
+            for (OsmPrimitive primitive : primitives) {
+                if (!ids.add(new SimplePrimitiveId(primitive.getUniqueId(), primitive.getType()))
+                        || getPrimitiveById(primitive) != null)
+                    throw new DataIntegrityProblemException(
+                            tr("Unable to add primitive {0} to the dataset because it is already included", primitive.toString()));
+                // the checks of setDataset(), which runs after the primitives have been indexed
+                if (primitive.getDataSet() != null)
+                    throw new DataIntegrityProblemException("Primitive cannot be included in more than one Dataset");
+                if (primitive instanceof Node && !primitive.isIncomplete() && primitive.isVisible()
+                        && ((Node) primitive).getCoor() == null)
+                    throw new DataIntegrityProblemException("Complete node with null coordinates: " + primitive.toString());
+            }
+            List<Node> newNodes = new ArrayList<Node>();
+            List<Way> newWays = new ArrayList<Way>();
+            List<Relation> newRelations = new ArrayList<Relation>();
+            for (OsmPrimitive primitive : primitives) {
+                allPrimitives.add(primitive);
+                primitive.updatePosition(); // Set cached bbox for way and relation (required for reindexWay and reinexRelation to work properly)
+                if (primitive instanceof Node) {
+                    newNodes.add((Node) primitive);
+                } else if (primitive instanceof Way) {
+                    newWays.add((Way) primitive);
+                } else if (primitive instanceof Relation) {
+                    newRelations.add((Relation) primitive);
+                }
+            }
+            nodes.addAll(newNodes);
+            ways.addAll(newWays);
+            relations.addAll(newRelations);
+            for (OsmPrimitive primitive : primitives) {
+                primitive.setDataset(this);
+                if (primitive.isHighlighted()) {
+                    fireHighlightingChanged(primitive);
+                }
+            }
+            if (!primitives.isEmpty()) {
+                firePrimitivesAdded(new ArrayList<OsmPrimitive>(primitives), false);
+            }
+        } finally {
+            endUpdate();
+        }
+    }
+
     /**
      * Removes a primitive from the dataset. This method only removes the
      * primitive form the respective collection of primitives managed
@@ -943,7 +1012,11 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
 
     private void reindexRelation(Relation relation) {
         BBox before = relation.getBBox();
+        if (!relations.remove(relation))
+            throw new RuntimeException("Reindexing relation failed to remove");
         relation.updatePosition();
+        if (!relations.add(relation))
+            throw new RuntimeException("Reindexing relation failed to add");
         if (!before.equals(relation.getBBox())) {
             for (OsmPrimitive primitive: relation.getReferrers()) {
                 reindexRelation((Relation) primitive);
@@ -987,6 +1060,10 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
             if (updateCount == 0) {
                 List<AbstractDatasetChangedEvent> eventsCopy = new ArrayList<AbstractDatasetChangedEvent>(cachedEvents);
                 cachedEvents.clear();
+                // publish the spatial indexes for lock free searches
+                nodes.publishSnapshot();
+                ways.publishSnapshot();
+                relations.publishSnapshot();
                 lock.writeLock().unlock();
 
                 if (!eventsCopy.isEmpty()) {
@@ -1040,18 +1117,21 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
     }
 
     void fireRelationMembersChanged(Relation r) {
+        BBox oldBBox = r.getBBox();
         reindexRelation(r);
-        fireEvent(new RelationMembersChangedEvent(this, r));
+        fireEvent(new RelationMembersChangedEvent(this, r, oldBBox));
     }
 
     void fireNodeMoved(Node node, LatLon newCoor, EastNorth eastNorth) {
+        LatLon oldCoor = node.getCoor();
         reindexNode(node, newCoor, eastNorth);
-        fireEvent(new NodeMovedEvent(this, node));
+        fireEvent(new NodeMovedEvent(this, node, oldCoor));
     }
 
     void fireWayNodesChanged(Way way) {
+        BBox oldBBox = way.getBBox();
         reindexWay(way);
-        fireEvent(new WayNodesChangedEvent(this, way));
+        fireEvent(new WayNodesChangedEvent(this, way, oldBBox));
     }
 
     void fireChangesetIdChanged(OsmPrimitive primitive, int oldChangesetId, int newChangesetId) {
@@ -1059,9 +1139,32 @@ public class DataSet implements Cloneable, ProjectionChangeListener {
     }
 
     void fireHighlightingChanged(OsmPrimitive primitive) {
+        synchronized (highlightedPrimitives) {
+            if (primitive.isHighlighted()) {
+                highlightedPrimitives.add(primitive);
+            } else {
+                highlightedPrimitives.remove(primitive);
+            }
+        }
         highlightUpdateCount++;
     }
 
+    /**
+     * Replies the primitives of this dataset, which are currently highlighted.
+     * @return the highlighted primitives, a copy which may be modified
+     */
+    public Set<OsmPrimitive> getHighlightedPrimitives() {
+        synchronized (highlightedPrimitives) {
+            for (Iterator<OsmPrimitive> it = highlightedPrimitives.iterator(); it.hasNext();) {
+                OsmPrimitive p = it.next();
+                if (!p.isHighlighted() || p.getDataSet() != this) {
+                    it.remove();
+                }
+            }
+            return new HashSet<OsmPrimitive>(highlightedPrimitives);
+        }
+    }
+
     /**
      * Invalidates the internal cache of projected east/north coordinates.
      *
@@ -43,6 +43,8 @@ public class DataSetMerger {
      */
     private final Set<PrimitiveId> objectsWithChildrenToMerge;
     private final Set<OsmPrimitive> objectsToDelete;
+    /** new nodes which are added to the target dataset in one batch after all nodes have been merged */
+    private final List<Node> nodesToAdd = new ArrayList<Node>();
 
     /**
      * constructor
@@ -123,7 +125,11 @@ public class DataSetMerger {
         default: throw new AssertionError();
         }
         target.mergeFrom(source);
-        targetDataSet.addPrimitive(target);
+        if (target instanceof Node) {
+            nodesToAdd.add((Node) target);
+        } else {
+            targetDataSet.addPrimitive(target);
+        }
         mergedMap.put(source.getPrimitiveId(), target.getPrimitiveId());
         objectsWithChildrenToMerge.add(source.getPrimitiveId());
     }
@@ -413,6 +419,8 @@ public class DataSetMerger {
                     progressMonitor.worked(1);
                 }
             }
+            targetDataSet.addPrimitives(nodesToAdd);
+            nodesToAdd.clear();
             candidates.clear();
             candidates = new ArrayList<Way>(targetDataSet.getWays());
             for (Way way: sourceDataSet.getWays()) {
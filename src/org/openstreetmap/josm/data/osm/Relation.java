@@ -411,20 +411,16 @@ public final class Relation extends OsmPrimitive implements IRelation {
 
     @Override
     public BBox getBBox() {
-        RelationMember[] members = this.members;
-
-        if (members.length == 0)
-            return new BBox(0, 0, 0, 0);
-        if (getDataSet() == null)
-            return calculateBBox(new HashSet<PrimitiveId>());
-        else {
+        if (getDataSet() == null) {
+            BBox result = calculateBBox(new HashSet<PrimitiveId>());
+            return result == null ? new BBox(0, 0, 0, 0) : result;
+        } else {
+            // The cached bbox is the key in the spatial index of the dataset, it must only
+            // change in updatePosition() (see DataSet.reindexRelation)
             if (bbox == null) {
-                bbox = calculateBBox(new HashSet<PrimitiveId>());
+                updatePosition();
             }
-            if (bbox == null)
-                return new BBox(0, 0, 0, 0); // No real members
-            else
-                return new BBox(bbox);
+            return new BBox(bbox);
         }
     }
 
@@ -454,14 +450,15 @@ public final class Relation extends OsmPrimitive implements IRelation {
 
     @Override
     public void updatePosition() {
-        bbox = calculateBBox(new HashSet<PrimitiveId>());
+        BBox result = calculateBBox(new HashSet<PrimitiveId>());
+        bbox = result == null ? new BBox(0, 0, 0, 0) : result; // No real members
     }
 
     @Override
     public void setDataset(DataSet dataSet) {
         super.setDataset(dataSet);
         checkMembers();
-        bbox = null; // bbox might have changed if relation was in ds, was removed, modified, added back to dataset
+        // no need to reset bbox, DataSet.addPrimitive() calls updatePosition() when the relation is added back
     }
 
     private void checkMembers() {
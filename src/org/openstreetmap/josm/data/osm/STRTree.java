@@ -0,0 +1,618 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * R-tree of primitives, alternative to {@link QuadBuckets} with the same contract.
+ *
+ * Large batches of primitives are bulk loaded with the sort-tile-recursive (STR) algorithm, which
+ * gives a packed, balanced tree in O(n log n). Afterwards single primitives are inserted and removed
+ * incrementally. In contrast to {@link QuadBuckets} the nodes of the tree are not bound to fixed
+ * quadrants, so long ways don't end up near the root and clustered nodes don't produce deep trees.
+ *
+ * Note: bbox of primitives added to STRTree has to stay the same. In case of coordinate change, primitive must
+ * be removed and readded.
+ *
+ * Changes are made by copying the tree nodes on the path from the root to the changed leaf. Tree nodes
+ * that have been published by {@link #publishSnapshot()} are never modified again, so the published
+ * snapshot can be searched by {@link #searchSnapshot(BBox)} from any thread without locking while the
+ * tree is changed. Tree nodes created after the last snapshot are changed in place.
+ *
+ * This class is not thread safe, except for {@link #searchSnapshot(BBox)}.
+ */
+public class STRTree<T extends OsmPrimitive> implements Collection<T> {
+
+    /**
+     * Maximal number of entries of a tree node
+     */
+    public static final int MAX_ENTRIES = 16;
+
+    /**
+     * Minimal number of primitives in {@link #addAll(Collection)} to rebuild the tree
+     * by bulk loading instead of inserting the primitives one by one
+     */
+    private static final int MIN_BULK_LOAD = 64;
+
+    private static final int MIN_X = 0;
+    private static final int MIN_Y = 1;
+    private static final int MAX_X = 2;
+    private static final int MAX_Y = 3;
+
+    /**
+     * A node of the tree. The entries of a leaf are primitives, the entries of an inner
+     * node are child nodes. The bbox of entry i is stored in boxes[4*i .. 4*i+3].
+     */
+    private static final class TreeNode {
+        final boolean leaf;
+        /** the tree node may only be changed in place while epoch is the current epoch of the tree */
+        final int epoch;
+        Object[] entries = new Object[MAX_ENTRIES + 1];
+        double[] boxes = new double[(MAX_ENTRIES + 1) * 4];
+        int count;
+
+        TreeNode(boolean leaf, int epoch) {
+            this.leaf = leaf;
+            this.epoch = epoch;
+        }
+
+        TreeNode copy(int epoch) {
+            TreeNode result = new TreeNode(leaf, epoch);
+            System.arraycopy(entries, 0, result.entries, 0, count);
+            System.arraycopy(boxes, 0, result.boxes, 0, count * 4);
+            result.count = count;
+            return result;
+        }
+
+        void add(Object entry, double[] box, int boxIndex) {
+            entries[count] = entry;
+            System.arraycopy(box, boxIndex * 4, boxes, count * 4, 4);
+            count++;
+        }
+
+        void removeEntry(int index) {
+            int moved = count - index - 1;
+            if (moved > 0) {
+                System.arraycopy(entries, index + 1, entries, index, moved);
+                System.arraycopy(boxes, (index + 1) * 4, boxes, index * 4, moved * 4);
+            }
+            count--;
+            entries[count] = null;
+        }
+
+        /**
+         * Computes the bbox of all entries into result[index*4 .. index*4+3]
+         */
+        void computeBox(double[] result, int index) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for (int i=0; i<count; i++) {
+                int b = i * 4;
+                minX = Math.min(minX, boxes[b + MIN_X]);
+                minY = Math.min(minY, boxes[b + MIN_Y]);
+                maxX = Math.max(maxX, boxes[b + MAX_X]);
+                maxY = Math.max(maxY, boxes[b + MAX_Y]);
+            }
+            int r = index * 4;
+            result[r + MIN_X] = minX;
+            result[r + MIN_Y] = minY;
+            result[r + MAX_X] = maxX;
+            result[r + MAX_Y] = maxY;
+        }
+    }
+
+    private TreeNode root;
+    private int size;
+    private final double[] tmpBox = new double[4];
+    /** tree nodes of older epochs are shared with a snapshot or an iterator and must be copied before changes */
+    private int epoch;
+    private volatile TreeNode snapshot;
+    /** result of {@link #insert(TreeNode, Object, double[])}: the new sibling of a split tree node */
+    private TreeNode splitSibling;
+    /** result of {@link #remove(TreeNode, Object, double[], boolean)} */
+    private boolean removed;
+
+    public STRTree() {
+        clear();
+        publishSnapshot();
+    }
+
+    private TreeNode mutable(TreeNode node) {
+        return node.epoch == epoch ? node : node.copy(epoch);
+    }
+
+    /**
+     * Freezes the current state of the tree, subsequent changes copy the affected tree nodes.
+     */
+    private void freeze() {
+        epoch++;
+    }
+
+    /**
+     * Publishes the current state of the tree for {@link #searchSnapshot(BBox)}.
+     */
+    public void publishSnapshot() {
+        snapshot = root;
+        freeze();
+    }
+
+    private static void toArray(BBox bbox, double[] result, int index) {
+        int r = index * 4;
+        result[r + MIN_X] = bbox.getTopLeftLon();
+        result[r + MIN_Y] = bbox.getBottomRightLat();
+        result[r + MAX_X] = bbox.getBottomRightLon();
+        result[r + MAX_Y] = bbox.getTopLeftLat();
+    }
+
+    private static boolean intersects(double[] boxes, int index, double[] box) {
+        int b = index * 4;
+        return boxes[b + MIN_X] <= box[MAX_X] && boxes[b + MAX_X] >= box[MIN_X]
+            && boxes[b + MIN_Y] <= box[MAX_Y] && boxes[b + MAX_Y] >= box[MIN_Y];
+    }
+
+    private static boolean contains(double[] boxes, int index, double[] box) {
+        int b = index * 4;
+        return boxes[b + MIN_X] <= box[MIN_X] && boxes[b + MAX_X] >= box[MAX_X]
+            && boxes[b + MIN_Y] <= box[MIN_Y] && boxes[b + MAX_Y] >= box[MAX_Y];
+    }
+
+    private static double area(double minX, double minY, double maxX, double maxY) {
+        return (maxX - minX) * (maxY - minY);
+    }
+
+    /*------------
+     * Bulk loading
+     ------------*/
+
+    /**
+     * Builds the tree from scratch with the sort-tile-recursive algorithm.
+     */
+    private void bulkLoad(List<T> primitives) {
+        int n = primitives.size();
+        Object[] entries = primitives.toArray();
+        double[] boxes = new double[n * 4];
+        for (int i=0; i<n; i++) {
+            toArray(primitives.get(i).getBBox(), boxes, i);
+        }
+        List<TreeNode> level = pack(entries, boxes, n, true);
+        while (level.size() > 1) {
+            int count = level.size();
+            Object[] nodes = level.toArray();
+            double[] nodeBoxes = new double[count * 4];
+            for (int i=0; i<count; i++) {
+                level.get(i).computeBox(nodeBoxes, i);
+            }
+            level = pack(nodes, nodeBoxes, count, false);
+        }
+        root = level.isEmpty() ? new TreeNode(true, epoch) : level.get(0);
+        size = n;
+    }
+
+    /**
+     * Packs the entries into tree nodes of one level: sorts the entries by x, cuts them into
+     * vertical slices of about sqrt(number of nodes) nodes each, sorts each slice by y and fills the
+     * nodes one after another.
+     */
+    private List<TreeNode> pack(Object[] entries, double[] boxes, int count, boolean leaf) {
+        int nodeCount = (count + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = sliceCount * MAX_ENTRIES;
+
+        Integer[] order = new Integer[count];
+        for (int i=0; i<count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new CenterComparator(boxes, MIN_X));
+        Comparator<Integer> byY = new CenterComparator(boxes, MIN_Y);
+        for (int start=0; start<count; start+=sliceSize) {
+            Arrays.sort(order, start, Math.min(count, start + sliceSize), byY);
+        }
+
+        List<TreeNode> result = new ArrayList<TreeNode>(nodeCount);
+        TreeNode current = null;
+        for (int i=0; i<count; i++) {
+            if (i % sliceSize == 0 || current.count == MAX_ENTRIES) {
+                current = new TreeNode(leaf, epoch);
+                result.add(current);
+            }
+            current.add(entries[order[i]], boxes, order[i]);
+        }
+        return result;
+    }
+
+    private static final class CenterComparator implements Comparator<Integer> {
+        private final double[] boxes;
+        private final int axis;
+
+        CenterComparator(double[] boxes, int axis) {
+            this.boxes = boxes;
+            this.axis = axis;
+        }
+
+        private double center(int index) {
+            return boxes[index * 4 + axis] + boxes[index * 4 + axis + 2];
+        }
+
+        public int compare(Integer o1, Integer o2) {
+            return Double.compare(center(o1), center(o2));
+        }
+    }
+
+    /*------------
+     * Incremental changes
+     ------------*/
+
+    private static int chooseSubtree(TreeNode node, double[] box) {
+        int best = -1;
+        double bestEnlargement = Double.POSITIVE_INFINITY;
+        double bestArea = Double.POSITIVE_INFINITY;
+        for (int i=0; i<node.count; i++) {
+            int b = i * 4;
+            double minX = node.boxes[b + MIN_X];
+            double minY = node.boxes[b + MIN_Y];
+            double maxX = node.boxes[b + MAX_X];
+            double maxY = node.boxes[b + MAX_Y];
+            double area;
+            double enlargement;
+            if (minX > maxX) {
+                // empty child
+                area = 0;
+                enlargement = area(box[MIN_X], box[MIN_Y], box[MAX_X], box[MAX_Y]);
+            } else {
+                area = area(minX, minY, maxX, maxY);
+                enlargement = area(Math.min(minX, box[MIN_X]), Math.min(minY, box[MIN_Y]),
+                        Math.max(maxX, box[MAX_X]), Math.max(maxY, box[MAX_Y])) - area;
+            }
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best = i;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Splits an overflowing mutable tree node along the axis with the larger extent of the
+     * entry centers.
+     * @return the new sibling
+     */
+    private TreeNode split(TreeNode node) {
+        double minCX = Double.POSITIVE_INFINITY;
+        double maxCX = Double.NEGATIVE_INFINITY;
+        double minCY = Double.POSITIVE_INFINITY;
+        double maxCY = Double.NEGATIVE_INFINITY;
+        for (int i=0; i<node.count; i++) {
+            int b = i * 4;
+            double cx = node.boxes[b + MIN_X] + node.boxes[b + MAX_X];
+            double cy = node.boxes[b + MIN_Y] + node.boxes[b + MAX_Y];
+            minCX = Math.min(minCX, cx);
+            maxCX = Math.max(maxCX, cx);
+            minCY = Math.min(minCY, cy);
+            maxCY = Math.max(maxCY, cy);
+        }
+        int axis = maxCX - minCX >= maxCY - minCY ? MIN_X : MIN_Y;
+
+        int count = node.count;
+        Object[] entries = node.entries;
+        double[] boxes = node.boxes;
+        Integer[] order = new Integer[count];
+        for (int i=0; i<count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new CenterComparator(boxes, axis));
+
+        node.entries = new Object[MAX_ENTRIES + 1];
+        node.boxes = new double[(MAX_ENTRIES + 1) * 4];
+        node.count = 0;
+        TreeNode sibling = new TreeNode(node.leaf, epoch);
+        for (int i=0; i<count; i++) {
+            (i < count / 2 ? node : sibling).add(entries[order[i]], boxes, order[i]);
+        }
+        return sibling;
+    }
+
+    /**
+     * Inserts entry into the subtree of node.
+     * @return the changed copy of node. If it had to be split, the new sibling is stored in {@link #splitSibling}.
+     */
+    private TreeNode insert(TreeNode node, Object entry, double[] box) {
+        node = mutable(node);
+        if (node.leaf) {
+            node.add(entry, box, 0);
+        } else {
+            int best = chooseSubtree(node, box);
+            TreeNode child = insert((TreeNode) node.entries[best], entry, box);
+            TreeNode sibling = splitSibling;
+            splitSibling = null;
+            node.entries[best] = child;
+            child.computeBox(node.boxes, best);
+            if (sibling != null) {
+                sibling.computeBox(tmpBox, 0);
+                node.add(sibling, tmpBox, 0);
+            }
+        }
+        if (node.count > MAX_ENTRIES) {
+            splitSibling = split(node);
+        }
+        return node;
+    }
+
+    /**
+     * Removes o from the subtree of node. Empty child nodes are dropped.
+     * @param useBox if false, the whole subtree is scanned instead of following the bboxes
+     * @return the changed copy of node if o has been found ({@link #removed} is set), node otherwise
+     */
+    private TreeNode remove(TreeNode node, Object o, double[] box, boolean useBox) {
+        for (int i=0; i<node.count; i++) {
+            if (useBox && !contains(node.boxes, i, box)) {
+                continue;
+            }
+            if (node.leaf) {
+                if (node.entries[i].equals(o)) {
+                    node = mutable(node);
+                    node.removeEntry(i);
+                    removed = true;
+                    return node;
+                }
+            } else {
+                TreeNode child = remove((TreeNode) node.entries[i], o, box, useBox);
+                if (removed) {
+                    node = mutable(node);
+                    if (child.count == 0) {
+                        node.removeEntry(i);
+                    } else {
+                        node.entries[i] = child;
+                        child.computeBox(node.boxes, i);
+                    }
+                    return node;
+                }
+            }
+        }
+        return node;
+    }
+
+    private boolean remove(Object o, double[] box, boolean useBox) {
+        removed = false;
+        TreeNode newRoot = remove(root, o, box, useBox);
+        if (!removed)
+            return false;
+        while (!newRoot.leaf && newRoot.count == 1) {
+            newRoot = (TreeNode) newRoot.entries[0];
+        }
+        if (!newRoot.leaf && newRoot.count == 0) {
+            newRoot = new TreeNode(true, epoch);
+        }
+        root = newRoot;
+        size--;
+        return true;
+    }
+
+    private static boolean find(TreeNode node, Object o, double[] box) {
+        for (int i=0; i<node.count; i++) {
+            if (!contains(node.boxes, i, box)) {
+                continue;
+            }
+            if (node.leaf ? node.entries[i].equals(o) : find((TreeNode) node.entries[i], o, box))
+                return true;
+        }
+        return false;
+    }
+
+    /*------------
+     * Collection
+     ------------*/
+
+    public void clear() {
+        root = new TreeNode(true, epoch);
+        size = 0;
+    }
+
+    public boolean add(T n) {
+        double[] box = new double[4];
+        toArray(n.getBBox(), box, 0);
+        root = insert(root, n, box);
+        if (splitSibling != null) {
+            TreeNode newRoot = new TreeNode(false, epoch);
+            root.computeBox(tmpBox, 0);
+            newRoot.add(root, tmpBox, 0);
+            splitSibling.computeBox(tmpBox, 0);
+            newRoot.add(splitSibling, tmpBox, 0);
+            splitSibling = null;
+            root = newRoot;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds all primitives. If the batch is large compared to the current size of the tree, the
+     * tree is rebuilt by bulk loading, otherwise the primitives are inserted one by one.
+     */
+    public boolean addAll(Collection<? extends T> objects) {
+        if (objects.isEmpty())
+            return false;
+        if (objects.size() >= MIN_BULK_LOAD && objects.size() >= size) {
+            List<T> all = toArrayList();
+            all.addAll(objects);
+            bulkLoad(all);
+        } else {
+            for (T o : objects) {
+                add(o);
+            }
+        }
+        return true;
+    }
+
+    public boolean remove(Object o) {
+        @SuppressWarnings("unchecked") T t = (T) o;
+        double[] box = new double[4];
+        toArray(t.getBBox(), box, 0);
+        return remove(o, box, true);
+    }
+
+    public boolean contains(Object o) {
+        @SuppressWarnings("unchecked") T t = (T) o;
+        double[] box = new double[4];
+        toArray(t.getBBox(), box, 0);
+        return find(root, o, box);
+    }
+
+    public boolean retainAll(Collection<?> objects) {
+        boolean changed = false;
+        for (Iterator<T> it = iterator(); it.hasNext();) {
+            if (!objects.contains(it.next())) {
+                it.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    public boolean removeAll(Collection<?> objects) {
+        boolean changed = false;
+        for (Object o : objects) {
+            changed = changed | remove(o);
+        }
+        return changed;
+    }
+
+    public boolean containsAll(Collection<?> objects) {
+        for (Object o : objects) {
+            if (!this.contains(o))
+                return false;
+        }
+        return true;
+    }
+
+    public ArrayList<T> toArrayList() {
+        ArrayList<T> a = new ArrayList<T>(size);
+        for (T n : this) {
+            a.add(n);
+        }
+        return a;
+    }
+
+    public Object[] toArray() {
+        return toArrayList().toArray();
+    }
+
+    public <A> A[] toArray(A[] template) {
+        return toArrayList().toArray(template);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public List<T> search(BBox searchBbox) {
+        List<T> result = new ArrayList<T>();
+        double[] box = new double[4];
+        toArray(searchBbox, box, 0);
+        search(root, box, result);
+        return result;
+    }
+
+    /**
+     * Searches the state of the tree at the last call of {@link #publishSnapshot()}.
+     * Can be called from any thread without synchronization.
+     */
+    public List<T> searchSnapshot(BBox searchBbox) {
+        List<T> result = new ArrayList<T>();
+        double[] box = new double[4];
+        toArray(searchBbox, box, 0);
+        search(snapshot, box, result);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void search(TreeNode node, double[] box, List<T> result) {
+        for (int i=0; i<node.count; i++) {
+            if (intersects(node.boxes, i, box)) {
+                if (node.leaf) {
+                    result.add((T) node.entries[i]);
+                } else {
+                    search((TreeNode) node.entries[i], box, result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates over the leaves from left to right. The iteration works on a frozen state of the tree,
+     * so changes of the tree (including {@link #remove()}) don't affect it. Usually that is the published
+     * snapshot, the tree is frozen again only if it has been changed since.
+     */
+    private class STRTreeIterator implements Iterator<T> {
+        private final TreeNode[] path = new TreeNode[64];
+        private final int[] indexes = new int[64];
+        private int depth;
+        private T last;
+
+        STRTreeIterator() {
+            if (root.epoch == epoch) {
+                freeze();
+            }
+            path[0] = root;
+            indexes[0] = -1;
+            advance();
+        }
+
+        /** moves to the next entry of a leaf, depth is -1 if there is none */
+        private void advance() {
+            while (depth >= 0) {
+                TreeNode node = path[depth];
+                int index = ++indexes[depth];
+                if (index >= node.count) {
+                    depth--;
+                } else if (node.leaf)
+                    return;
+                else {
+                    depth++;
+                    path[depth] = (TreeNode) node.entries[index];
+                    indexes[depth] = -1;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return depth >= 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (depth < 0)
+                throw new NoSuchElementException();
+            last = (T) path[depth].entries[indexes[depth]];
+            advance();
+            return last;
+        }
+
+        public void remove() {
+            if (last == null)
+                throw new IllegalStateException();
+            double[] box = new double[4];
+            toArray(last.getBBox(), box, 0);
+            // fall back to scanning the tree in case the bbox of the primitive changed unexpectedly
+            if (!STRTree.this.remove(last, box, true) && !STRTree.this.remove(last, box, false))
+                throw new IllegalStateException();
+            last = null;
+        }
+    }
+
+    public Iterator<T> iterator() {
+        return new STRTreeIterator();
+    }
+}
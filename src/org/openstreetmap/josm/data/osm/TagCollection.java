@@ -8,6 +8,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -86,10 +87,16 @@ public class TagCollection implements Iterable<Tag> {
     public static TagCollection unionOfAllPrimitives(Collection<? extends Tagged> primitives) {
         TagCollection tags = new TagCollection();
         if (primitives == null) return tags;
+        // primitives with equal tags share their tag set (see TagSetPool), add each tag set only once
+        IdentityHashMap<Object, Boolean> seenTagSets = new IdentityHashMap<Object, Boolean>();
         for (Tagged primitive: primitives) {
             if (primitive == null) {
                 continue;
             }
+            if (primitive instanceof AbstractPrimitive
+                    && seenTagSets.put(((AbstractPrimitive) primitive).getTagSetIdentity(), Boolean.TRUE) != null) {
+                continue;
+            }
             tags.add(TagCollection.from(primitive));
         }
         return tags;
@@ -0,0 +1,149 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Global intern pool for the key/value arrays of {@link AbstractPrimitive}s.
+ *
+ * Most primitives share identical tag sets (buildings, addresses, highway segments, ...).
+ * The pool makes sure that primitives with equal tags share one immutable array instance
+ * and that the key and value strings are interned, too. Tag sets that are equal are
+ * therefore also reference-equal, which can be used as a cheap shortcut when collecting
+ * tags of many primitives.
+ *
+ * The arrays are only weakly referenced, a tag set is dropped from the pool as soon as no
+ * primitive uses it any more.
+ */
+public final class TagSetPool {
+
+    private static final class Entry extends WeakReference<String[]> {
+        final int hash;
+        Entry next;
+
+        Entry(String[] keys, int hash, ReferenceQueue<String[]> queue, Entry next) {
+            super(keys, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private static final ReferenceQueue<String[]> queue = new ReferenceQueue<String[]>();
+    private static Entry[] table = new Entry[1024];
+    private static int size;
+
+    private TagSetPool() {
+        // Hide default constructor for utils classes
+    }
+
+    /**
+     * Replies the shared instance of a key/value array.
+     *
+     * The array must be laid out like {@link AbstractPrimitive#keys} (key at even, value at odd
+     * indices) and must not be modified afterwards by the caller. Key/value pairs are sorted
+     * by key in place, so that equal tag sets map to the same instance regardless of the order
+     * they have been set.
+     *
+     * @param keys the key/value array. May be null.
+     * @return the shared, immutable key/value array or null, if <code>keys</code> is null or empty
+     */
+    public static String[] intern(String[] keys) {
+        if (keys == null || keys.length == 0)
+            return null;
+        sortByKey(keys);
+        for (int i=0; i<keys.length; i++) {
+            keys[i] = keys[i].intern();
+        }
+        int hash = Arrays.hashCode(keys);
+        synchronized (TagSetPool.class) {
+            expungeStaleEntries();
+            int index = indexFor(hash, table.length);
+            for (Entry e = table[index]; e != null; e = e.next) {
+                if (e.hash == hash) {
+                    String[] existing = e.get();
+                    if (existing != null && Arrays.equals(existing, keys))
+                        return existing;
+                }
+            }
+            table[index] = new Entry(keys, hash, queue, table[index]);
+            if (++size > table.length * 3 / 4) {
+                resize();
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Replies the number of distinct tag sets currently in the pool.
+     * @return the number of distinct tag sets
+     */
+    public static synchronized int size() {
+        expungeStaleEntries();
+        return size;
+    }
+
+    private static void sortByKey(String[] keys) {
+        // insertion sort of the pairs, tag sets are small
+        for (int i=2; i<keys.length; i+=2) {
+            String key = keys[i];
+            String value = keys[i+1];
+            int j = i - 2;
+            while (j >= 0 && keys[j].compareTo(key) > 0) {
+                keys[j+2] = keys[j];
+                keys[j+3] = keys[j+1];
+                j -= 2;
+            }
+            keys[j+2] = key;
+            keys[j+3] = value;
+        }
+    }
+
+    private static int indexFor(int hash, int length) {
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return hash & (length - 1);
+    }
+
+    private static void expungeStaleEntries() {
+        Object stale;
+        while ((stale = queue.poll()) != null) {
+            Entry entry = (Entry) stale;
+            int index = indexFor(entry.hash, table.length);
+            Entry prev = null;
+            for (Entry e = table[index]; e != null; e = e.next) {
+                if (e == entry) {
+                    if (prev == null) {
+                        table[index] = e.next;
+                    } else {
+                        prev.next = e.next;
+                    }
+                    size--;
+                    break;
+                }
+                prev = e;
+            }
+        }
+    }
+
+    private static void resize() {
+        Entry[] newTable = new Entry[table.length * 2];
+        for (Entry head : table) {
+            Entry e = head;
+            while (e != null) {
+                Entry next = e.next;
+                if (e.get() == null) {
+                    // will be removed from the queue without finding it in the table
+                    size--;
+                } else {
+                    int index = indexFor(e.hash, newTable.length);
+                    e.next = newTable[index];
+                    newTable[index] = e;
+                }
+                e = next;
+            }
+        }
+        table = newTable;
+    }
+}
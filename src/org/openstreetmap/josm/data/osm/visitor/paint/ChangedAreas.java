@@ -0,0 +1,144 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.util.Collection;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+
+/**
+ * Computes the areas of the map, whose rendering may have changed by a data set event.
+ *
+ * Besides the changed primitive itself, this includes the ways a moved node belongs to,
+ * and the multipolygons and turn restrictions its ways are members of, because they are
+ * painted as a whole. The areas are given in lat/lon coordinates, renderers have to add
+ * some space for node symbols, line widths and labels.
+ */
+public final class ChangedAreas {
+
+    /**
+     * The space around a changed area, in pixels, which has to be painted again,
+     * because symbols, line widths and labels of the primitives reach into it.
+     */
+    public static final int PAINT_MARGIN = 128;
+
+    private ChangedAreas() {
+        // Hide default constructor for utils classes
+    }
+
+    /**
+     * Adds the areas affected by the given event.
+     * @param event the event
+     * @param areas the collection the areas are added to
+     * @return false, if the event doesn't tell which primitives have changed, so the whole
+     * rendering is affected
+     */
+    public static boolean collect(AbstractDatasetChangedEvent event, Collection<BBox> areas) {
+        switch (event.getType()) {
+        case DATA_CHANGED:
+            Collection<AbstractDatasetChangedEvent> events = ((DataChangedEvent) event).getEvents();
+            if (events == null)
+                return false;
+            for (AbstractDatasetChangedEvent e : events) {
+                if (!collect(e, areas))
+                    return false;
+            }
+            return true;
+        case NODE_MOVED:
+            NodeMovedEvent nme = (NodeMovedEvent) event;
+            addPrimitive(nme.getNode(), nme.getOldCoor(), areas);
+            return true;
+        case WAY_NODES_CHANGED:
+            WayNodesChangedEvent wnce = (WayNodesChangedEvent) event;
+            addBBox(wnce.getOldBBox(), areas);
+            addPrimitive(wnce.getChangedWay(), null, areas);
+            return true;
+        case RELATION_MEMBERS_CHANGED:
+            RelationMembersChangedEvent rmce = (RelationMembersChangedEvent) event;
+            addBBox(rmce.getOldBBox(), areas);
+            addPrimitive(rmce.getRelation(), null, areas);
+            return true;
+        case TAGS_CHANGED:
+            addPrimitive(((TagsChangedEvent) event).getPrimitive(), null, areas);
+            return true;
+        case PRIMITIVES_ADDED:
+        case PRIMITIVES_REMOVED:
+            for (OsmPrimitive p : event.getPrimitives()) {
+                addPrimitive(p, null, areas);
+            }
+            return true;
+        case CHANGESET_ID_CHANGED:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Adds the area of a primitive and of the primitives that are painted together with it.
+     * @param primitive the primitive
+     * @param oldCoor for a node, the previous position, which is added to the areas of its ways; may be null
+     * @param areas the collection the areas are added to
+     */
+    public static void addPrimitive(OsmPrimitive primitive, LatLon oldCoor, Collection<BBox> areas) {
+        if (primitive instanceof Node) {
+            Node n = (Node) primitive;
+            if (n.getCoor() != null) {
+                addBBox(n.getBBox(), areas);
+            }
+            if (oldCoor != null) {
+                areas.add(new BBox(oldCoor, oldCoor));
+            }
+            for (OsmPrimitive referrer : n.getReferrers()) {
+                if (referrer instanceof Way) {
+                    BBox bbox = referrer.getBBox();
+                    if (oldCoor != null) {
+                        bbox.add(oldCoor);
+                    }
+                    addBBox(bbox, areas);
+                    addRelations(referrer, oldCoor, areas);
+                }
+            }
+            addRelations(n, oldCoor, areas);
+        } else {
+            addBBox(primitive.getBBox(), areas);
+            if (primitive instanceof Way) {
+                addRelations(primitive, null, areas);
+            }
+        }
+    }
+
+    /**
+     * Adds the areas of the relations, that are painted as a whole and reference the primitive.
+     */
+    private static void addRelations(OsmPrimitive primitive, LatLon oldCoor, Collection<BBox> areas) {
+        for (OsmPrimitive referrer : primitive.getReferrers()) {
+            if (referrer instanceof Relation) {
+                Relation r = (Relation) referrer;
+                if (r.isMultipolygon() || "restriction".equals(r.get("type"))) {
+                    BBox bbox = r.getBBox();
+                    if (oldCoor != null) {
+                        bbox.add(oldCoor);
+                    }
+                    addBBox(bbox, areas);
+                }
+            }
+        }
+    }
+
+    private static void addBBox(BBox bbox, Collection<BBox> areas) {
+        if (bbox != null && bbox.getTopLeftLon() <= bbox.getBottomRightLon()) {
+            areas.add(bbox);
+        }
+    }
+}
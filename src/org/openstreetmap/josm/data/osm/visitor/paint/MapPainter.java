@@ -82,6 +82,25 @@ public class MapPainter {
 
     private final boolean leftHandTraffic;
 
+    /**
+     * the tolerance ways are simplified with, in meters, 0 if they are drawn with all nodes,
+     * see {@link SimplifiedWayCache}
+     */
+    private final double lodTolerance;
+
+    /**
+     * the area of the graphics context, which is actually painted, grown by some space for
+     * node symbols and wide lines, that are centered outside of it
+     */
+    private final Rectangle viewport;
+    /**
+     * the rectangle ways are clipped to, see {@link #getClipFrame(NavigatableComponent)}
+     */
+    private final Rectangle clipFrame;
+
+    /** the grid the clip frame is aligned to, in pixels */
+    private static final int CLIP_FRAME_GRID = 4096;
+
     private static final double PHI = Math.toRadians(20);
     private static final double cosPHI = Math.cos(PHI);
     private static final double sinPHI = Math.sin(PHI);
@@ -116,6 +135,40 @@ public class MapPainter {
 
         this.circum = circum;
         this.leftHandTraffic = leftHandTraffic;
+        this.lodTolerance = SimplifiedWayCache.getTolerance(nc);
+
+        Rectangle clip = g.getClipBounds();
+        this.viewport = clip != null ? clip : new Rectangle(0, 0, nc.getWidth(), nc.getHeight());
+        this.viewport.grow(50, 50);
+        this.clipFrame = getClipFrame(nc);
+    }
+
+    /**
+     * Returns the rectangle ways are clipped to. It covers the map view with some space
+     * around, and is aligned to a grid in projected coordinates. So the way segments, dash
+     * patterns and arrows don't depend on the painted area, and parts of the view, which
+     * are painted separately (like cached tiles), fit together without seams.
+     */
+    private static Rectangle getClipFrame(NavigatableComponent nc) {
+        double scale = nc.getScale();
+        EastNorth center = nc.getCenter();
+        long originX = (long) Math.floor(center.east() / scale - nc.getWidth() / 2);
+        long originY = (long) Math.floor(-center.north() / scale - nc.getHeight() / 2);
+        int space = 1024;
+        long minX = (long) Math.floor((double) (originX - space) / CLIP_FRAME_GRID) * CLIP_FRAME_GRID;
+        long minY = (long) Math.floor((double) (originY - space) / CLIP_FRAME_GRID) * CLIP_FRAME_GRID;
+        long maxX = (long) Math.ceil((double) (originX + nc.getWidth() + space) / CLIP_FRAME_GRID) * CLIP_FRAME_GRID;
+        long maxY = (long) Math.ceil((double) (originY + nc.getHeight() + space) / CLIP_FRAME_GRID) * CLIP_FRAME_GRID;
+        return new Rectangle((int) (minX - originX), (int) (minY - originY), (int) (maxX - minX), (int) (maxY - minY));
+    }
+
+    /**
+     * Replies the position of the node in the map view. Unlike {@link NavigatableComponent#getPoint(Node)},
+     * negative coordinates are rounded down as well, so tiles painted separately fit together.
+     */
+    private Point getPoint(Node n) {
+        Point2D p = nc.getPoint2D(n);
+        return new Point((int) Math.floor(p.getX()), (int) Math.floor(p.getY()));
     }
 
     /**
@@ -134,13 +187,12 @@ public class MapPainter {
         GeneralPath orientationArrows = showOrientation ? new GeneralPath() : null;
         GeneralPath onewayArrows = showOneway ? new GeneralPath() : null;
         GeneralPath onewayArrowsCasing = showOneway ? new GeneralPath() : null;
-        Rectangle bounds = g.getClipBounds();
-        bounds.grow(100, 100);                  // avoid arrow heads at the border
+        Rectangle bounds = clipFrame;
 
         double wayLength = 0;
         Point lastPoint = null;
         boolean initialMoveToNeeded = true;
-        List<Node> wayNodes = way.getNodes();
+        List<Node> wayNodes = getNodes(way);
         if (wayNodes.size() < 2) return;
 
         // only highlight the segment if the way itself is not highlighted
@@ -154,8 +206,8 @@ public class MapPainter {
                     highlightSegs = new GeneralPath();
                 }
 
-                Point p1 = nc.getPoint(ws.getFirstNode());
-                Point p2 = nc.getPoint(ws.getSecondNode());
+                Point p1 = getPoint(ws.getFirstNode());
+                Point p2 = getPoint(ws.getSecondNode());
                 highlightSegs.moveTo(p1.x, p1.y);
                 highlightSegs.lineTo(p2.x, p2.y);
             }
@@ -281,16 +333,16 @@ public class MapPainter {
 
         @Override
         public Point next() {
-            if (Math.abs(offset) < 0.1f) return nc.getPoint(nodes.get(idx++));
+            if (Math.abs(offset) < 0.1f) return getPoint(nodes.get(idx++));
 
-            Point current = nc.getPoint(nodes.get(idx));
+            Point current = getPoint(nodes.get(idx));
 
             if (idx == nodes.size() - 1) {
                 ++idx;
                 return new Point(x_prev0 + current.x - prev.x, y_prev0 + current.y - prev.y);
             }
 
-            Point next = nc.getPoint(nodes.get(idx+1));
+            Point next = getPoint(nodes.get(idx+1));
 
             int dx_next = next.x - current.x;
             int dy_next = next.y - current.y;
@@ -394,10 +446,12 @@ public class MapPainter {
     }
 
     private boolean isSegmentVisible(Point p1, Point p2) {
-        if ((p1.x < 0) && (p2.x < 0)) return false;
-        if ((p1.y < 0) && (p2.y < 0)) return false;
-        if ((p1.x > nc.getWidth()) && (p2.x > nc.getWidth())) return false;
-        if ((p1.y > nc.getHeight()) && (p2.y > nc.getHeight())) return false;
+        int minX = viewport.x, minY = viewport.y;
+        int maxX = viewport.x + viewport.width, maxY = viewport.y + viewport.height;
+        if ((p1.x < minX) && (p2.x < minX)) return false;
+        if ((p1.y < minY) && (p2.y < minY)) return false;
+        if ((p1.x > maxX) && (p2.x > maxX)) return false;
+        if ((p1.y > maxY) && (p2.y > maxY)) return false;
         return true;
     }
 
@@ -415,7 +469,7 @@ public class MapPainter {
         long dx, dy;
         while (it.hasNext()) {
             Node n = it.next();
-            Point p = nc.getPoint(n);
+            Point p = getPoint(n);
             poly.addPoint(p.x, p.y);
 
             if(lastPoint != null) {
@@ -514,7 +568,7 @@ public class MapPainter {
         Iterator<Node> it = way.getNodes().iterator();
         while (it.hasNext()) {
             Node n = it.next();
-            Point thisP = nc.getPoint(n);
+            Point thisP = getPoint(n);
 
             if (lastP != null) {
                 final double segmentLength = thisP.distance(lastP);
@@ -550,7 +604,7 @@ public class MapPainter {
     }
 
     public void drawNodeIcon(Node n, Image img, float alpha, boolean selected, boolean member) {
-        Point p = nc.getPoint(n);
+        Point p = getPoint(n);
 
         final int w = img.getWidth(null), h=img.getHeight(null);
         if(n.isHighlighted()) {
@@ -593,7 +647,7 @@ public class MapPainter {
     }
 
     public void drawNodeSymbol(Node n, Symbol s, Color fillColor, Color strokeColor) {
-        Point p = nc.getPoint(n);
+        Point p = getPoint(n);
         int radius = s.size / 2;
 
         if(n.isHighlighted()) {
@@ -682,14 +736,14 @@ public class MapPainter {
         if(size <= 0 && !n.isHighlighted())
             return;
 
-        Point p = nc.getPoint(n);
+        Point p = getPoint(n);
 
         if(n.isHighlighted()) {
             drawPointHighlight(p, size);
         }
 
         if (size > 1) {
-            if ((p.x < 0) || (p.y < 0) || (p.x > nc.getWidth()) || (p.y > nc.getHeight())) return;
+            if (!viewport.contains(p)) return;
             int radius = size / 2;
 
             if (inactive || n.isDisabled()) {
@@ -723,7 +777,7 @@ public class MapPainter {
         if (!isShowNames() || bs == null)
             return;
 
-        Point p = nc.getPoint(n);
+        Point p = getPoint(n);
         TextElement text = bs.text;
         String s = text.labelCompositionStrategy.compose(n);
         if (s == null) return;
@@ -794,10 +848,17 @@ public class MapPainter {
         g.setFont(defaultFont);
     }
 
+    /**
+     * Replies the nodes to draw the way with, simplified when the map is zoomed out far.
+     */
+    private List<Node> getNodes(Way w) {
+        return SimplifiedWayCache.getInstance().getNodes(w, lodTolerance);
+    }
+
     private Path2D.Double getPath(Way w) {
         Path2D.Double path = new Path2D.Double();
         boolean initial = true;
-        for (Node n : w.getNodes())
+        for (Node n : getNodes(w))
         {
             Point2D p = n.getEastNorth();
             if (initial) {
@@ -823,9 +884,13 @@ public class MapPainter {
                 g.setColor(color);
                 g.fill(area);
             } else {
+                // anchor the texture at the origin of the projection, not of the view, so it stays in place
+                // while panning and is seamless across tiles rendered at different view positions
+                Point2D anchor = nc.getPoint2D(new EastNorth(0, 0));
+                int width = fillImage.getWidth();
+                int height = fillImage.getHeight();
                 TexturePaint texture = new TexturePaint(fillImage.getImage(),
-                        //                        new Rectangle(polygon.xpoints[0], polygon.ypoints[0], fillImage.getWidth(), fillImage.getHeight()));
-                        new Rectangle(0, 0, fillImage.getWidth(), fillImage.getHeight()));
+                        new Rectangle2D.Double(anchor.getX() % width, anchor.getY() % height, width, height));
                 g.setPaint(texture);
                 Float alpha = Utils.color_int2float(fillImage.alpha);
                 if (alpha != 1f) {
@@ -903,11 +968,11 @@ public class MapPainter {
         Rectangle2D bounds = area.getBounds2D();
         if (bounds.isEmpty()) return false;
         Point2D p = nc.getPoint2D(new EastNorth(bounds.getX(), bounds.getY()));
-        if (p.getX() > nc.getWidth()) return false;
-        if (p.getY() < 0) return false;
+        if (p.getX() > viewport.getMaxX()) return false;
+        if (p.getY() < viewport.getMinY()) return false;
         p = nc.getPoint2D(new EastNorth(bounds.getX() + bounds.getWidth(), bounds.getY() + bounds.getHeight()));
-        if (p.getX() < 0) return false;
-        if (p.getY() > nc.getHeight()) return false;
+        if (p.getX() < viewport.getMinX()) return false;
+        if (p.getY() > viewport.getMaxY()) return false;
         return true;
     }
 
@@ -1018,8 +1083,8 @@ public class MapPainter {
             fromNode = fromWay.getNode(fromWay.getNodesCount()-2);
         }
 
-        Point pFrom = nc.getPoint(fromNode);
-        Point pVia = nc.getPoint(viaNode);
+        Point pFrom = getPoint(fromNode);
+        Point pVia = getPoint(viaNode);
 
         /* starting from via, go back the "from" way a few pixels
            (calculate the vector vx/vy with the specified length and the direction
@@ -1129,10 +1194,10 @@ public class MapPainter {
     public void visitVirtual(GeneralPath path, Way w) {
         Iterator<Node> it = w.getNodes().iterator();
         if (it.hasNext()) {
-            Point lastP = nc.getPoint(it.next());
+            Point lastP = getPoint(it.next());
             while(it.hasNext())
             {
-                Point p = nc.getPoint(it.next());
+                Point p = getPoint(it.next());
                 if(isSegmentVisible(lastP, p) && isLargeSegment(lastP, p, virtualNodeSpace))
                 {
                     int x = (p.x+lastP.x)/2;
@@ -1162,8 +1227,8 @@ public class MapPainter {
      * parents way
      */
     public void drawOrderNumber(Node n1, Node n2, int orderNumber, Color clr) {
-        Point p1 = nc.getPoint(n1);
-        Point p2 = nc.getPoint(n2);
+        Point p1 = getPoint(n1);
+        Point p2 = getPoint(n2);
         drawOrderNumber(p1, p2, orderNumber, clr);
     }
 
@@ -0,0 +1,432 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WaySegment;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer.PreparedRendering;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles.MapPaintSylesUpdateListener;
+
+/**
+ * Caches the rendering of a data set in tiles of {@link #TILE_SIZE} pixels.
+ *
+ * The tiles are aligned to the projected coordinates, so they stay valid while the map is
+ * moved at the same scale, and only the tiles scrolled into view have to be rendered.
+ * Data set events invalidate the tiles covering the {@link ChangedAreas changed areas}, changes
+ * of the selection or the highlighting the tiles covering the affected primitives.
+ *
+ * Missing tiles are rendered in two phases: the styles of all primitives in the area of the
+ * missing tiles are collected once by {@link StyledMapRenderer#prepare}, then the tiles are
+ * painted concurrently, using all available processors.
+ */
+public class RenderedTileCache implements DataSetListener, MapPaintSylesUpdateListener {
+
+    /** the width and height of a tile, in pixels */
+    public static final int TILE_SIZE = 256;
+    /** space around a tile, in which primitives are considered, for symbols and labels crossing the border */
+    private static final int MARGIN = ChangedAreas.PAINT_MARGIN;
+    /** number of changed areas, above which the whole cache is cleared instead */
+    private static final int MAX_DIRTY_AREAS = 1000;
+
+    private static class TileKey {
+        final long x;
+        final long y;
+
+        TileKey(long x, long y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (x * 31 + y);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey))
+                return false;
+            TileKey other = (TileKey) obj;
+            return x == other.x && y == other.y;
+        }
+    }
+
+    private final DataSet data;
+    private final Map<TileKey, BufferedImage> tiles = new HashMap<TileKey, BufferedImage>();
+
+    // the view the cached tiles have been rendered for
+    private double scale;
+    private Projection projection;
+    private long fractionX;
+    private long fractionY;
+    private boolean inactive;
+    private boolean virtual;
+    private int highlightUpdateCount;
+    private Set<OsmPrimitive> lastHighlighted = new HashSet<OsmPrimitive>();
+    private Set<WaySegment> lastHighlightedSegments = new HashSet<WaySegment>();
+    private Set<WaySegment> lastHighlightedVirtualNodes = new HashSet<WaySegment>();
+
+    // changes since the last rendering, guarded by dirtyAreas
+    private final List<BBox> dirtyAreas = new ArrayList<BBox>();
+    private boolean invalid = true;
+    private boolean selectionChanged;
+    private Set<OsmPrimitive> lastSelection = new HashSet<OsmPrimitive>();
+
+    /**
+     * Constructs a new cache and registers it as listener for changes of the data set and
+     * the map paint styles. {@link #destroy()} has to be called to unregister it.
+     * @param data the data set
+     */
+    public RenderedTileCache(DataSet data) {
+        this.data = data;
+        data.addDataSetListener(this);
+        MapPaintStyles.addMapPaintSylesUpdateListener(this);
+    }
+
+    /**
+     * Determines if the tiled rendering is enabled in the preferences.
+     * @return true, if enabled
+     */
+    public static boolean isEnabled() {
+        return Main.pref.getBoolean("mappaint.tiled", true);
+    }
+
+    /**
+     * Paints the data set, rendering the tiles that are missing in the clip area of the graphics context.
+     * @param g the graphics context of the map view
+     * @param nc the map view
+     * @param renderer the renderer, created for the map view
+     * @param inactive if true, the data set is painted in inactive mode
+     * @param virtual if true, virtual nodes are painted
+     */
+    public void paint(Graphics2D g, NavigatableComponent nc, StyledMapRenderer renderer, boolean inactive, boolean virtual) {
+        int width = nc.getWidth();
+        int height = nc.getHeight();
+        if (width <= 0 || height <= 0)
+            return;
+        double scale = nc.getScale();
+        EastNorth center = nc.getCenter();
+        // the position of the upper left pixel of the view, in pixels from the origin of the projection
+        double x0 = center.east() / scale - width / 2;
+        double y0 = -center.north() / scale - height / 2;
+        long originX = (long) Math.floor(x0);
+        long originY = (long) Math.floor(y0);
+        long fractionX = Math.round((x0 - originX) * 100);
+        long fractionY = Math.round((y0 - originY) * 100);
+        Projection projection = Main.getProjection();
+        int highlightUpdateCount = data.getHighlightUpdateCount();
+
+        if (scale != this.scale || projection != this.projection || fractionX != this.fractionX
+                || fractionY != this.fractionY || inactive != this.inactive || virtual != this.virtual) {
+            tiles.clear();
+            this.scale = scale;
+            this.projection = projection;
+            this.fractionX = fractionX;
+            this.fractionY = fractionY;
+            this.inactive = inactive;
+            this.virtual = virtual;
+        }
+        if (highlightUpdateCount != this.highlightUpdateCount) {
+            this.highlightUpdateCount = highlightUpdateCount;
+            highlightingChanged();
+        }
+        applyChanges(nc, originX, originY);
+
+        Rectangle clip = g.getClipBounds();
+        clip = clip == null ? new Rectangle(0, 0, width, height) : clip.intersection(new Rectangle(0, 0, width, height));
+        if (clip.isEmpty())
+            return;
+        long minX = floorDiv(clip.x + originX);
+        long maxX = floorDiv(clip.x + clip.width - 1 + originX);
+        long minY = floorDiv(clip.y + originY);
+        long maxY = floorDiv(clip.y + clip.height - 1 + originY);
+
+        List<TileKey> missing = new ArrayList<TileKey>();
+        for (long y = minY; y <= maxY; y++) {
+            for (long x = minX; x <= maxX; x++) {
+                TileKey key = new TileKey(x, y);
+                if (!tiles.containsKey(key)) {
+                    missing.add(key);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            render(missing, nc, renderer, virtual, originX, originY);
+        }
+        for (long y = minY; y <= maxY; y++) {
+            for (long x = minX; x <= maxX; x++) {
+                g.drawImage(tiles.get(new TileKey(x, y)), (int) (x * TILE_SIZE - originX), (int) (y * TILE_SIZE - originY), null);
+            }
+        }
+        evict(floorDiv(originX), floorDiv(originX + width - 1), floorDiv(originY), floorDiv(originY + height - 1));
+    }
+
+    private static long floorDiv(long pixel) {
+        return pixel >= 0 ? pixel / TILE_SIZE : -((-pixel - 1) / TILE_SIZE) - 1;
+    }
+
+    private static Rectangle getScreenRect(TileKey key, long originX, long originY) {
+        return new Rectangle((int) (key.x * TILE_SIZE - originX), (int) (key.y * TILE_SIZE - originY), TILE_SIZE, TILE_SIZE);
+    }
+
+    private void render(List<TileKey> missing, NavigatableComponent nc, StyledMapRenderer renderer, boolean virtual,
+            long originX, long originY) {
+        Rectangle area = null;
+        for (TileKey key : missing) {
+            Rectangle r = getScreenRect(key, originX, originY);
+            area = area == null ? r : area.union(r);
+        }
+        area.grow(MARGIN, MARGIN);
+        final PreparedRendering prepared = renderer.prepare(data, virtual, nc.getLatLonBounds(area));
+
+        List<Callable<BufferedImage>> tasks = new ArrayList<Callable<BufferedImage>>(missing.size());
+        for (TileKey key : missing) {
+            final Rectangle r = getScreenRect(key, originX, originY);
+            Rectangle tileArea = new Rectangle(r);
+            tileArea.grow(MARGIN, MARGIN);
+            final BBox bbox = new BBox(nc.getLatLonBounds(tileArea));
+            tasks.add(new Callable<BufferedImage>() {
+                @Override
+                public BufferedImage call() {
+                    BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+                    Graphics2D g = image.createGraphics();
+                    try {
+                        g.translate(-r.x, -r.y);
+                        g.setClip(r);
+                        prepared.paint(g, bbox);
+                    } finally {
+                        g.dispose();
+                    }
+                    return image;
+                }
+            });
+        }
+
+        List<BufferedImage> images = StyledMapRenderer.invokeAll(tasks);
+        if (images != null) {
+            for (int i = 0; i < images.size(); i++) {
+                tiles.put(missing.get(i), images.get(i));
+            }
+        }
+    }
+
+    /**
+     * Removes the tiles that are not visible and not next to the visible tiles.
+     */
+    private void evict(long minX, long maxX, long minY, long maxY) {
+        for (Iterator<TileKey> it = tiles.keySet().iterator(); it.hasNext();) {
+            TileKey key = it.next();
+            if (key.x < minX - 1 || key.x > maxX + 1 || key.y < minY - 1 || key.y > maxY + 1) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Adds the areas of the primitives and way segments, whose highlighting has changed
+     * since the last call, to the dirty areas.
+     */
+    private void highlightingChanged() {
+        Set<OsmPrimitive> highlighted = data.getHighlightedPrimitives();
+        Set<WaySegment> segments = new HashSet<WaySegment>(data.getHighlightedWaySegments());
+        Set<WaySegment> virtualNodes = new HashSet<WaySegment>(data.getHighlightedVirtualNodes());
+        synchronized (dirtyAreas) {
+            addChanged(lastHighlighted, highlighted);
+            addChanged(segmentWays(lastHighlightedSegments, segments), segmentWays(segments, lastHighlightedSegments));
+            addChanged(segmentWays(lastHighlightedVirtualNodes, virtualNodes), segmentWays(virtualNodes, lastHighlightedVirtualNodes));
+            lastHighlighted = highlighted;
+            lastHighlightedSegments = segments;
+            lastHighlightedVirtualNodes = virtualNodes;
+        }
+    }
+
+    /**
+     * Replies the ways of the segments, which are not in the other collection.
+     */
+    private static Set<Way> segmentWays(Set<WaySegment> segments, Set<WaySegment> other) {
+        Set<Way> result = new HashSet<Way>();
+        for (WaySegment ws : segments) {
+            if (!other.contains(ws)) {
+                result.add(ws.way);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the areas of the primitives, which are only in one of the sets, to the dirty areas.
+     */
+    private void addChanged(Set<? extends OsmPrimitive> before, Set<? extends OsmPrimitive> after) {
+        for (OsmPrimitive p : after) {
+            if (!before.contains(p) && p.getDataSet() == data) {
+                ChangedAreas.addPrimitive(p, null, dirtyAreas);
+            }
+        }
+        for (OsmPrimitive p : before) {
+            if (!after.contains(p) && p.getDataSet() == data) {
+                ChangedAreas.addPrimitive(p, null, dirtyAreas);
+            }
+        }
+    }
+
+    private void applyChanges(NavigatableComponent nc, long originX, long originY) {
+        List<BBox> areas;
+        synchronized (dirtyAreas) {
+            if (invalid) {
+                lastSelection = new HashSet<OsmPrimitive>(data.getAllSelected());
+                selectionChanged = false;
+            } else if (selectionChanged) {
+                Set<OsmPrimitive> selection = new HashSet<OsmPrimitive>(data.getAllSelected());
+                addChanged(lastSelection, selection);
+                lastSelection = selection;
+                selectionChanged = false;
+            }
+            if (invalid || dirtyAreas.size() > MAX_DIRTY_AREAS) {
+                tiles.clear();
+                invalid = false;
+                dirtyAreas.clear();
+                return;
+            }
+            if (dirtyAreas.isEmpty())
+                return;
+            areas = new ArrayList<BBox>(dirtyAreas);
+            dirtyAreas.clear();
+        }
+        for (BBox bbox : areas) {
+            Point2D p1 = nc.getPoint2D(bbox.getTopLeft());
+            Point2D p2 = nc.getPoint2D(bbox.getBottomRight());
+            long minX = (long) Math.floor((Math.min(p1.getX(), p2.getX()) - MARGIN + originX) / TILE_SIZE);
+            long maxX = (long) Math.floor((Math.max(p1.getX(), p2.getX()) + MARGIN + originX) / TILE_SIZE);
+            long minY = (long) Math.floor((Math.min(p1.getY(), p2.getY()) - MARGIN + originY) / TILE_SIZE);
+            long maxY = (long) Math.floor((Math.max(p1.getY(), p2.getY()) + MARGIN + originY) / TILE_SIZE);
+            for (Iterator<TileKey> it = tiles.keySet().iterator(); it.hasNext();) {
+                TileKey key = it.next();
+                if (key.x >= minX && key.x <= maxX && key.y >= minY && key.y <= maxY) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all tiles. Needed after changes, which affect the rendering, but don't fire
+     * data set events, like changes of the preferences or of the filtered primitives.
+     */
+    public void invalidate() {
+        synchronized (dirtyAreas) {
+            invalid = true;
+        }
+    }
+
+    /**
+     * Informs the cache that the selection may have changed. The tiles covering the
+     * primitives that have been selected or unselected are rendered again.
+     */
+    public void selectionChanged() {
+        synchronized (dirtyAreas) {
+            selectionChanged = true;
+        }
+    }
+
+    /**
+     * Unregisters the listeners and discards all tiles.
+     */
+    public void destroy() {
+        data.removeDataSetListener(this);
+        MapPaintStyles.removeMapPaintSylesUpdateListener(this);
+        tiles.clear();
+        synchronized (dirtyAreas) {
+            lastSelection.clear();
+            lastHighlighted.clear();
+            lastHighlightedSegments.clear();
+            lastHighlightedVirtualNodes.clear();
+        }
+    }
+
+    private void datasetChanged(AbstractDatasetChangedEvent event) {
+        synchronized (dirtyAreas) {
+            if (!invalid && !ChangedAreas.collect(event, dirtyAreas)) {
+                invalid = true;
+            }
+        }
+    }
+
+    @Override
+    public void primitivesAdded(PrimitivesAddedEvent event) {
+        datasetChanged(event);
+    }
+
+    @Override
+    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+        datasetChanged(event);
+    }
+
+    @Override
+    public void tagsChanged(TagsChangedEvent event) {
+        datasetChanged(event);
+    }
+
+    @Override
+    public void nodeMoved(NodeMovedEvent event) {
+        datasetChanged(event);
+    }
+
+    @Override
+    public void wayNodesChanged(WayNodesChangedEvent event) {
+        datasetChanged(event);
+    }
+
+    @Override
+    public void relationMembersChanged(RelationMembersChangedEvent event) {
+        datasetChanged(event);
+    }
+
+    @Override
+    public void otherDatasetChange(AbstractDatasetChangedEvent event) {
+        datasetChanged(event);
+    }
+
+    @Override
+    public void dataChanged(DataChangedEvent event) {
+        datasetChanged(event);
+    }
+
+    @Override
+    public void mapPaintStylesUpdated() {
+        invalidate();
+    }
+
+    @Override
+    public void mapPaintStyleEntryUpdated(int idx) {
+        invalidate();
+    }
+}
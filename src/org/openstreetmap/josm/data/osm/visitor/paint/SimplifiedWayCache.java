@@ -0,0 +1,301 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import static org.openstreetmap.josm.actions.SimplifyWayAction.EARTH_RAD;
+import static org.openstreetmap.josm.actions.SimplifyWayAction.dist;
+import static org.openstreetmap.josm.actions.SimplifyWayAction.xtd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.gui.MapView.LayerChangeListener;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.layer.Layer;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+
+/**
+ * A memory cache for simplified versions of ways, used to draw ways with less nodes
+ * when the map is zoomed out far.
+ *
+ * The ways are simplified with the Douglas-Peucker algorithm of {@link org.openstreetmap.josm.actions.SimplifyWayAction}.
+ * A single run computes the significance of every node, that is the largest tolerance
+ * (in meters) for which the algorithm keeps the node. The simplified way for a tolerance
+ * consists of the nodes whose significance is at least that tolerance. Tolerances are
+ * rounded down to a power of two meters, so a way is simplified at most once per zoom level.
+ *
+ * The cache of a way is dropped when its nodes change or one of its nodes is moved.
+ *
+ * The cache is used by concurrently painting threads without a common lock. Two threads
+ * may simplify the same way at the same time, then one of the equal results is kept.
+ */
+public class SimplifiedWayCache implements DataSetListener, LayerChangeListener {
+
+    /** no simplification, if a pixel is smaller than this (in meters) */
+    private static final double MIN_TOLERANCE = 1;
+    /** ways with at most this number of nodes are never simplified */
+    private static final int MIN_NODES = 4;
+
+    private static final SimplifiedWayCache instance = new SimplifiedWayCache();
+
+    private final ConcurrentMap<DataSet, Map<Way, SimplifiedWay>> cache;
+
+    /**
+     * The significance of the nodes of a way and the simplified node lists computed so far.
+     */
+    private static class SimplifiedWay {
+        /** the significance of every node, in meters, or null if the way cannot be simplified */
+        private final double[] significance;
+        /** the simplified node lists, by binary exponent of the tolerance */
+        private final Map<Integer, List<Node>> levels = new ConcurrentHashMap<Integer, List<Node>>();
+
+        SimplifiedWay(double[] significance) {
+            this.significance = significance;
+        }
+    }
+
+    private SimplifiedWayCache() {
+        this.cache = new ConcurrentHashMap<DataSet, Map<Way, SimplifiedWay>>();
+    }
+
+    public static final SimplifiedWayCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replies true, if ways are drawn simplified when the map is zoomed out far.
+     * @return true, if enabled
+     */
+    public static boolean isEnabled() {
+        return Main.pref.getBoolean("mappaint.lod", true);
+    }
+
+    /**
+     * Replies the tolerance to simplify ways with for the current scale of the map view,
+     * i.e. the size of one pixel in meters.
+     * @param nc the map view
+     * @return the tolerance in meters, 0 if ways are not to be simplified
+     */
+    public static double getTolerance(NavigatableComponent nc) {
+        if (!isEnabled())
+            return 0;
+        double tolerance = nc.getDist100Pixel() / 100;
+        return tolerance >= MIN_TOLERANCE ? tolerance : 0;
+    }
+
+    /**
+     * Replies the nodes of the way, simplified such that no node is left out which deviates
+     * by the tolerance or more from the simplified way.
+     * @param w the way
+     * @param tolerance the tolerance in meters, see {@link #getTolerance(NavigatableComponent)}
+     * @return the simplified nodes, must not be modified
+     */
+    public final List<Node> getNodes(Way w, double tolerance) {
+        DataSet ds = w.getDataSet();
+        if (tolerance < MIN_TOLERANCE || ds == null || w.getNodesCount() <= MIN_NODES)
+            return w.getNodes();
+        Map<Way, SimplifiedWay> map = cache.get(ds);
+        if (map == null) {
+            map = new ConcurrentHashMap<Way, SimplifiedWay>();
+            Map<Way, SimplifiedWay> old = cache.putIfAbsent(ds, map);
+            if (old != null) {
+                map = old;
+            }
+        }
+        SimplifiedWay sw = map.get(w);
+        if (sw == null || (sw.significance != null && sw.significance.length != w.getNodesCount())) {
+            map.put(w, sw = new SimplifiedWay(computeSignificance(w)));
+        }
+        if (sw.significance == null)
+            return w.getNodes();
+        // the largest power of two not above the tolerance
+        int level = Math.getExponent(tolerance);
+        List<Node> nodes = sw.levels.get(level);
+        if (nodes == null) {
+            double t = Math.scalb(1.0, level);
+            nodes = new ArrayList<Node>();
+            for (int i = 0; i < sw.significance.length; i++) {
+                if (sw.significance[i] >= t) {
+                    nodes.add(w.getNode(i));
+                }
+            }
+            nodes = Collections.unmodifiableList(nodes);
+            sw.levels.put(level, nodes);
+        }
+        return nodes;
+    }
+
+    /**
+     * Computes the significance of the nodes of the way, by running the Douglas-Peucker
+     * algorithm with tolerance 0. A node is kept for a tolerance, if it and all nodes which
+     * split the segments containing it are at least that far off, so its significance is the
+     * minimum of its own cross track error and the significance of the node splitting its segment.
+     * @return the significance of the nodes, or null if a node has no coordinates
+     */
+    private static double[] computeSignificance(Way w) {
+        int n = w.getNodesCount();
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            LatLon ll = w.getNode(i).getCoor();
+            if (ll == null)
+                return null;
+            lat[i] = Math.toRadians(ll.lat());
+            lon[i] = Math.toRadians(ll.lon());
+        }
+        double[] sig = new double[n];
+        sig[0] = Double.POSITIVE_INFINITY;
+        sig[n - 1] = Double.POSITIVE_INFINITY;
+        if (w.isClosed()) {
+            // the first and the last node are the same, split at the node farthest away from it
+            int far = 1;
+            double distmax = 0;
+            for (int i = 1; i < n - 1; i++) {
+                double d = dist(lat[0], lon[0], lat[i], lon[i]);
+                if (d > distmax) {
+                    distmax = d;
+                    far = i;
+                }
+            }
+            sig[far] = Double.POSITIVE_INFINITY;
+            computeSignificance(lat, lon, 0, far, sig);
+            computeSignificance(lat, lon, far, n - 1, sig);
+        } else {
+            computeSignificance(lat, lon, 0, n - 1, sig);
+        }
+        return sig;
+    }
+
+    private static void computeSignificance(double[] lat, double[] lon, int from, int to, double[] sig) {
+        // iterative, so long ways don't overflow the stack
+        List<int[]> segments = new ArrayList<int[]>();
+        segments.add(new int[] {from, to});
+        while (!segments.isEmpty()) {
+            int[] s = segments.remove(segments.size() - 1);
+            int a = s[0];
+            int b = s[1];
+            int imax = -1;
+            double xtemax = -1;
+            for (int i = a + 1; i < b; i++) {
+                double xte = Math.abs(EARTH_RAD * xtd(lat[a], lon[a], lat[b], lon[b], lat[i], lon[i]));
+                if (Double.isNaN(xte)) {
+                    // e.g. both ends at the same position
+                    xte = EARTH_RAD * dist(lat[a], lon[a], lat[i], lon[i]);
+                }
+                if (xte > xtemax) {
+                    xtemax = xte;
+                    imax = i;
+                }
+            }
+            if (imax != -1) {
+                sig[imax] = Math.min(xtemax, Math.min(sig[a], sig[b]));
+                segments.add(new int[] {a, imax});
+                segments.add(new int[] {imax, b});
+            }
+        }
+    }
+
+    public final void clear(DataSet ds) {
+        cache.remove(ds);
+    }
+
+    public final void clear() {
+        cache.clear();
+    }
+
+    private void removeWays(DataSet ds, Iterable<? extends OsmPrimitive> primitives) {
+        Map<Way, SimplifiedWay> map = cache.get(ds);
+        if (map == null)
+            return;
+        for (OsmPrimitive p : primitives) {
+            if (p instanceof Way) {
+                map.remove(p);
+            } else if (p instanceof Node) {
+                for (OsmPrimitive ref : p.getReferrers()) {
+                    if (ref instanceof Way) {
+                        map.remove(ref);
+                    }
+                }
+            }
+        }
+    }
+
+    private void removeWays(AbstractDatasetChangedEvent event) {
+        removeWays(event.getDataset(), event.getPrimitives());
+    }
+
+    @Override
+    public void primitivesAdded(PrimitivesAddedEvent event) {
+        // Do nothing
+    }
+
+    @Override
+    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+        removeWays(event);
+    }
+
+    @Override
+    public void tagsChanged(TagsChangedEvent event) {
+        // Do nothing
+    }
+
+    @Override
+    public void nodeMoved(NodeMovedEvent event) {
+        removeWays(event);
+    }
+
+    @Override
+    public void wayNodesChanged(WayNodesChangedEvent event) {
+        removeWays(event);
+    }
+
+    @Override
+    public void relationMembersChanged(RelationMembersChangedEvent event) {
+        // Do nothing
+    }
+
+    @Override
+    public void otherDatasetChange(AbstractDatasetChangedEvent event) {
+        // Do nothing
+    }
+
+    @Override
+    public void dataChanged(DataChangedEvent event) {
+        clear(event.getDataset());
+    }
+
+    @Override
+    public void activeLayerChange(Layer oldLayer, Layer newLayer) {
+        // Do nothing
+    }
+
+    @Override
+    public void layerAdded(Layer newLayer) {
+        // Do nothing
+    }
+
+    @Override
+    public void layerRemoved(Layer oldLayer) {
+        if (oldLayer instanceof OsmDataLayer) {
+            clear(((OsmDataLayer) oldLayer).data);
+        }
+    }
+}
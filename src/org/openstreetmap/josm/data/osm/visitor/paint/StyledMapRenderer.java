@@ -7,6 +7,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.Bounds;
@@ -35,6 +41,13 @@ public class StyledMapRenderer extends AbstractMapRenderer{
     private double circum;
     private MapPainter painter;
     private MapPaintSettings paintSettings;
+    private boolean antialiasing;
+    private boolean leftHandTraffic;
+
+    /** minimum number of primitives, whose styles are resolved by one task of the parallel style collection */
+    private static final int MIN_PRIMITIVES_PER_TASK = 500;
+
+    private static ExecutorService executor;
 
     private static int FLAG_NORMAL = 0;
     private static int FLAG_DISABLED = 1;
@@ -45,11 +58,13 @@ public class StyledMapRenderer extends AbstractMapRenderer{
         final ElemStyle style;
         final OsmPrimitive osm;
         final int flags;
+        final BBox bbox;
 
-        public StyleRecord(ElemStyle style, OsmPrimitive osm, int flags) {
+        public StyleRecord(ElemStyle style, OsmPrimitive osm, int flags, BBox bbox) {
             this.style = style;
             this.osm = osm;
             this.flags = flags;
+            this.bbox = bbox;
         }
 
         @Override
@@ -95,55 +110,120 @@ public class StyledMapRenderer extends AbstractMapRenderer{
         private final boolean drawArea;
         private final boolean drawMultipolygon;
         private final boolean drawRestriction;
+        /** if true, the bounding box of every primitive is kept for {@link PreparedRendering#paint} */
+        private final boolean keepBBoxes;
 
         private final List<StyleRecord> styleElems;
 
-        public StyleCollector(boolean drawArea, boolean drawMultipolygon, boolean drawRestriction) {
+        public StyleCollector(boolean drawArea, boolean drawMultipolygon, boolean drawRestriction, boolean keepBBoxes) {
             this.drawArea = drawArea;
             this.drawMultipolygon = drawMultipolygon;
             this.drawRestriction = drawRestriction;
+            this.keepBBoxes = keepBBoxes;
             styleElems = new ArrayList<StyleRecord>();
         }
 
         public void add(Node osm, int flags) {
             StyleList sl = styles.get(osm, circum, nc);
+            BBox bbox = keepBBoxes ? osm.getBBox() : null;
             for (ElemStyle s : sl) {
-                styleElems.add(new StyleRecord(s, osm, flags));
+                styleElems.add(new StyleRecord(s, osm, flags, bbox));
             }
         }
 
         public void add(Way osm, int flags) {
             StyleList sl = styles.get(osm, circum, nc);
+            BBox bbox = keepBBoxes ? osm.getBBox() : null;
             for (ElemStyle s : sl) {
                 if (!(drawArea && (flags & FLAG_DISABLED) == 0) && s instanceof AreaElemStyle) {
                     continue;
                 }
-                styleElems.add(new StyleRecord(s, osm, flags));
+                styleElems.add(new StyleRecord(s, osm, flags, bbox));
             }
         }
 
         public void add(Relation osm, int flags) {
             StyleList sl = styles.get(osm, circum, nc);
+            BBox bbox = keepBBoxes ? osm.getBBox() : null;
             for (ElemStyle s : sl) {
                 if (drawMultipolygon && drawArea && s instanceof AreaElemStyle && (flags & FLAG_DISABLED) == 0) {
-                    styleElems.add(new StyleRecord(s, osm, flags));
+                    styleElems.add(new StyleRecord(s, osm, flags, bbox));
                 } else if (drawRestriction && s instanceof NodeElemStyle) {
-                    styleElems.add(new StyleRecord(s, osm, flags));
+                    styleElems.add(new StyleRecord(s, osm, flags, bbox));
                 }
             }
         }
 
-        public void drawAll() {
+        /**
+         * Appends the styles collected by another collector, e.g. for another part of the primitives.
+         */
+        public void addAll(StyleCollector other) {
+            styleElems.addAll(other.styleElems);
+        }
+
+        public List<StyleRecord> getSortedRecords() {
             Collections.sort(styleElems);
-            for (StyleRecord r : styleElems) {
-                r.style.paintPrimitive(
-                        r.osm,
-                        paintSettings,
-                        painter,
-                        (r.flags & FLAG_SELECTED) != 0,
-                        (r.flags & FLAG_MEMBER_OF_SELECTED) != 0
-                );
+            return styleElems;
+        }
+    }
+
+    /**
+     * The sorted styles of all primitives in an area, which can be painted into several
+     * graphics contexts, also concurrently.
+     *
+     * @see StyledMapRenderer#prepare(DataSet, boolean, Bounds)
+     */
+    public class PreparedRendering {
+        private final List<StyleRecord> records;
+        private final List<Way> ways;
+        private final boolean renderVirtualNodes;
+        private final Collection<WaySegment> highlightedWaySegments;
+        private final Collection<WaySegment> highlightedVirtualNodes;
+
+        private PreparedRendering(List<StyleRecord> records, List<Way> ways, boolean renderVirtualNodes,
+                Collection<WaySegment> highlightedWaySegments, Collection<WaySegment> highlightedVirtualNodes) {
+            this.records = records;
+            this.ways = ways;
+            this.renderVirtualNodes = renderVirtualNodes;
+            this.highlightedWaySegments = highlightedWaySegments;
+            this.highlightedVirtualNodes = highlightedVirtualNodes;
+        }
+
+        /**
+         * Paints the primitives, that intersect with the given bounding box. The graphics context is
+         * expected to use the coordinate system of the map view, usually translated and clipped.
+         * May be called concurrently for different graphics contexts.
+         *
+         * @param g the graphics context
+         * @param bbox the bounding box of the painted area, including some space for icons and labels
+         */
+        public void paint(Graphics2D g, BBox bbox) {
+            setRenderingHints(g);
+            MapPainter painter = new MapPainter(paintSettings, g, isInactiveMode, nc, renderVirtualNodes,
+                    circum, leftHandTraffic, highlightedWaySegments);
+            drawAll(records, painter, bbox);
+            List<Way> visibleWays = new ArrayList<Way>();
+            for (Way w : ways) {
+                if (w.getBBox().intersects(bbox)) {
+                    visibleWays.add(w);
+                }
+            }
+            painter.drawVirtualNodes(visibleWays, highlightedVirtualNodes);
+        }
+    }
+
+    private void drawAll(List<StyleRecord> records, MapPainter painter, BBox bbox) {
+        for (StyleRecord r : records) {
+            if (bbox != null && !r.bbox.intersects(bbox)) {
+                continue;
             }
+            r.style.paintPrimitive(
+                    r.osm,
+                    paintSettings,
+                    painter,
+                    (r.flags & FLAG_SELECTED) != 0,
+                    (r.flags & FLAG_MEMBER_OF_SELECTED) != 0
+            );
         }
     }
 
@@ -154,8 +234,8 @@ public class StyledMapRenderer extends AbstractMapRenderer{
         super(g, nc, isInactiveMode);
     }
 
-    private void collectNodeStyles(DataSet data, StyleCollector sc, BBox bbox) {
-        for (final Node n: data.searchNodes(bbox)) {
+    private void collectNodeStyles(DataSet data, StyleCollector sc, List<Node> nodes) {
+        for (final Node n: nodes) {
             if (n.isDrawable()) {
                 if (n.isDisabled()) {
                     sc.add(n, FLAG_DISABLED);
@@ -170,8 +250,8 @@ public class StyledMapRenderer extends AbstractMapRenderer{
         }
     }
 
-    private void collectWayStyles(DataSet data, StyleCollector sc, BBox bbox) {
-        for (final Way w : data.searchWays(bbox)) {
+    private void collectWayStyles(DataSet data, StyleCollector sc, List<Way> ways) {
+        for (final Way w : ways) {
             if (w.isDrawable()) {
                 if (w.isDisabled()) {
                     sc.add(w, FLAG_DISABLED);
@@ -186,8 +266,8 @@ public class StyledMapRenderer extends AbstractMapRenderer{
         }
     }
 
-    private void collectRelationStyles(DataSet data, StyleCollector sc, BBox bbox) {
-        for (Relation r: data.searchRelations(bbox)) {
+    private void collectRelationStyles(DataSet data, StyleCollector sc, List<Relation> relations) {
+        for (Relation r: relations) {
             if (r.isDrawable()) {
                 if (r.isDisabled()) {
                     sc.add(r, FLAG_DISABLED);
@@ -200,11 +280,7 @@ public class StyledMapRenderer extends AbstractMapRenderer{
         }
     }
 
-    @Override
-    public void render(final DataSet data, boolean renderVirtualNodes, Bounds bounds) {
-        //long start = System.currentTimeMillis();
-        BBox bbox = new BBox(bounds);
-
+    private StyleCollector collectStyles(DataSet data, BBox bbox, boolean keepBBoxes) {
         styles = MapPaintStyles.getStyles();
 
         this.paintSettings = MapPaintSettings.INSTANCE;
@@ -214,22 +290,181 @@ public class StyledMapRenderer extends AbstractMapRenderer{
         boolean drawMultipolygon = drawArea && Main.pref.getBoolean("mappaint.multipolygon", true);
         styles.setDrawMultipolygon(drawMultipolygon);
         boolean drawRestriction = Main.pref.getBoolean("mappaint.restriction", true);
-        boolean leftHandTraffic = Main.pref.getBoolean("mappaint.lefthandtraffic", false);
+        leftHandTraffic = Main.pref.getBoolean("mappaint.lefthandtraffic", false);
+        antialiasing = Main.pref.getBoolean("mappaint.use-antialiasing", true);
+
+        List<Node> nodes = data.searchNodes(bbox);
+        List<Way> ways = data.searchWays(bbox);
+        List<Relation> relations = data.searchRelations(bbox);
+
+        int parts = Math.min(Runtime.getRuntime().availableProcessors(),
+                (nodes.size() + ways.size() + relations.size()) / MIN_PRIMITIVES_PER_TASK);
+        if (parts > 1 && Main.pref.getBoolean("mappaint.parallel-styles", true)) {
+            StyleCollector sc = collectStylesConcurrently(data, nodes, ways, relations, parts,
+                    drawArea, drawMultipolygon, drawRestriction, keepBBoxes);
+            if (sc != null)
+                return sc;
+        }
+        StyleCollector sc = new StyleCollector(drawArea, drawMultipolygon, drawRestriction, keepBBoxes);
+        collectNodeStyles(data, sc, nodes);
+        collectWayStyles(data, sc, ways);
+        collectRelationStyles(data, sc, relations);
+        return sc;
+    }
 
+    /**
+     * Resolves the styles of the primitives in parallel. The nodes, ways and relations are split
+     * into parts, which are collected by separate tasks. The results are merged in the same order
+     * as a serial collection would produce, so sorting them yields the same rendering.
+     *
+     * @return the merged styles, or null if the calling thread has been interrupted
+     */
+    private StyleCollector collectStylesConcurrently(final DataSet data, List<Node> nodes, List<Way> ways,
+            List<Relation> relations, int parts, final boolean drawArea, final boolean drawMultipolygon,
+            final boolean drawRestriction, final boolean keepBBoxes) {
+        List<Callable<StyleCollector>> tasks = new ArrayList<Callable<StyleCollector>>();
+        for (final List<Node> part : split(nodes, parts)) {
+            tasks.add(new Callable<StyleCollector>() {
+                @Override
+                public StyleCollector call() {
+                    StyleCollector sc = new StyleCollector(drawArea, drawMultipolygon, drawRestriction, keepBBoxes);
+                    collectNodeStyles(data, sc, part);
+                    return sc;
+                }
+            });
+        }
+        for (final List<Way> part : split(ways, parts)) {
+            tasks.add(new Callable<StyleCollector>() {
+                @Override
+                public StyleCollector call() {
+                    StyleCollector sc = new StyleCollector(drawArea, drawMultipolygon, drawRestriction, keepBBoxes);
+                    collectWayStyles(data, sc, part);
+                    return sc;
+                }
+            });
+        }
+        for (final List<Relation> part : split(relations, parts)) {
+            tasks.add(new Callable<StyleCollector>() {
+                @Override
+                public StyleCollector call() {
+                    StyleCollector sc = new StyleCollector(drawArea, drawMultipolygon, drawRestriction, keepBBoxes);
+                    collectRelationStyles(data, sc, part);
+                    return sc;
+                }
+            });
+        }
+        List<StyleCollector> results = invokeAll(tasks);
+        if (results == null)
+            return null;
+        StyleCollector sc = new StyleCollector(drawArea, drawMultipolygon, drawRestriction, keepBBoxes);
+        for (StyleCollector part : results) {
+            sc.addAll(part);
+        }
+        return sc;
+    }
+
+    /**
+     * Splits a list into at most the given number of consecutive parts of about the same size.
+     * Empty lists yield no parts.
+     */
+    private static <T> List<List<T>> split(List<T> list, int parts) {
+        List<List<T>> result = new ArrayList<List<T>>(parts);
+        int size = (list.size() + parts - 1) / parts;
+        for (int i = 0; i < list.size(); i += size) {
+            result.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return result;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Map renderer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Runs the tasks on a thread pool shared by the renderers, using all available processors.
+     * A single task, or all tasks on a single processor machine, are run by the calling thread.
+     *
+     * The tasks must not wait for other tasks run by this method, as the pool is bounded.
+     *
+     * @param tasks the tasks
+     * @return the results in the order of the tasks, or null if the calling thread has been interrupted
+     */
+    static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            if (tasks.size() == 1 || Runtime.getRuntime().availableProcessors() == 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } else {
+                for (Future<T> f : getExecutor().invokeAll(tasks)) {
+                    results.add(f.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return results;
+    }
+
+    private void setRenderingHints(Graphics2D g) {
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                Main.pref.getBoolean("mappaint.use-antialiasing", true) ?
-                        RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+                antialiasing ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+    }
+
+    /**
+     * Collects and sorts the styles of all primitives in the given area, without painting them.
+     * They can be painted later by {@link PreparedRendering#paint(Graphics2D, BBox)}, as long as
+     * neither the data nor the map view change.
+     *
+     * @param data the data set to be rendered
+     * @param renderVirtualNodes if true, renders virtual nodes
+     * @param bounds the area to be rendered
+     * @return the collected styles
+     */
+    public PreparedRendering prepare(DataSet data, boolean renderVirtualNodes, Bounds bounds) {
+        BBox bbox = new BBox(bounds);
+        StyleCollector sc = collectStyles(data, bbox, true);
+        return new PreparedRendering(sc.getSortedRecords(), data.searchWays(bbox), renderVirtualNodes,
+                new ArrayList<WaySegment>(data.getHighlightedWaySegments()),
+                new ArrayList<WaySegment>(data.getHighlightedVirtualNodes()));
+    }
+
+    @Override
+    public void render(final DataSet data, boolean renderVirtualNodes, Bounds bounds) {
+        //long start = System.currentTimeMillis();
+        BBox bbox = new BBox(bounds);
+
+        StyleCollector sc = collectStyles(data, bbox, false);
+        setRenderingHints(g);
 
         Collection<WaySegment> hws = data.getHighlightedWaySegments();
 
         this.painter = new MapPainter(paintSettings, g, isInactiveMode, nc, renderVirtualNodes, circum, leftHandTraffic, hws);
 
-        StyleCollector sc = new StyleCollector(drawArea, drawMultipolygon, drawRestriction);
-        collectNodeStyles(data, sc, bbox);
-        collectWayStyles(data, sc, bbox);
-        collectRelationStyles(data, sc, bbox);
         //long phase1 = System.currentTimeMillis();
-        sc.drawAll();
+        drawAll(sc.getSortedRecords(), painter, null);
         sc = null;
         painter.drawVirtualNodes(data.searchWays(bbox), data.getHighlightedVirtualNodes());
 
@@ -67,6 +67,8 @@ public class WireframeMapRenderer extends AbstractMapRenderer implements Visitor
     protected int virtualNodeSize;
     protected int virtualNodeSpace;
     protected int segmentNumberSpace;
+    /** the tolerance ways are simplified with, in meters, see {@link SimplifiedWayCache} */
+    protected double lodTolerance;
 
     /**
      * Draw subsequent segments of same color as one Path
@@ -120,6 +122,8 @@ public class WireframeMapRenderer extends AbstractMapRenderer implements Visitor
         virtualNodeSize = virtual ? Main.pref.getInteger("mappaint.node.virtual-size", 8) / 2 : 0;
         virtualNodeSpace = Main.pref.getInteger("mappaint.node.virtual-space", 70);
         segmentNumberSpace = Main.pref.getInteger("mappaint.segmentnumber.space", 40);
+        // the order numbers refer to the nodes of the way, so don't leave any out
+        lodTolerance = showOrderNumber ? 0 : SimplifiedWayCache.getTolerance(nc);
         getColors();
 
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -312,7 +316,7 @@ public class WireframeMapRenderer extends AbstractMapRenderer implements Visitor
             wayColor = dfltWayColor;
         }
 
-        Iterator<Node> it = w.getNodes().iterator();
+        Iterator<Node> it = SimplifiedWayCache.getInstance().getNodes(w, lodTolerance).iterator();
         if (it.hasNext()) {
             Point lastP = nc.getPoint(it.next());
             for (int orderNumber = 1; it.hasNext(); orderNumber++) {
@@ -58,7 +58,7 @@ public class MultipolygonCache implements DataSetListener, LayerChangeListener,
         return get(nc, r, false);
     }
 
-    public final Multipolygon get(NavigatableComponent nc, Relation r, boolean forceRefresh) {
+    public final synchronized Multipolygon get(NavigatableComponent nc, Relation r, boolean forceRefresh) {
         Multipolygon multipolygon = null;
         if (nc != null && r != null) {
             Map<DataSet, Map<Relation, Multipolygon>> map1 = cache.get(nc);
@@ -82,7 +82,7 @@ public class MultipolygonCache implements DataSetListener, LayerChangeListener,
         return multipolygon;
     }
     
-    public final void clear(NavigatableComponent nc) {
+    public final synchronized void clear(NavigatableComponent nc) {
         Map<DataSet, Map<Relation, Multipolygon>> map = cache.remove(nc);
         if (map != null) {
             map.clear();
@@ -90,7 +90,7 @@ public class MultipolygonCache implements DataSetListener, LayerChangeListener,
         }
     }
 
-    public final void clear(DataSet ds) {
+    public final synchronized void clear(DataSet ds) {
         for (Map<DataSet, Map<Relation, Multipolygon>> map1 : cache.values()) {
             Map<Relation, Multipolygon> map2 = map1.remove(ds);
             if (map2 != null) {
@@ -100,7 +100,7 @@ public class MultipolygonCache implements DataSetListener, LayerChangeListener,
         }
     }
 
-    public final void clear() {
+    public final synchronized void clear() {
         cache.clear();
     }
     
@@ -197,7 +197,7 @@ public class MultipolygonCache implements DataSetListener, LayerChangeListener,
     }
 
     @Override
-    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+    public synchronized void primitivesRemoved(PrimitivesRemovedEvent event) {
         updateMultipolygonsReferringTo(event);
     }
 
@@ -207,17 +207,17 @@ public class MultipolygonCache implements DataSetListener, LayerChangeListener,
     }
 
     @Override
-    public void nodeMoved(NodeMovedEvent event) {
+    public synchronized void nodeMoved(NodeMovedEvent event) {
         updateMultipolygonsReferringTo(event);
     }
 
     @Override
-    public void wayNodesChanged(WayNodesChangedEvent event) {
+    public synchronized void wayNodesChanged(WayNodesChangedEvent event) {
         updateMultipolygonsReferringTo(event);
     }
 
     @Override
-    public void relationMembersChanged(RelationMembersChangedEvent event) {
+    public synchronized void relationMembersChanged(RelationMembersChangedEvent event) {
         updateMultipolygonsReferringTo(event);
     }
 
@@ -227,7 +227,7 @@ public class MultipolygonCache implements DataSetListener, LayerChangeListener,
     }
 
     @Override
-    public void dataChanged(DataChangedEvent event) {
+    public synchronized void dataChanged(DataChangedEvent event) {
         // Do not call updateMultipolygonsReferringTo as getPrimitives() 
         // can return all the data set primitives for this event
         Collection<Map<Relation, Multipolygon>> maps = null;
@@ -271,7 +271,7 @@ public class MultipolygonCache implements DataSetListener, LayerChangeListener,
     }
 
     @Override
-    public void selectionChanged(Collection<? extends OsmPrimitive> newSelection) {
+    public synchronized void selectionChanged(Collection<? extends OsmPrimitive> newSelection) {
         
         for (Iterator<PolyData> it = selectedPolyData.iterator(); it.hasNext();) {
             it.next().selected = false;
@@ -0,0 +1,355 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+/**
+ * Keeps the errors of a set of validation tests up to date, while the data set is edited.
+ * <p>
+ * The validator must be registered as listener of the {@link org.openstreetmap.josm.data.osm.event.DatasetEventManager}
+ * (with {@link org.openstreetmap.josm.data.osm.event.DatasetEventManager.FireMode#IMMEDIATELY}), so it learns
+ * which primitives have been changed since the last validation. A new validation of the same data set with the
+ * same tests then only tests the changed primitives and the primitives they may form an error with: the nodes
+ * and members of the changed primitives, the primitives referring to them and the nodes and ways close to them.
+ * Only errors involving a changed primitive (or a way of a moved node etc.) are replaced, the errors between
+ * unchanged primitives are kept. If a test may find errors between a changed primitive and primitives neither
+ * close to it nor linked to it (see {@link Test#isLocal(OsmPrimitive)}), all primitives are tested again.
+ * The read lock of the data set is held while testing, so the data set cannot change unnoticed.
+ * <p>
+ * A data set, which has been changed completely, or the edit layer being changed invalidate the errors,
+ * as events may have been missed. The next validation then tests all primitives again.
+ */
+public class IncrementalValidator implements DataSetListener {
+
+    /** if more primitives have been changed, all primitives are tested instead of searching their neighbourhood */
+    private static final int MAX_NEIGHBOURHOOD_SEARCHES = 10000;
+
+    /** the data set the errors belong to, null if there are no errors to update */
+    private volatile DataSet dataSet;
+    /** the names of the tests the errors have been found by */
+    private List<String> testNames;
+    /** the primitives that have been validated and not changed since */
+    private Set<OsmPrimitive> validated = new HashSet<OsmPrimitive>();
+    /** the errors found so far */
+    private List<TestError> errors = new ArrayList<TestError>();
+    /**
+     * the primitives changed since the last validation; also the lock for this set and {@link #invalidated},
+     * which are updated by the event listener while a validation may be running
+     */
+    private final Set<OsmPrimitive> dirty = new HashSet<OsmPrimitive>();
+    /** true, if the errors have to be dropped before the next validation */
+    private boolean invalidated;
+
+    /**
+     * Replies true, if validations test only the primitives changed since the last validation.
+     * @return true, if validation is incremental
+     */
+    public static boolean isEnabled() {
+        return Main.pref.getBoolean("validator.incremental", false);
+    }
+
+    /**
+     * Replies the distance around changed primitives, within which other primitives are tested again.
+     * @return the distance in degrees
+     */
+    public static double getNeighbourhoodDistance() {
+        return Main.pref.getDouble("validator.incremental.distance", 0.0005);
+    }
+
+    private static List<String> getNames(Collection<Test> tests) {
+        List<String> names = new ArrayList<String>(tests.size());
+        for (Test test : tests) {
+            names.add(test.getClass().getName());
+        }
+        return names;
+    }
+
+    /**
+     * Replies true, if there are errors for the data set, that can be updated.
+     * @param ds the data set
+     * @return true, if a new validation of the data set needs to test the changed primitives only
+     */
+    public boolean isValidating(DataSet ds) {
+        synchronized (dirty) {
+            return ds != null && ds == dataSet && !invalidated;
+        }
+    }
+
+    /**
+     * Replies true, if primitives of the validated data set have been changed since the last validation.
+     * @return true, if primitives have been changed
+     */
+    public boolean hasChanges() {
+        synchronized (dirty) {
+            return dataSet != null && !invalidated && !dirty.isEmpty();
+        }
+    }
+
+    /**
+     * Drops the errors, so the next validation tests all primitives again.
+     */
+    public void invalidate() {
+        synchronized (dirty) {
+            invalidated = true;
+            dirty.clear();
+        }
+    }
+
+    /**
+     * Validates the primitives. Only the primitives changed since the last validation, and the primitives
+     * not validated before, are actually tested, if the data set and the tests are the same as before.
+     * The tests must have been set up with {@link Test#setBeforeUpload(boolean)} before.
+     *
+     * @param ds the data set of the primitives
+     * @param tests the tests to run
+     * @param selection the primitives to validate
+     * @param monitor the progress monitor, may be null
+     * @return the errors involving the primitives, or null if canceled
+     */
+    public synchronized List<TestError> validate(DataSet ds, Collection<Test> tests, Collection<OsmPrimitive> selection, ProgressMonitor monitor) {
+        Set<OsmPrimitive> changed;
+        synchronized (dirty) {
+            List<String> names = getNames(tests);
+            if (invalidated || ds != dataSet || !names.equals(testNames)) {
+                invalidated = false;
+                dataSet = ds;
+                testNames = names;
+                validated = new HashSet<OsmPrimitive>();
+                errors = new ArrayList<TestError>();
+                dirty.clear();
+            }
+            changed = new HashSet<OsmPrimitive>(dirty);
+            dirty.clear();
+        }
+        for (OsmPrimitive p : selection) {
+            if (!validated.contains(p)) {
+                changed.add(p);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            List<TestError> found;
+            // the data set must not change while it is tested, otherwise the errors of the changes made
+            // in the meantime are lost, as their events have already been consumed
+            ds.getReadLock().lock();
+            try {
+                addAffected(ds, changed);
+                boolean all = !isLocal(tests, changed);
+                if (all) {
+                    changed.addAll(ds.allPrimitives());
+                }
+                Collection<OsmPrimitive> primitives = getNeighbourhood(ds, changed, all);
+                for (Test test : tests) {
+                    test.setPartialSelection(!all);
+                }
+                found = ParallelValidator.validate(tests, primitives, monitor);
+            } finally {
+                ds.getReadLock().unlock();
+            }
+            if (found == null) {
+                // try again next time
+                synchronized (dirty) {
+                    dirty.addAll(changed);
+                }
+                return null;
+            }
+
+            List<TestError> updated = new ArrayList<TestError>(errors.size() + found.size());
+            for (TestError error : errors) {
+                if (!involves(error, changed)) {
+                    updated.add(error);
+                }
+            }
+            // errors between unchanged primitives are still known, those of primitives not validated before are found later
+            for (TestError error : found) {
+                if (involves(error, changed)) {
+                    updated.add(error);
+                }
+            }
+            errors = updated;
+            validated.addAll(changed);
+        }
+
+        Set<OsmPrimitive> selected = selection instanceof Set ? (Set<OsmPrimitive>) selection : new HashSet<OsmPrimitive>(selection);
+        List<TestError> result = new ArrayList<TestError>();
+        for (TestError error : errors) {
+            if (involves(error, selected)) {
+                result.add(error);
+            }
+        }
+        return result;
+    }
+
+    private static boolean involves(TestError error, Set<OsmPrimitive> primitives) {
+        for (OsmPrimitive p : error.getPrimitives()) {
+            if (primitives.contains(p))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replies true, if the errors of the changed primitives can be found by testing their neighbourhood.
+     */
+    private static boolean isLocal(Collection<Test> tests, Collection<OsmPrimitive> changed) {
+        for (Test test : tests) {
+            for (OsmPrimitive p : changed) {
+                if (!test.isLocal(p))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the primitives, whose errors may change because of the changed primitives:
+     * the ways of changed nodes, the nodes of changed ways and the relations referring to any of them.
+     */
+    private static void addAffected(DataSet ds, Set<OsmPrimitive> changed) {
+        for (OsmPrimitive p : new ArrayList<OsmPrimitive>(changed)) {
+            if (p.getDataSet() != ds) {
+                continue;
+            }
+            if (p instanceof Way) {
+                for (Node n : ((Way) p).getNodes()) {
+                    changed.add(n);
+                }
+            }
+            for (OsmPrimitive ref : p.getReferrers()) {
+                changed.add(ref);
+                if (p instanceof Node) {
+                    changed.addAll(ref.getReferrers());
+                }
+            }
+        }
+    }
+
+    /**
+     * Replies the primitives, together with their nodes and members, the primitives referring to
+     * them and the nodes and ways close to them, or all primitives of the data set, if {@code all} is set.
+     * Only primitives still in the data set are replied.
+     */
+    private static Collection<OsmPrimitive> getNeighbourhood(DataSet ds, Collection<OsmPrimitive> primitives, boolean all) {
+        double distance = getNeighbourhoodDistance();
+        Set<OsmPrimitive> result = new HashSet<OsmPrimitive>(primitives);
+        if (all || primitives.size() > MAX_NEIGHBOURHOOD_SEARCHES) {
+            result.addAll(ds.allPrimitives());
+            primitives = Collections.emptyList();
+        }
+        for (OsmPrimitive p : primitives) {
+            BBox area = null;
+            if (p instanceof Node) {
+                if (((Node) p).getCoor() != null) {
+                    area = new BBox((Node) p);
+                }
+            } else if (p instanceof Way) {
+                result.addAll(((Way) p).getNodes());
+                area = new BBox((Way) p);
+                if (area.width() < 0) {
+                    // no node with coordinates
+                    area = null;
+                }
+            } else if (p instanceof Relation) {
+                for (RelationMember m : ((Relation) p).getMembers()) {
+                    result.add(m.getMember());
+                }
+            }
+            if (p.getDataSet() == ds) {
+                result.addAll(p.getReferrers());
+            }
+            if (area != null) {
+                area.addPrimitive(p, distance);
+                result.addAll(ds.searchNodes(area));
+                result.addAll(ds.searchWays(area));
+            }
+        }
+        // the tests visit nodes first, then ways and relations; removed primitives are not tested
+        List<OsmPrimitive> sorted = new ArrayList<OsmPrimitive>(result.size());
+        for (Class<?> type : new Class<?>[] {Node.class, Way.class, Relation.class}) {
+            for (OsmPrimitive p : result) {
+                if (type.isInstance(p) && p.getDataSet() == ds && !p.isDeleted()) {
+                    sorted.add(p);
+                }
+            }
+        }
+        return sorted;
+    }
+
+    private void addDirty(AbstractDatasetChangedEvent event) {
+        if (dataSet != null && event.getDataset() == dataSet) {
+            synchronized (dirty) {
+                dirty.addAll(event.getPrimitives());
+            }
+        }
+    }
+
+    @Override
+    public void primitivesAdded(PrimitivesAddedEvent event) {
+        addDirty(event);
+    }
+
+    @Override
+    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+        addDirty(event);
+    }
+
+    @Override
+    public void tagsChanged(TagsChangedEvent event) {
+        addDirty(event);
+    }
+
+    @Override
+    public void nodeMoved(NodeMovedEvent event) {
+        addDirty(event);
+    }
+
+    @Override
+    public void wayNodesChanged(WayNodesChangedEvent event) {
+        addDirty(event);
+    }
+
+    @Override
+    public void relationMembersChanged(RelationMembersChangedEvent event) {
+        addDirty(event);
+    }
+
+    @Override
+    public void otherDatasetChange(AbstractDatasetChangedEvent event) {
+        addDirty(event);
+    }
+
+    @Override
+    public void dataChanged(DataChangedEvent event) {
+        if (event.getEvents() == null) {
+            invalidate();
+        } else {
+            for (AbstractDatasetChangedEvent e : event.getEvents()) {
+                e.fire(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.validation.util.WaySegmentIndex;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+/**
+ * Runs validation tests, using all available processors.
+ * <p>
+ * Independent tests run concurrently. The primitives to be tested by a test, that checks every
+ * primitive on its own (see {@link Test#isPartitionable()}), are split into parts, each of which
+ * is tested by a separate instance of the test. The errors are replied in the order of the tests,
+ * and for a partitioned test in the order of the parts, so they don't depend on the scheduling
+ * of the threads.
+ * <p>
+ * All tests of a run share one {@link WaySegmentIndex} of the primitives, which is built by
+ * the first test using it.
+ * <p>
+ * On a single processor machine, or if disabled by the preference {@code validator.parallel},
+ * the tests run one after another in the calling thread.
+ */
+public final class ParallelValidator {
+
+    /** a partitioned test is given at least this number of primitives per part */
+    public static final int MIN_PRIMITIVES_PER_PARTITION = 1000;
+
+    private static ExecutorService executor;
+
+    private ParallelValidator() {}
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Validator");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Replies true, if the tests are run concurrently.
+     * @return true, if the tests are run concurrently
+     */
+    public static boolean isEnabled() {
+        return Runtime.getRuntime().availableProcessors() > 1 && Main.pref.getBoolean("validator.parallel", true);
+    }
+
+    /**
+     * A test, or an instance of a partitionable test, together with the primitives it tests.
+     */
+    private static class TestTask implements Callable<List<TestError>> {
+        private final Test test;
+        private final Collection<OsmPrimitive> primitives;
+        private final ProgressMonitor monitor;
+
+        TestTask(Test test, Collection<OsmPrimitive> primitives, ProgressMonitor monitor) {
+            this.test = test;
+            this.primitives = primitives;
+            this.monitor = monitor;
+        }
+
+        @Override
+        public List<TestError> call() {
+            if (monitor.isCanceled())
+                return null;
+            test.startTest(NullProgressMonitor.INSTANCE);
+            test.visit(primitives);
+            test.endTest();
+            return test.getErrors();
+        }
+    }
+
+    /**
+     * Runs the tests over the primitives. The tests must have been set up with
+     * {@link Test#setPartialSelection(boolean)} and {@link Test#setBeforeUpload(boolean)} before.
+     *
+     * @param tests the tests to run
+     * @param selection the primitives to test
+     * @param monitor the progress monitor, may be null
+     * @return the errors found by the tests, or null if canceled
+     */
+    public static List<TestError> validate(Collection<Test> tests, Collection<OsmPrimitive> selection, ProgressMonitor monitor) {
+        if (monitor == null) {
+            monitor = NullProgressMonitor.INSTANCE;
+        }
+        if (!isEnabled())
+            return validateSerially(tests, selection, monitor);
+
+        List<OsmPrimitive> primitives = new ArrayList<OsmPrimitive>(selection);
+        WaySegmentIndex segmentIndex = new WaySegmentIndex(primitives);
+        int parts = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                primitives.size() / MIN_PRIMITIVES_PER_PARTITION));
+
+        // one list of tasks per test; the tests that aren't partitioned take longest, so they are submitted first
+        List<List<Future<List<TestError>>>> futures = new ArrayList<List<Future<List<TestError>>>>(tests.size());
+        List<Test> testList = new ArrayList<Test>(tests);
+        for (int i = 0; i < testList.size(); i++) {
+            futures.add(null);
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < testList.size(); i++) {
+                Test test = testList.get(i);
+                boolean partitioned = parts > 1 && test.isPartitionable();
+                if (partitioned == (pass == 1))
+                    continue;
+                List<Future<List<TestError>>> testFutures = new ArrayList<Future<List<TestError>>>();
+                if (partitioned) {
+                    for (int p = 0; p < parts; p++) {
+                        List<OsmPrimitive> part = primitives.subList(p * primitives.size() / parts, (p + 1) * primitives.size() / parts);
+                        testFutures.add(getExecutor().submit(new TestTask(test.createPartition(), part, monitor)));
+                    }
+                } else {
+                    test.setSegmentIndex(segmentIndex);
+                    testFutures.add(getExecutor().submit(new TestTask(test, primitives, monitor)));
+                }
+                futures.set(i, testFutures);
+            }
+        }
+
+        List<TestError> errors = new ArrayList<TestError>(200);
+        monitor.setTicksCount(testList.size());
+        try {
+            for (int i = 0; i < testList.size(); i++) {
+                monitor.setCustomText(tr("Test {0}/{1}: Starting {2}", i + 1, testList.size(), testList.get(i).getName()));
+                for (Future<List<TestError>> f : futures.get(i)) {
+                    List<TestError> result = f.get();
+                    if (result == null || monitor.isCanceled()) {
+                        cancel(futures);
+                        return null;
+                    }
+                    errors.addAll(result);
+                }
+                monitor.worked(1);
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            cancel(futures);
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        return errors;
+    }
+
+    private static void cancel(List<List<Future<List<TestError>>>> futures) {
+        for (List<Future<List<TestError>>> testFutures : futures) {
+            for (Future<List<TestError>> f : testFutures) {
+                f.cancel(false);
+            }
+        }
+    }
+
+    private static List<TestError> validateSerially(Collection<Test> tests, Collection<OsmPrimitive> selection, ProgressMonitor monitor) {
+        List<TestError> errors = new ArrayList<TestError>(200);
+        monitor.setTicksCount(tests.size() * selection.size());
+        WaySegmentIndex segmentIndex = new WaySegmentIndex(selection);
+        int testCounter = 0;
+        for (Test test : tests) {
+            if (monitor.isCanceled())
+                return null;
+            testCounter++;
+            test.setSegmentIndex(segmentIndex);
+            monitor.setCustomText(tr("Test {0}/{1}: Starting {2}", testCounter, tests.size(), test.getName()));
+            test.startTest(monitor.createSubTaskMonitor(selection.size(), false));
+            test.visit(selection);
+            test.endTest();
+            errors.addAll(test.getErrors());
+        }
+        return errors;
+    }
+}
@@ -19,6 +19,7 @@ import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.visitor.AbstractVisitor;
+import org.openstreetmap.josm.data.validation.util.WaySegmentIndex;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.GBC;
@@ -63,6 +64,10 @@ public class Test extends AbstractVisitor
 
     /** the progress monitor to use */
     protected ProgressMonitor progressMonitor;
+
+    /** the spatial index of the ways being tested */
+    private WaySegmentIndex segmentIndex;
+
     /**
      * Constructor
      * @param name Name of the test
@@ -131,6 +136,72 @@ public class Test extends AbstractVisitor
         progressMonitor = null;
     }
 
+    /**
+     * Replies true, if this test checks every primitive on its own, without collecting data
+     * about other primitives. The validator may then split the primitives to be tested among
+     * several instances of the test (see {@link #createPartition()}), which run concurrently.
+     *
+     * @return true, if the primitives to be tested may be partitioned
+     */
+    public boolean isPartitionable() {
+        return false;
+    }
+
+    /**
+     * Replies true, if the errors of this test involving the primitive only involve primitives
+     * close to it or linked to it by way nodes or relation members. Otherwise, a change of the
+     * primitive makes the {@link IncrementalValidator} test all primitives again.
+     *
+     * @param p the changed primitive
+     * @return true, if the errors of the primitive can be found by testing its neighbourhood
+     */
+    public boolean isLocal(OsmPrimitive p) {
+        return true;
+    }
+
+    /**
+     * Creates a new instance of this test with the same settings, to test a part of the
+     * primitives. Only called if {@link #isPartitionable()} replies true.
+     * The errors found by the new instance refer to it as tester, so it must be able to
+     * fix them as well.
+     *
+     * @return the new instance
+     */
+    protected Test createPartition() {
+        Test partition;
+        try {
+            partition = getClass().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        partition.enabled = enabled;
+        partition.testBeforeUpload = testBeforeUpload;
+        partition.isBeforeUpload = isBeforeUpload;
+        partition.partialSelection = partialSelection;
+        return partition;
+    }
+
+    /**
+     * Sets the spatial index of the ways to be tested, which is shared with the other
+     * tests of the validation run. Must have been created for the same collection of
+     * primitives as passed to {@link #visit(Collection)}, otherwise a new one is created.
+     *
+     * @param segmentIndex the index
+     */
+    public void setSegmentIndex(WaySegmentIndex segmentIndex) {
+        this.segmentIndex = segmentIndex;
+    }
+
+    /**
+     * Replies the spatial index of the usable ways to be tested. Only available
+     * after {@link #visit(Collection)} has been called.
+     *
+     * @return the index
+     */
+    protected WaySegmentIndex getSegmentIndex() {
+        return segmentIndex;
+    }
+
     /**
      * Visits all primitives to be tested. These primitives are always visited
      * in the same order: nodes first, then ways.
@@ -138,6 +209,9 @@ public class Test extends AbstractVisitor
      * @param selection The primitives to be tested
      */
     public void visit(Collection<OsmPrimitive> selection) {
+        if (segmentIndex == null || segmentIndex.getPrimitives() != selection) {
+            segmentIndex = new WaySegmentIndex(selection);
+        }
         progressMonitor.setTicksCount(selection.size());
         for (OsmPrimitive p : selection) {
             if (p.isUsable()) {
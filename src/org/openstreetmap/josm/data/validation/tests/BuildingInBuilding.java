@@ -4,20 +4,22 @@ package org.openstreetmap.josm.data.validation.tests;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
-import org.openstreetmap.josm.data.osm.QuadBuckets;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
 import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.FilteredCollection;
 import org.openstreetmap.josm.tools.Geometry;
 import org.openstreetmap.josm.tools.Predicate;
@@ -26,12 +28,20 @@ public class BuildingInBuilding extends Test {
 
     protected static final int BUILDING_INSIDE_BUILDING = 2001;
     protected List<OsmPrimitive> primitivesToCheck = new LinkedList<OsmPrimitive>();
-    protected QuadBuckets<Way> index = new QuadBuckets<Way>();
+    /** the buildings, looked up in the shared segment index */
+    protected Set<Way> buildings = new HashSet<Way>();
 
     public BuildingInBuilding() {
         super(tr("Building inside building"), tr("Checks for building areas inside of buildings."));
     }
 
+    @Override
+    public void startTest(ProgressMonitor monitor) {
+        super.startTest(monitor);
+        primitivesToCheck = new LinkedList<OsmPrimitive>();
+        buildings = new HashSet<Way>();
+    }
+
     @Override
     public void visit(Node n) {
         if (n.isUsable() && isBuilding(n)) {
@@ -43,7 +53,7 @@ public class BuildingInBuilding extends Test {
     public void visit(Way w) {
         if (w.isUsable() && w.isClosed() && isBuilding(w)) {
             primitivesToCheck.add(w);
-            index.add(w);
+            buildings.add(w);
         }
     }
 
@@ -81,10 +91,10 @@ public class BuildingInBuilding extends Test {
     @Override
     public void endTest() {
         for (final OsmPrimitive p : primitivesToCheck) {
-            Collection<Way> outers = new FilteredCollection<Way>(index.search(p.getBBox()), new Predicate<Way>() {
+            Collection<Way> outers = new FilteredCollection<Way>(getSegmentIndex().searchWays(p.getBBox()), new Predicate<Way>() {
                 @Override
                 public boolean evaluate(Way object) {
-                    if (p.equals(object))
+                    if (p.equals(object) || !buildings.contains(object))
                         return false;
                     else if (p instanceof Node)
                         return isInPolygon((Node) p, object.getNodes()) || object.getNodes().contains(p);
@@ -99,6 +109,8 @@ public class BuildingInBuilding extends Test {
                         tr("Building inside building"), BUILDING_INSIDE_BUILDING, p));
             }
         }
+        primitivesToCheck = null;
+        buildings = null;
 
         super.endTest();
     }
@@ -4,23 +4,24 @@ package org.openstreetmap.josm.data.validation.tests;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
+import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.WaySegment;
-import org.openstreetmap.josm.data.validation.OsmValidator;
 import org.openstreetmap.josm.data.validation.Severity;
 import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
-import org.openstreetmap.josm.data.validation.util.ValUtil;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.SegmentSweep;
 
 /**
  * Tests if there are segments that crosses in the same layer
@@ -30,8 +31,8 @@ import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 public class CrossingWays extends Test {
     protected static final int CROSSING_WAYS = 601;
 
-    /** All way segments, grouped by cells */
-    Map<Point2D,List<ExtendedSegment>> cellSegments;
+    /** The segments of the checked ways, in visiting order */
+    List<ExtendedSegment> segments;
     /** The already detected errors */
     HashSet<WaySegment> errorSegments;
     /** The already detected ways in error */
@@ -48,15 +49,16 @@ public class CrossingWays extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        cellSegments = new HashMap<Point2D,List<ExtendedSegment>>(1000);
+        segments = new ArrayList<ExtendedSegment>(1000);
         errorSegments = new HashSet<WaySegment>();
         ways_seen = new HashMap<List<Way>, List<WaySegment>>(50);
     }
 
     @Override
     public void endTest() {
+        checkCrossings();
         super.endTest();
-        cellSegments = null;
+        segments = null;
         errorSegments = null;
         ways_seen = null;
     }
@@ -87,100 +89,106 @@ public class CrossingWays extends Test {
 
         int nodesSize = w.getNodesCount();
         for (int i = 0; i < nodesSize - 1; i++) {
-            WaySegment ws = new WaySegment(w, i);
-            ExtendedSegment es1 = new ExtendedSegment(ws, layer1, railway1, isCoastline1, waterway1);
-            List<List<ExtendedSegment>> cellSegments = getSegments(es1.n1, es1.n2);
-            for (List<ExtendedSegment> segments : cellSegments) {
-                for (ExtendedSegment es2 : segments) {
-                    List<Way> prims;
-                    List<WaySegment> highlight;
-
-                    if (errorSegments.contains(ws) && errorSegments.contains(es2.ws)) {
-                        continue;
-                    }
-
-                    String layer2 = es2.layer;
-                    String railway2 = es2.railway;
-                    boolean isCoastline2 = es2.coastline;
-                    if (layer1 == null ? layer2 != null : !layer1.equals(layer2)) {
-                        continue;
-                    }
-
-                    if (!es1.intersects(es2) ) {
-                        continue;
-                    }
-                    if (isSubway1 && "subway".equals(railway2)) {
-                        continue;
-                    }
-                    if (isTram1 && "tram".equals(railway2)) {
-                        continue;
-                    }
-
-                    if (isCoastline1 != isCoastline2) {
-                        continue;
-                    }
-                    if (("river".equals(waterway1) && "riverbank".equals(es2.waterway))
-                            || ("riverbank".equals(waterway1) && "river".equals(es2.waterway))) {
-                        continue;
-                    }
-
-                    if ((es1.railway != null && es1.railway.equals("abandoned"))
-                            || (railway2 != null && railway2.equals("abandoned"))) {
-                        continue;
-                    }
-
-                    prims = Arrays.asList(es1.ws.way, es2.ws.way);
-                    if ((highlight = ways_seen.get(prims)) == null) {
-                        highlight = new ArrayList<WaySegment>();
-                        highlight.add(es1.ws);
-                        highlight.add(es2.ws);
-
-                        String message;
-                        if (isBuilding) {
-                            message = tr("Crossing buildings");
-                        } else if ((es1.waterway != null && es2.ws.way.get("highway") != null)
-                                || (es2.waterway != null && es1.ws.way.get("highway") != null)) {
-                            message = tr("Crossing waterway/highway");
-                        } else {
-                            message = tr("Crossing ways");
-                        }
-
-                        errors.add(new TestError(this, Severity.WARNING,
-                                message,
-                                CROSSING_WAYS,
-                                prims,
-                                highlight));
-                        ways_seen.put(prims, highlight);
-                    } else {
-                        highlight.add(es1.ws);
-                        highlight.add(es2.ws);
-                    }
+            segments.add(new ExtendedSegment(new WaySegment(w, i), layer1, railway1, isCoastline1, waterway1));
+        }
+    }
+
+    /**
+     * Finds the crossing segments of the checked ways with a sweep over their bounding boxes,
+     * and reports them in the order the ways have been visited.
+     */
+    private void checkCrossings() {
+        int count = segments.size();
+        EastNorth[] from = new EastNorth[count];
+        EastNorth[] to = new EastNorth[count];
+        for (int i = 0; i < count; i++) {
+            from[i] = segments.get(i).n1.getEastNorth();
+            to[i] = segments.get(i).n2.getEastNorth();
+        }
+        final List<int[]> crossings = new ArrayList<int[]>();
+        SegmentSweep.findOverlaps(from, to, 0.0, new SegmentSweep.PairHandler() {
+            @Override
+            public boolean handle(int first, int second) {
+                // the segment of the way visited later is checked against the one visited before
+                if (isCrossing(segments.get(second), segments.get(first))) {
+                    crossings.add(new int[] {second, first});
                 }
-                segments.add(es1);
+                return !isCanceled();
+            }
+        });
+        Collections.sort(crossings, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] c1, int[] c2) {
+                return c1[0] != c2[0] ? c1[0] - c2[0] : c1[1] - c2[1];
             }
+        });
+        for (int[] crossing : crossings) {
+            addError(segments.get(crossing[0]), segments.get(crossing[1]));
         }
     }
 
     /**
-     * Returns all the cells this segment crosses.  Each cell contains the list
-     * of segments already processed
-     *
-     * @param n1 The first node
-     * @param n2 The second node
-     * @return A list with all the cells the segment crosses
+     * Checks whether two segments cross and have to be connected.
+     * @param es1 The segment of the way visited later
+     * @param es2 The segment of the way visited before
+     * @return true, if the segments cross
      */
-    public List<List<ExtendedSegment>> getSegments(Node n1, Node n2) {
-
-        List<List<ExtendedSegment>> cells = new ArrayList<List<ExtendedSegment>>();
-        for(Point2D cell : ValUtil.getSegmentCells(n1, n2, OsmValidator.griddetail)) {
-            List<ExtendedSegment> segments = cellSegments.get(cell);
-            if (segments == null) {
-                segments = new ArrayList<ExtendedSegment>();
-                cellSegments.put(cell, segments);
+    private boolean isCrossing(ExtendedSegment es1, ExtendedSegment es2) {
+        if (errorSegments.contains(es1.ws) && errorSegments.contains(es2.ws))
+            return false;
+
+        String layer1 = es1.layer;
+        String layer2 = es2.layer;
+        if (layer1 == null ? layer2 != null : !layer1.equals(layer2))
+            return false;
+
+        if (!es1.intersects(es2))
+            return false;
+        if ("subway".equals(es1.railway) && "subway".equals(es2.railway))
+            return false;
+        if ("tram".equals(es1.railway) && "tram".equals(es2.railway))
+            return false;
+
+        if (es1.coastline != es2.coastline)
+            return false;
+        if (("river".equals(es1.waterway) && "riverbank".equals(es2.waterway))
+                || ("riverbank".equals(es1.waterway) && "river".equals(es2.waterway)))
+            return false;
+
+        if ((es1.railway != null && es1.railway.equals("abandoned"))
+                || (es2.railway != null && es2.railway.equals("abandoned")))
+            return false;
+        return true;
+    }
+
+    private void addError(ExtendedSegment es1, ExtendedSegment es2) {
+        List<Way> prims = Arrays.asList(es1.ws.way, es2.ws.way);
+        List<WaySegment> highlight;
+        if ((highlight = ways_seen.get(prims)) == null) {
+            highlight = new ArrayList<WaySegment>();
+            highlight.add(es1.ws);
+            highlight.add(es2.ws);
+
+            String message;
+            if (isBuilding(es1.ws.way)) {
+                message = tr("Crossing buildings");
+            } else if ((es1.waterway != null && es2.ws.way.get("highway") != null)
+                    || (es2.waterway != null && es1.ws.way.get("highway") != null)) {
+                message = tr("Crossing waterway/highway");
+            } else {
+                message = tr("Crossing ways");
             }
-            cells.add(segments);
+
+            errors.add(new TestError(this, Severity.WARNING,
+                    message,
+                    CROSSING_WAYS,
+                    prims,
+                    highlight));
+            ways_seen.put(prims, highlight);
+        } else {
+            highlight.add(es1.ws);
+            highlight.add(es2.ws);
         }
-        return cells;
     }
 
     /**
@@ -82,6 +82,11 @@ public class DeprecatedTags extends Test {
                 add("bicycle_parking", "stands"));
     }
 
+    @Override
+    public boolean isPartitionable() {
+        return true;
+    }
+
     public void visit(OsmPrimitive p) {
         for (DeprecationCheck check : checks) {
             if (check.matchesPrimitive(p)) {
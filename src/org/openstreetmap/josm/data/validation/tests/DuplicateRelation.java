@@ -172,6 +172,16 @@ public class DuplicateRelation extends Test
         relations_nokeys = null;
     }
 
+    /**
+     * Duplicate relations do not refer to each other, so a changed relation has to be
+     * compared with all relations again.
+     */
+    @Override
+    public boolean isLocal(OsmPrimitive p)
+    {
+        return !(p instanceof Relation);
+    }
+
     @Override
     public void visit(Relation r)
     {
@@ -22,6 +22,11 @@ public class DuplicatedWayNodes extends Test {
                 tr("Checks for ways with identical consecutive nodes."));
     }
 
+    @Override
+    public boolean isPartitionable() {
+        return true;
+    }
+
     @Override
     public void visit(Way w) {
         if (!w.isUsable()) return;
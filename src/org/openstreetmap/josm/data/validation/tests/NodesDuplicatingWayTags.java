@@ -31,6 +31,11 @@ public class NodesDuplicatingWayTags extends Test {
                 tr("Checks for nodes that have the same tags as their parent way."));
     }
 
+    @Override
+    public boolean isPartitionable() {
+        return true;
+    }
+
     @Override
     public void visit(Way way) {
         // isTagged represents interesting tags (not "source", "created_by", ...)
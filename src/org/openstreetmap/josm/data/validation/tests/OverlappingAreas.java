@@ -4,13 +4,15 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
-import org.openstreetmap.josm.data.osm.QuadBuckets;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
 import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
 import org.openstreetmap.josm.gui.mappaint.ElemStyles;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.Geometry;
 import org.openstreetmap.josm.tools.Predicate;
 import org.openstreetmap.josm.tools.Utils;
@@ -18,29 +20,36 @@ import org.openstreetmap.josm.tools.Utils;
 public class OverlappingAreas extends Test {
 
     protected static final int OVERLAPPING_AREAS = 2201;
-    protected QuadBuckets<Way> index = new QuadBuckets<Way>();
+    /** the areas, looked up in the shared segment index */
+    protected Set<Way> areas = new LinkedHashSet<Way>();
 
     public OverlappingAreas() {
         super(tr("Overlapping Areas"), tr("This test checks if areas overlap."));
     }
 
+    @Override
+    public void startTest(ProgressMonitor monitor) {
+        super.startTest(monitor);
+        areas = new LinkedHashSet<Way>();
+    }
+
     @Override
     public void visit(Way w) {
         if (w.isUsable() && w.isClosed() && ElemStyles.hasAreaElemStyle(w, false)) {
-            index.add(w);
+            areas.add(w);
         }
     }
 
     @Override
     public void endTest() {
-        for (final Way w : index) {
+        for (final Way w : areas) {
             Collection<Way> overlaps = Utils.filter(
-                    index.search(w.getBBox()),
+                    getSegmentIndex().searchWays(w.getBBox()),
                     new Predicate<Way>() {
 
                         @Override
                         public boolean evaluate(Way wi) {
-                            if (w.equals(wi))
+                            if (w.equals(wi) || !areas.contains(wi))
                                 return false;
                             else
                                 return Geometry.polygonIntersection(w.getNodes(), wi.getNodes())
@@ -52,6 +61,7 @@ public class OverlappingAreas extends Test {
                         OVERLAPPING_AREAS, Collections.singletonList(w), overlaps));
             }
         }
+        areas = null;
 
         super.endTest();
     }
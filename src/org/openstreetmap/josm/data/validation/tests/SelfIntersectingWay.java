@@ -25,6 +25,11 @@ public class SelfIntersectingWay extends Test {
                         "that contain some of their nodes more than once."));
     }
 
+    @Override
+    public boolean isPartitionable() {
+        return true;
+    }
+
     @Override public void visit(Way w) {
         HashSet<Node> nodes = new HashSet<Node>();
 
@@ -3,18 +3,14 @@ package org.openstreetmap.josm.data.validation.tests;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
 import org.openstreetmap.josm.data.validation.Test;
 import org.openstreetmap.josm.data.validation.TestError;
-import org.openstreetmap.josm.data.validation.util.ValUtil;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.MultiMap;
 import org.openstreetmap.josm.tools.Utils;
@@ -29,11 +25,16 @@ public class SimilarNamedWays extends Test {
 
     protected static final int SIMILAR_NAMED = 701;
 
-    /** All ways, grouped by cells */
-    Map<Point2D,List<Way>> cellWays;
+    /** The maximal Levenshtein distance of similar names */
+    protected static final int MAX_DISTANCE = 2;
+
     /** The already detected errors */
     MultiMap<Way, Way> errorWays;
 
+    /** Rows of the distance matrix, reused for all names */
+    private int[] previousRow = new int[0];
+    private int[] row = new int[0];
+
     /**
      * Constructor
      */
@@ -45,13 +46,11 @@ public class SimilarNamedWays extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        cellWays = new HashMap<Point2D,List<Way>>(1000);
         errorWays = new MultiMap<Way, Way>();
     }
 
     @Override
     public void endTest() {
-        cellWays = null;
         errorWays = null;
         super.endTest();
     }
@@ -65,20 +64,25 @@ public class SimilarNamedWays extends Test {
         if (name == null || name.length() < 6)
             return;
 
-        List<List<Way>> theCellWays = ValUtil.getWaysInCell(w, cellWays);
+        // the ways in the end cells are in visiting order, compare with those visited before
+        List<List<Way>> theCellWays = getSegmentIndex().getEndCells(w);
         for (List<Way> ways : theCellWays) {
             for (Way w2 : ways) {
+                if (w2 == w) {
+                    break;
+                }
                 if (errorWays.contains(w, w2) || errorWays.contains(w2, w)) {
                     continue;
                 }
 
                 String name2 = w2.get("name");
-                if (name2 == null || name2.length() < 6) {
+                if (name2 == null || name2.length() < 6
+                        || Math.abs(name.length() - name2.length()) > MAX_DISTANCE || name.equals(name2)) {
                     continue;
                 }
 
-                int levenshteinDistance = getLevenshteinDistance(name, name2);
-                if (0 < levenshteinDistance && levenshteinDistance <= 2) {
+                int levenshteinDistance = getLevenshteinDistance(name, name2, MAX_DISTANCE);
+                if (0 < levenshteinDistance && levenshteinDistance <= MAX_DISTANCE) {
                     List<OsmPrimitive> primitives = new ArrayList<OsmPrimitive>();
                     primitives.add(w);
                     primitives.add(w2);
@@ -86,10 +90,58 @@ public class SimilarNamedWays extends Test {
                     errorWays.put(w, w2);
                 }
             }
-            ways.add(w);
         }
     }
 
+    /**
+     * Compute Levenshtein distance, if it is not greater than a limit. Only the cells of the
+     * distance matrix, that are at most {@code max} off the diagonal, are computed, and the
+     * computation stops as soon as a whole row exceeds the limit.
+     *
+     * @param s First word
+     * @param t Second word
+     * @param max The limit
+     * @return The distance between words, or {@code max + 1} if it is greater than {@code max}
+     */
+    public int getLevenshteinDistance(String s, String t, int max) {
+        int n = s.length();
+        int m = t.length();
+        int exceeded = max + 1;
+        if (Math.abs(n - m) > max)
+            return exceeded;
+        if (row.length < m + 2) {
+            previousRow = new int[m + 2];
+            row = new int[m + 2];
+        }
+        int[] d0 = previousRow;
+        int[] d1 = row;
+
+        for (int j = 0; j <= m; j++) {
+            d0[j] = Math.min(j, exceeded);
+        }
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(m, i + max);
+            d1[from - 1] = from == 1 ? Math.min(i, exceeded) : exceeded;
+            int rowMin = d1[from - 1];
+            char s_i = s.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = s_i == t.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(d0[j] + 1, d1[j - 1] + 1), d0[j - 1] + cost);
+                d1[j] = Math.min(d, exceeded);
+                rowMin = Math.min(rowMin, d1[j]);
+            }
+            // the cell right of the band is read by the next row
+            d1[to + 1] = exceeded;
+            if (rowMin > max)
+                return exceeded;
+            int[] tmp = d0;
+            d0 = d1;
+            d1 = tmp;
+        }
+        return d0[m];
+    }
+
     /**
      * Compute Levenshtein distance
      *
@@ -153,6 +153,11 @@ public class TagChecker extends Test
                 tr("This plugin checks for errors in property keys and values."));
     }
 
+    @Override
+    public boolean isPartitionable() {
+        return true;
+    }
+
     @Override
     public void initialize() throws IOException {
         initializeData();
@@ -23,7 +23,6 @@ import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmUtils;
-import org.openstreetmap.josm.data.osm.QuadBuckets;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.validation.Severity;
 import org.openstreetmap.josm.data.validation.Test;
@@ -42,12 +41,11 @@ public class UnconnectedWays extends Test {
     protected static final String PREFIX = ValidatorPreference.PREFIX + "." + UnconnectedWays.class.getSimpleName();
 
     Set<MyWaySegment> ways;
-    QuadBuckets<Node> endnodes; // nodes at end of way
-    QuadBuckets<Node> endnodes_highway; // nodes at end of way
-    QuadBuckets<Node> middlenodes; // nodes in middle of way
+    // nodes near a way segment are found by searching the ways in the shared segment index
+    Set<Node> endnodes; // nodes at end of way
+    Set<Node> endnodes_highway; // nodes at end of way
+    Set<Node> middlenodes; // nodes in middle of way
     Set<Node> othernodes; // nodes appearing at least twice
-    //NodeSearchCache nodecache;
-    QuadBuckets<Node> nodecache;
     Area ds_area;
     DataSet ds;
 
@@ -66,9 +64,9 @@ public class UnconnectedWays extends Test {
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
         ways = new HashSet<MyWaySegment>();
-        endnodes = new QuadBuckets<Node>();
-        endnodes_highway = new QuadBuckets<Node>();
-        middlenodes = new QuadBuckets<Node>();
+        endnodes = new HashSet<Node>();
+        endnodes_highway = new HashSet<Node>();
+        middlenodes = new HashSet<Node>();
         othernodes = new HashSet<Node>();
         mindist = Main.pref.getDouble(PREFIX + ".node_way_distance", 10.0);
         minmiddledist = Main.pref.getDouble(PREFIX + ".way_way_distance", 0.0);
@@ -227,23 +225,29 @@ public class UnconnectedWays extends Test {
             return line.ptSegDist(p) < dist;
         }
 
+        /**
+         * Replies the area around the segment.
+         * @param fudge the distance around the segment, in east/north units like the
+         * distances of {@link #nearby(Node, double)}
+         * @return the top left and the bottom right corner
+         */
         public List<LatLon> getBounds(double fudge) {
-            double x1 = n1.getCoor().lon();
-            double x2 = n2.getCoor().lon();
-            if (x1 > x2) {
-                double tmpx = x1;
-                x1 = x2;
-                x2 = tmpx;
+            double x1 = Math.min(line.getX1(), line.getX2()) - fudge;
+            double x2 = Math.max(line.getX1(), line.getX2()) + fudge;
+            double y1 = Math.min(line.getY1(), line.getY2()) - fudge;
+            double y2 = Math.max(line.getY1(), line.getY2()) + fudge;
+            double minLat = Double.POSITIVE_INFINITY, minLon = Double.POSITIVE_INFINITY;
+            double maxLat = Double.NEGATIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+            for (EastNorth corner : new EastNorth[] {
+                    new EastNorth(x1, y1), new EastNorth(x1, y2), new EastNorth(x2, y1), new EastNorth(x2, y2)}) {
+                LatLon ll = Main.getProjection().eastNorth2latlon(corner);
+                minLat = Math.min(minLat, ll.lat());
+                maxLat = Math.max(maxLat, ll.lat());
+                minLon = Math.min(minLon, ll.lon());
+                maxLon = Math.max(maxLon, ll.lon());
             }
-            double y1 = n1.getCoor().lat();
-            double y2 = n2.getCoor().lat();
-            if (y1 > y2) {
-                double tmpy = y1;
-                y1 = y2;
-                y2 = tmpy;
-            }
-            LatLon topLeft  = new LatLon(y2+fudge, x1-fudge);
-            LatLon botRight = new LatLon(y1-fudge, x2+fudge);
+            LatLon topLeft  = new LatLon(maxLat, minLon);
+            LatLon botRight = new LatLon(minLat, maxLon);
             List<LatLon> ret = new ArrayList<LatLon>();
             ret.add(topLeft);
             ret.add(botRight);
@@ -288,8 +292,15 @@ public class UnconnectedWays extends Test {
             // overlap a bit and can return duplicate nodes.
             nearbyNodeCache = null;
             List<LatLon> bounds = this.getBounds(dist);
-            List<Node> found_nodes = endnodes_highway.search(new BBox(bounds.get(0), bounds.get(1)));
-            found_nodes.addAll(endnodes.search(new BBox(bounds.get(0), bounds.get(1))));
+            BBox bbox = new BBox(bounds.get(0), bounds.get(1));
+            List<Node> found_nodes = new ArrayList<Node>();
+            for (Way way : getSegmentIndex().searchWays(bbox)) {
+                for (Node n : new Node[] {way.firstNode(), way.lastNode()}) {
+                    if ((endnodes_highway.contains(n) || endnodes.contains(n)) && bbox.bounds(n.getCoor())) {
+                        found_nodes.add(n);
+                    }
+                }
+            }
 
             for (Node n : found_nodes) {
                 if (!nearby(n, dist) ||
@@ -346,7 +357,7 @@ public class UnconnectedWays extends Test {
     public void visit(Way w) {
         if (w.getNodesCount() > 0) {
             ways.addAll(getWaySegments(w));
-            QuadBuckets<Node> set = endnodes;
+            Set<Node> set = endnodes;
             if (w.hasKey("highway") || w.hasKey("railway")) {
                 set = endnodes_highway;
             }
@@ -359,7 +370,7 @@ public class UnconnectedWays extends Test {
     public void visit(Node n) {
     }
 
-    private void addNode(Node n, QuadBuckets<Node> s) {
+    private void addNode(Node n, Set<Node> s) {
         boolean m = middlenodes.contains(n);
         boolean e = endnodes.contains(n);
         boolean eh = endnodes_highway.contains(n);
@@ -38,6 +38,11 @@ public class UntaggedNode extends Test {
                 tr("This test checks for untagged nodes that are not part of any way."));
     }
 
+    @Override
+    public boolean isPartitionable() {
+        return true;
+    }
+
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
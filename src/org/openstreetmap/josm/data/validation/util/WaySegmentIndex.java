@@ -0,0 +1,124 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation.util;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.STRTree;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Spatial index of the usable ways among the primitives of a validation run, shared by all
+ * geometric tests of the run, so the ways are indexed only once.
+ * <p>
+ * Each part of the index is built on first use. Ways are stored in the order of the primitives,
+ * which is the order the tests visit them. So a test can compare a way with the ways visited
+ * before, by walking a cell up to the way itself.
+ * <p>
+ * Once built, the index is not changed anymore and can be queried by concurrently running tests.
+ * The primitives must not be changed during the validation run.
+ */
+public class WaySegmentIndex {
+
+    private final Collection<OsmPrimitive> primitives;
+
+    private volatile List<Way> ways;
+    private volatile STRTree<Way> wayTree;
+    private volatile Map<Way, List<List<Way>>> endCells;
+
+    /**
+     * Constructs a new index. Nothing is indexed until the first query.
+     * @param primitives the primitives of the validation run
+     */
+    public WaySegmentIndex(Collection<OsmPrimitive> primitives) {
+        this.primitives = primitives;
+    }
+
+    /**
+     * Replies the primitives this index has been created for.
+     * @return the primitives
+     */
+    public Collection<OsmPrimitive> getPrimitives() {
+        return primitives;
+    }
+
+    private List<Way> getWays() {
+        List<Way> result = ways;
+        if (result == null) {
+            synchronized (this) {
+                result = ways;
+                if (result == null) {
+                    result = new ArrayList<Way>();
+                    for (OsmPrimitive p : primitives) {
+                        if (p instanceof Way && p.isUsable()) {
+                            result.add((Way) p);
+                        }
+                    }
+                    ways = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replies the usable ways, whose bounding box intersects the given one.
+     * @param bbox the area to search
+     * @return the ways
+     */
+    public List<Way> searchWays(BBox bbox) {
+        STRTree<Way> tree = wayTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = wayTree;
+                if (tree == null) {
+                    tree = new STRTree<Way>();
+                    tree.addAll(getWays());
+                    tree.publishSnapshot();
+                    wayTree = tree;
+                }
+            }
+        }
+        return tree.searchSnapshot(bbox);
+    }
+
+    /**
+     * Replies the ways in the cells of the end nodes of an indexed way (see
+     * {@link ValUtil#getWaysInCell(Way, Map)}).
+     *
+     * @param w the way
+     * @return for each end cell, the ways in visiting order; empty if the way is not indexed
+     */
+    public List<List<Way>> getEndCells(Way w) {
+        Map<Way, List<List<Way>>> cells = endCells;
+        if (cells == null) {
+            synchronized (this) {
+                cells = endCells;
+                if (cells == null) {
+                    Map<Point2D, List<Way>> cellWays = new HashMap<Point2D, List<Way>>(1000);
+                    cells = new HashMap<Way, List<List<Way>>>();
+                    for (Way way : getWays()) {
+                        if (way.getNodesCount() == 0 || way.firstNode().getCoor() == null || way.lastNode().getCoor() == null) {
+                            continue;
+                        }
+                        List<List<Way>> wayCells = ValUtil.getWaysInCell(way, cellWays);
+                        for (List<Way> cell : wayCells) {
+                            cell.add(way);
+                        }
+                        cells.put(way, wayCells);
+                    }
+                    endCells = cells;
+                }
+            }
+        }
+        List<List<Way>> result = cells.get(w);
+        return result == null ? Collections.<List<Way>>emptyList() : result;
+    }
+}
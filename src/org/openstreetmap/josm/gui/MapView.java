@@ -15,6 +15,8 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -39,11 +41,16 @@ import org.openstreetmap.josm.data.Preferences.PreferenceChangeEvent;
 import org.openstreetmap.josm.data.Preferences.PreferenceChangedListener;
 import org.openstreetmap.josm.data.SelectionChangedListener;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.DataSource;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
+import org.openstreetmap.josm.data.osm.visitor.paint.ChangedAreas;
 import org.openstreetmap.josm.data.osm.visitor.paint.PaintColors;
+import org.openstreetmap.josm.data.osm.visitor.paint.SimplifiedWayCache;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
 import org.openstreetmap.josm.gui.layer.GpxLayer;
 import org.openstreetmap.josm.gui.layer.Layer;
@@ -192,6 +199,27 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
     private boolean paintPreferencesChanged = true;
     private Rectangle lastClipBounds = new Rectangle();
 
+    /** the number of changed areas, above which the whole map is repainted */
+    private static final int MAX_CHANGED_AREAS = 1000;
+    /**
+     * The areas changed by data set events since they were last repainted,
+     * see {@link #repaintChangedAreas()}. Guarded by itself.
+     */
+    private final List<BBox> changedAreas = new ArrayList<BBox>();
+    private boolean allAreasChanged;
+    private final DataSetListenerAdapter changedAreasListener = new DataSetListenerAdapter(new DataSetListenerAdapter.Listener() {
+        public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+            synchronized (changedAreas) {
+                if (allAreasChanged)
+                    return;
+                if (!ChangedAreas.collect(event, changedAreas) || changedAreas.size() > MAX_CHANGED_AREAS) {
+                    allAreasChanged = true;
+                    changedAreas.clear();
+                }
+            }
+        }
+    });
+
     public MapView(final JPanel contentPane) {
         Main.pref.addPreferenceChangeListener(this);
 
@@ -240,6 +268,7 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
 
         // Add Multipolygon cache to layer listeners
         addLayerChangeListener(MultipolygonCache.getInstance());
+        addLayerChangeListener(SimplifiedWayCache.getInstance());
     }
 
     /**
@@ -288,6 +317,9 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
         }
         layer.addPropertyChangeListener(this);
         Main.addProjectionChangeListener(layer);
+        if (layer instanceof OsmDataLayer) {
+            ((OsmDataLayer) layer).data.addDataSetListener(changedAreasListener);
+        }
         AudioPlayer.reset();
         repaint();
     }
@@ -365,6 +397,9 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
         Main.removeProjectionChangeListener(layer);
         fireLayerRemoved(layer);
         layer.removePropertyChangeListener(this);
+        if (layer instanceof OsmDataLayer) {
+            ((OsmDataLayer) layer).data.removeDataSetListener(changedAreasListener);
+        }
         layer.destroy();
         AudioPlayer.reset();
         repaint();
@@ -466,6 +501,13 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
         if (center == null)
             return; // no data loaded yet.
 
+        if (g.getClipBounds() == null || g.getClipBounds().contains(0, 0, getWidth(), getHeight())) {
+            synchronized (changedAreas) {
+                changedAreas.clear();
+                allAreasChanged = false;
+            }
+        }
+
         List<Layer> visibleLayers = getVisibleLayersInZOrder();
 
         int nonChangedLayersCount = 0;
@@ -832,8 +874,53 @@ public class MapView extends NavigatableComponent implements PropertyChangeListe
         }
     }
 
+    /**
+     * Repaints the parts of the map, which have been changed by data set events since the last paint.
+     * May be used instead of {@link #repaint()}, if nothing else (like the view, the layers or
+     * temporary layers) has changed. Only the clip area of the changes is painted again, so
+     * moving a few nodes of a big data set is fast.
+     */
+    public void repaintChangedAreas() {
+        Rectangle2D changed = null;
+        synchronized (changedAreas) {
+            if (allAreasChanged) {
+                changed = new Rectangle(0, 0, getWidth(), getHeight());
+            } else {
+                for (BBox bbox : changedAreas) {
+                    Point2D p1 = getPoint2D(bbox.getTopLeft());
+                    Point2D p2 = getPoint2D(bbox.getBottomRight());
+                    Rectangle2D r = new Rectangle2D.Double(Math.min(p1.getX(), p2.getX()), Math.min(p1.getY(), p2.getY()),
+                            Math.abs(p2.getX() - p1.getX()), Math.abs(p2.getY() - p1.getY()));
+                    if (changed == null) {
+                        changed = r;
+                    } else {
+                        changed.add(r);
+                    }
+                }
+            }
+            changedAreas.clear();
+            allAreasChanged = false;
+        }
+        if (changed == null)
+            return;
+        Rectangle view = new Rectangle(0, 0, getWidth(), getHeight());
+        Rectangle2D.intersect(changed, new Rectangle2D.Double(-ChangedAreas.PAINT_MARGIN, -ChangedAreas.PAINT_MARGIN,
+                getWidth() + 2 * ChangedAreas.PAINT_MARGIN, getHeight() + 2 * ChangedAreas.PAINT_MARGIN), changed);
+        Rectangle clip = changed.getBounds();
+        clip.grow(ChangedAreas.PAINT_MARGIN, ChangedAreas.PAINT_MARGIN);
+        clip = clip.intersection(view);
+        if (!clip.isEmpty()) {
+            repaint(clip);
+        }
+    }
+
     public synchronized void preferenceChanged(PreferenceChangeEvent e) {
         paintPreferencesChanged = true;
+        for (Layer l : layers) {
+            if (l instanceof OsmDataLayer) {
+                ((OsmDataLayer) l).invalidateRendering();
+            }
+        }
     }
 
     private SelectionChangedListener repaintSelectionChangedListener = new SelectionChangedListener(){
@@ -141,6 +141,14 @@ public class NavigatableComponent extends JComponent implements Helpful {
         return ll1.greatCircleDistance(ll2);
     }
 
+    /**
+     * Returns the current scale.
+     * @return the size of one pixel, in east/north units of the current projection
+     */
+    public double getScale() {
+        return scale;
+    }
+
     /**
      * @return Returns the center point. A copy is returned, so users cannot
      *      change the center by accessing the return value. Use zoomTo instead.
@@ -29,6 +29,7 @@ import org.openstreetmap.josm.data.osm.FilterMatcher;
 import org.openstreetmap.josm.data.osm.FilterWorker;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 
 /**
  *
@@ -108,6 +109,7 @@ public class FilterTableModel extends AbstractTableModel {
         }
 
         if (Main.isDisplayingMapView() && changed) {
+            invalidateRendering();
             Main.map.mapView.repaint();
             Main.map.filterDialog.updateDialogHeader();
         }
@@ -159,6 +161,7 @@ public class FilterTableModel extends AbstractTableModel {
         }
 
         if (changed) {
+            invalidateRendering();
             Main.map.mapView.repaint();
             Main.map.filterDialog.updateDialogHeader();
             ds.clearSelection(deselect);
@@ -173,6 +176,18 @@ public class FilterTableModel extends AbstractTableModel {
         }
         disabledCount = 0;
         disabledAndHiddenCount = 0;
+        invalidateRendering();
+    }
+
+    /**
+     * The filter flags are changed without data set events, so the cached rendering
+     * of the edit layer has to be discarded explicitly.
+     */
+    private void invalidateRendering() {
+        OsmDataLayer layer = Main.main.getEditLayer();
+        if (layer != null) {
+            layer.invalidateRendering();
+        }
     }
 
     private void loadPrefs() {
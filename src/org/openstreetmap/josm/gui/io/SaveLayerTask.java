@@ -47,13 +47,11 @@ class SaveLayerTask extends AbstractIOTask {
     public void run() {
         try {
             parentMonitor.subTask(tr("Saving layer to ''{0}'' ...", layerInfo.getFile().toString()));
+            // marks the layer as saved, unless the file format cannot keep its changes
             if (!SaveAction.doSave(layerInfo.getLayer(), layerInfo.getFile())) {
                 setFailed(true);
                 return;
             }
-            if (!isCanceled()) {
-                layerInfo.getLayer().onPostSaveToFile();
-            }
         } catch(Exception e) {
             e.printStackTrace();
             setLastException(e);
@@ -65,8 +65,12 @@ import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
 import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter.Listener;
 import org.openstreetmap.josm.data.osm.visitor.AbstractVisitor;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
+import org.openstreetmap.josm.data.osm.visitor.paint.ChangedAreas;
 import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.visitor.paint.RenderedTileCache;
 import org.openstreetmap.josm.data.osm.visitor.paint.Rendering;
+import org.openstreetmap.josm.data.osm.visitor.paint.SimplifiedWayCache;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
 import org.openstreetmap.josm.data.projection.Projection;
 import org.openstreetmap.josm.data.validation.TestError;
@@ -75,6 +79,8 @@ import org.openstreetmap.josm.gui.HelpAwareOptionPane.ButtonSpec;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.gui.dialogs.LayerListDialog;
 import org.openstreetmap.josm.gui.dialogs.LayerListPopup;
+import org.openstreetmap.josm.gui.mappaint.StyleCache;
+import org.openstreetmap.josm.gui.mappaint.StyleCacheWarmer;
 import org.openstreetmap.josm.gui.progress.PleaseWaitProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.gui.util.GuiHelper;
@@ -97,6 +103,9 @@ public class OsmDataLayer extends Layer implements Listener, SelectionChangedLis
     private boolean requiresUploadToServer = false;
     private boolean isChanged = true;
     private int highlightUpdateCount;
+    /** the cached rendering of the data set, only kept while the layer is active and visible */
+    private RenderedTileCache tileCache;
+    private StyleCacheWarmer styleCacheWarmer;
 
     public List<TestError> validationErrors = new ArrayList<TestError>();
 
@@ -216,6 +225,7 @@ public class OsmDataLayer extends Layer implements Listener, SelectionChangedLis
         conflicts = new ConflictCollection();
         data.addDataSetListener(new DataSetListenerAdapter(this));
         data.addDataSetListener(MultipolygonCache.getInstance());
+        data.addDataSetListener(SimplifiedWayCache.getInstance());
         DataSet.addSelectionListener(this);
     }
 
@@ -278,7 +288,30 @@ public class OsmDataLayer extends Layer implements Listener, SelectionChangedLis
         }
 
         Rendering painter = MapRendererFactory.getInstance().createActiveRenderer(g, mv, inactive);
-        painter.render(data, virtual, box);
+        if (!active) {
+            // only the active layer keeps rendered tiles, they would use a lot of memory for every layer
+            releaseTileCache();
+        }
+        if (active && painter.getClass() == StyledMapRenderer.class && RenderedTileCache.isEnabled()) {
+            if (tileCache == null) {
+                tileCache = new RenderedTileCache(data);
+            }
+            tileCache.paint(g, mv, (StyledMapRenderer) painter, inactive, virtual);
+        } else {
+            Rectangle clip = g.getClipBounds();
+            if (clip != null) {
+                // include the primitives next to the clip area, whose symbols and labels reach into it
+                clip.grow(ChangedAreas.PAINT_MARGIN, ChangedAreas.PAINT_MARGIN);
+                box = mv.getLatLonBounds(clip);
+            }
+            painter.render(data, virtual, box);
+        }
+        if (painter instanceof StyledMapRenderer && StyleCacheWarmer.isEnabled()) {
+            if (styleCacheWarmer == null) {
+                styleCacheWarmer = new StyleCacheWarmer(data);
+            }
+            styleCacheWarmer.warm(mv);
+        }
         Main.map.conflictDialog.paintConflicts(g, mv);
     }
 
@@ -687,6 +720,8 @@ public class OsmDataLayer extends Layer implements Listener, SelectionChangedLis
      *
      */
     public void onPostUploadToServer() {
+        // the modified flags have been reset, without data set events
+        invalidateRendering();
         setRequiresUploadToServer(data.isModified());
         // keep requiresSaveToDisk unchanged
     }
@@ -717,6 +752,39 @@ public class OsmDataLayer extends Layer implements Listener, SelectionChangedLis
     @Override
     public void destroy() {
         DataSet.removeSelectionListener(this);
+        releaseTileCache();
+        if (styleCacheWarmer != null) {
+            styleCacheWarmer.cancel();
+            styleCacheWarmer = null;
+        }
+        // the styles of the removed primitives are not needed anymore
+        StyleCache.clearInternPool();
+    }
+
+    private void releaseTileCache() {
+        if (tileCache != null) {
+            tileCache.destroy();
+            tileCache = null;
+        }
+    }
+
+    @Override
+    protected void fireVisibleChanged(boolean oldValue, boolean newValue) {
+        if (!newValue) {
+            releaseTileCache();
+        }
+        super.fireVisibleChanged(oldValue, newValue);
+    }
+
+    /**
+     * Discards the cached rendering of the layer. Needed after changes, which affect the
+     * rendering, but don't fire data set events, like changes of the filtered primitives.
+     */
+    public void invalidateRendering() {
+        isChanged = true;
+        if (tileCache != null) {
+            tileCache.invalidate();
+        }
     }
 
     public void processDatasetEvent(AbstractDatasetChangedEvent event) {
@@ -727,6 +795,9 @@ public class OsmDataLayer extends Layer implements Listener, SelectionChangedLis
 
     public void selectionChanged(Collection<? extends OsmPrimitive> newSelection) {
         isChanged = true;
+        if (tileCache != null) {
+            tileCache.selectionChanged();
+        }
     }
 
     @Override
@@ -174,7 +174,7 @@ public class BoxTextElemStyle extends ElemStyle {
      * session. There should be preference listener updating this cache.
      */
     static private Color DEFAULT_TEXT_COLOR = null;
-    static private void initDefaultParameters() {
+    static private synchronized void initDefaultParameters() {
         if (DEFAULT_TEXT_COLOR != null) return;
         DEFAULT_TEXT_COLOR = PaintColors.TEXT.get();
     }
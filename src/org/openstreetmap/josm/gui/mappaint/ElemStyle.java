@@ -89,7 +89,7 @@ abstract public class ElemStyle implements StyleKeys {
      */
     static private String DEFAULT_FONT_NAME = null;
     static private Float DEFAULT_FONT_SIZE = null;
-    static private void initDefaultFontParameters() {
+    static private synchronized void initDefaultFontParameters() {
         if (DEFAULT_FONT_NAME != null) return; // already initialized - skip initialization
         DEFAULT_FONT_NAME = Main.pref.get("mappaint.font", "Helvetica");
         DEFAULT_FONT_SIZE = (float) Main.pref.getInteger("mappaint.fontsize", 8);
@@ -138,7 +138,7 @@ abstract public class ElemStyle implements StyleKeys {
     }
 
     static private final Map<FontDescriptor, Font> FONT_MAP = new HashMap<FontDescriptor, Font>();
-    static private Font getCachedFont(FontDescriptor fd) {
+    static private synchronized Font getCachedFont(FontDescriptor fd) {
         Font f = FONT_MAP.get(fd);
         if (f != null) return f;
         f = new Font(fd.name, fd.style, fd.size);
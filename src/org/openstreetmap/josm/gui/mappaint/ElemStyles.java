@@ -24,7 +24,7 @@ public class ElemStyles {
     private List<StyleSource> styleSources;
     private boolean drawMultipolygon;
 
-    private int cacheIdx = 1;
+    private volatile int cacheIdx = 1;
 
     private boolean defaultNodes, defaultLines;
     private int defaultNodesIdx, defaultLinesIdx;
@@ -34,8 +34,17 @@ public class ElemStyles {
         styleSources = new ArrayList<StyleSource>();
     }
 
+    /**
+     * Replies the current generation of the style caches of the primitives, which is
+     * incremented by {@link #clearCached()}.
+     */
+    public int getCacheIdx() {
+        return cacheIdx;
+    }
+
     public void clearCached() {
         cacheIdx++;
+        StyleCache.clearInternPool();
     }
 
     public List<StyleSource> getStyleSources() {
@@ -59,14 +68,15 @@ public class ElemStyles {
      *
      * Automatically adds default styles in case no proper style was found.
      * Uses the cache, if possible, and saves the results to the cache.
+     * May be called concurrently for different primitives.
      */
     public Pair<StyleList, Range> getStyleCacheWithRange(OsmPrimitive osm, double scale, NavigatableComponent nc) {
-        if (osm.mappaintStyle == null || osm.mappaintCacheIdx != cacheIdx) {
-            osm.mappaintStyle = StyleCache.EMPTY_STYLECACHE;
-        } else {
-            Pair<StyleList, Range> lst = osm.mappaintStyle.getWithRange(scale);
-            if (lst.a != null)
-                return lst;
+        synchronized (osm) {
+            if (osm.mappaintStyle != null && osm.mappaintCacheIdx == cacheIdx) {
+                Pair<StyleList, Range> lst = osm.mappaintStyle.getWithRange(scale);
+                if (lst.a != null)
+                    return lst;
+            }
         }
         Pair<StyleList, Range> p = getImpl(osm, scale, nc);
         if (osm instanceof Node && isDefaultNodes()) {
@@ -111,8 +121,16 @@ public class ElemStyles {
                 p.a = new StyleList(p.a, line);
             }
         }
-        osm.mappaintStyle = osm.mappaintStyle.put(p.a, p.b);
-        osm.mappaintCacheIdx = cacheIdx;
+        synchronized (osm) {
+            if (osm.mappaintStyle == null || osm.mappaintCacheIdx != cacheIdx) {
+                osm.mappaintStyle = StyleCache.EMPTY_STYLECACHE;
+                osm.mappaintCacheIdx = cacheIdx;
+            } else if (osm.mappaintStyle.getWithRange(scale).a != null)
+                // another thread has resolved the styles in the meantime (e.g. for a
+                // multipolygon relation, that is shared by several outer ways)
+                return p;
+            osm.mappaintStyle = osm.mappaintStyle.put(p.a, p.b);
+        }
         return p;
     }
 
@@ -347,7 +365,7 @@ public class ElemStyles {
     /**
      * Draw a default node symbol for nodes that have no style?
      */
-    private boolean isDefaultNodes() {
+    private synchronized boolean isDefaultNodes() {
         if (defaultNodesIdx == cacheIdx)
             return defaultNodes;
         defaultNodes = fromCanvas("default-points", true, Boolean.class);
@@ -358,7 +376,7 @@ public class ElemStyles {
     /**
      * Draw a default line for ways that do not have an own line style?
      */
-    private boolean isDefaultLines() {
+    private synchronized boolean isDefaultLines() {
         if (defaultLinesIdx == cacheIdx)
             return defaultLines;
         defaultLines = fromCanvas("default-lines", true, Boolean.class);
@@ -393,6 +411,7 @@ public class ElemStyles {
      */
     void clear() {
         styleSources.clear();
+        StyleCache.clearInternPool();
     }
 
     /**
@@ -40,7 +40,7 @@ public class MapImage {
         this.source = source;
     }
 
-    public Image getDisabled() {
+    public synchronized Image getDisabled() {
         if (disabledImg != null)
             return disabledImg;
         if (img == null)
@@ -48,7 +48,7 @@ public class MapImage {
         return disabledImg = GrayFilter.createDisabledImage(img);
     }
 
-    public BufferedImage getImage() {
+    public synchronized BufferedImage getImage() {
         if (img != null)
             return img;
         temporary = false;
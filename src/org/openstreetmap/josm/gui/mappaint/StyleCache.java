@@ -5,9 +5,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.openstreetmap.josm.data.osm.Storage;
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.tools.Pair;
 import org.openstreetmap.josm.tools.Utils;
 
@@ -24,7 +26,44 @@ public class StyleCache {
     /* styles for each scale range */
     ArrayList<StyleList> data;
 
-    private final static Storage<StyleCache> internPool = new Storage<StyleCache>(); // TODO: clean up the intern pool from time to time (after purge or layer removal)
+    /* default for the maximum number of entries in the intern pool */
+    private final static int DEFAULT_INTERN_POOL_SIZE = 20000;
+
+    /**
+     * Pool of the interned style caches. It is bounded, the least recently used entries
+     * are evicted, and it is cleared when the styles are reloaded or a layer is removed.
+     * An evicted cache is still valid for the primitives using it, a new equal cache
+     * just won't be shared with them.
+     */
+    private final static Map<StyleCache, StyleCache> internPool = new InternPool();
+    private static long internPoolHits;
+    private static long internPoolMisses;
+    private static long internPoolEvictions;
+    /* the maximum number of entries in the intern pool, read on first use and when the pool is cleared */
+    private static int maxInternPoolSize = -1;
+
+    /**
+     * Map in access order, which evicts the least recently used entries beyond the maximum size.
+     */
+    private static class InternPool extends LinkedHashMap<StyleCache, StyleCache> {
+        private static final long serialVersionUID = 1L;
+
+        InternPool() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StyleCache, StyleCache> eldest) {
+            if (maxInternPoolSize < 0) {
+                maxInternPoolSize = getMaxInternPoolSize();
+            }
+            if (size() > maxInternPoolSize) {
+                internPoolEvictions++;
+                return true;
+            }
+            return false;
+        }
+    }
 
     public final static StyleCache EMPTY_STYLECACHE = (new StyleCache()).intern();
     
@@ -215,9 +254,73 @@ public class StyleCache {
      * Like String.intern() (reduce memory consumption).
      * StyleCache must not be changed after it has
      * been added to the intern pool.
+     * May be called concurrently, e.g. while styles are resolved in parallel.
      */
     public StyleCache intern() {
-        return internPool.putUnique(this);
+        synchronized (internPool) {
+            StyleCache s = internPool.get(this);
+            if (s != null) {
+                internPoolHits++;
+                return s;
+            }
+            internPoolMisses++;
+            internPool.put(this, this);
+            return this;
+        }
+    }
+
+    private static int getMaxInternPoolSize() {
+        if (Main.pref == null)
+            return DEFAULT_INTERN_POOL_SIZE;
+        return Main.pref.getInteger("mappaint.stylecache.intern-pool-size", DEFAULT_INTERN_POOL_SIZE);
+    }
+
+    /**
+     * Removes all style caches from the intern pool, e.g. when the styles have been reloaded
+     * and the caches are outdated anyway. The statistics are not reset, the maximum size
+     * of the pool is read from the preferences again.
+     */
+    public static void clearInternPool() {
+        synchronized (internPool) {
+            internPool.clear();
+            maxInternPoolSize = getMaxInternPoolSize();
+        }
+    }
+
+    /**
+     * Replies the number of style caches in the intern pool.
+     */
+    public static int getInternPoolSize() {
+        synchronized (internPool) {
+            return internPool.size();
+        }
+    }
+
+    /**
+     * Replies the number of calls to {@link #intern()}, which found an equal style cache in the pool.
+     */
+    public static long getInternPoolHits() {
+        synchronized (internPool) {
+            return internPoolHits;
+        }
+    }
+
+    /**
+     * Replies the number of calls to {@link #intern()}, which added a new style cache to the pool.
+     */
+    public static long getInternPoolMisses() {
+        synchronized (internPool) {
+            return internPoolMisses;
+        }
+    }
+
+    /**
+     * Replies the number of style caches, which have been evicted because the pool was full.
+     */
+    public static long getInternPoolEvictions() {
+        synchronized (internPool) {
+            return internPoolEvictions;
+        }
     }
 
     @Override
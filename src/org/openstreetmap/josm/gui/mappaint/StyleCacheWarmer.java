@@ -0,0 +1,155 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+
+/**
+ * Precomputes the styles of the primitives in and around the visible area on a low
+ * priority background thread, for the current scale and the scales of the neighbouring
+ * zoom levels. Zooming or moving the map then finds the styles in the {@link StyleCache}
+ * of the primitives, instead of resolving them while painting.
+ *
+ * The warmer is triggered after the layer has been painted, so it runs after the layer
+ * has been loaded, the styles have changed or the map has been zoomed or moved. It stops,
+ * as soon as the view or the styles change again.
+ */
+public class StyleCacheWarmer {
+
+    /** number of primitives, whose styles are resolved while holding the read lock of the data set */
+    private static final int CHUNK_SIZE = 200;
+    /** factor between the current scale and the scales of the neighbouring zoom levels */
+    private static final double ZOOM_FACTOR = 2;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Style cache warmer");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+    private final DataSet data;
+    /** incremented for every new warming run, an older run stops when it notices the change */
+    private volatile int generation;
+
+    private double lastScale;
+    private EastNorth lastCenter;
+    private Rectangle lastView;
+    private int lastCacheIdx;
+
+    /**
+     * Constructs a new {@code StyleCacheWarmer}.
+     * @param data the data set, whose styles are precomputed
+     */
+    public StyleCacheWarmer(DataSet data) {
+        this.data = data;
+    }
+
+    /**
+     * Replies true, if the styles are to be precomputed in the background.
+     * @return true, if enabled
+     */
+    public static boolean isEnabled() {
+        return Main.pref.getBoolean("mappaint.stylecache.warm", true);
+    }
+
+    /**
+     * Starts precomputing the styles for the current view, unless this has already been done
+     * for the same view and styles. Must be called in the event dispatch thread.
+     *
+     * @param nc the map view
+     */
+    public void warm(NavigatableComponent nc) {
+        ElemStyles styles = MapPaintStyles.getStyles();
+        double scale = nc.getDist100Pixel();
+        EastNorth center = nc.getCenter();
+        Rectangle view = new Rectangle(nc.getWidth(), nc.getHeight());
+        int cacheIdx = styles.getCacheIdx();
+        if (view.isEmpty() || (scale == lastScale && center.equals(lastCenter) && view.equals(lastView)
+                && cacheIdx == lastCacheIdx))
+            return;
+        lastScale = scale;
+        lastCenter = center;
+        lastView = view;
+        lastCacheIdx = cacheIdx;
+
+        // at the larger scale (zoomed out), the view covers twice the width and height
+        Rectangle around = new Rectangle(view);
+        around.grow(view.width, view.height);
+        final BBox viewBBox = new BBox(nc.getLatLonBounds(view));
+        final BBox aroundBBox = new BBox(nc.getLatLonBounds(around));
+        final List<BBox> areas = new ArrayList<BBox>();
+        final List<Double> scales = new ArrayList<Double>();
+        areas.add(viewBBox);
+        scales.add(scale / ZOOM_FACTOR);
+        areas.add(aroundBBox);
+        scales.add(scale * ZOOM_FACTOR);
+        areas.add(aroundBBox);
+        scales.add(scale);
+
+        final int gen = ++generation;
+        final NavigatableComponent fnc = nc;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < areas.size(); i++) {
+                    if (!warm(areas.get(i), scales.get(i), fnc, gen))
+                        return;
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolves the styles of the drawable primitives in the area, in chunks of {@link #CHUNK_SIZE}.
+     * @return false, if the run has been stopped
+     */
+    private boolean warm(BBox bbox, double scale, NavigatableComponent nc, int gen) {
+        ElemStyles styles = MapPaintStyles.getStyles();
+        int cacheIdx = styles.getCacheIdx();
+        List<OsmPrimitive> primitives = new ArrayList<OsmPrimitive>();
+        primitives.addAll(data.searchNodes(bbox));
+        primitives.addAll(data.searchWays(bbox));
+        primitives.addAll(data.searchRelations(bbox));
+        for (int i = 0; i < primitives.size(); i += CHUNK_SIZE) {
+            if (gen != generation || styles != MapPaintStyles.getStyles() || cacheIdx != styles.getCacheIdx())
+                return false;
+            data.getReadLock().lock();
+            try {
+                for (OsmPrimitive osm : primitives.subList(i, Math.min(i + CHUNK_SIZE, primitives.size()))) {
+                    if (osm.isDrawable() && osm.getDataSet() == data) {
+                        styles.get(osm, scale, nc);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // e.g. the style sources are being reloaded; precomputing is just an optimization,
+                // the styles are resolved again when painting
+                return false;
+            } finally {
+                data.getReadLock().unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the current run, e.g. when the layer is removed.
+     */
+    public void cancel() {
+        generation++;
+    }
+}
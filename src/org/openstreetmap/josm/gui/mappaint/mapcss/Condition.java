@@ -7,6 +7,7 @@ import java.text.MessageFormat;
 import java.util.EnumSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmUtils;
@@ -20,6 +21,33 @@ abstract public class Condition {
 
     abstract public boolean applies(Environment e);
 
+    /**
+     * Replies the key of a tag, which a primitive must have for this condition to apply.
+     * Used to index the rules of a style sheet.
+     *
+     * @return the key, or null, if the condition may also apply to primitives without a particular tag
+     */
+    public String getRequiredKey() {
+        return null;
+    }
+
+    /**
+     * Compiles the regular expression of a {@link Op#REGEX} condition once, instead of
+     * for every evaluation.
+     *
+     * @return the pattern, or null, if op isn't REGEX or the expression is invalid (the
+     * error is reported when the condition is evaluated)
+     */
+    private static Pattern compile(String prototypeString, Op op) {
+        if (op != Op.REGEX || prototypeString == null)
+            return null;
+        try {
+            return Pattern.compile(prototypeString);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
     public static Condition create(String k, String v, Op op, Context context) {
         switch (context) {
         case PRIMITIVE:
@@ -142,6 +170,8 @@ abstract public class Condition {
         public String k;
         public String v;
         public Op op;
+        /** the compiled regular expression, if op is {@link Op#REGEX} */
+        private final Pattern pattern;
 
         /**
          * <p>Creates a key/value-condition.</p>
@@ -154,13 +184,23 @@ abstract public class Condition {
             this.k = k;
             this.v = v;
             this.op = op;
+            this.pattern = compile(v, op);
         }
 
         @Override
         public boolean applies(Environment env) {
+            if (pattern != null && op == Op.REGEX) {
+                String testString = env.osm.get(k);
+                return testString != null && pattern.matcher(testString).find();
+            }
             return op.eval(env.osm.get(k), v);
         }
 
+        @Override
+        public String getRequiredKey() {
+            return op == Op.NEQ ? null : k;
+        }
+
         @Override
         public String toString() {
             return "[" + k + "'" + op + "'" + v + "]";
@@ -171,15 +211,21 @@ abstract public class Condition {
         public String role;
         public Op op;
 
+        /** the compiled regular expression, if op is {@link Op#REGEX} */
+        private final Pattern pattern;
+
         public RoleCondition(String role, Op op) {
             this.role = role;
             this.op = op;
+            this.pattern = compile(role, op);
         }
 
         @Override
         public boolean applies(Environment env) {
             String testRole = env.getRole();
             if (testRole == null) return false;
+            if (pattern != null && op == Op.REGEX)
+                return pattern.matcher(testRole).find();
             return op.eval(testRole, role);
         }
     }
@@ -249,6 +295,11 @@ abstract public class Condition {
             }
         }
 
+        @Override
+        public String getRequiredKey() {
+            return exclamationMarkPresent ? null : label;
+        }
+
         @Override
         public String toString() {
             return "[" + (exclamationMarkPresent ? "!" : "") + label + "]";
@@ -9,7 +9,11 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.actions.search.SearchCompiler;
@@ -50,9 +54,101 @@ public interface Expression {
         String name;
         List<Expression> args;
 
+        /** the methods implementing the function, null if there is no function with this name */
+        private final List<Method> methods;
+        /** special forms, which evaluate only some of their arguments */
+        private final boolean isCond, isAnd, isOr;
+        /** true, if the value doesn't depend on the environment and has been computed in advance */
+        private final boolean constant;
+        private final Object value;
+
+        /**
+         * The functions, that depend on the environment or the preferences, and therefore
+         * cannot be evaluated in advance for constant arguments.
+         */
+        private static final Set<String> NON_CONSTANT_FUNCTIONS = new HashSet<String>(Arrays.asList(
+                "prop", "is_prop_set", "tag", "parent_tag", "has_tag_key", "index", "role",
+                "JOSM_search", "JOSM_pref", "JOSM_pref_color", "random"));
+
+        /** result of a failed evaluation at parse time, the expression is evaluated later instead */
+        private static final Object NOT_FOLDED = new Object();
+
+        /**
+         * All functions by name, looked up once instead of for every evaluation.
+         */
+        private static final Map<String, List<Method>> FUNCTIONS = new HashMap<String, List<Method>>();
+        static {
+            List<Method> allMethods = new ArrayList<Method>();
+            allMethods.addAll(Arrays.asList(EvalFunctions.class.getDeclaredMethods()));
+            try {
+                allMethods.add(Math.class.getMethod("abs", float.class));
+                allMethods.add(Math.class.getMethod("acos", double.class));
+                allMethods.add(Math.class.getMethod("asin", double.class));
+                allMethods.add(Math.class.getMethod("atan", double.class));
+                allMethods.add(Math.class.getMethod("atan2", double.class, double.class));
+                allMethods.add(Math.class.getMethod("ceil", double.class));
+                allMethods.add(Math.class.getMethod("cos", double.class));
+                allMethods.add(Math.class.getMethod("cosh", double.class));
+                allMethods.add(Math.class.getMethod("exp", double.class));
+                allMethods.add(Math.class.getMethod("floor", double.class));
+                allMethods.add(Math.class.getMethod("log", double.class));
+                allMethods.add(Math.class.getMethod("max", float.class, float.class));
+                allMethods.add(Math.class.getMethod("min", float.class, float.class));
+                allMethods.add(Math.class.getMethod("random"));
+                allMethods.add(Math.class.getMethod("round", float.class));
+                allMethods.add(Math.class.getMethod("signum", double.class));
+                allMethods.add(Math.class.getMethod("sin", double.class));
+                allMethods.add(Math.class.getMethod("sinh", double.class));
+                allMethods.add(Math.class.getMethod("sqrt", double.class));
+                allMethods.add(Math.class.getMethod("tan", double.class));
+                allMethods.add(Math.class.getMethod("tanh", double.class));
+            } catch (NoSuchMethodException ex) {
+                throw new RuntimeException(ex);
+            } catch (SecurityException ex) {
+                throw  new RuntimeException(ex);
+            }
+            for (Method m : allMethods) {
+                List<Method> l = FUNCTIONS.get(m.getName());
+                if (l == null) {
+                    l = new ArrayList<Method>();
+                    FUNCTIONS.put(m.getName(), l);
+                }
+                l.add(m);
+            }
+        }
+
         public FunctionExpression(String name, List<Expression> args) {
             this.name = name;
             this.args = args;
+            this.methods = FUNCTIONS.get(name);
+            this.isCond = equal(name, "cond");
+            this.isAnd = equal(name, "and");
+            this.isOr = equal(name, "or");
+            boolean constant = !NON_CONSTANT_FUNCTIONS.contains(name) && isConstant(args);
+            Object value = null;
+            if (constant) {
+                try {
+                    value = evaluateImpl(null, true);
+                } catch (RuntimeException e) {
+                    value = NOT_FOLDED;
+                }
+                // report the error when the expression is used, as without folding
+                if (value == NOT_FOLDED) {
+                    constant = false;
+                    value = null;
+                }
+            }
+            this.constant = constant;
+            this.value = value;
+        }
+
+        private static boolean isConstant(List<Expression> args) {
+            for (Expression arg : args) {
+                if (!(arg instanceof LiteralExpression
+                        || (arg instanceof FunctionExpression && ((FunctionExpression) arg).constant)))
+                    return false;
+            }
+            return true;
         }
 
         public static class EvalFunctions {
@@ -267,7 +363,17 @@ public interface Expression {
 
         @Override
         public Object evaluate(Environment env) {
-            if (equal(name, "cond")) { // this needs special handling since only one argument should be evaluated
+            if (constant)
+                return value;
+            return evaluateImpl(env, false);
+        }
+
+        /**
+         * @param folding true, if the expression is evaluated at parse time to fold it into a constant
+         * @return the value, {@link #NOT_FOLDED} if a function failed while folding
+         */
+        private Object evaluateImpl(Environment env, boolean folding) {
+            if (isCond) { // this needs special handling since only one argument should be evaluated
                 if (args.size() != 3)
                     return null;
                 Boolean b = Cascade.convertTo(args.get(0).evaluate(env), boolean.class);
@@ -275,7 +381,7 @@ public interface Expression {
                     return null;
                 return args.get(b ? 1 : 2).evaluate(env);
             }
-            if (equal(name, "and")) {
+            if (isAnd) {
                 for (Expression arg : args) {
                     Boolean b = Cascade.convertTo(arg.evaluate(env), boolean.class);
                     if (b == null || !b)
@@ -283,7 +389,7 @@ public interface Expression {
                 }
                 return true;
             }
-            if (equal(name, "or")) {
+            if (isOr) {
                 for (Expression arg : args) {
                     Boolean b = Cascade.convertTo(arg.evaluate(env), boolean.class);
                     if (b != null && b)
@@ -291,42 +397,11 @@ public interface Expression {
                 }
                 return false;
             }
+            if (methods == null)
+                return null;
             EvalFunctions fn = new EvalFunctions();
             fn.env = env;
-            Method[] customMethods = EvalFunctions.class.getDeclaredMethods();
-            List<Method> allMethods = new ArrayList<Method>();
-            allMethods.addAll(Arrays.asList(customMethods));
-            try {
-                allMethods.add(Math.class.getMethod("abs", float.class));
-                allMethods.add(Math.class.getMethod("acos", double.class));
-                allMethods.add(Math.class.getMethod("asin", double.class));
-                allMethods.add(Math.class.getMethod("atan", double.class));
-                allMethods.add(Math.class.getMethod("atan2", double.class, double.class));
-                allMethods.add(Math.class.getMethod("ceil", double.class));
-                allMethods.add(Math.class.getMethod("cos", double.class));
-                allMethods.add(Math.class.getMethod("cosh", double.class));
-                allMethods.add(Math.class.getMethod("exp", double.class));
-                allMethods.add(Math.class.getMethod("floor", double.class));
-                allMethods.add(Math.class.getMethod("log", double.class));
-                allMethods.add(Math.class.getMethod("max", float.class, float.class));
-                allMethods.add(Math.class.getMethod("min", float.class, float.class));
-                allMethods.add(Math.class.getMethod("random"));
-                allMethods.add(Math.class.getMethod("round", float.class));
-                allMethods.add(Math.class.getMethod("signum", double.class));
-                allMethods.add(Math.class.getMethod("sin", double.class));
-                allMethods.add(Math.class.getMethod("sinh", double.class));
-                allMethods.add(Math.class.getMethod("sqrt", double.class));
-                allMethods.add(Math.class.getMethod("tan", double.class));
-                allMethods.add(Math.class.getMethod("tanh", double.class));
-            } catch (NoSuchMethodException ex) {
-                throw new RuntimeException(ex);
-            } catch (SecurityException ex) {
-                throw  new RuntimeException(ex);
-            }
-            for (Method m : allMethods) {
-                if (!m.getName().equals(name)) {
-                    continue;
-                }
+            for (Method m : methods) {
                 Class<?>[] expectedParameterTypes = m.getParameterTypes();
                 Object[] convertedArgs = new Object[expectedParameterTypes.length];
 
@@ -360,6 +435,8 @@ public interface Expression {
                 } catch (IllegalArgumentException ex) {
                     throw new RuntimeException(ex);
                 } catch (InvocationTargetException ex) {
+                    if (folding)
+                        return NOT_FOLDED;
                     System.err.println(ex);
                     return null;
                 }
@@ -8,16 +8,25 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.mappaint.Cascade;
 import org.openstreetmap.josm.gui.mappaint.Environment;
 import org.openstreetmap.josm.gui.mappaint.MultiCascade;
 import org.openstreetmap.josm.gui.mappaint.Range;
 import org.openstreetmap.josm.gui.mappaint.StyleSource;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.KeyValueCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.Op;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.ChildOrParentSelector;
 import org.openstreetmap.josm.gui.mappaint.mapcss.Selector.GeneralSelector;
 import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.MapCSSParser;
 import org.openstreetmap.josm.gui.mappaint.mapcss.parsergen.ParseException;
@@ -32,6 +41,161 @@ public class MapCSSStyleSource extends StyleSource {
     final public List<MapCSSRule> rules;
     private Color backgroundColorOverride;
     private String css = null;
+    private RuleIndex index;
+
+    /**
+     * A selector of a rule.
+     */
+    private static class IndexedSelector {
+        final MapCSSRule rule;
+        final Selector selector;
+
+        IndexedSelector(MapCSSRule rule, Selector selector) {
+            this.rule = rule;
+            this.selector = selector;
+        }
+    }
+
+    /**
+     * <p>Maps the tags of a primitive to the selectors, that may match it, in the order
+     * of the style sheet.</p>
+     *
+     * <p>A selector is indexed by one key=value or key, that the primitive must have for
+     * the selector to match, e.g. {@code way[highway=residential]} by highway=residential.
+     * Selectors without such a condition are candidates for every primitive. There is one
+     * index for each primitive type, so {@code node[...]} isn't considered for ways.</p>
+     */
+    private static class RuleIndex {
+        private static final int NODE = 0;
+        private static final int WAY = 1;
+        private static final int RELATION = 2;
+
+        private final List<IndexedSelector> selectors = new ArrayList<IndexedSelector>();
+        private final int ruleCount;
+        private final BitSet[] unindexed = new BitSet[3];
+        private final List<Map<String, BitSet>> byKey = new ArrayList<Map<String, BitSet>>();
+        private final List<Map<String, Map<String, BitSet>>> byTag = new ArrayList<Map<String, Map<String, BitSet>>>();
+
+        public RuleIndex(List<MapCSSRule> rules) {
+            ruleCount = rules.size();
+            for (int type = 0; type < 3; type++) {
+                unindexed[type] = new BitSet();
+                byKey.add(new HashMap<String, BitSet>());
+                byTag.add(new HashMap<String, Map<String, BitSet>>());
+            }
+            for (MapCSSRule r : rules) {
+                for (Selector s : r.selectors) {
+                    add(selectors.size(), s);
+                    selectors.add(new IndexedSelector(r, s));
+                }
+            }
+        }
+
+        private void add(int position, Selector s) {
+            while (s instanceof ChildOrParentSelector) {
+                s = ((ChildOrParentSelector) s).getRight();
+            }
+            if (!(s instanceof GeneralSelector)) {
+                for (int type = 0; type < 3; type++) {
+                    unindexed[type].set(position);
+                }
+                return;
+            }
+            GeneralSelector gs = (GeneralSelector) s;
+            String base = gs.getBase();
+            if (base.equals("node")) {
+                add(NODE, position, gs);
+            } else if (base.equals("way")) {
+                add(WAY, position, gs);
+            } else if (base.equals("area")) {
+                add(WAY, position, gs);
+                add(RELATION, position, gs);
+            } else if (base.equals("relation") || base.equals("canvas")) {
+                add(RELATION, position, gs);
+            } else if (base.equals("*")) {
+                add(NODE, position, gs);
+                add(WAY, position, gs);
+            }
+            // other selectors, e.g. meta, never match a primitive
+        }
+
+        private void add(int type, int position, GeneralSelector gs) {
+            for (Condition c : gs.getConditions()) {
+                if (c instanceof KeyValueCondition && ((KeyValueCondition) c).op == Op.EQ) {
+                    KeyValueCondition kv = (KeyValueCondition) c;
+                    Map<String, BitSet> values = byTag.get(type).get(kv.k);
+                    if (values == null) {
+                        values = new HashMap<String, BitSet>();
+                        byTag.get(type).put(kv.k, values);
+                    }
+                    get(values, kv.v).set(position);
+                    return;
+                }
+            }
+            for (Condition c : gs.getConditions()) {
+                String key = c.getRequiredKey();
+                if (key != null) {
+                    get(byKey.get(type), key).set(position);
+                    return;
+                }
+            }
+            unindexed[type].set(position);
+        }
+
+        private static BitSet get(Map<String, BitSet> map, String key) {
+            BitSet bs = map.get(key);
+            if (bs == null) {
+                bs = new BitSet();
+                map.put(key, bs);
+            }
+            return bs;
+        }
+
+        /**
+         * Replies true, if the index has been built for the given rules.
+         */
+        public boolean isValid(List<MapCSSRule> rules) {
+            return rules.size() == ruleCount;
+        }
+
+        /**
+         * Replies the selectors, that may match the primitive, in the order of the style sheet.
+         */
+        public List<IndexedSelector> getCandidates(OsmPrimitive osm) {
+            int type;
+            if (osm instanceof Node) {
+                type = NODE;
+            } else if (osm instanceof Way) {
+                type = WAY;
+            } else if (osm instanceof Relation) {
+                type = RELATION;
+            } else
+                return Collections.emptyList();
+            BitSet candidates = (BitSet) unindexed[type].clone();
+            if (osm.hasKeys()) {
+                Map<String, BitSet> keys = byKey.get(type);
+                Map<String, Map<String, BitSet>> tags = byTag.get(type);
+                for (Entry<String, String> tag : osm.getKeys().entrySet()) {
+                    BitSet bs = keys.get(tag.getKey());
+                    if (bs != null) {
+                        candidates.or(bs);
+                    }
+                    Map<String, BitSet> values = tags.get(tag.getKey());
+                    if (values != null) {
+                        bs = values.get(tag.getValue());
+                        if (bs != null) {
+                            candidates.or(bs);
+                        }
+                    }
+                }
+            }
+            List<IndexedSelector> result = new ArrayList<IndexedSelector>(candidates.cardinality());
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                result.add(selectors.get(i));
+            }
+            return result;
+        }
+    }
 
     public MapCSSStyleSource(String url, String name, String shortdescription) {
         super(url, name, shortdescription);
@@ -61,9 +225,11 @@ public class MapCSSStyleSource extends StyleSource {
     public void loadStyleSource() {
         init();
         rules.clear();
+        index = null;
         try {
             MapCSSParser parser = new MapCSSParser(getSourceInputStream(), "UTF-8");
             parser.sheet(this);
+            index = new RuleIndex(rules);
             loadMeta();
             loadCanvas();
         } catch(IOException e) {
@@ -151,35 +317,48 @@ public class MapCSSStyleSource extends StyleSource {
     @Override
     public void apply(MultiCascade mc, OsmPrimitive osm, double scale, OsmPrimitive multipolyOuterWay, boolean pretendWayIsClosed) {
         Environment env = new Environment(osm, mc, null, this);
-        for (MapCSSRule r : rules) {
-            for (Selector s : r.selectors) {
-                env.clearSelectorMatchingInformation();
-                if (s.matches(env)) { // as side effect env.parent will be set (if s is a child selector)
-                    if (s.getRange().contains(scale)) {
-                        mc.range = Range.cut(mc.range, s.getRange());
-                    } else {
-                        mc.range = mc.range.reduceAround(scale, s.getRange());
-                        continue;
-                    }
+        RuleIndex index = this.index;
+        if (index != null && index.isValid(rules)) {
+            for (IndexedSelector is : index.getCandidates(osm)) {
+                apply(env, is.rule, is.selector, scale);
+            }
+        } else {
+            // the rules have been changed after loading
+            for (MapCSSRule r : rules) {
+                for (Selector s : r.selectors) {
+                    apply(env, r, s, scale);
+                }
+            }
+        }
+    }
 
-                    String sub = s.getSubpart();
-                    if (sub == null) {
-                        sub = "default";
-                    }
+    private void apply(Environment env, MapCSSRule r, Selector s, double scale) {
+        MultiCascade mc = env.mc;
+        env.clearSelectorMatchingInformation();
+        if (s.matches(env)) { // as side effect env.parent will be set (if s is a child selector)
+            if (s.getRange().contains(scale)) {
+                mc.range = Range.cut(mc.range, s.getRange());
+            } else {
+                mc.range = mc.range.reduceAround(scale, s.getRange());
+                return;
+            }
 
-                    if (sub.equals("*")) {
-                        for (Entry<String, Cascade> entry : mc.getLayers()) {
-                            env.layer = entry.getKey();
-                            if (Utils.equal(env.layer, "*")) {
-                                continue;
-                            }
-                            r.execute(env);
-                        }
+            String sub = s.getSubpart();
+            if (sub == null) {
+                sub = "default";
+            }
+
+            if (sub.equals("*")) {
+                for (Entry<String, Cascade> entry : mc.getLayers()) {
+                    env.layer = entry.getKey();
+                    if (Utils.equal(env.layer, "*")) {
+                        continue;
                     }
-                    env.layer = sub;
                     r.execute(env);
                 }
             }
+            env.layer = sub;
+            r.execute(env);
         }
     }
 
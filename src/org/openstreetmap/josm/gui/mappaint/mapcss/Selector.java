@@ -1,6 +1,7 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.gui.mappaint.mapcss;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.openstreetmap.josm.data.osm.Node;
@@ -180,6 +181,13 @@ public interface Selector {
             return false;
         }
 
+        /**
+         * Replies the selector for the primitive, which is styled by this selector.
+         */
+        public Selector getRight() {
+            return right;
+        }
+
         @Override
         public String getSubpart() {
             return right.getSubpart();
@@ -299,6 +307,13 @@ public interface Selector {
             return base;
         }
 
+        /**
+         * Replies the conditions, which have to apply to the primitive.
+         */
+        public List<Condition> getConditions() {
+            return conds == null ? Collections.<Condition>emptyList() : conds;
+        }
+
         public static Range fromLevel(int a, int b) {
             if (a > b)
                 throw new AssertionError();
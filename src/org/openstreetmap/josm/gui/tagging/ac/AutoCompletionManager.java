@@ -6,6 +6,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -108,8 +109,12 @@ public class AutoCompletionManager implements DataSetListener {
     }
 
     protected void cachePrimitives(Collection<? extends OsmPrimitive> primitives) {
+        // primitives with equal tags share their tag set (see TagSetPool), cache each tag set only once
+        IdentityHashMap<Object, Boolean> seenTagSets = new IdentityHashMap<Object, Boolean>();
         for (OsmPrimitive primitive : primitives) {
-            cachePrimitiveTags(primitive);
+            if (seenTagSets.put(primitive.getTagSetIdentity(), Boolean.TRUE) == null) {
+                cachePrimitiveTags(primitive);
+            }
             if (primitive instanceof Relation) {
                 cacheRelationMemberRoles((Relation) primitive);
             }
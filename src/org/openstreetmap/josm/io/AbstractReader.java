@@ -12,14 +12,17 @@ import java.util.Map;
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.NodeData;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.PrimitiveId;
 import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationData;
 import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.RelationMemberData;
 import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
 import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WayData;
 
 /**
  * Abstract Reader, allowing other implementations than OsmReader (PbfReader in PBF plugin for example)
@@ -60,17 +63,60 @@ public abstract class AbstractReader {
         return ds;
     }
     
+    /**
+     * Creates the node for a transport object and registers it for {@link #prepareDataSet()}.
+     */
+    protected Node createNode(NodeData nd) {
+        Node n = new Node(nd.getId(), nd.getVersion());
+        n.setVisible(nd.isVisible());
+        n.load(nd);
+        externalIdMap.put(nd.getPrimitiveId(), n);
+        return n;
+    }
+
+    /**
+     * Creates the way for a transport object and registers it for {@link #prepareDataSet()}.
+     * The nodes of the way are resolved in {@link #processWaysAfterParsing()}, when all of them are known.
+     */
+    protected Way createWay(WayData wd) {
+        Collection<Long> nodeIds = wd.getNodes();
+        wd.setNodes(new ArrayList<Long>());
+        Way w = new Way(wd.getId(), wd.getVersion());
+        w.setVisible(wd.isVisible());
+        w.load(wd);
+        externalIdMap.put(wd.getPrimitiveId(), w);
+        ways.put(wd.getUniqueId(), nodeIds);
+        return w;
+    }
+
+    /**
+     * Creates the relation for a transport object and registers it for {@link #prepareDataSet()}.
+     * The members of the relation are resolved in {@link #processRelationsAfterParsing()}, when all of them are known.
+     */
+    protected Relation createRelation(RelationData rd) {
+        Collection<RelationMemberData> members = rd.getMembers();
+        rd.setMembers(new ArrayList<RelationMemberData>());
+        Relation r = new Relation(rd.getId(), rd.getVersion());
+        r.setVisible(rd.isVisible());
+        r.load(rd);
+        externalIdMap.put(rd.getPrimitiveId(), r);
+        relations.put(rd.getUniqueId(), members);
+        return r;
+    }
+
     /**
      * Processes the parsed nodes after parsing. Just adds them to
      * the dataset
      *
      */
     protected void processNodesAfterParsing() {
+        List<Node> nodes = new ArrayList<Node>();
         for (OsmPrimitive primitive: externalIdMap.values()) {
             if (primitive instanceof Node) {
-                this.ds.addPrimitive(primitive);
+                nodes.add((Node) primitive);
             }
         }
+        this.ds.addPrimitives(nodes);
     }
 
     /**
@@ -80,6 +126,7 @@ public abstract class AbstractReader {
      * @throws IllegalDataException thrown if a data integrity problem is detected
      */
     protected void processWaysAfterParsing() throws IllegalDataException{
+        List<Way> parsedWays = new ArrayList<Way>(ways.size());
         for (Long externalWayId: ways.keySet()) {
             Way w = (Way)externalIdMap.get(new SimplePrimitiveId(externalWayId, OsmPrimitiveType.WAY));
             List<Node> wayNodes = new ArrayList<Node>();
@@ -110,8 +157,9 @@ public abstract class AbstractReader {
                   System.out.println(tr("Way {0} with {1} nodes has incomplete nodes because at least one node was missing in the loaded data.",
                           externalWayId, w.getNodesCount()));
             }
-            ds.addPrimitive(w);
+            parsedWays.add(w);
         }
+        ds.addPrimitives(parsedWays);
     }
 
     /**
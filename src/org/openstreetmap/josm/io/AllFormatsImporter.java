@@ -14,7 +14,7 @@ import org.openstreetmap.josm.actions.ExtensionFileFilter;
 public class AllFormatsImporter extends FileImporter {
     public AllFormatsImporter() {
         super(new ExtensionFileFilter(getAllExtensions(), "", tr("All Formats")
-                + " (*.gpx *.osm *.nmea *.jpg ...)"));
+                + " (*.gpx *.osm *.osm.pbf *.nmea *.jpg ...)"));
     }
 
     @Override public boolean acceptFile(File pathname) {
@@ -0,0 +1,103 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable buffer for data that is not byte aligned, most significant bit first.
+ * Used to split and join bzip2 streams at block boundaries.
+ */
+final class BitWriter {
+    private byte[] buf;
+    private int len;
+    private int acc;
+    private int accBits;
+
+    BitWriter(int capacity) {
+        buf = new byte[Math.max(16, capacity)];
+    }
+
+    /**
+     * Writes the lowest <code>n</code> bits of a value.
+     */
+    void write(int n, long value) {
+        for (int i=n-1; i>=0; i--) {
+            acc = (acc << 1) | (int) ((value >>> i) & 1);
+            if (++accBits == 8) {
+                writeByte(acc);
+                acc = 0;
+                accBits = 0;
+            }
+        }
+    }
+
+    private void writeByte(int b) {
+        if (len == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        buf[len++] = (byte) b;
+    }
+
+    /**
+     * Appends a range of bits of a byte array.
+     */
+    void append(byte[] src, int srcBit, int count) {
+        int end = srcBit + count;
+        int p = srcBit;
+        if (accBits == 0 && (p & 7) == 0) {
+            while (end - p >= 8) {
+                writeByte(src[p >> 3]);
+                p += 8;
+            }
+        } else {
+            while (end - p >= 8) {
+                write(8, readByte(src, p));
+                p += 8;
+            }
+        }
+        while (p < end) {
+            write(1, (src[p >> 3] >> (7 - (p & 7))) & 1);
+            p++;
+        }
+    }
+
+    private static int readByte(byte[] src, int bit) {
+        int index = bit >> 3;
+        int shift = bit & 7;
+        int hi = src[index] & 0xff;
+        if (shift == 0)
+            return hi;
+        int lo = index + 1 < src.length ? src[index + 1] & 0xff : 0;
+        return ((hi << 8 | lo) >> (8 - shift)) & 0xff;
+    }
+
+    /**
+     * Writes the complete bytes to a stream and removes them from the buffer.
+     * Pending bits, that don't fill a byte yet, are kept.
+     */
+    void flushTo(OutputStream out) throws IOException {
+        out.write(buf, 0, len);
+        len = 0;
+    }
+
+    /**
+     * Pads the data with zero bits to a multiple of 8 bits.
+     */
+    void pad() {
+        if (accBits > 0) {
+            writeByte(acc << (8 - accBits));
+            acc = 0;
+            accBits = 0;
+        }
+    }
+
+    /**
+     * Pads the data and replies a copy of the buffer.
+     */
+    byte[] toByteArray() {
+        pad();
+        return Arrays.copyOf(buf, len);
+    }
+}
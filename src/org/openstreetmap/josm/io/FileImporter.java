@@ -115,6 +115,28 @@ public abstract class FileImporter implements Comparable<FileImporter> {
         return new CBZip2InputStream(bis);
     }
 
+    /**
+     * Replies a stream decompressing bzip2 data. On multi-core machines, the blocks are
+     * decompressed in parallel, see {@link ParallelBZip2InputStream}.
+     *
+     * @param in the compressed stream, starting with the magic <tt>"BZ"</tt>
+     * @return the decompressing stream or null, if <code>in</code> is null
+     * @throws IOException if the stream is not in the bzip2 format or an I/O error occurs
+     */
+    public static InputStream getParallelBZip2InputStream(InputStream in) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (in == null || threads < 2)
+            return getBZip2InputStream(in);
+        BufferedInputStream bis = new BufferedInputStream(in);
+        int b = bis.read();
+        if (b != 'B')
+            throw new IOException(tr("Invalid bz2 file."));
+        b = bis.read();
+        if (b != 'Z')
+            throw new IOException(tr("Invalid bz2 file."));
+        return new ParallelBZip2InputStream(bis, threads);
+    }
+
     public static GZIPInputStream getGZipInputStream(InputStream in) throws IOException {
         if (in == null) {
             return null;
@@ -0,0 +1,111 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.util.Arrays;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * {@link NodeLocationStore} keeping all locations in memory.
+ *
+ * Instead of one object per node, ids and coordinates are kept in primitive arrays of an open
+ * addressing hash table. The coordinates are stored as fixed point integers with a resolution
+ * of 1e-7 degrees, the precision of the OSM database. That is 16 bytes per node.
+ */
+public class MemoryNodeLocationStore implements NodeLocationStore {
+
+    private static final double FACTOR = 1e7;
+    private static final long FREE = 0; // id 0 is not a valid node id
+
+    private long[] ids;
+    private int[] coordinates;
+    private int size;
+
+    public MemoryNodeLocationStore() {
+        this(1024);
+    }
+
+    /**
+     * Constructs a new store.
+     * @param expectedSize the expected number of nodes
+     */
+    public MemoryNodeLocationStore(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity *= 2;
+        }
+        ids = new long[capacity];
+        coordinates = new int[capacity * 2];
+    }
+
+    private static int indexFor(long id, int length) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (length - 1);
+    }
+
+    private int find(long id) {
+        int index = indexFor(id, ids.length);
+        while (ids[index] != FREE && ids[index] != id) {
+            index = (index + 1) & (ids.length - 1);
+        }
+        return index;
+    }
+
+    @Override
+    public void put(long id, LatLon coor) {
+        if (id == FREE)
+            throw new IllegalArgumentException("Illegal node id 0");
+        int index = find(id);
+        if (ids[index] == FREE) {
+            if (size + 1 > ids.length * 3 / 4) {
+                resize();
+                index = find(id);
+            }
+            ids[index] = id;
+            size++;
+        }
+        coordinates[index * 2] = (int) Math.round(coor.lat() * FACTOR);
+        coordinates[index * 2 + 1] = (int) Math.round(coor.lon() * FACTOR);
+    }
+
+    @Override
+    public LatLon get(long id) {
+        if (id == FREE)
+            return null;
+        int index = find(id);
+        if (ids[index] == FREE)
+            return null;
+        return new LatLon(coordinates[index * 2] / FACTOR, coordinates[index * 2 + 1] / FACTOR);
+    }
+
+    /**
+     * Replies the number of stored locations.
+     * @return the number of stored locations
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all locations.
+     */
+    public void clear() {
+        Arrays.fill(ids, FREE);
+        size = 0;
+    }
+
+    private void resize() {
+        long[] oldIds = ids;
+        int[] oldCoordinates = coordinates;
+        ids = new long[oldIds.length * 2];
+        coordinates = new int[ids.length * 2];
+        for (int i=0; i<oldIds.length; i++) {
+            if (oldIds[i] != FREE) {
+                int index = find(oldIds[i]);
+                ids[index] = oldIds[i];
+                coordinates[index * 2] = oldCoordinates[i * 2];
+                coordinates[index * 2 + 1] = oldCoordinates[i * 2 + 1];
+            }
+        }
+    }
+}
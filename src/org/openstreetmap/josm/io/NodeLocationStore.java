@@ -0,0 +1,28 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Maps node ids to node locations while streaming OSM data, so that the coordinates of way
+ * nodes can be resolved without keeping the nodes themselves.
+ *
+ * @see OsmReader#parseStream(java.io.InputStream, OsmPrimitiveSink, NodeLocationStore, org.openstreetmap.josm.gui.progress.ProgressMonitor)
+ * @see MemoryNodeLocationStore
+ */
+public interface NodeLocationStore {
+
+    /**
+     * Remembers the location of a node.
+     * @param id the node id
+     * @param coor the location. Not null.
+     */
+    void put(long id, LatLon coor);
+
+    /**
+     * Replies the location of a node.
+     * @param id the node id
+     * @return the location or null, if unknown
+     */
+    LatLon get(long id);
+}
@@ -19,7 +19,11 @@ public class OsmBzip2Exporter extends OsmExporter {
         OutputStream out = new FileOutputStream(file);
         out.write('B');
         out.write('Z');
-        out = new CBZip2OutputStream(out);
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            out = new ParallelBZip2OutputStream(out);
+        } else {
+            out = new CBZip2OutputStream(out);
+        }
         return out;
     }
 }
@@ -6,6 +6,7 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
@@ -21,6 +22,11 @@ public class OsmBzip2Importer extends OsmImporter {
 
     @Override
     public void importData(File file, ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
-        importData(getBZip2InputStream(new FileInputStream(file)), file);
+        InputStream in = getParallelBZip2InputStream(new FileInputStream(file));
+        try {
+            importData(in, file);
+        } finally {
+            in.close();
+        }
     }
 }
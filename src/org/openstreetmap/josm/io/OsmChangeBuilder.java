@@ -3,7 +3,6 @@ package org.openstreetmap.josm.io;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Collection;
 
@@ -20,7 +19,7 @@ public class OsmChangeBuilder {
     static public final String DEFAULT_API_VERSION = "0.6";
 
     private String currentMode;
-    private PrintWriter writer;
+    private XmlOutputBuffer writer;
     private StringWriter swriter;
     private OsmWriter osmwriter;
     private String apiVersion = DEFAULT_API_VERSION;
@@ -32,7 +31,7 @@ public class OsmChangeBuilder {
 
     public OsmChangeBuilder(Changeset changeset, String apiVersion) {
         this.apiVersion = apiVersion == null ? DEFAULT_API_VERSION : apiVersion;
-        writer = new PrintWriter(swriter = new StringWriter());
+        writer = new XmlOutputBuffer(swriter = new StringWriter());
         osmwriter = OsmWriterFactory.createOsmWriter(writer, false, apiVersion);
         osmwriter.setChangeset(changeset);
     }
@@ -52,14 +51,16 @@ public class OsmChangeBuilder {
     private void switchMode(String newMode) {
         if ((newMode != null && !newMode.equals(currentMode))||(newMode == null && currentMode != null)) {
             if (currentMode != null) {
-                writer.print("</");
-                writer.print(currentMode);
-                writer.println(">");
+                writer.write("</");
+                writer.write(currentMode);
+                writer.write('>');
+                writer.newLine();
             }
             if (newMode != null) {
-                writer.print("<");
-                writer.print(newMode);
-                writer.println(">");
+                writer.write('<');
+                writer.write(newMode);
+                writer.write('>');
+                writer.newLine();
             }
             currentMode = newMode;
         }
@@ -73,9 +74,10 @@ public class OsmChangeBuilder {
     public void start() throws IllegalStateException{
         if (prologWritten)
             throw new IllegalStateException(tr("Prolog of OsmChange document already written. Please write only once."));
-        writer.print("<osmChange version=\"");
-        writer.print(apiVersion);
-        writer.println("\" generator=\"JOSM\">");
+        writer.write("<osmChange version=\"");
+        writer.write(apiVersion);
+        writer.write("\" generator=\"JOSM\">");
+        writer.newLine();
         prologWritten=true;
     }
 
@@ -121,14 +123,17 @@ public class OsmChangeBuilder {
         if (!prologWritten)
             throw new IllegalStateException(tr("Prolog of OsmChange document not written yet. Please write first."));
         if (currentMode != null) {
-            writer.print("</");
-            writer.print(currentMode);
-            writer.println(">");
+            writer.write("</");
+            writer.write(currentMode);
+            writer.write('>');
+            writer.newLine();
         }
-        writer.println("</osmChange>");
+        writer.write("</osmChange>");
+        writer.newLine();
     }
 
     public String getDocument() {
+        writer.commit();
         return swriter.toString();
     }
 }
@@ -9,9 +9,6 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.Writer;
 import java.text.MessageFormat;
 
 import javax.swing.JOptionPane;
@@ -51,10 +48,34 @@ public class OsmExporter extends FileExporter {
                     .getClass().getName()));
     }
 
+    /**
+     * Determines if the files written by this exporter keep all data of a layer, including the
+     * local changes. Only then the layer is associated with the file and marked as saved.
+     * @return true, if nothing is lost when the layer is saved
+     */
+    public boolean isLossless() {
+        return true;
+    }
+
     protected OutputStream getOutputStream(File file) throws FileNotFoundException, IOException {
         return new FileOutputStream(file);
     }
 
+    /**
+     * Writes the data of a layer to a stream and closes the stream.
+     * Called while holding the read lock of the dataset.
+     */
+    protected void writeLayer(OutputStream out, OsmDataLayer layer) throws IOException {
+        // write plain files through their channel, without another level of buffering
+        XmlOutputBuffer buffer = out instanceof FileOutputStream
+                ? new XmlOutputBuffer(((FileOutputStream) out).getChannel())
+                : new XmlOutputBuffer(out);
+        OsmWriter w = OsmWriterFactory.createOsmWriter(buffer, false, layer.data.getVersion());
+        w.writeLayer(layer);
+        w.close();
+        buffer.checkError();
+    }
+
     private void save(File file, OsmDataLayer layer, boolean noBackup) {
         File tmpFile = null;
         try {
@@ -68,13 +89,9 @@ public class OsmExporter extends FileExporter {
 
             // create outputstream and wrap it with gzip or bzip, if necessary
             OutputStream out = getOutputStream(file);
-            Writer writer = new OutputStreamWriter(out, "UTF-8");
-
-            OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(writer), false, layer.data.getVersion());
             layer.data.getReadLock().lock();
             try {
-                w.writeLayer(layer);
-                w.close();
+                writeLayer(out, layer);
             } finally {
                 layer.data.getReadLock().unlock();
             }
@@ -84,7 +101,9 @@ public class OsmExporter extends FileExporter {
                     tmpFile.delete();
                 }
             }
-            layer.onPostSaveToFile();
+            if (isLossless()) {
+                layer.onPostSaveToFile();
+            }
         } catch (IOException e) {
             e.printStackTrace();
             JOptionPane.showMessageDialog(
@@ -97,6 +97,8 @@ public class OsmImporter extends FileImporter {
     }
 
     protected DataSet parseDataSet(InputStream in, ProgressMonitor progressMonitor) throws IllegalDataException {
+        if (PipelinedOsmReader.isEnabled())
+            return PipelinedOsmReader.parseDataSet(in, progressMonitor);
         return OsmReader.parseDataSet(in, progressMonitor);
     }
 
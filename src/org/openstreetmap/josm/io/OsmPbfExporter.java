@@ -0,0 +1,61 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.swing.JOptionPane;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.gui.layer.Layer;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+
+/**
+ * Exports a layer in the PBF format. The format cannot keep local changes, so layers
+ * with changes are refused, and a layer is never marked as saved to a PBF file.
+ */
+public class OsmPbfExporter extends OsmExporter {
+
+    public OsmPbfExporter() {
+        super(OsmPbfImporter.FILE_FILTER);
+    }
+
+    @Override
+    public boolean isLossless() {
+        return false;
+    }
+
+    @Override
+    public void exportData(File file, Layer layer, boolean noBackup) throws IOException {
+        if (layer instanceof OsmDataLayer) {
+            OsmDataLayer dataLayer = (OsmDataLayer) layer;
+            boolean canWrite;
+            dataLayer.data.getReadLock().lock();
+            try {
+                canWrite = PbfWriter.canWrite(dataLayer.data);
+            } finally {
+                dataLayer.data.getReadLock().unlock();
+            }
+            if (!canWrite) {
+                String msg = tr("The layer contains new, modified or deleted objects, which cannot be saved in the PBF format. "
+                        + "Please save it as .osm file or upload the changes first.");
+                JOptionPane.showMessageDialog(Main.parent, msg, tr("Error"), JOptionPane.ERROR_MESSAGE);
+                throw new IOException(msg);
+            }
+        }
+        super.exportData(file, layer, noBackup);
+    }
+
+    @Override
+    protected void writeLayer(OutputStream out, OsmDataLayer layer) throws IOException {
+        PbfWriter w = new PbfWriter(out);
+        try {
+            w.writeData(layer.data);
+        } finally {
+            w.close();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.File;
+import java.io.InputStream;
+
+import javax.swing.JOptionPane;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+public class OsmPbfImporter extends OsmImporter {
+
+    public static final ExtensionFileFilter FILE_FILTER = new ExtensionFileFilter(
+            "osm.pbf,pbf", "osm.pbf", tr("OSM Server Files PBF format") + " (*.osm.pbf *.pbf)");
+
+    public OsmPbfImporter() {
+        super(FILE_FILTER);
+    }
+
+    @Override
+    protected DataSet parseDataSet(InputStream in, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return PbfReader.parseDataSet(in, progressMonitor);
+    }
+
+    @Override
+    protected Runnable createPostLayerTask(final DataSet dataSet, final File associatedFile, final String layerName, final OsmDataLayer layer) {
+        final Runnable task = super.createPostLayerTask(dataSet, associatedFile, layerName, layer);
+        return new Runnable() {
+            @Override
+            public void run() {
+                task.run();
+                if (dataSet.isUploadDiscouraged()) {
+                    // the reader discourages upload of files written without metadata
+                    JOptionPane.showMessageDialog(
+                            Main.parent,
+                            tr("The data of layer ''{0}'' has no version information. It must not be uploaded to the server.", layerName),
+                            tr("Warning"),
+                            JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.util.List;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.WayData;
+
+/**
+ * Receives the primitives read by {@link OsmReader#parseStream(java.io.InputStream, OsmPrimitiveSink, NodeLocationStore, org.openstreetmap.josm.gui.progress.ProgressMonitor)}
+ * in the order they appear in the input, without building a {@link org.openstreetmap.josm.data.osm.DataSet}.
+ *
+ * The transport objects are handed over to the sink, the reader doesn't keep a reference to them.
+ */
+public interface OsmPrimitiveSink {
+
+    /**
+     * Called for every <code>bounds</code> element.
+     * @param source the data source
+     */
+    void addDataSource(DataSource source);
+
+    /**
+     * Called for every node.
+     * @param node the node
+     */
+    void addNode(NodeData node);
+
+    /**
+     * Called for every way.
+     *
+     * @param way the way. {@link WayData#getNodes()} contains the ids of the way nodes
+     * @param coordinates the coordinates of the way nodes, resolved through the {@link NodeLocationStore}
+     * of the reader. An entry is null if the location of the node is unknown. The list itself is
+     * null if the reader has no store.
+     */
+    void addWay(WayData way, List<LatLon> coordinates);
+
+    /**
+     * Called for every relation.
+     * @param relation the relation
+     */
+    void addRelation(RelationData relation);
+}
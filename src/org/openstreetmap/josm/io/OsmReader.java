@@ -7,7 +7,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,6 +51,11 @@ public class OsmReader extends AbstractReader {
 
     protected XMLStreamReader parser;
 
+    /** the sink the primitives are pushed to in streaming mode, null otherwise */
+    private OsmPrimitiveSink sink;
+    /** the store used to resolve way node locations in streaming mode, may be null */
+    private NodeLocationStore locations;
+
     /** Used by plugins to register themselves as data postprocessors. */
     public static ArrayList<OsmServerReadPostprocessor> postprocessors;
 
@@ -130,6 +137,12 @@ public class OsmReader extends AbstractReader {
             if (event == XMLStreamConstants.START_ELEMENT) {
                 if (parser.getLocalName().equals("bounds")) {
                     parseBounds(generator);
+                } else if (sink != null && parser.getLocalName().equals("node")) {
+                    streamNode();
+                } else if (sink != null && parser.getLocalName().equals("way")) {
+                    streamWay();
+                } else if (sink != null && parser.getLocalName().equals("relation")) {
+                    sink.addRelation(readRelation());
                 } else if (parser.getLocalName().equals("node")) {
                     parseNode();
                 } else if (parser.getLocalName().equals("way")) {
@@ -165,7 +178,11 @@ public class OsmReader extends AbstractReader {
                 System.out.println("Bbox " + copy + " is out of the world, normalized to " + bounds);
             }
             DataSource src = new DataSource(bounds, origin);
-            ds.dataSources.add(src);
+            if (sink != null) {
+                sink.addDataSource(src);
+            } else {
+                ds.dataSources.add(src);
+            }
         } else {
             throwException(tr(
                     "Missing mandatory attributes on element ''bounds''. Got minlon=''{0}'',minlat=''{1}'',maxlon=''{3}'',maxlat=''{4}'', origin=''{5}''.",
@@ -176,6 +193,41 @@ public class OsmReader extends AbstractReader {
     }
 
     protected Node parseNode() throws XMLStreamException {
+        return createNode(readNode());
+    }
+
+    protected Way parseWay() throws XMLStreamException {
+        return createWay(readWay());
+    }
+
+    protected Relation parseRelation() throws XMLStreamException {
+        return createRelation(readRelation());
+    }
+
+    private void streamNode() throws XMLStreamException {
+        NodeData nd = readNode();
+        if (locations != null && nd.getCoor() != null) {
+            locations.put(nd.getUniqueId(), nd.getCoor());
+        }
+        sink.addNode(nd);
+    }
+
+    private void streamWay() throws XMLStreamException {
+        WayData wd = readWay();
+        List<LatLon> coordinates = null;
+        if (locations != null) {
+            coordinates = new ArrayList<LatLon>(wd.getNodes().size());
+            for (Long id : wd.getNodes()) {
+                coordinates.add(locations.get(id));
+            }
+        }
+        sink.addWay(wd, coordinates);
+    }
+
+    /**
+     * Reads a node element into a transport object.
+     */
+    protected NodeData readNode() throws XMLStreamException {
         NodeData nd = new NodeData();
         String lat = parser.getAttributeValue(null, "lat");
         String lon = parser.getAttributeValue(null, "lon");
@@ -183,39 +235,37 @@ public class OsmReader extends AbstractReader {
             nd.setCoor(new LatLon(Double.parseDouble(lat), Double.parseDouble(lon)));
         }
         readCommon(nd);
-        Node n = new Node(nd.getId(), nd.getVersion());
-        n.setVisible(nd.isVisible());
-        n.load(nd);
-        externalIdMap.put(nd.getPrimitiveId(), n);
+        Map<String, String> tags = new HashMap<String, String>();
         while (true) {
             int event = parser.next();
             if (event == XMLStreamConstants.START_ELEMENT) {
                 if (parser.getLocalName().equals("tag")) {
-                    parseTag(n);
+                    parseTag(tags);
                 } else {
                     parseUnknown();
                 }
-            } else if (event == XMLStreamConstants.END_ELEMENT)
-                return n;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                setKeys(nd, tags);
+                return nd;
+            }
         }
     }
 
-    protected Way parseWay() throws XMLStreamException {
+    /**
+     * Reads a way element into a transport object. The node references are not resolved.
+     */
+    protected WayData readWay() throws XMLStreamException {
         WayData wd = new WayData();
         readCommon(wd);
-        Way w = new Way(wd.getId(), wd.getVersion());
-        w.setVisible(wd.isVisible());
-        w.load(wd);
-        externalIdMap.put(wd.getPrimitiveId(), w);
-
-        Collection<Long> nodeIds = new ArrayList<Long>();
+        List<Long> nodeIds = new ArrayList<Long>();
+        Map<String, String> tags = new HashMap<String, String>();
         while (true) {
             int event = parser.next();
             if (event == XMLStreamConstants.START_ELEMENT) {
                 if (parser.getLocalName().equals("nd")) {
-                    nodeIds.add(parseWayNode(w));
+                    nodeIds.add(parseWayNode(wd));
                 } else if (parser.getLocalName().equals("tag")) {
-                    parseTag(w);
+                    parseTag(tags);
                 } else {
                     parseUnknown();
                 }
@@ -223,15 +273,16 @@ public class OsmReader extends AbstractReader {
                 break;
             }
         }
-        if (w.isDeleted() && nodeIds.size() > 0) {
-            System.out.println(tr("Deleted way {0} contains nodes", w.getUniqueId()));
+        setKeys(wd, tags);
+        if (wd.isDeleted() && nodeIds.size() > 0) {
+            System.out.println(tr("Deleted way {0} contains nodes", wd.getUniqueId()));
             nodeIds = new ArrayList<Long>();
         }
-        ways.put(wd.getUniqueId(), nodeIds);
-        return w;
+        wd.setNodes(nodeIds);
+        return wd;
     }
 
-    private long parseWayNode(Way w) throws XMLStreamException {
+    private long parseWayNode(WayData w) throws XMLStreamException {
         if (parser.getAttributeValue(null, "ref") == null) {
             throwException(
                     tr("Missing mandatory attribute ''{0}'' on <nd> of way {1}.", "ref", w.getUniqueId())
@@ -247,22 +298,21 @@ public class OsmReader extends AbstractReader {
         return id;
     }
 
-    protected Relation parseRelation() throws XMLStreamException {
+    /**
+     * Reads a relation element into a transport object. The members are not resolved.
+     */
+    protected RelationData readRelation() throws XMLStreamException {
         RelationData rd = new RelationData();
         readCommon(rd);
-        Relation r = new Relation(rd.getId(), rd.getVersion());
-        r.setVisible(rd.isVisible());
-        r.load(rd);
-        externalIdMap.put(rd.getPrimitiveId(), r);
-
-        Collection<RelationMemberData> members = new ArrayList<RelationMemberData>();
+        List<RelationMemberData> members = new ArrayList<RelationMemberData>();
+        Map<String, String> tags = new HashMap<String, String>();
         while (true) {
             int event = parser.next();
             if (event == XMLStreamConstants.START_ELEMENT) {
                 if (parser.getLocalName().equals("member")) {
-                    members.add(parseRelationMember(r));
+                    members.add(parseRelationMember(rd));
                 } else if (parser.getLocalName().equals("tag")) {
-                    parseTag(r);
+                    parseTag(tags);
                 } else {
                     parseUnknown();
                 }
@@ -270,15 +320,16 @@ public class OsmReader extends AbstractReader {
                 break;
             }
         }
-        if (r.isDeleted() && members.size() > 0) {
-            System.out.println(tr("Deleted relation {0} contains members", r.getUniqueId()));
+        setKeys(rd, tags);
+        if (rd.isDeleted() && members.size() > 0) {
+            System.out.println(tr("Deleted relation {0} contains members", rd.getUniqueId()));
             members = new ArrayList<RelationMemberData>();
         }
-        relations.put(rd.getUniqueId(), members);
-        return r;
+        rd.setMembers(members);
+        return rd;
     }
 
-    private RelationMemberData parseRelationMember(Relation r) throws XMLStreamException {
+    private RelationMemberData parseRelationMember(RelationData r) throws XMLStreamException {
         String role = null;
         OsmPrimitiveType type = null;
         long id = 0;
@@ -315,32 +366,45 @@ public class OsmReader extends AbstractReader {
 
         if (id == uploadChangesetId) {
             uploadChangeset = new Changeset((int) getLong("id"));
+            Map<String, String> tags = new HashMap<String, String>();
             while (true) {
                 int event = parser.next();
                 if (event == XMLStreamConstants.START_ELEMENT) {
                     if (parser.getLocalName().equals("tag")) {
-                        parseTag(uploadChangeset);
+                        parseTag(tags);
                     } else {
                         parseUnknown();
                     }
-                } else if (event == XMLStreamConstants.END_ELEMENT)
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    setKeys(uploadChangeset, tags);
                     return;
+                }
             }
         } else {
             jumpToEnd(false);
         }
     }
 
-    private void parseTag(Tagged t) throws XMLStreamException {
+    private void parseTag(Map<String, String> tags) throws XMLStreamException {
         String key = parser.getAttributeValue(null, "k");
         String value = parser.getAttributeValue(null, "v");
         if (key == null || value == null) {
             throwException(tr("Missing key or value attribute in tag."));
         }
-        t.put(key.intern(), value.intern());
+        tags.put(key.intern(), value.intern());
         jumpToEnd();
     }
 
+    /**
+     * Sets all tags of a primitive at once, so that the complete tag set is interned only once
+     * (see {@link org.openstreetmap.josm.data.osm.TagSetPool}) instead of once per tag.
+     */
+    private static void setKeys(Tagged t, Map<String, String> tags) {
+        if (!tags.isEmpty()) {
+            t.setKeys(tags);
+        }
+    }
+
     protected void parseUnknown(boolean printWarning) throws XMLStreamException {
         if (printWarning) {
             System.out.println(tr("Undefined element ''{0}'' found in input stream. Skipping.", parser.getLocalName()));
@@ -571,33 +635,52 @@ public class OsmReader extends AbstractReader {
             parse();
             progressMonitor.worked(1);
 
-            progressMonitor.indeterminateSubTask(tr("Preparing data set..."));
-            prepareDataSet();
-            progressMonitor.worked(1);
-
-            // iterate over registered postprocessors and give them each a chance
-            // to modify the dataset we have just loaded.
-            if (postprocessors != null) {
-                for (OsmServerReadPostprocessor pp : postprocessors) {
-                    pp.postprocessDataSet(getDataSet(), progressMonitor);
-                }
-            }
-            return getDataSet();
+            return finishDataSet(progressMonitor);
         } catch(IllegalDataException e) {
             throw e;
-        } catch(OsmParsingException e) {
-            throw new IllegalDataException(e.getMessage(), e);
         } catch(XMLStreamException e) {
-            String msg = e.getMessage();
-            Pattern p = Pattern.compile("Message: (.+)");
-            Matcher m = p.matcher(msg);
-            if (m.find()) {
-                msg = m.group(1);
+            throw toIllegalDataException(e);
+        } catch(Exception e) {
+            throw new IllegalDataException(e);
+        } finally {
+            progressMonitor.finishTask();
+        }
+    }
+
+    /**
+     * Resolves the references between the parsed primitives, adds them to the dataset
+     * and runs the registered postprocessors.
+     */
+    protected DataSet finishDataSet(ProgressMonitor progressMonitor) throws IllegalDataException {
+        progressMonitor.indeterminateSubTask(tr("Preparing data set..."));
+        prepareDataSet();
+        progressMonitor.worked(1);
+
+        // iterate over registered postprocessors and give them each a chance
+        // to modify the dataset we have just loaded.
+        if (postprocessors != null) {
+            for (OsmServerReadPostprocessor pp : postprocessors) {
+                pp.postprocessDataSet(getDataSet(), progressMonitor);
             }
-            if (e.getLocation() != null)
-                throw new IllegalDataException(tr("Line {0} column {1}: ", e.getLocation().getLineNumber(), e.getLocation().getColumnNumber()) + msg, e);
-            else
-                throw new IllegalDataException(msg, e);
+        }
+        return getDataSet();
+    }
+
+    protected void doParseStream(InputStream source, OsmPrimitiveSink sink, NodeLocationStore locations, ProgressMonitor progressMonitor) throws IllegalDataException {
+        if (progressMonitor == null) {
+            progressMonitor = NullProgressMonitor.INSTANCE;
+        }
+        CheckParameterUtil.ensureParameterNotNull(source, "source");
+        CheckParameterUtil.ensureParameterNotNull(sink, "sink");
+        this.sink = sink;
+        this.locations = locations;
+        try {
+            progressMonitor.beginTask(tr("Parsing OSM data..."));
+            InputStreamReader ir = UTFInputStreamReader.create(source, "UTF-8");
+            setParser(XMLInputFactory.newInstance().createXMLStreamReader(ir));
+            parse();
+        } catch(XMLStreamException e) {
+            throw toIllegalDataException(e);
         } catch(Exception e) {
             throw new IllegalDataException(e);
         } finally {
@@ -605,6 +688,21 @@ public class OsmReader extends AbstractReader {
         }
     }
 
+    protected static IllegalDataException toIllegalDataException(XMLStreamException e) {
+        if (e instanceof OsmParsingException)
+            return new IllegalDataException(e.getMessage(), e);
+        String msg = e.getMessage();
+        Pattern p = Pattern.compile("Message: (.+)");
+        Matcher m = p.matcher(msg);
+        if (m.find()) {
+            msg = m.group(1);
+        }
+        if (e.getLocation() != null)
+            return new IllegalDataException(tr("Line {0} column {1}: ", e.getLocation().getLineNumber(), e.getLocation().getColumnNumber()) + msg, e);
+        else
+            return new IllegalDataException(msg, e);
+    }
+
     /**
      * Parse the given input source and return the dataset.
      *
@@ -618,4 +716,24 @@ public class OsmReader extends AbstractReader {
     public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
         return new OsmReader().doParseDataSet(source, progressMonitor);
     }
+
+    /**
+     * Parses the given input source and pushes the primitives to a sink as soon as they are read,
+     * instead of building a dataset. Memory usage doesn't depend on the size of the input, except
+     * for the node location store, so this is suitable for processing large extracts.
+     *
+     * The ids of way nodes and relation members are not resolved. If a node location store
+     * is given, every node location is put into the store and the locations of the way nodes
+     * are looked up in the store before a way is passed to the sink.
+     *
+     * @param source the source input stream. Must not be null.
+     * @param sink the sink receiving the primitives. Must not be null.
+     * @param locations the store for node locations. May be null.
+     * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     * @throws IllegalDataException thrown if the an error was found while parsing the data from the source
+     * @throws IllegalArgumentException thrown if source or sink is null
+     */
+    public static void parseStream(InputStream source, OsmPrimitiveSink sink, NodeLocationStore locations, ProgressMonitor progressMonitor) throws IllegalDataException {
+        new OsmReader().doParseStream(source, sink, locations, progressMonitor);
+    }
 }
@@ -76,9 +76,14 @@ public class OsmServerLocationReader extends OsmServerReader {
                 in = getInputStreamRaw(url, progressMonitor.createSubTaskMonitor(9, false));
                 if (in == null)
                     return null;
-                CBZip2InputStream bzin = FileImporter.getBZip2InputStream(in);
-                progressMonitor.subTask(tr("Downloading OSM data..."));
-                return OsmReader.parseDataSet(bzin, progressMonitor.createSubTaskMonitor(1, false));
+                InputStream bzin = FileImporter.getParallelBZip2InputStream(in);
+                try {
+                    progressMonitor.subTask(tr("Downloading OSM data..."));
+                    return OsmReader.parseDataSet(bzin, progressMonitor.createSubTaskMonitor(1, false));
+                } finally {
+                    // stops the decompression threads
+                    bzin.close();
+                }
             }
         }, progressMonitor);
     }
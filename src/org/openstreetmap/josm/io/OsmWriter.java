@@ -4,14 +4,23 @@ package org.openstreetmap.josm.io;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.coor.CoordinateFormat;
+import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.DataSource;
@@ -37,20 +46,41 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
 
     public static final String DEFAULT_API_VERSION = "0.6";
 
+    /** number of primitives serialized by one task of {@link #writeContent(DataSet)} */
+    private static final int CHUNK_SIZE = 10000;
+
     private boolean osmConform;
     private boolean withBody = true;
     private String version;
     private Changeset changeset;
+    private int threads = isParallel() ? Runtime.getRuntime().availableProcessors() : 1;
+
+    /**
+     * The buffer all output goes to. {@link #out} writes to this buffer, too.
+     */
+    protected final XmlOutputBuffer buffer;
 
     /**
      * Do not call this directly. Use OsmWriterFactory instead.
      */
     protected OsmWriter(PrintWriter out, boolean osmConform, String version) {
-        super(out);
+        this(new XmlOutputBuffer(out), osmConform, version);
+    }
+
+    /**
+     * Do not call this directly. Use OsmWriterFactory instead.
+     */
+    protected OsmWriter(XmlOutputBuffer buffer, boolean osmConform, String version) {
+        super(new PrintWriter(buffer));
+        this.buffer = buffer;
         this.osmConform = osmConform;
         this.version = (version == null ? DEFAULT_API_VERSION : version);
     }
 
+    private static boolean isParallel() {
+        return Main.pref == null || Main.pref.getBoolean("osm.writer.parallel", true);
+    }
+
     public void setWithBody(boolean wb) {
         this.withBody = wb;
     }
@@ -65,17 +95,22 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
         header(null);
     }
     public void header(Boolean upload) {
-        out.println("<?xml version='1.0' encoding='UTF-8'?>");
-        out.print("<osm version='");
-        out.print(version);
+        buffer.write("<?xml version='1.0' encoding='UTF-8'?>");
+        buffer.newLine();
+        buffer.write("<osm version='");
+        buffer.write(version);
         if (upload != null) {
-            out.print("' upload='");
-            out.print(upload);
+            buffer.write("' upload='");
+            buffer.write(upload ? "true" : "false");
         }
-        out.println("' generator='JOSM'>");
+        buffer.write("' generator='JOSM'>");
+        buffer.newLine();
+        buffer.commit();
     }
     public void footer() {
-        out.println("</osm>");
+        buffer.write("</osm>");
+        buffer.newLine();
+        buffer.commit();
     }
 
     protected static final Comparator<OsmPrimitive> byIdComparator = new Comparator<OsmPrimitive>() {
@@ -98,51 +133,150 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
         footer();
     }
 
+    /**
+     * Sets the number of threads used by {@link #writeContent(DataSet)}.
+     * @param threads the number of threads, 1 to write on the calling thread only
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Writes all nodes, ways and relations of the dataset, ordered by id.
+     *
+     * Big datasets are split into chunks of consecutive primitives, which are serialized concurrently
+     * and written in order. The output is the same as when writing on the calling thread only.
+     * Subclasses are always written on the calling thread, since they may rely on the order of
+     * the calls of the visit methods.
+     */
     public void writeContent(DataSet ds) {
-        for (OsmPrimitive n : sortById(ds.getNodes())) {
+        Collection<OsmPrimitive> nodes = sortById(ds.getNodes());
+        Collection<OsmPrimitive> ways = sortById(ds.getWays());
+        Collection<OsmPrimitive> relations = sortById(ds.getRelations());
+        if (threads > 1 && getClass() == OsmWriter.class
+                && nodes.size() + ways.size() + relations.size() > CHUNK_SIZE) {
+            List<OsmPrimitive> primitives = new ArrayList<OsmPrimitive>(nodes.size() + ways.size() + relations.size());
+            primitives.addAll(nodes);
+            primitives.addAll(ways);
+            primitives.addAll(relations);
+            writeParallel(primitives);
+            return;
+        }
+        for (OsmPrimitive n : nodes) {
             if (shouldWrite(n)) {
                 visit((Node)n);
             }
         }
-        for (OsmPrimitive w : sortById(ds.getWays())) {
+        for (OsmPrimitive w : ways) {
             if (shouldWrite(w)) {
                 visit((Way)w);
             }
         }
-        for (OsmPrimitive e: sortById(ds.getRelations())) {
+        for (OsmPrimitive e: relations) {
             if (shouldWrite(e)) {
                 visit((Relation)e);
             }
         }
     }
 
+    private void writeParallel(List<OsmPrimitive> primitives) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OSM writer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            ArrayDeque<Future<XmlOutputBuffer>> pending = new ArrayDeque<Future<XmlOutputBuffer>>();
+            for (int start = 0; start < primitives.size(); start += CHUNK_SIZE) {
+                final List<OsmPrimitive> chunk = primitives.subList(start, Math.min(start + CHUNK_SIZE, primitives.size()));
+                pending.add(executor.submit(new Callable<XmlOutputBuffer>() {
+                    @Override
+                    public XmlOutputBuffer call() {
+                        return writeChunk(chunk);
+                    }
+                }));
+                while (pending.size() > threads * 2) {
+                    writeChunkResult(pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeChunkResult(pending.poll());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private XmlOutputBuffer writeChunk(List<OsmPrimitive> chunk) {
+        OsmWriter w = new OsmWriter(new XmlOutputBuffer(), osmConform, version);
+        w.withBody = withBody;
+        w.changeset = changeset;
+        for (OsmPrimitive osm : chunk) {
+            if (shouldWrite(osm)) {
+                osm.visit(w);
+            }
+        }
+        return w.buffer;
+    }
+
+    private void writeChunkResult(Future<XmlOutputBuffer> future) {
+        try {
+            future.get().writeTo(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        buffer.commit();
+    }
+
     protected boolean shouldWrite(OsmPrimitive osm) {
         return !osm.isNewOrUndeleted() || !osm.isDeleted();
     }
 
     public void writeDataSources(DataSet ds) {
         for (DataSource s : ds.dataSources) {
-            out.println("  <bounds minlat='"
-                    + s.bounds.getMin().lat()+"' minlon='"
-                    + s.bounds.getMin().lon()+"' maxlat='"
-                    + s.bounds.getMax().lat()+"' maxlon='"
-                    + s.bounds.getMax().lon()
-                    +"' origin='"+XmlWriter.encode(s.origin)+"' />");
+            buffer.write("  <bounds minlat='");
+            buffer.appendDouble(s.bounds.getMin().lat());
+            buffer.write("' minlon='");
+            buffer.appendDouble(s.bounds.getMin().lon());
+            buffer.write("' maxlat='");
+            buffer.appendDouble(s.bounds.getMax().lat());
+            buffer.write("' maxlon='");
+            buffer.appendDouble(s.bounds.getMax().lon());
+            buffer.write("' origin='");
+            buffer.appendEncoded(s.origin);
+            buffer.write("' />");
+            buffer.newLine();
         }
+        buffer.commit();
     }
 
     @Override
     public void visit(INode n) {
         if (n.isIncomplete()) return;
         addCommon(n, "node");
-        if (n.getCoor() != null) { 
-            out.print(" lat='"+n.getCoor().lat()+"' lon='"+n.getCoor().lon()+"'");
-        } 
+        LatLon coor = n.getCoor();
+        if (coor != null) {
+            buffer.write(" lat='");
+            buffer.appendDouble(coor.lat());
+            buffer.write("' lon='");
+            buffer.appendDouble(coor.lon());
+            buffer.write('\'');
+        }
         if (!withBody) {
-            out.println("/>");
+            buffer.write("/>");
+            buffer.newLine();
         } else {
             addTags(n, "node", true);
         }
+        buffer.commit();
     }
 
     @Override
@@ -150,14 +284,20 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
         if (w.isIncomplete()) return;
         addCommon(w, "way");
         if (!withBody) {
-            out.println("/>");
+            buffer.write("/>");
+            buffer.newLine();
         } else {
-            out.println(">");
+            buffer.write('>');
+            buffer.newLine();
             for (int i=0; i<w.getNodesCount(); ++i) {
-                out.println("    <nd ref='"+w.getNodeId(i) +"' />");
+                buffer.write("    <nd ref='");
+                buffer.appendLong(w.getNodeId(i));
+                buffer.write("' />");
+                buffer.newLine();
             }
             addTags(w, "way", false);
         }
+        buffer.commit();
     }
 
     @Override
@@ -165,17 +305,24 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
         if (e.isIncomplete()) return;
         addCommon(e, "relation");
         if (!withBody) {
-            out.println("/>");
+            buffer.write("/>");
+            buffer.newLine();
         } else {
-            out.println(">");
+            buffer.write('>');
+            buffer.newLine();
             for (int i=0; i<e.getMembersCount(); ++i) {
-                out.print("    <member type='");
-                out.print(e.getMemberType(i).getAPIName());
-                out.println("' ref='"+e.getMemberId(i)+"' role='" +
-                        XmlWriter.encode(e.getRole(i)) + "' />");
+                buffer.write("    <member type='");
+                buffer.write(e.getMemberType(i).getAPIName());
+                buffer.write("' ref='");
+                buffer.appendLong(e.getMemberId(i));
+                buffer.write("' role='");
+                buffer.appendEncoded(e.getRole(i));
+                buffer.write("' />");
+                buffer.newLine();
             }
             addTags(e, "relation", false);
         }
+        buffer.commit();
     }
 
     public void visit(Changeset cs) {
@@ -202,6 +349,7 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
         }
         out.println(">");
         addTags(cs, "changeset", false); // also writes closing </changeset>
+        buffer.commit();
     }
 
     protected static final Comparator<Entry<String, String>> byKeyComparator = new Comparator<Entry<String,String>>() {
@@ -213,32 +361,48 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
     protected void addTags(Tagged osm, String tagname, boolean tagOpen) {
         if (osm.hasKeys()) {
             if (tagOpen) {
-                out.println(">");
+                buffer.write('>');
+                buffer.newLine();
             }
             List<Entry<String, String>> entries = new ArrayList<Entry<String,String>>(osm.getKeys().entrySet());
             Collections.sort(entries, byKeyComparator);
             for (Entry<String, String> e : entries) {
                 if ((osm instanceof Changeset) || !("created_by".equals(e.getKey()))) {
-                    out.println("    <tag k='"+ XmlWriter.encode(e.getKey()) +
-                            "' v='"+XmlWriter.encode(e.getValue())+ "' />");
+                    buffer.write("    <tag k='");
+                    buffer.appendEncoded(e.getKey());
+                    buffer.write("' v='");
+                    buffer.appendEncoded(e.getValue());
+                    buffer.write("' />");
+                    buffer.newLine();
                 }
             }
-            out.println("  </" + tagname + ">");
+            writeEndTag(tagname);
         } else if (tagOpen) {
-            out.println(" />");
+            buffer.write(" />");
+            buffer.newLine();
         } else {
-            out.println("  </" + tagname + ">");
+            writeEndTag(tagname);
         }
     }
 
+    private void writeEndTag(String tagname) {
+        buffer.write("  </");
+        buffer.write(tagname);
+        buffer.write('>');
+        buffer.newLine();
+    }
+
     /**
      * Add the common part as the form of the tag as well as the XML attributes
      * id, action, user, and visible.
      */
     protected void addCommon(IPrimitive osm, String tagname) {
-        out.print("  <"+tagname);
+        buffer.write("  <");
+        buffer.write(tagname);
         if (osm.getUniqueId() != 0) {
-            out.print(" id='"+ osm.getUniqueId()+"'");
+            buffer.write(" id='");
+            buffer.appendLong(osm.getUniqueId());
+            buffer.write('\'');
         } else
             throw new IllegalStateException(tr("Unexpected id 0 for osm primitive found"));
         if (!osmConform) {
@@ -249,30 +413,45 @@ public class OsmWriter extends XmlWriter implements PrimitiveVisitor {
                 action = "modify";
             }
             if (action != null) {
-                out.print(" action='"+action+"'");
+                buffer.write(" action='");
+                buffer.write(action);
+                buffer.write('\'');
             }
         }
         if (!osm.isTimestampEmpty()) {
-            out.print(" timestamp='"+DateUtils.fromDate(osm.getTimestamp())+"'");
+            buffer.write(" timestamp='");
+            buffer.appendTimestamp(osm.getTimestamp());
+            buffer.write('\'');
         }
         // user and visible added with 0.4 API
         if (osm.getUser() != null) {
             if(osm.getUser().isLocalUser()) {
-                out.print(" user='"+XmlWriter.encode(osm.getUser().getName())+"'");
+                buffer.write(" user='");
+                buffer.appendEncoded(osm.getUser().getName());
+                buffer.write('\'');
             } else if (osm.getUser().isOsmUser()) {
                 // uid added with 0.6
-                out.print(" uid='"+ osm.getUser().getId()+"'");
-                out.print(" user='"+XmlWriter.encode(osm.getUser().getName())+"'");
+                buffer.write(" uid='");
+                buffer.appendLong(osm.getUser().getId());
+                buffer.write("' user='");
+                buffer.appendEncoded(osm.getUser().getName());
+                buffer.write('\'');
             }
         }
-        out.print(" visible='"+osm.isVisible()+"'");
+        buffer.write(osm.isVisible() ? " visible='true'" : " visible='false'");
         if (osm.getVersion() != 0) {
-            out.print(" version='"+osm.getVersion()+"'");
+            buffer.write(" version='");
+            buffer.appendLong(osm.getVersion());
+            buffer.write('\'');
         }
         if (this.changeset != null && this.changeset.getId() != 0) {
-            out.print(" changeset='"+this.changeset.getId()+"'" );
+            buffer.write(" changeset='");
+            buffer.appendLong(this.changeset.getId());
+            buffer.write('\'');
         } else if (osm.getChangesetId() > 0 && !osm.isNew()) {
-            out.print(" changeset='"+osm.getChangesetId()+"'" );
+            buffer.write(" changeset='");
+            buffer.appendLong(osm.getChangesetId());
+            buffer.write('\'');
         }
     }
 
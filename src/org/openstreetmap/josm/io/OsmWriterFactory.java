@@ -26,7 +26,16 @@ public class OsmWriterFactory {
         }
         return theFactory.createOsmWriterImpl(out, osmConform, version);
     }
+    public static OsmWriter createOsmWriter(XmlOutputBuffer out, boolean osmConform, String version) {
+        if (theFactory == null) {
+            theFactory = new OsmWriterFactory();
+        }
+        return theFactory.createOsmWriterImpl(out, osmConform, version);
+    }
     protected OsmWriter createOsmWriterImpl(PrintWriter out, boolean osmConform, String version) {
         return new OsmWriter(out, osmConform, version);
     }
+    protected OsmWriter createOsmWriterImpl(XmlOutputBuffer out, boolean osmConform, String version) {
+        return new OsmWriter(out, osmConform, version);
+    }
 }
@@ -0,0 +1,388 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.tools.bzip2.CBZip2InputStream;
+
+/**
+ * Decompresses bzip2 data using several threads.
+ *
+ * The blocks of a bzip2 stream are compressed independently, but they are not byte aligned and
+ * there is no index. This stream scans the compressed data for the 48 bit block magic, turns
+ * every block into a standalone single-block bzip2 stream and decompresses these streams
+ * concurrently with {@link CBZip2InputStream}. The output is delivered in the original order.
+ *
+ * The block magic may also occur by chance inside of the compressed data. The decompressed
+ * data of every block is verified against the block CRC. If a block cannot be decompressed,
+ * it is merged with the following one and decompressed again. An end of stream magic only
+ * ends a block, if the end of the input or the header of a concatenated stream follows.
+ *
+ * Concatenated bzip2 streams (as written by parallel compressors) are supported.
+ *
+ * Like {@link CBZip2InputStream}, this stream expects the first byte of the wrapped stream to be
+ * the one after the magic <tt>"BZ"</tt>.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long EOS_MAGIC = 0x177245385090L;
+    private static final long MAGIC_MASK = 0xffffffffffffL;
+    /** how often a block, that cannot be decompressed, is merged with the next one */
+    private static final int MAX_MERGES = 2;
+
+    private static final int[] CRC_TABLE = new int[256];
+    static {
+        for (int i=0; i<256; i++) {
+            int c = i << 24;
+            for (int j=0; j<8; j++) {
+                c = (c & 0x80000000) != 0 ? (c << 1) ^ 0x04c11db7 : c << 1;
+            }
+            CRC_TABLE[i] = c;
+        }
+    }
+
+    /**
+     * The bits of one compressed block, starting with the block magic.
+     */
+    private static class Piece {
+        final byte[] data;
+        final int bits;
+
+        Piece(byte[] data, int bits) {
+            this.data = data;
+            this.bits = bits;
+        }
+
+        int getStoredCRC() {
+            int crc = 0;
+            for (int i=6; i<10; i++) {
+                crc = (crc << 8) | (data[i] & 0xff);
+            }
+            return crc;
+        }
+
+        Piece append(Piece other) {
+            BitWriter w = new BitWriter(data.length + other.data.length);
+            w.append(data, 0, bits);
+            w.append(other.data, 0, other.bits);
+            return new Piece(w.toByteArray(), bits + other.bits);
+        }
+    }
+
+    private static class Task {
+        final Piece piece;
+        final Future<byte[]> result;
+
+        Task(Piece piece, Future<byte[]> result) {
+            this.piece = piece;
+            this.result = result;
+        }
+    }
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final ArrayDeque<Task> pending = new ArrayDeque<Task>();
+
+    /* state of the block scanner */
+    private byte[] buf = new byte[256 * 1024];
+    private int bufLen;
+    /** the next bit to scan, relative to buf */
+    private int scanBit;
+    /** start of the current block, relative to buf, or -1 */
+    private int pieceStart = -1;
+    private long window;
+    /** number of bits in window, negative values mean bits to skip before matching again */
+    private int windowBits;
+    private boolean inputEof;
+    private boolean scanEof;
+
+    /* state of the consumer */
+    private byte[] current = new byte[0];
+    private int pos;
+
+    /**
+     * Constructs a new stream.
+     * @param in the compressed stream, positioned after the magic <tt>"BZ"</tt>
+     * @param threads the number of decompressing threads
+     * @throws IOException if the header is malformed or an I/O error occurs
+     */
+    public ParallelBZip2InputStream(InputStream in, int threads) throws IOException {
+        this.in = in;
+        if (in.read() != 'h')
+            throw new IOException("Stream is not in the BZip2 format");
+        int blockSize = in.read();
+        if (blockSize < '1' || blockSize > '9')
+            throw new IOException("Stream is not BZip2 formatted: illegal blocksize " + (char) blockSize);
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "bzip2 decompressor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public ParallelBZip2InputStream(InputStream in) throws IOException {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    private boolean fillBuffer() throws IOException {
+        int keep = (pieceStart >= 0 ? pieceStart : scanBit) >> 3;
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, bufLen - keep);
+            bufLen -= keep;
+            scanBit -= keep * 8;
+            if (pieceStart >= 0) {
+                pieceStart -= keep * 8;
+            }
+        }
+        if (bufLen == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int read = in.read(buf, bufLen, buf.length - bufLen);
+        if (read == -1) {
+            inputEof = true;
+            return false;
+        }
+        bufLen += read;
+        return true;
+    }
+
+    private Piece createPiece(int start, int end) {
+        BitWriter w = new BitWriter((end - start) / 8 + 2);
+        w.append(buf, start, end - start);
+        return new Piece(w.toByteArray(), end - start);
+    }
+
+    /**
+     * Scans the input for the next complete block.
+     * @return the next block or null at the end of the input
+     */
+    private Piece nextPiece() throws IOException {
+        while (true) {
+            if (scanBit == bufLen * 8 && (inputEof || !fillBuffer())) {
+                if (pieceStart >= 0) {
+                    // truncated input, decompressing the rest will report it
+                    Piece p = createPiece(pieceStart, bufLen * 8);
+                    pieceStart = -1;
+                    return p;
+                }
+                return null;
+            }
+            int bit = (buf[scanBit >> 3] >> (7 - (scanBit & 7))) & 1;
+            scanBit++;
+            window = (window << 1) | bit;
+            if (++windowBits < 48) {
+                continue;
+            }
+            long magic = window & MAGIC_MASK;
+            if (magic != BLOCK_MAGIC && magic != EOS_MAGIC) {
+                continue;
+            }
+            int skip = 0;
+            if (magic == EOS_MAGIC) {
+                skip = getEndOfStreamLength();
+                if (skip < 0) {
+                    // found by chance, the bits belong to the current block
+                    continue;
+                }
+            }
+            int start = scanBit - 48;
+            Piece p = pieceStart >= 0 ? createPiece(pieceStart, start) : null;
+            if (magic == BLOCK_MAGIC) {
+                pieceStart = start;
+            } else {
+                pieceStart = -1;
+                windowBits = -skip;
+            }
+            if (p != null)
+                return p;
+        }
+    }
+
+    /**
+     * Makes sure, that the given number of bits after the scan position is in the buffer.
+     * @return false, if the input ends before
+     */
+    private boolean ensureBits(int bits) throws IOException {
+        while (bufLen * 8 - scanBit < bits) {
+            if (inputEof || !fillBuffer())
+                return false;
+        }
+        return true;
+    }
+
+    private long peekBits(int offset, int bits) {
+        long value = 0;
+        for (int i=scanBit + offset; i<scanBit + offset + bits; i++) {
+            value = (value << 1) | ((buf[i >> 3] >> (7 - (i & 7))) & 1);
+        }
+        return value;
+    }
+
+    /**
+     * Checks, whether the end of stream magic just scanned is a real one: it must be followed by the
+     * combined CRC, zero padding up to the next byte and either the end of the input or the header
+     * and the first magic of a concatenated stream. The end of stream magic may also occur by chance
+     * inside of the compressed data, like the block magic.
+     * @return the number of bits up to the first magic of the next stream, or -1 if the magic
+     * is not the end of the stream
+     */
+    private int getEndOfStreamLength() throws IOException {
+        int padding = (8 - ((scanBit + 32) & 7)) & 7;
+        int length = 32 + padding;
+        if (!ensureBits(length) || peekBits(32, padding) != 0)
+            return -1;
+        if (!ensureBits(length + 1))
+            return length;
+        if (!ensureBits(length + 32 + 48))
+            return -1;
+        long header = peekBits(length, 24);
+        int blockSize = (int) peekBits(length + 24, 8);
+        long magic = peekBits(length + 32, 48);
+        if (header != ('B' << 16 | 'Z' << 8 | 'h') || blockSize < '1' || blockSize > '9'
+                || (magic != BLOCK_MAGIC && magic != EOS_MAGIC))
+            return -1;
+        return length + 32;
+    }
+
+    private static int crc(byte[] data) {
+        int crc = 0xffffffff;
+        for (byte b : data) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xff];
+        }
+        return ~crc;
+    }
+
+    private static byte[] decompress(Piece piece) throws IOException {
+        BitWriter w = new BitWriter(piece.data.length + 16);
+        w.write(8, 'h');
+        w.write(8, '9');
+        w.append(piece.data, 0, piece.bits);
+        w.write(48, EOS_MAGIC);
+        // the combined CRC of a single block stream is the block CRC
+        w.write(32, piece.getStoredCRC() & 0xffffffffL);
+        byte[] result;
+        try {
+            CBZip2InputStream bzin = new CBZip2InputStream(new ByteArrayInputStream(w.toByteArray()));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * 1024);
+            byte[] b = new byte[64 * 1024];
+            int n;
+            while ((n = bzin.read(b, 0, b.length)) != -1) {
+                out.write(b, 0, n);
+            }
+            result = out.toByteArray();
+        } catch (RuntimeException e) {
+            throw new IOException(e);
+        }
+        if (crc(result) != piece.getStoredCRC())
+            throw new IOException("BZip2 CRC error");
+        return result;
+    }
+
+    private void submitPieces() throws IOException {
+        while (!scanEof && pending.size() < maxPending) {
+            final Piece p = nextPiece();
+            if (p == null) {
+                scanEof = true;
+                executor.shutdown();
+                break;
+            }
+            pending.add(new Task(p, executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return decompress(p);
+                }
+            })));
+        }
+    }
+
+    /**
+     * Retries a block, that couldn't be decompressed, merged with the following blocks,
+     * in case it was split at a block magic found by chance.
+     */
+    private byte[] recover(Task failed, Throwable cause) throws IOException {
+        Piece merged = failed.piece;
+        for (int i=0; i<MAX_MERGES; i++) {
+            submitPieces();
+            Task next = pending.poll();
+            if (next == null) {
+                break;
+            }
+            next.result.cancel(false);
+            merged = merged.append(next.piece);
+            try {
+                return decompress(merged);
+            } catch (IOException e) {
+                // try once more with the next block
+            }
+        }
+        if (cause instanceof IOException)
+            throw (IOException) cause;
+        throw new IOException(cause);
+    }
+
+    private boolean nextBlock() throws IOException {
+        do {
+            submitPieces();
+            Task task = pending.poll();
+            if (task == null)
+                return false;
+            try {
+                current = task.result.get();
+            } catch (ExecutionException e) {
+                current = recover(task, e.getCause());
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            pos = 0;
+        } while (current.length == 0);
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == current.length && !nextBlock())
+            return -1;
+        return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (pos == current.length && !nextBlock())
+            return -1;
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        pending.clear();
+        in.close();
+    }
+}
@@ -0,0 +1,219 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.tools.bzip2.CBZip2OutputStream;
+
+/**
+ * Compresses data to the bzip2 format using several threads.
+ *
+ * The data is split into chunks that fit into one bzip2 block. The chunks are compressed
+ * concurrently with {@link CBZip2OutputStream}, each into a single-block stream. The blocks
+ * are then cut out of these streams and joined, in the original order, into one standard bzip2
+ * stream with the combined CRC of all blocks. So the output can be read by any bzip2
+ * decompressor, including {@link org.apache.tools.bzip2.CBZip2InputStream}, which doesn't
+ * support concatenated streams by default.
+ *
+ * Like {@link CBZip2OutputStream}, this stream doesn't write the magic <tt>"BZ"</tt>,
+ * callers have to write it before.
+ */
+public class ParallelBZip2OutputStream extends OutputStream {
+
+    private static final long EOS_MAGIC = 0x177245385090L;
+    /** the block header of a stream written by {@link CBZip2OutputStream}: "h" and the block size */
+    private static final int HEADER_BITS = 16;
+
+    /**
+     * One compressed block, starting with the block magic.
+     */
+    private static class Block {
+        final byte[] data;
+        final int bits;
+        final int crc;
+
+        Block(byte[] data, int bits, int crc) {
+            this.data = data;
+            this.bits = bits;
+            this.crc = crc;
+        }
+    }
+
+    private final OutputStream out;
+    private final int blockSize;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final ArrayDeque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+    private final BitWriter bits = new BitWriter(1024 * 1024);
+    private int combinedCRC;
+    private boolean closed;
+
+    private byte[] chunk;
+    private int chunkLen;
+
+    /**
+     * Constructs a new stream.
+     * @param out the stream to write the compressed data to
+     * @param blockSize the block size, from 1 (100k) to 9 (900k)
+     * @param threads the number of compressing threads
+     * @throws IOException if an I/O error occurs
+     */
+    public ParallelBZip2OutputStream(OutputStream out, int blockSize, int threads) throws IOException {
+        if (blockSize < 1 || blockSize > 9)
+            throw new IllegalArgumentException("blockSize(" + blockSize + ") not in range 1..9");
+        this.out = out;
+        this.blockSize = blockSize;
+        /*
+         * The run length encoding of bzip2 may expand the data by 25 percent (runs of exactly
+         * four bytes). A chunk of that size is always compressed into exactly one block.
+         */
+        this.chunkSize = blockSize * 100000 * 4 / 5 - 100;
+        this.chunk = new byte[chunkSize];
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "bzip2 compressor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        bits.write(8, 'h');
+        bits.write(8, '0' + blockSize);
+    }
+
+    public ParallelBZip2OutputStream(OutputStream out) throws IOException {
+        this(out, 9, Runtime.getRuntime().availableProcessors());
+    }
+
+    private static Block compress(byte[] data, int len, int blockSize) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(len / 4 + 1024);
+        CBZip2OutputStream bzout = new CBZip2OutputStream(bout, blockSize);
+        bzout.write(data, 0, len);
+        bzout.close();
+        byte[] stream = bout.toByteArray();
+        int crc = 0;
+        for (int i=0; i<4; i++) {
+            crc = (crc << 8) | (stream[2 + 6 + i] & 0xff);
+        }
+        /*
+         * The stream ends with the end of stream magic, the combined CRC (which is the block
+         * CRC for single-block streams) and up to 7 bits padding.
+         */
+        int total = stream.length * 8;
+        for (int pad=0; pad<8; pad++) {
+            int eos = total - pad - 80;
+            if (readBits(stream, eos, 48) == EOS_MAGIC && (int) readBits(stream, eos + 48, 32) == crc
+                    && readBits(stream, total - pad, pad) == 0)
+                return new Block(stream, eos - HEADER_BITS, crc);
+        }
+        throw new IOException("Unexpected bzip2 block layout");
+    }
+
+    private static long readBits(byte[] data, int start, int count) {
+        long result = 0;
+        for (int p=start; p<start+count; p++) {
+            result = (result << 1) | ((data[p >> 3] >> (7 - (p & 7))) & 1);
+        }
+        return result;
+    }
+
+    private void submitChunk() throws IOException {
+        if (chunkLen == 0)
+            return;
+        final byte[] data = chunk;
+        final int len = chunkLen;
+        pending.add(executor.submit(new Callable<Block>() {
+            @Override
+            public Block call() throws IOException {
+                return compress(data, len, blockSize);
+            }
+        }));
+        chunk = new byte[chunkSize];
+        chunkLen = 0;
+        while (pending.size() > maxPending) {
+            writeBlock(pending.poll());
+        }
+    }
+
+    private void writeBlock(Future<Block> future) throws IOException {
+        Block block;
+        try {
+            block = future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        bits.append(block.data, HEADER_BITS, block.bits);
+        combinedCRC = (combinedCRC << 1) | (combinedCRC >>> 31);
+        combinedCRC ^= block.crc;
+        bits.flushTo(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (chunkLen == chunkSize) {
+            submitChunk();
+        }
+        chunk[chunkLen++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (chunkLen == chunkSize) {
+                submitChunk();
+            }
+            int n = Math.min(len, chunkSize - chunkLen);
+            System.arraycopy(b, off, chunk, chunkLen, n);
+            chunkLen += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the remaining blocks and the end of stream marker. Doesn't close the underlying stream.
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            submitChunk();
+            while (!pending.isEmpty()) {
+                writeBlock(pending.poll());
+            }
+            bits.write(48, EOS_MAGIC);
+            bits.write(32, combinedCRC & 0xffffffffL);
+            bits.pad();
+            bits.flushTo(out);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,517 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.CheckParameterUtil;
+
+/**
+ * Parser for the binary OSM PBF format (see <a href="http://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>).
+ *
+ * The file is a sequence of zlib compressed blocks of primitives with their own string tables.
+ * Nodes may be stored as "dense nodes" with delta coded ids and coordinates.
+ * The references between the primitives are resolved by {@link AbstractReader}.
+ * Files written without metadata have no versions, upload of their data is discouraged.
+ */
+public class PbfReader extends AbstractReader {
+
+    /** maximum sizes of the blob header and the blob, as recommended by the specification */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final Set<String> SUPPORTED_FEATURES = new HashSet<String>(Arrays.asList(
+            "OsmSchema-V0.6", "DenseNodes", "HistoricalInformation"));
+
+    /**
+     * Parameters of a primitive block needed to decode the primitives.
+     */
+    private static class Block {
+        String[] strings = new String[0];
+        long granularity = 100;
+        long latOffset;
+        long lonOffset;
+        long dateGranularity = 1000;
+
+        double lat(long value) {
+            return (latOffset + granularity * value) * 1e-9;
+        }
+
+        double lon(long value) {
+            return (lonOffset + granularity * value) * 1e-9;
+        }
+
+        String string(long index) throws IOException {
+            if (index < 0 || index >= strings.length)
+                throw new IOException(tr("Illegal string table index {0}.", index));
+            return strings[(int) index];
+        }
+    }
+
+    /** true, if a primitive with an id assigned by the server has no version */
+    private boolean missingVersion;
+
+    protected PbfReader() {
+    }
+
+    protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        if (progressMonitor == null) {
+            progressMonitor = NullProgressMonitor.INSTANCE;
+        }
+        CheckParameterUtil.ensureParameterNotNull(source, "source");
+        try {
+            progressMonitor.beginTask(tr("Prepare OSM data..."), 2);
+            progressMonitor.indeterminateSubTask(tr("Parsing OSM data..."));
+            ds.setVersion("0.6");
+            DataInputStream in = new DataInputStream(new BufferedInputStream(source));
+            while (true) {
+                int headerSize;
+                try {
+                    headerSize = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+                    throw new IllegalDataException(tr("Illegal size of blob header: {0}.", headerSize));
+                byte[] header = new byte[headerSize];
+                in.readFully(header);
+                String type = null;
+                long dataSize = 0;
+                ProtobufInput blobHeader = new ProtobufInput(header);
+                while (blobHeader.hasMore()) {
+                    int key = blobHeader.readKey();
+                    switch (ProtobufInput.fieldNumber(key)) {
+                    case 1: type = blobHeader.readString(); break;
+                    case 3: dataSize = blobHeader.readVarint(); break;
+                    default: blobHeader.skip(ProtobufInput.wireType(key));
+                    }
+                }
+                if (dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+                    throw new IllegalDataException(tr("Illegal size of blob: {0}.", dataSize));
+                byte[] blob = new byte[(int) dataSize];
+                in.readFully(blob);
+                if ("OSMHeader".equals(type)) {
+                    parseHeaderBlock(new ProtobufInput(decodeBlob(blob)));
+                } else if ("OSMData".equals(type)) {
+                    parsePrimitiveBlock(new ProtobufInput(decodeBlob(blob)));
+                } else {
+                    System.out.println(tr("Unknown blob type ''{0}'' found in input stream. Skipping.", type));
+                }
+            }
+            progressMonitor.worked(1);
+
+            if (missingVersion) {
+                // files written without metadata, the data cannot be uploaded
+                System.out.println(tr("WARNING: PBF file without version information. Upload is discouraged."));
+                ds.setUploadDiscouraged(true);
+            }
+
+            progressMonitor.indeterminateSubTask(tr("Preparing data set..."));
+            prepareDataSet();
+            progressMonitor.worked(1);
+
+            // iterate over registered postprocessors and give them each a chance
+            // to modify the dataset we have just loaded.
+            if (OsmReader.postprocessors != null) {
+                for (OsmServerReadPostprocessor pp : OsmReader.postprocessors) {
+                    pp.postprocessDataSet(getDataSet(), progressMonitor);
+                }
+            }
+            return getDataSet();
+        } catch (IllegalDataException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalDataException(e);
+        } finally {
+            progressMonitor.finishTask();
+        }
+    }
+
+    private static byte[] decodeBlob(byte[] blob) throws IOException, IllegalDataException {
+        ProtobufInput in = new ProtobufInput(blob);
+        byte[] raw = null;
+        byte[] zlib = null;
+        long rawSize = -1;
+        while (in.hasMore()) {
+            int key = in.readKey();
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1: raw = in.readBytes(); break;
+            case 2: rawSize = in.readVarint(); break;
+            case 3: zlib = in.readBytes(); break;
+            case 4:
+            case 5:
+                throw new IllegalDataException(tr("Unsupported compression in PBF file."));
+            default: in.skip(ProtobufInput.wireType(key));
+            }
+        }
+        if (raw != null)
+            return raw;
+        if (zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE)
+            throw new IllegalDataException(tr("Illegal blob in PBF file."));
+        Inflater inflater = new Inflater();
+        try {
+            byte[] result = new byte[(int) rawSize];
+            inflater.setInput(zlib);
+            int n = inflater.inflate(result);
+            if (n != rawSize || !inflater.finished())
+                throw new IllegalDataException(tr("Illegal blob in PBF file."));
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalDataException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void parseHeaderBlock(ProtobufInput in) throws IOException, IllegalDataException {
+        Bounds bounds = null;
+        String source = null;
+        String program = null;
+        while (in.hasMore()) {
+            int key = in.readKey();
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1:
+                bounds = parseHeaderBBox(in.readMessage());
+                break;
+            case 4:
+                String feature = in.readString();
+                if (!SUPPORTED_FEATURES.contains(feature))
+                    throw new IllegalDataException(tr("PBF file requires unsupported feature ''{0}''.", feature));
+                break;
+            case 16: program = in.readString(); break;
+            case 17: source = in.readString(); break;
+            default: in.skip(ProtobufInput.wireType(key));
+            }
+        }
+        if (bounds != null) {
+            ds.dataSources.add(new DataSource(bounds, source != null ? source : program));
+        }
+    }
+
+    private static Bounds parseHeaderBBox(ProtobufInput in) throws IOException {
+        long left = 0, right = 0, top = 0, bottom = 0;
+        while (in.hasMore()) {
+            int key = in.readKey();
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1: left = in.readSignedVarint(); break;
+            case 2: right = in.readSignedVarint(); break;
+            case 3: top = in.readSignedVarint(); break;
+            case 4: bottom = in.readSignedVarint(); break;
+            default: in.skip(ProtobufInput.wireType(key));
+            }
+        }
+        return new Bounds(bottom * 1e-9, left * 1e-9, top * 1e-9, right * 1e-9);
+    }
+
+    private void parsePrimitiveBlock(ProtobufInput in) throws IOException, IllegalDataException {
+        Block block = new Block();
+        List<ProtobufInput> groups = new ArrayList<ProtobufInput>();
+        while (in.hasMore()) {
+            int key = in.readKey();
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1: block.strings = parseStringTable(in.readMessage()); break;
+            case 2: groups.add(in.readMessage()); break;
+            case 17: block.granularity = in.readVarint(); break;
+            case 18: block.dateGranularity = in.readVarint(); break;
+            case 19: block.latOffset = in.readVarint(); break;
+            case 20: block.lonOffset = in.readVarint(); break;
+            default: in.skip(ProtobufInput.wireType(key));
+            }
+        }
+        for (ProtobufInput group : groups) {
+            while (group.hasMore()) {
+                int key = group.readKey();
+                switch (ProtobufInput.fieldNumber(key)) {
+                case 1: parseNode(group.readMessage(), block); break;
+                case 2: parseDenseNodes(group.readMessage(), block); break;
+                case 3: parseWay(group.readMessage(), block); break;
+                case 4: parseRelation(group.readMessage(), block); break;
+                default: group.skip(ProtobufInput.wireType(key));
+                }
+            }
+        }
+    }
+
+    private static String[] parseStringTable(ProtobufInput in) throws IOException {
+        List<String> strings = new ArrayList<String>();
+        while (in.hasMore()) {
+            int key = in.readKey();
+            if (ProtobufInput.fieldNumber(key) == 1) {
+                // most strings are keys and values, they are interned anyway
+                strings.add(in.readString().intern());
+            } else {
+                in.skip(ProtobufInput.wireType(key));
+            }
+        }
+        return strings.toArray(new String[strings.size()]);
+    }
+
+    private static User createUser(long uid, String name) {
+        if (uid > 0)
+            return User.createOsmUser(uid, name);
+        if (name != null && name.length() > 0)
+            return User.createLocalUser(name);
+        return null;
+    }
+
+    private static void setInfo(PrimitiveData data, long version, long timestamp, long changeset, long uid, String user, boolean visible, Block block) {
+        data.setVersion((int) Math.max(0, version));
+        if (timestamp != 0) {
+            data.setTimestamp(new Date(timestamp * block.dateGranularity));
+        }
+        data.setChangesetId((int) Math.max(0, changeset));
+        data.setUser(createUser(uid, user));
+        data.setVisible(visible);
+    }
+
+    private static void parseInfo(ProtobufInput in, PrimitiveData data, Block block) throws IOException {
+        long version = -1, timestamp = 0, changeset = 0, uid = 0;
+        String user = null;
+        boolean visible = true;
+        while (in.hasMore()) {
+            int key = in.readKey();
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1: version = in.readVarint(); break;
+            case 2: timestamp = in.readVarint(); break;
+            case 3: changeset = in.readVarint(); break;
+            case 4: uid = (int) in.readVarint(); break;
+            case 5: user = block.string(in.readVarint()); break;
+            case 6: visible = in.readVarint() != 0; break;
+            default: in.skip(ProtobufInput.wireType(key));
+            }
+        }
+        setInfo(data, version, timestamp, changeset, uid, user, visible, block);
+    }
+
+    /**
+     * Remembers primitives without version, as found in files written without metadata.
+     */
+    private void checkVersion(PrimitiveData data) {
+        if (data.getUniqueId() > 0 && data.getVersion() <= 0) {
+            missingVersion = true;
+        }
+    }
+
+    private static void setTags(PrimitiveData data, long[] keys, long[] values, Block block) throws IOException {
+        int count = keys == null ? 0 : (int) keys[0];
+        if (count != (values == null ? 0 : (int) values[0]))
+            throw new IOException(tr("Number of keys and values differ for primitive {0}.", data.getUniqueId()));
+        if (count == 0)
+            return;
+        Map<String, String> tags = new HashMap<String, String>();
+        for (int i=1; i<=count; i++) {
+            tags.put(block.string(keys[i]), block.string(values[i]));
+        }
+        data.setKeys(tags);
+    }
+
+    private void parseNode(ProtobufInput in, Block block) throws IOException {
+        NodeData nd = new NodeData();
+        long[] keys = null;
+        long[] values = null;
+        long lat = 0, lon = 0;
+        while (in.hasMore()) {
+            int key = in.readKey();
+            int wireType = ProtobufInput.wireType(key);
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1: nd.setId(in.readSignedVarint()); break;
+            case 2: keys = in.readRepeated(wireType, false, keys); break;
+            case 3: values = in.readRepeated(wireType, false, values); break;
+            case 4: parseInfo(in.readMessage(), nd, block); break;
+            case 8: lat = in.readSignedVarint(); break;
+            case 9: lon = in.readSignedVarint(); break;
+            default: in.skip(wireType);
+            }
+        }
+        nd.setCoor(new LatLon(block.lat(lat), block.lon(lon)));
+        setTags(nd, keys, values, block);
+        checkVersion(nd);
+        createNode(nd);
+    }
+
+    private void parseDenseNodes(ProtobufInput in, Block block) throws IOException {
+        long[] ids = null, lats = null, lons = null, keysVals = null;
+        long[] versions = null, timestamps = null, changesets = null, uids = null, users = null, visibles = null;
+        while (in.hasMore()) {
+            int key = in.readKey();
+            int wireType = ProtobufInput.wireType(key);
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1: ids = in.readRepeated(wireType, true, ids); break;
+            case 5:
+                ProtobufInput info = in.readMessage();
+                while (info.hasMore()) {
+                    int infoKey = info.readKey();
+                    int infoType = ProtobufInput.wireType(infoKey);
+                    switch (ProtobufInput.fieldNumber(infoKey)) {
+                    case 1: versions = info.readRepeated(infoType, false, versions); break;
+                    case 2: timestamps = info.readRepeated(infoType, true, timestamps); break;
+                    case 3: changesets = info.readRepeated(infoType, true, changesets); break;
+                    case 4: uids = info.readRepeated(infoType, true, uids); break;
+                    case 5: users = info.readRepeated(infoType, true, users); break;
+                    case 6: visibles = info.readRepeated(infoType, false, visibles); break;
+                    default: info.skip(infoType);
+                    }
+                }
+                break;
+            case 8: lats = in.readRepeated(wireType, true, lats); break;
+            case 9: lons = in.readRepeated(wireType, true, lons); break;
+            case 10: keysVals = in.readRepeated(wireType, false, keysVals); break;
+            default: in.skip(wireType);
+            }
+        }
+        if (ids == null)
+            return;
+        int count = (int) ids[0];
+        if (lats == null || lons == null || lats[0] != count || lons[0] != count)
+            throw new IOException(tr("Inconsistent dense nodes in PBF file."));
+        boolean hasInfo = versions != null && versions[0] == count;
+        long id = 0, lat = 0, lon = 0, timestamp = 0, changeset = 0, uid = 0, user = 0;
+        int kv = 1;
+        for (int i=1; i<=count; i++) {
+            id += ids[i];
+            lat += lats[i];
+            lon += lons[i];
+            NodeData nd = new NodeData();
+            nd.setId(id);
+            nd.setCoor(new LatLon(block.lat(lat), block.lon(lon)));
+            if (hasInfo) {
+                timestamp += timestamps != null ? timestamps[i] : 0;
+                changeset += changesets != null ? changesets[i] : 0;
+                uid += uids != null ? uids[i] : 0;
+                user += users != null ? users[i] : 0;
+                boolean visible = visibles == null || visibles[i] != 0;
+                setInfo(nd, versions[i], timestamp, changeset, uid, block.string(user), visible, block);
+            }
+            if (keysVals != null) {
+                Map<String, String> tags = null;
+                while (kv <= keysVals[0] && keysVals[kv] != 0) {
+                    if (kv + 1 > keysVals[0])
+                        throw new IOException(tr("Inconsistent dense nodes in PBF file."));
+                    if (tags == null) {
+                        tags = new HashMap<String, String>();
+                    }
+                    tags.put(block.string(keysVals[kv]), block.string(keysVals[kv + 1]));
+                    kv += 2;
+                }
+                kv++; // skip the delimiter
+                if (tags != null) {
+                    nd.setKeys(tags);
+                }
+            }
+            checkVersion(nd);
+            createNode(nd);
+        }
+    }
+
+    private void parseWay(ProtobufInput in, Block block) throws IOException {
+        WayData wd = new WayData();
+        long[] keys = null, values = null, refs = null;
+        while (in.hasMore()) {
+            int key = in.readKey();
+            int wireType = ProtobufInput.wireType(key);
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1: wd.setId(in.readVarint()); break;
+            case 2: keys = in.readRepeated(wireType, false, keys); break;
+            case 3: values = in.readRepeated(wireType, false, values); break;
+            case 4: parseInfo(in.readMessage(), wd, block); break;
+            case 8: refs = in.readRepeated(wireType, true, refs); break;
+            default: in.skip(wireType);
+            }
+        }
+        setTags(wd, keys, values, block);
+        if (refs != null) {
+            List<Long> nodeIds = new ArrayList<Long>((int) refs[0]);
+            long ref = 0;
+            for (int i=1; i<=refs[0]; i++) {
+                ref += refs[i];
+                nodeIds.add(ref);
+            }
+            wd.setNodes(nodeIds);
+        }
+        checkVersion(wd);
+        createWay(wd);
+    }
+
+    private void parseRelation(ProtobufInput in, Block block) throws IOException {
+        RelationData rd = new RelationData();
+        long[] keys = null, values = null, roles = null, memberIds = null, types = null;
+        while (in.hasMore()) {
+            int key = in.readKey();
+            int wireType = ProtobufInput.wireType(key);
+            switch (ProtobufInput.fieldNumber(key)) {
+            case 1: rd.setId(in.readVarint()); break;
+            case 2: keys = in.readRepeated(wireType, false, keys); break;
+            case 3: values = in.readRepeated(wireType, false, values); break;
+            case 4: parseInfo(in.readMessage(), rd, block); break;
+            case 8: roles = in.readRepeated(wireType, false, roles); break;
+            case 9: memberIds = in.readRepeated(wireType, true, memberIds); break;
+            case 10: types = in.readRepeated(wireType, false, types); break;
+            default: in.skip(wireType);
+            }
+        }
+        setTags(rd, keys, values, block);
+        if (memberIds != null) {
+            int count = (int) memberIds[0];
+            if (roles == null || types == null || roles[0] != count || types[0] != count)
+                throw new IOException(tr("Inconsistent members of relation {0} in PBF file.", rd.getUniqueId()));
+            List<RelationMemberData> members = new ArrayList<RelationMemberData>(count);
+            long memberId = 0;
+            for (int i=1; i<=count; i++) {
+                memberId += memberIds[i];
+                OsmPrimitiveType type;
+                switch ((int) types[i]) {
+                case 0: type = OsmPrimitiveType.NODE; break;
+                case 1: type = OsmPrimitiveType.WAY; break;
+                case 2: type = OsmPrimitiveType.RELATION; break;
+                default: throw new IOException(tr("Illegal member type {0} in relation {1}.", types[i], rd.getUniqueId()));
+                }
+                members.add(new RelationMemberData(block.string(roles[i]), type, memberId));
+            }
+            rd.setMembers(members);
+        }
+        checkVersion(rd);
+        createRelation(rd);
+    }
+
+    /**
+     * Parse the given input source and return the dataset.
+     *
+     * @param source the source input stream. Must not be null.
+     * @param progressMonitor  the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     *
+     * @return the dataset with the parsed data
+     * @throws IllegalDataException thrown if the an error was found while parsing the data from the source
+     * @throws IllegalArgumentException thrown if source is null
+     */
+    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return new PbfReader().doParseDataSet(source, progressMonitor);
+    }
+}
@@ -0,0 +1,360 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Writes a dataset in the binary OSM PBF format (see <a href="http://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>).
+ *
+ * Nodes are written as dense nodes, the primitives are sorted by type and id. The format has
+ * no notion of local modifications, so only datasets without them can be written, see
+ * {@link #canWrite(DataSet)}. Incomplete primitives are not written.
+ */
+public class PbfWriter {
+
+    private static final int BLOCK_SIZE = 8000;
+    private static final int GRANULARITY = 100;
+    private static final int DATE_GRANULARITY = 1000;
+
+    private final DataOutputStream out;
+
+    /**
+     * String table of the current primitive block. Index 0 is reserved.
+     */
+    private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+    private final List<String> strings = new ArrayList<String>();
+
+    public PbfWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * Determines if a dataset can be written without losing data. New, modified and deleted
+     * primitives cannot be represented in the format. Primitives without version, as read from
+     * files without metadata, are written with version 0 and read back the same way.
+     * @param ds the dataset
+     * @return true, if the dataset can be written
+     */
+    public static boolean canWrite(DataSet ds) {
+        for (OsmPrimitive osm : ds.allPrimitives()) {
+            if (!osm.isIncomplete() && (osm.isNew() || osm.isModified() || osm.isDeleted()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the header and all primitives of a dataset.
+     * @param ds the dataset
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the dataset has local changes, see {@link #canWrite(DataSet)}
+     */
+    public void writeData(DataSet ds) throws IOException {
+        if (!canWrite(ds))
+            throw new IllegalArgumentException("Dataset with local changes cannot be written in the PBF format");
+        writeHeader(ds);
+        List<Node> nodes = sortById(ds.getNodes());
+        for (int i=0; i<nodes.size(); i+=BLOCK_SIZE) {
+            writeDenseNodes(nodes.subList(i, Math.min(nodes.size(), i + BLOCK_SIZE)));
+        }
+        List<Way> ways = sortById(ds.getWays());
+        for (int i=0; i<ways.size(); i+=BLOCK_SIZE) {
+            writeWays(ways.subList(i, Math.min(ways.size(), i + BLOCK_SIZE)));
+        }
+        List<Relation> relations = sortById(ds.getRelations());
+        for (int i=0; i<relations.size(); i+=BLOCK_SIZE) {
+            writeRelations(relations.subList(i, Math.min(relations.size(), i + BLOCK_SIZE)));
+        }
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static boolean shouldWrite(OsmPrimitive osm) {
+        return !osm.isDeleted() && !osm.isIncomplete();
+    }
+
+    private static <T extends OsmPrimitive> List<T> sortById(Collection<T> primitives) {
+        List<T> result = new ArrayList<T>(primitives.size());
+        for (T osm : primitives) {
+            if (shouldWrite(osm) && (!(osm instanceof Node) || ((Node) osm).getCoor() != null)) {
+                result.add(osm);
+            }
+        }
+        Collections.sort(result, OsmWriter.byIdComparator);
+        return result;
+    }
+
+    private void writeHeader(DataSet ds) throws IOException {
+        ProtobufOutput header = new ProtobufOutput();
+        Bounds bounds = null;
+        for (DataSource s : ds.dataSources) {
+            if (bounds == null) {
+                bounds = new Bounds(s.bounds);
+            } else {
+                bounds.extend(s.bounds);
+            }
+        }
+        if (bounds != null) {
+            ProtobufOutput bbox = new ProtobufOutput();
+            bbox.writeSignedVarint(1, toNano(bounds.getMin().lon()));
+            bbox.writeSignedVarint(2, toNano(bounds.getMax().lon()));
+            bbox.writeSignedVarint(3, toNano(bounds.getMax().lat()));
+            bbox.writeSignedVarint(4, toNano(bounds.getMin().lat()));
+            header.writeMessage(1, bbox);
+        }
+        header.writeString(4, "OsmSchema-V0.6");
+        header.writeString(4, "DenseNodes");
+        header.writeString(5, "Sort.Type_then_ID");
+        header.writeString(16, "JOSM");
+        writeBlob("OSMHeader", header);
+    }
+
+    private static long toNano(double degrees) {
+        return Math.round(degrees * 1e9);
+    }
+
+    private int string(String s) {
+        if (s == null)
+            return 0;
+        Integer index = stringIndex.get(s);
+        if (index == null) {
+            index = strings.size();
+            strings.add(s);
+            stringIndex.put(s, index);
+        }
+        return index;
+    }
+
+    private void resetStrings() {
+        stringIndex.clear();
+        strings.clear();
+        strings.add("");
+        stringIndex.put("", 0);
+    }
+
+    private void writeBlob(String type, ProtobufOutput data) throws IOException {
+        byte[] raw = data.toByteArray();
+        Deflater deflater = new Deflater();
+        byte[] compressed;
+        int compressedSize;
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            compressed = new byte[raw.length + raw.length / 100 + 64];
+            compressedSize = 0;
+            while (!deflater.finished()) {
+                if (compressedSize == compressed.length) {
+                    byte[] grown = new byte[compressed.length * 2];
+                    System.arraycopy(compressed, 0, grown, 0, compressedSize);
+                    compressed = grown;
+                }
+                compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+            }
+        } finally {
+            deflater.end();
+        }
+        ProtobufOutput blob = new ProtobufOutput(compressedSize + 16);
+        blob.writeVarint(2, raw.length);
+        blob.writeBytes(3, compressed, 0, compressedSize);
+
+        ProtobufOutput header = new ProtobufOutput();
+        header.writeString(1, type);
+        header.writeVarint(3, blob.size());
+
+        out.writeInt(header.size());
+        header.writeTo(out);
+        blob.writeTo(out);
+    }
+
+    private void writeInfo(ProtobufOutput info, OsmPrimitive osm) {
+        info.writeVarint(1, osm.getVersion());
+        if (osm.getTimestamp() != null) {
+            info.writeVarint(2, osm.getTimestamp().getTime() / DATE_GRANULARITY);
+        }
+        info.writeVarint(3, osm.getChangesetId());
+        User user = osm.getUser();
+        if (user != null) {
+            info.writeVarint(4, (int) user.getId());
+            info.writeVarint(5, string(user.getName()));
+        }
+    }
+
+    private void writeTags(ProtobufOutput message, OsmPrimitive osm) {
+        if (!osm.hasKeys())
+            return;
+        ProtobufOutput keys = new ProtobufOutput();
+        ProtobufOutput values = new ProtobufOutput();
+        for (Map.Entry<String, String> e : osm.getKeys().entrySet()) {
+            keys.writeVarint(string(e.getKey()));
+            values.writeVarint(string(e.getValue()));
+        }
+        message.writeMessage(2, keys);
+        message.writeMessage(3, values);
+    }
+
+    private void writeDenseNodes(List<Node> nodes) throws IOException {
+        resetStrings();
+        ProtobufOutput ids = new ProtobufOutput(nodes.size() * 3);
+        ProtobufOutput lats = new ProtobufOutput(nodes.size() * 4);
+        ProtobufOutput lons = new ProtobufOutput(nodes.size() * 4);
+        ProtobufOutput keysVals = new ProtobufOutput(nodes.size());
+        ProtobufOutput versions = new ProtobufOutput(nodes.size());
+        ProtobufOutput timestamps = new ProtobufOutput(nodes.size() * 2);
+        ProtobufOutput changesets = new ProtobufOutput(nodes.size() * 2);
+        ProtobufOutput uids = new ProtobufOutput(nodes.size());
+        ProtobufOutput users = new ProtobufOutput(nodes.size());
+        long lastId = 0, lastLat = 0, lastLon = 0, lastTimestamp = 0, lastChangeset = 0, lastUid = 0, lastUser = 0;
+        for (Node n : nodes) {
+            LatLon coor = n.getCoor();
+            long lat = Math.round(coor.lat() * 1e9 / GRANULARITY);
+            long lon = Math.round(coor.lon() * 1e9 / GRANULARITY);
+            ids.writeSignedVarint(n.getUniqueId() - lastId);
+            lats.writeSignedVarint(lat - lastLat);
+            lons.writeSignedVarint(lon - lastLon);
+            lastId = n.getUniqueId();
+            lastLat = lat;
+            lastLon = lon;
+
+            versions.writeVarint(n.getVersion());
+            long timestamp = n.getTimestamp() == null ? 0 : n.getTimestamp().getTime() / DATE_GRANULARITY;
+            timestamps.writeSignedVarint(timestamp - lastTimestamp);
+            lastTimestamp = timestamp;
+            changesets.writeSignedVarint(n.getChangesetId() - lastChangeset);
+            lastChangeset = n.getChangesetId();
+            User user = n.getUser();
+            long uid = user == null ? 0 : (int) user.getId();
+            long userSid = user == null ? 0 : string(user.getName());
+            uids.writeSignedVarint(uid - lastUid);
+            users.writeSignedVarint(userSid - lastUser);
+            lastUid = uid;
+            lastUser = userSid;
+
+            if (n.hasKeys()) {
+                for (Map.Entry<String, String> e : n.getKeys().entrySet()) {
+                    keysVals.writeVarint(string(e.getKey()));
+                    keysVals.writeVarint(string(e.getValue()));
+                }
+            }
+            keysVals.writeVarint(0);
+        }
+        ProtobufOutput info = new ProtobufOutput();
+        info.writeMessage(1, versions);
+        info.writeMessage(2, timestamps);
+        info.writeMessage(3, changesets);
+        info.writeMessage(4, uids);
+        info.writeMessage(5, users);
+
+        ProtobufOutput dense = new ProtobufOutput(ids.size() + lats.size() + lons.size() + keysVals.size() + info.size() + 32);
+        dense.writeMessage(1, ids);
+        dense.writeMessage(5, info);
+        dense.writeMessage(8, lats);
+        dense.writeMessage(9, lons);
+        dense.writeMessage(10, keysVals);
+        ProtobufOutput group = new ProtobufOutput(dense.size() + 16);
+        group.writeMessage(2, dense);
+        writeGroup(group);
+    }
+
+    private void writeWays(List<Way> ways) throws IOException {
+        resetStrings();
+        ProtobufOutput group = new ProtobufOutput();
+        ProtobufOutput way = new ProtobufOutput();
+        ProtobufOutput info = new ProtobufOutput();
+        ProtobufOutput refs = new ProtobufOutput();
+        for (Way w : ways) {
+            way.clear();
+            info.clear();
+            refs.clear();
+            way.writeVarint(1, w.getUniqueId());
+            writeTags(way, w);
+            writeInfo(info, w);
+            way.writeMessage(4, info);
+            long last = 0;
+            for (int i=0; i<w.getNodesCount(); i++) {
+                long id = w.getNodeId(i);
+                refs.writeSignedVarint(id - last);
+                last = id;
+            }
+            way.writeMessage(8, refs);
+            group.writeMessage(3, way);
+        }
+        writeGroup(group);
+    }
+
+    private void writeRelations(List<Relation> relations) throws IOException {
+        resetStrings();
+        ProtobufOutput group = new ProtobufOutput();
+        ProtobufOutput relation = new ProtobufOutput();
+        ProtobufOutput info = new ProtobufOutput();
+        ProtobufOutput roles = new ProtobufOutput();
+        ProtobufOutput memberIds = new ProtobufOutput();
+        ProtobufOutput types = new ProtobufOutput();
+        for (Relation r : relations) {
+            relation.clear();
+            info.clear();
+            roles.clear();
+            memberIds.clear();
+            types.clear();
+            relation.writeVarint(1, r.getUniqueId());
+            writeTags(relation, r);
+            writeInfo(info, r);
+            relation.writeMessage(4, info);
+            long last = 0;
+            for (RelationMember m : r.getMembers()) {
+                roles.writeVarint(string(m.getRole()));
+                long id = m.getUniqueId();
+                memberIds.writeSignedVarint(id - last);
+                last = id;
+                switch (m.getType()) {
+                case NODE: types.writeVarint(0); break;
+                case WAY: types.writeVarint(1); break;
+                default: types.writeVarint(2); break;
+                }
+            }
+            relation.writeMessage(8, roles);
+            relation.writeMessage(9, memberIds);
+            relation.writeMessage(10, types);
+            group.writeMessage(4, relation);
+        }
+        writeGroup(group);
+    }
+
+    /**
+     * Writes a primitive group, that already contains the group fields.
+     */
+    private void writeGroup(ProtobufOutput groupContent) throws IOException {
+        ProtobufOutput stringTable = new ProtobufOutput();
+        for (String s : strings) {
+            stringTable.writeString(1, s);
+        }
+        ProtobufOutput block = new ProtobufOutput(groupContent.size() + stringTable.size() + 32);
+        block.writeMessage(1, stringTable);
+        block.writeMessage(2, groupContent);
+        block.writeVarint(17, GRANULARITY);
+        block.writeVarint(18, DATE_GRANULARITY);
+        writeBlob("OSMData", block);
+    }
+}
@@ -0,0 +1,196 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.CheckParameterUtil;
+
+/**
+ * OSM reader that splits loading a file into three stages running on different threads:
+ * <ol>
+ * <li>reading (and decompressing) the input, see {@link ReadAheadInputStream},</li>
+ * <li>XML parsing into transport objects, see {@link OsmReader#parseStream(InputStream, OsmPrimitiveSink, NodeLocationStore, ProgressMonitor)},</li>
+ * <li>creating the primitives and resolving their references, on the calling thread.</li>
+ * </ol>
+ * The stages are connected by bounded queues of batches, so memory usage is about the same as
+ * for {@link OsmReader}. The resulting dataset is the same, too.
+ */
+public class PipelinedOsmReader extends OsmReader {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int MAX_BATCHES = 16;
+    private static final List<PrimitiveData> END = Collections.emptyList();
+
+    private final BlockingQueue<List<PrimitiveData>> batches = new ArrayBlockingQueue<List<PrimitiveData>>(MAX_BATCHES);
+    private volatile Throwable parserError;
+    private volatile boolean aborted;
+
+    /**
+     * Collects the parsed transport objects into batches for the construction stage.
+     */
+    private class BatchingSink implements OsmPrimitiveSink {
+        private List<PrimitiveData> batch = new ArrayList<PrimitiveData>(BATCH_SIZE);
+
+        @Override
+        public void addDataSource(DataSource source) {
+            // only the parser thread touches the dataset until it has finished
+            ds.dataSources.add(source);
+        }
+
+        @Override
+        public void addNode(NodeData node) {
+            add(node);
+        }
+
+        @Override
+        public void addWay(WayData way, List<LatLon> coordinates) {
+            add(way);
+        }
+
+        @Override
+        public void addRelation(RelationData relation) {
+            add(relation);
+        }
+
+        private void add(PrimitiveData data) {
+            batch.add(data);
+            if (batch.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                put(batch);
+                batch = new ArrayList<PrimitiveData>(BATCH_SIZE);
+            }
+        }
+    }
+
+    protected PipelinedOsmReader() {
+    }
+
+    private void put(List<PrimitiveData> batch) {
+        try {
+            batches.put(batch);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void parseInBackground(final InputStream source, final BatchingSink sink) {
+        try {
+            doParseStream(source, sink, null, NullProgressMonitor.INSTANCE);
+            sink.flush();
+        } catch (Throwable t) {
+            if (!aborted) {
+                parserError = t;
+            }
+        } finally {
+            if (!aborted) {
+                put(END);
+            }
+        }
+    }
+
+    protected DataSet doParseDataSetPipelined(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        if (progressMonitor == null) {
+            progressMonitor = NullProgressMonitor.INSTANCE;
+        }
+        CheckParameterUtil.ensureParameterNotNull(source, "source");
+        final InputStream in = new ReadAheadInputStream(source, "OSM reader");
+        final BatchingSink sink = new BatchingSink();
+        Thread parserThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                parseInBackground(in, sink);
+            }
+        }, "OSM parser");
+        parserThread.setDaemon(true);
+        try {
+            progressMonitor.beginTask(tr("Prepare OSM data..."), 2);
+            progressMonitor.indeterminateSubTask(tr("Parsing OSM data..."));
+            parserThread.start();
+            while (true) {
+                List<PrimitiveData> batch = batches.take();
+                if (batch == END) {
+                    break;
+                }
+                for (PrimitiveData data : batch) {
+                    if (data instanceof NodeData) {
+                        createNode((NodeData) data);
+                    } else if (data instanceof WayData) {
+                        createWay((WayData) data);
+                    } else {
+                        createRelation((RelationData) data);
+                    }
+                }
+            }
+            parserThread.join();
+            if (parserError instanceof IllegalDataException)
+                throw (IllegalDataException) parserError;
+            else if (parserError != null)
+                throw new IllegalDataException(parserError);
+            progressMonitor.worked(1);
+            return finishDataSet(progressMonitor);
+        } catch (IllegalDataException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalDataException(e);
+        } finally {
+            if (parserThread.isAlive()) {
+                aborted = true;
+                parserThread.interrupt();
+                batches.clear();
+            }
+            try {
+                // stops reading ahead, if the input continues after the end of the document
+                in.close();
+            } catch (Exception e) {
+                // ignore
+            }
+            progressMonitor.finishTask();
+        }
+    }
+
+    /**
+     * Replies true, if files should be loaded with the pipelined reader. That is the case on
+     * multi-core machines, unless disabled with the preference <code>osm.reader.pipelined</code>.
+     * @return true, if files should be loaded with the pipelined reader
+     */
+    public static boolean isEnabled() {
+        return Runtime.getRuntime().availableProcessors() > 1
+                && (Main.pref == null || Main.pref.getBoolean("osm.reader.pipelined", true));
+    }
+
+    /**
+     * Parse the given input source and return the dataset.
+     *
+     * @param source the source input stream. Must not be null.
+     * @param progressMonitor  the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     *
+     * @return the dataset with the parsed data
+     * @throws IllegalDataException thrown if the an error was found while parsing the data from the source
+     * @throws IllegalArgumentException thrown if source is null
+     */
+    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return new PipelinedOsmReader().doParseDataSetPipelined(source, progressMonitor);
+    }
+}
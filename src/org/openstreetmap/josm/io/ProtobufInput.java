@@ -0,0 +1,157 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Minimal reader for the protocol buffers wire format, as used by the OSM PBF format.
+ */
+final class ProtobufInput {
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private final byte[] buf;
+    private int pos;
+    private final int limit;
+
+    ProtobufInput(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    ProtobufInput(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    boolean hasMore() {
+        return pos < limit;
+    }
+
+    /**
+     * Reads a field key.
+     * @return the key, use {@link #fieldNumber(int)} and {@link #wireType(int)} to decode it
+     */
+    int readKey() throws IOException {
+        return (int) readVarint();
+    }
+
+    static int fieldNumber(int key) {
+        return key >>> 3;
+    }
+
+    static int wireType(int key) {
+        return key & 7;
+    }
+
+    long readVarint() throws IOException {
+        long result = 0;
+        for (int shift=0; shift<64; shift+=7) {
+            if (pos >= limit)
+                throw new IOException("Truncated protobuf message");
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0)
+                return result;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a zigzag encoded signed varint (<code>sint32</code>, <code>sint64</code>).
+     */
+    long readSignedVarint() throws IOException {
+        long v = readVarint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Reads a length delimited field as embedded message. The message shares the buffer.
+     */
+    ProtobufInput readMessage() throws IOException {
+        int length = readLength();
+        ProtobufInput result = new ProtobufInput(buf, pos, length);
+        pos += length;
+        return result;
+    }
+
+    byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] result = new byte[length];
+        System.arraycopy(buf, pos, result, 0, length);
+        pos += length;
+        return result;
+    }
+
+    String readString() throws IOException {
+        int length = readLength();
+        try {
+            String result = new String(buf, pos, length, "UTF-8");
+            pos += length;
+            return result;
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private int readLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > limit - pos)
+            throw new IOException("Truncated protobuf message");
+        return (int) length;
+    }
+
+    /**
+     * Reads the values of a repeated varint field. Both the packed and the unpacked encoding
+     * are accepted.
+     * @param wireType the wire type of the field
+     * @param signed true for zigzag encoded values
+     * @param values the array to append to, may be null
+     * @return the array with the values appended, the first element holds the number of values
+     */
+    long[] readRepeated(int wireType, boolean signed, long[] values) throws IOException {
+        if (values == null) {
+            values = new long[16];
+        }
+        if (wireType == LENGTH_DELIMITED) {
+            ProtobufInput packed = readMessage();
+            while (packed.hasMore()) {
+                values = append(values, signed ? packed.readSignedVarint() : packed.readVarint());
+            }
+        } else {
+            values = append(values, signed ? readSignedVarint() : readVarint());
+        }
+        return values;
+    }
+
+    private static long[] append(long[] values, long value) {
+        int size = (int) values[0] + 1;
+        if (size == values.length) {
+            long[] grown = new long[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, values.length);
+            values = grown;
+        }
+        values[size] = value;
+        values[0] = size;
+        return values;
+    }
+
+    void skip(int wireType) throws IOException {
+        switch (wireType) {
+        case VARINT: readVarint(); break;
+        case FIXED64: pos += 8; break;
+        case LENGTH_DELIMITED:
+            int length = readLength();
+            pos += length;
+            break;
+        case FIXED32: pos += 4; break;
+        default: throw new IOException("Unsupported protobuf wire type " + wireType);
+        }
+        if (pos > limit)
+            throw new IOException("Truncated protobuf message");
+    }
+}
@@ -0,0 +1,102 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Minimal writer for the protocol buffers wire format, as used by the OSM PBF format.
+ * Embedded messages and packed fields are written into a separate instance first and
+ * then appended with {@link #writeMessage(int, ProtobufOutput)}.
+ */
+final class ProtobufOutput {
+
+    private byte[] buf;
+    private int len;
+
+    ProtobufOutput() {
+        this(256);
+    }
+
+    ProtobufOutput(int capacity) {
+        buf = new byte[capacity];
+    }
+
+    private void ensureCapacity(int n) {
+        if (len + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+        }
+    }
+
+    int size() {
+        return len;
+    }
+
+    void clear() {
+        len = 0;
+    }
+
+    void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            buf[len++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buf[len++] = (byte) value;
+    }
+
+    /**
+     * Writes a zigzag encoded signed varint (<code>sint32</code>, <code>sint64</code>).
+     */
+    void writeSignedVarint(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeKey(int field, int wireType) {
+        writeVarint((field << 3) | wireType);
+    }
+
+    void writeVarint(int field, long value) {
+        writeKey(field, ProtobufInput.VARINT);
+        writeVarint(value);
+    }
+
+    void writeSignedVarint(int field, long value) {
+        writeKey(field, ProtobufInput.VARINT);
+        writeSignedVarint(value);
+    }
+
+    void writeBytes(int field, byte[] data, int offset, int length) {
+        writeKey(field, ProtobufInput.LENGTH_DELIMITED);
+        writeVarint(length);
+        ensureCapacity(length);
+        System.arraycopy(data, offset, buf, len, length);
+        len += length;
+    }
+
+    void writeString(int field, String value) {
+        try {
+            byte[] data = value.getBytes("UTF-8");
+            writeBytes(field, data, 0, data.length);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes an embedded message or the content of a packed field.
+     */
+    void writeMessage(int field, ProtobufOutput message) {
+        writeBytes(field, message.buf, 0, message.len);
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, len);
+    }
+}
@@ -0,0 +1,147 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another input stream on a background thread.
+ *
+ * The data is read in chunks, which are handed over through a bounded queue. If the wrapped
+ * stream is expensive to read (decompression), that work runs in parallel to the consumer of
+ * this stream (XML parsing).
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final byte[] EOF = new byte[0];
+
+    private final InputStream in;
+    /** contains byte[] chunks, {@link #EOF} or the IOException thrown by the wrapped stream */
+    private final BlockingQueue<Object> chunks;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private byte[] current = new byte[0];
+    private int pos;
+    private boolean eof;
+
+    /**
+     * Constructs a new stream and starts reading the wrapped stream.
+     * @param in the stream to read
+     * @param name the name of the reader thread
+     * @param maxChunks the maximum number of chunks read ahead
+     */
+    public ReadAheadInputStream(InputStream in, String name, int maxChunks) {
+        this.in = in;
+        this.chunks = new ArrayBlockingQueue<Object>(maxChunks);
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        }, name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public ReadAheadInputStream(InputStream in, String name) {
+        this(in, name, 16);
+    }
+
+    private void readAhead() {
+        try {
+            while (!closed) {
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int len = 0;
+                while (len < CHUNK_SIZE) {
+                    int read = in.read(chunk, len, CHUNK_SIZE - len);
+                    if (read == -1) {
+                        break;
+                    }
+                    len += read;
+                }
+                if (len > 0) {
+                    chunks.put(len == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, len));
+                }
+                if (len < CHUNK_SIZE) {
+                    chunks.put(EOF);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(new IOException(e));
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void fail(IOException e) {
+        if (!closed) {
+            try {
+                chunks.put(e);
+            } catch (InterruptedException ignore) {
+                // closed
+            }
+        }
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (eof)
+            return false;
+        Object next;
+        try {
+            next = chunks.take();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        if (next instanceof IOException) {
+            eof = true;
+            throw (IOException) next;
+        } else if (next == EOF) {
+            eof = true;
+            return false;
+        }
+        current = (byte[]) next;
+        pos = 0;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == current.length && !nextChunk())
+            return -1;
+        return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (pos == current.length && !nextChunk())
+            return -1;
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        chunks.clear();
+        in.close();
+    }
+}
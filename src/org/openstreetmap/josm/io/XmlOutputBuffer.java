@@ -0,0 +1,413 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
+
+import org.openstreetmap.josm.tools.DateUtils;
+
+/**
+ * A reusable output buffer for xml writers.
+ *
+ * Text, numbers and escaped attribute values are appended directly to an internal character array,
+ * without creating temporary strings. The buffered characters are either passed on to a {@link Writer}
+ * or encoded as UTF-8 into a reusable byte buffer, which is written to an {@link OutputStream} or to
+ * a {@link WritableByteChannel} (like a {@link java.nio.channels.FileChannel}). A buffer without target
+ * keeps everything in memory, until it is {@link #writeTo(XmlOutputBuffer) written to another buffer}.
+ *
+ * Like {@link java.io.PrintWriter}, the append methods don't throw I/O exceptions. The first error is
+ * remembered and thrown again by {@link #flush()}, {@link #close()} and {@link #checkError()}.
+ */
+public class XmlOutputBuffer extends Writer {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final int CAPACITY = 32 * 1024;
+    /** 1900-01-01 and 10000-01-01, the range of timestamps handled by {@link #appendTimestamp(Date)} */
+    private static final long MIN_FAST_TIMESTAMP = -2208988800000L;
+    private static final long MAX_FAST_TIMESTAMP = 253402300800000L;
+
+    private final Writer writer;
+    private final OutputStream stream;
+    private final WritableByteChannel channel;
+
+    private char[] chars = new char[CAPACITY];
+    private int len;
+
+    private byte[] bytes;
+    private ByteBuffer byteBuffer;
+
+    private IOException error;
+    private boolean closed;
+
+    /**
+     * Constructs a buffer that keeps all characters in memory.
+     */
+    public XmlOutputBuffer() {
+        this(null, null, null);
+    }
+
+    /**
+     * Constructs a buffer that passes the characters on to a writer.
+     * @param writer the writer
+     */
+    public XmlOutputBuffer(Writer writer) {
+        this(writer, null, null);
+    }
+
+    /**
+     * Constructs a buffer that writes UTF-8 encoded data to a stream.
+     * @param stream the stream
+     */
+    public XmlOutputBuffer(OutputStream stream) {
+        this(null, stream, null);
+    }
+
+    /**
+     * Constructs a buffer that writes UTF-8 encoded data to a channel.
+     * @param channel the channel, for instance the one of a {@link java.io.FileOutputStream}
+     */
+    public XmlOutputBuffer(WritableByteChannel channel) {
+        this(null, null, channel);
+    }
+
+    private XmlOutputBuffer(Writer writer, OutputStream stream, WritableByteChannel channel) {
+        this.writer = writer;
+        this.stream = stream;
+        this.channel = channel;
+        if (stream != null || channel != null) {
+            bytes = new byte[CAPACITY * 3];
+            byteBuffer = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (len + n <= chars.length)
+            return;
+        drain(false);
+        if (len + n > chars.length) {
+            char[] newChars = new char[Math.max(chars.length * 2, len + n)];
+            System.arraycopy(chars, 0, newChars, 0, len);
+            chars = newChars;
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        ensureCapacity(1);
+        chars[len++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int n) {
+        ensureCapacity(n);
+        System.arraycopy(cbuf, off, chars, len, n);
+        len += n;
+    }
+
+    @Override
+    public void write(String s) {
+        write(s, 0, s.length());
+    }
+
+    @Override
+    public void write(String s, int off, int n) {
+        ensureCapacity(n);
+        s.getChars(off, off + n, chars, len);
+        len += n;
+    }
+
+    /**
+     * Appends the platform line separator, like {@link java.io.PrintWriter#println()}.
+     */
+    public void newLine() {
+        write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Appends a string with the characters encoded as described in {@link XmlWriter#encode(String)}.
+     * @param s the unencoded string
+     */
+    public void appendEncoded(String s) {
+        int n = s.length();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            String enc = c < XmlWriter.encoding.length ? XmlWriter.encoding[c] : null;
+            if (enc != null) {
+                write(enc);
+            } else {
+                if (len == chars.length) {
+                    ensureCapacity(n - i);
+                }
+                chars[len++] = c;
+            }
+        }
+    }
+
+    /**
+     * Appends the decimal representation of a long, as {@link Long#toString(long)}.
+     * @param value the value
+     */
+    public void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            chars[len++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10) {
+            digits++;
+        }
+        int p = len + digits;
+        len = p;
+        do {
+            chars[--p] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+    }
+
+    /**
+     * Appends the representation of a double, as {@link Double#toString(double)}.
+     *
+     * Values with at most 7 decimal places (which includes all coordinates in the OSM database)
+     * are formatted without creating temporary objects.
+     * @param value the value
+     */
+    public void appendDouble(double value) {
+        double abs = Math.abs(value);
+        if (value != 0 && (abs < 1e-3 || abs >= 1e7) || Double.isNaN(value)
+                || (value == 0 && 1 / value < 0)) {
+            // scientific notation, negative zero and NaN
+            write(Double.toString(value));
+            return;
+        }
+        long fixed = Math.round(abs * 1e7);
+        if (fixed / 1e7 != abs) {
+            write(Double.toString(value));
+            return;
+        }
+        if (value < 0) {
+            write('-');
+        }
+        appendLong(fixed / 10000000);
+        int fraction = (int) (fixed % 10000000);
+        ensureCapacity(8);
+        chars[len++] = '.';
+        if (fraction == 0) {
+            chars[len++] = '0';
+            return;
+        }
+        int digits = 7;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        int p = len + digits;
+        len = p;
+        for (int i = 0; i < digits; i++) {
+            chars[--p] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+    }
+
+    /**
+     * Appends a timestamp in the format of {@link DateUtils#fromDate(Date)}.
+     *
+     * Timestamps without milliseconds between the years 1900 and 9999 are formatted
+     * without creating temporary objects and without synchronization.
+     * @param date the timestamp
+     */
+    public void appendTimestamp(Date date) {
+        long millis = date.getTime();
+        if (millis % 1000 != 0 || millis < MIN_FAST_TIMESTAMP || millis >= MAX_FAST_TIMESTAMP) {
+            write(DateUtils.fromDate(date));
+            return;
+        }
+        long seconds = millis / 1000;
+        int days = (int) (seconds / 86400);
+        int secondOfDay = (int) (seconds - days * 86400L);
+        if (secondOfDay < 0) {
+            days--;
+            secondOfDay += 86400;
+        }
+        // conversion of days since 1970-01-01 to the proleptic gregorian calendar
+        int z = days + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        ensureCapacity(20);
+        appendDigits(year, 4);
+        chars[len++] = '-';
+        appendDigits(month, 2);
+        chars[len++] = '-';
+        appendDigits(day, 2);
+        chars[len++] = 'T';
+        appendDigits(secondOfDay / 3600, 2);
+        chars[len++] = ':';
+        appendDigits(secondOfDay / 60 % 60, 2);
+        chars[len++] = ':';
+        appendDigits(secondOfDay % 60, 2);
+        chars[len++] = 'Z';
+    }
+
+    private void appendDigits(int value, int digits) {
+        int p = len + digits;
+        len = p;
+        for (int i = 0; i < digits; i++) {
+            chars[--p] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Appends the content of this buffer to another buffer and clears this buffer.
+     * @param other the buffer to write to
+     */
+    public void writeTo(XmlOutputBuffer other) {
+        other.write(chars, 0, len);
+        len = 0;
+    }
+
+    /**
+     * Marks the end of a logical record. If the buffer wraps a writer, the buffered characters
+     * are passed on, so the writer may be used directly afterwards. Otherwise the characters are
+     * kept until the buffer is full.
+     */
+    public void commit() {
+        if (writer != null) {
+            drain(false);
+        }
+    }
+
+    private void drain(boolean all) {
+        if (len == 0 || bytes == null && writer == null)
+            return;
+        if (error != null) {
+            len = 0;
+            return;
+        }
+        try {
+            if (writer != null) {
+                writer.write(chars, 0, len);
+                len = 0;
+            } else {
+                int end = len;
+                if (!all && Character.isHighSurrogate(chars[end - 1])) {
+                    // keep it until the low surrogate has been appended
+                    end--;
+                }
+                writeBytes(encodeUTF8(end));
+                len -= end;
+                if (len > 0) {
+                    chars[0] = chars[end];
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+            len = 0;
+        }
+    }
+
+    private int encodeUTF8(int end) {
+        if (bytes.length < end * 3) {
+            bytes = new byte[end * 3];
+            byteBuffer = ByteBuffer.wrap(bytes);
+        }
+        int b = 0;
+        for (int i = 0; i < end; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                bytes[b++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[b++] = (byte) (0xc0 | (c >> 6));
+                bytes[b++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                int cp = Character.toCodePoint(c, chars[++i]);
+                bytes[b++] = (byte) (0xf0 | (cp >> 18));
+                bytes[b++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                bytes[b++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                bytes[b++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, like the UTF-8 encoder of the JDK
+                bytes[b++] = '?';
+            } else {
+                bytes[b++] = (byte) (0xe0 | (c >> 12));
+                bytes[b++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[b++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return b;
+    }
+
+    private void writeBytes(int n) throws IOException {
+        if (stream != null) {
+            stream.write(bytes, 0, n);
+        } else {
+            byteBuffer.clear();
+            byteBuffer.limit(n);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        }
+    }
+
+    /**
+     * Throws the first I/O error that occurred while writing, if any.
+     * @throws IOException the error
+     */
+    public void checkError() throws IOException {
+        if (error != null)
+            throw error;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain(true);
+        checkError();
+        try {
+            if (writer != null) {
+                writer.flush();
+            } else if (stream != null) {
+                stream.flush();
+            }
+        } catch (IOException e) {
+            error = e;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            checkError();
+            return;
+        }
+        closed = true;
+        try {
+            drain(true);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            } else if (stream != null) {
+                stream.close();
+            } else if (channel != null) {
+                channel.close();
+            }
+        }
+        checkError();
+    }
+}
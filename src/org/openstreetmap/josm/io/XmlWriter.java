@@ -2,7 +2,6 @@
 package org.openstreetmap.josm.io;
 
 import java.io.PrintWriter;
-import java.util.HashMap;
 
 /**
  * Helper class to use for xml outputting classes.
@@ -37,35 +36,39 @@ public class XmlWriter {
      */
     public static String encode(String unencoded, boolean keepApos) {
         StringBuilder buffer = null;
-        for (int i = 0; i < unencoded.length(); ++i) {
+        int length = unencoded.length();
+        for (int i = 0; i < length; ++i) {
+            char c = unencoded.charAt(i);
             String encS = null;
-            if (!keepApos || unencoded.charAt(i) != '\'') {
-                encS = XmlWriter.encoding.get(unencoded.charAt(i));
+            if (c < encoding.length && (!keepApos || c != '\'')) {
+                encS = encoding[c];
             }
             if (encS != null) {
                 if (buffer == null) {
-                    buffer = new StringBuilder(unencoded.substring(0,i));
+                    buffer = new StringBuilder(length + 16);
+                    buffer.append(unencoded, 0, i);
                 }
                 buffer.append(encS);
             } else if (buffer != null) {
-                buffer.append(unencoded.charAt(i));
+                buffer.append(c);
             }
         }
         return (buffer == null) ? unencoded : buffer.toString();
     }
 
     /**
-     * The output writer to save the values to.
+     * The replacements of the characters that have to be encoded, indexed by character.
+     * All of them are ASCII characters.
      */
-    final private static HashMap<Character, String> encoding = new HashMap<Character, String>();
+    static final String[] encoding = new String['>' + 1];
     static {
-        encoding.put('<', "&lt;");
-        encoding.put('>', "&gt;");
-        encoding.put('"', "&quot;");
-        encoding.put('\'', "&apos;");
-        encoding.put('&', "&amp;");
-        encoding.put('\n', "&#xA;");
-        encoding.put('\r', "&#xD;");
-        encoding.put('\t', "&#x9;");
+        encoding['<'] = "&lt;";
+        encoding['>'] = "&gt;";
+        encoding['"'] = "&quot;";
+        encoding['\''] = "&apos;";
+        encoding['&'] = "&amp;";
+        encoding['\n'] = "&#xA;";
+        encoding['\r'] = "&#xD;";
+        encoding['\t'] = "&#x9;";
     }
 }
@@ -14,10 +14,6 @@ import java.awt.event.ItemListener;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
@@ -40,6 +36,7 @@ import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.io.OsmWriter;
 import org.openstreetmap.josm.io.OsmWriterFactory;
+import org.openstreetmap.josm.io.XmlOutputBuffer;
 import org.openstreetmap.josm.io.session.SessionWriter.ExportSupport;
 import org.openstreetmap.josm.tools.GBC;
 import org.openstreetmap.josm.tools.ImageProvider;
@@ -211,17 +208,12 @@ public class OsmDataSessionExporter implements SessionLayerExporter {
     }
 
     protected void addDataFile(OutputStream out) throws IOException {
-        Writer writer = null;
-        try {
-            writer = new OutputStreamWriter(out, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
-        OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(writer), false, layer.data.getVersion());
+        XmlOutputBuffer buffer = new XmlOutputBuffer(out);
+        OsmWriter w = OsmWriterFactory.createOsmWriter(buffer, false, layer.data.getVersion());
         layer.data.getReadLock().lock();
         try {
             w.writeLayer(layer);
-            w.flush();
+            buffer.flush();
         } finally {
             layer.data.getReadLock().unlock();
         }
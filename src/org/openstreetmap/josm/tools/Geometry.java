@@ -5,6 +5,7 @@ import java.awt.geom.Line2D;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -36,6 +37,8 @@ public class Geometry {
      * And makes commands to add the intersection points to ways.
      *
      * Prerequisite: no two nodes have the same coordinates.
+     *
+     * Only segments with overlapping bounds are compared, see {@link SegmentSweep}.
      * 
      * @param ways  a list of ways to test
      * @param test  if false, do not build list of Commands, just return nodes
@@ -51,16 +54,26 @@ public class Geometry {
         ArrayList<Node>[] newNodes = new ArrayList[ways.size()];
         BBox[] wayBounds = new BBox[ways.size()];
         boolean[] changedWays = new boolean[ways.size()];
+        //the number of the original segment for each segment, segments split by an intersection keep their number
+        List<List<Integer>> originalSegments = new ArrayList<List<Integer>>(ways.size());
 
         Set<Node> intersectionNodes = new LinkedHashSet<Node>();
 
         //copy node arrays for local usage.
+        int segmentCount = 0;
         for (int pos = 0; pos < ways.size(); pos ++) {
             newNodes[pos] = new ArrayList<Node>(ways.get(pos).getNodes());
             wayBounds[pos] = getNodesBounds(newNodes[pos]);
             changedWays[pos] = false;
+            originalSegments.add(new ArrayList<Integer>());
+            for (int i = 0; i + 1 < newNodes[pos].size(); i++) {
+                originalSegments.get(pos).add(segmentCount++);
+            }
         }
 
+        //only segments, whose original segments have overlapping bounds, may intersect
+        int[][] candidates = getIntersectionCandidates(newNodes, segmentCount);
+
         //iterate over all way pairs and introduce the intersections
         Comparator<Node> coordsComparator = new NodePositionComparator();
 
@@ -74,15 +87,29 @@ public class Geometry {
 
                 ArrayList<Node> way1Nodes = newNodes[seg1Way];
                 ArrayList<Node> way2Nodes = newNodes[seg2Way];
+                List<Integer> way1Segments = originalSegments.get(seg1Way);
+                List<Integer> way2Segments = originalSegments.get(seg2Way);
 
                 //iterate over primary segmemt
                 for (int seg1Pos = 0; seg1Pos + 1 < way1Nodes.size(); seg1Pos ++) {
+                    int[] seg1Candidates = candidates[way1Segments.get(seg1Pos)];
 
                     //iterate over secondary segment
                     int seg2Start = seg1Way != seg2Way ? 0: seg1Pos + 2;//skip the adjacent segment
 
                     for (int seg2Pos = seg2Start; seg2Pos + 1< way2Nodes.size(); seg2Pos ++) {
 
+                        //skip to the next segment, that may intersect
+                        int next = Arrays.binarySearch(seg1Candidates, way2Segments.get(seg2Pos));
+                        if (next < 0) {
+                            next = -next - 1;
+                            if (next == seg1Candidates.length) {
+                                break;
+                            }
+                            seg2Pos = getFirstSegment(way2Segments, seg1Candidates[next], seg2Pos + 1) - 1;
+                            continue;
+                        }
+
                         //need to get them again every time, because other segments may be changed
                         Node seg1Node1 = way1Nodes.get(seg1Pos);
                         Node seg1Node2 = way1Nodes.get(seg1Pos + 1);
@@ -148,6 +175,7 @@ public class Geometry {
 
                                 if (insertInSeg1) {
                                     way1Nodes.add(seg1Pos +1, intNode);
+                                    way1Segments.add(seg1Pos + 1, way1Segments.get(seg1Pos));
                                     changedWays[seg1Way] = true;
 
                                     //fix seg2 position, as indexes have changed, seg2Pos is always bigger than seg1Pos on the same segment.
@@ -158,6 +186,7 @@ public class Geometry {
 
                                 if (insertInSeg2) {
                                     way2Nodes.add(seg2Pos +1, intNode);
+                                    way2Segments.add(seg2Pos + 1, way2Segments.get(seg2Pos));
                                     changedWays[seg2Way] = true;
 
                                     //Do not need to compare again to already split segment
@@ -194,6 +223,76 @@ public class Geometry {
         return intersectionNodes;
     }
 
+    /**
+     * Finds for each segment of the ways the segments, whose bounds overlap its own bounds.
+     * The segments are numbered along the ways.
+     * @return for each segment the sorted numbers of the segments, including itself
+     */
+    private static int[][] getIntersectionCandidates(List<Node>[] ways, int segmentCount) {
+        EastNorth[] from = new EastNorth[segmentCount];
+        EastNorth[] to = new EastNorth[segmentCount];
+        double extent = 0;
+        int segment = 0;
+        for (List<Node> nodes : ways) {
+            for (int i = 0; i + 1 < nodes.size(); i++) {
+                from[segment] = nodes.get(i).getEastNorth();
+                to[segment] = nodes.get(i + 1).getEastNorth();
+                extent = Math.max(extent, Math.max(Math.abs(from[segment].east()), Math.abs(from[segment].north())));
+                segment++;
+            }
+        }
+
+        final int[] counts = new int[segmentCount];
+        final List<int[]> pairs = new ArrayList<int[]>();
+        //intersection nodes are stored as lat/lon, so they may be slightly off the segments they split
+        SegmentSweep.findOverlaps(from, to, extent * 1e-9, new SegmentSweep.PairHandler() {
+            @Override
+            public boolean handle(int first, int second) {
+                pairs.add(new int[] {first, second});
+                counts[first]++;
+                counts[second]++;
+                return true;
+            }
+        });
+
+        int[][] candidates = new int[segmentCount][];
+        for (int i = 0; i < segmentCount; i++) {
+            candidates[i] = new int[counts[i] + 1];
+            candidates[i][0] = i;
+            counts[i] = 1;
+        }
+        for (int[] pair : pairs) {
+            candidates[pair[0]][counts[pair[0]]++] = pair[1];
+            candidates[pair[1]][counts[pair[1]]++] = pair[0];
+        }
+        for (int[] c : candidates) {
+            Arrays.sort(c);
+        }
+        return candidates;
+    }
+
+    /**
+     * Replies the position of the first segment, that is part of the given original segment
+     * or a later one.
+     * @param segments the original segment of each segment of a way, in ascending order
+     * @param original the number of the original segment
+     * @param start the position to start searching at
+     * @return the position, or the number of segments if there is none
+     */
+    private static int getFirstSegment(List<Integer> segments, int original, int start) {
+        int low = start;
+        int high = segments.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segments.get(mid) < original) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     private static BBox getNodesBounds(ArrayList<Node> nodes) {
 
         BBox bounds = new BBox(nodes.get(0));
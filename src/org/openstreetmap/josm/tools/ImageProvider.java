@@ -29,6 +29,7 @@ import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
@@ -103,9 +104,11 @@ public class ImageProvider {
     private static SVGUniverse svgUniverse;
 
     /**
-     * The icon cache
+     * The icon cache. It is used by concurrently painting threads. An image missing in the cache
+     * may be loaded by several threads at the same time, which is accepted: the loads are equal,
+     * and the last one stays in the cache.
      */
-    private static Map<String, ImageResource> cache = new HashMap<String, ImageResource>();
+    private static Map<String, ImageResource> cache = Collections.synchronizedMap(new HashMap<String, ImageResource>());
 
     private final static ExecutorService imageFetcher = Executors.newSingleThreadExecutor();
 
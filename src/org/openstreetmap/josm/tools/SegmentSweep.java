@@ -0,0 +1,88 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.tools;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+
+/**
+ * Finds the pairs of line segments, whose bounding boxes overlap, by sorting the segments
+ * along the east axis and sweeping a line over them. Only the segments crossing the sweep
+ * line are compared, so the number of comparisons depends on the density of the segments
+ * rather than on their total number.
+ * <p>
+ * The pairs are candidates: two segments can only intersect or touch if their bounding
+ * boxes overlap. The caller checks the candidates exactly, with the tolerance it needs.
+ */
+public final class SegmentSweep {
+
+    /**
+     * Receives the pairs of segments with overlapping bounding boxes.
+     */
+    public interface PairHandler {
+        /**
+         * Handles a pair of segments.
+         * @param first the index of a segment
+         * @param second the index of the other segment, greater than {@code first}
+         * @return true to continue, false to stop the search
+         */
+        boolean handle(int first, int second);
+    }
+
+    private SegmentSweep() {}
+
+    /**
+     * Reports every pair of segments, whose bounding boxes overlap, exactly once.
+     * Boxes touching at a border or corner overlap.
+     *
+     * @param from the first point of each segment
+     * @param to the second point of each segment
+     * @param margin the distance to grow the bounding boxes by, in east/north units
+     * @param handler the handler of the pairs
+     * @return false, if the handler stopped the search
+     */
+    public static boolean findOverlaps(EastNorth[] from, EastNorth[] to, double margin, PairHandler handler) {
+        int count = from.length;
+        final double[] minX = new double[count];
+        double[] maxX = new double[count];
+        double[] minY = new double[count];
+        double[] maxY = new double[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            minX[i] = Math.min(from[i].east(), to[i].east()) - margin;
+            maxX[i] = Math.max(from[i].east(), to[i].east()) + margin;
+            minY[i] = Math.min(from[i].north(), to[i].north()) - margin;
+            maxY[i] = Math.max(from[i].north(), to[i].north()) + margin;
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(minX[o1], minX[o2]);
+            }
+        });
+
+        // the segments crossing the sweep line
+        int[] active = new int[16];
+        int activeCount = 0;
+        for (Integer index : order) {
+            int s = index;
+            for (int k = 0; k < activeCount; k++) {
+                int a = active[k];
+                if (maxX[a] < minX[s]) {
+                    // left behind by the sweep line
+                    active[k--] = active[--activeCount];
+                } else if (maxY[a] >= minY[s] && minY[a] <= maxY[s]) {
+                    if (!handler.handle(Math.min(a, s), Math.max(a, s)))
+                        return false;
+                }
+            }
+            if (activeCount == active.length) {
+                active = Arrays.copyOf(active, activeCount * 2);
+            }
+            active[activeCount++] = s;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares the time needed to compress OSM like data with {@link CBZip2OutputStream}
+ * and {@link ParallelBZip2OutputStream}.
+ */
+public class ParallelBZip2OutputStreamPerformanceTest {
+
+    private static final int ITERATIONS = 3;
+
+    private static byte[] data;
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    @BeforeClass
+    public static void createData() {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 20 * 1024 * 1024) {
+            sb.append("  <node id='").append(random.nextInt(Integer.MAX_VALUE))
+            .append("' version='").append(random.nextInt(10) + 1)
+            .append("' changeset='").append(random.nextInt(10000000))
+            .append("' lat='").append(random.nextDouble() * 180 - 90)
+            .append("' lon='").append(random.nextDouble() * 360 - 180).append("' />\n");
+        }
+        data = sb.toString().getBytes();
+    }
+
+    private static long compress(OutputStream bzout, CountingOutputStream out) throws IOException {
+        long start = System.nanoTime();
+        bzout.write(data);
+        bzout.close();
+        long time = (System.nanoTime() - start) / 1000000;
+        System.out.println("  " + data.length + " -> " + out.count + " bytes");
+        return time;
+    }
+
+    @Test
+    public void testSequential() throws IOException {
+        for (int i=0; i<ITERATIONS; i++) {
+            CountingOutputStream out = new CountingOutputStream();
+            System.out.println("CBZip2OutputStream: " + compress(new CBZip2OutputStream(out), out) + " ms");
+        }
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i=0; i<ITERATIONS; i++) {
+            CountingOutputStream out = new CountingOutputStream();
+            System.out.println("ParallelBZip2OutputStream (" + threads + " threads): "
+                    + compress(new ParallelBZip2OutputStream(out, 9, threads), out) + " ms");
+        }
+    }
+}
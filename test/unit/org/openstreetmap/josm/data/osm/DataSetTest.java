@@ -0,0 +1,78 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+public class DataSetTest {
+
+    @BeforeClass
+    public static void init() {
+        Main.pref = new Preferences();
+    }
+
+    @Test
+    public void testAddPrimitivesFailsWithoutChanges() {
+        DataSet ds = new DataSet();
+        Node included = new Node(new LatLon(1, 1));
+        ds.addPrimitive(included);
+        Node n = new Node(new LatLon(2, 2));
+        try {
+            ds.addPrimitives(Arrays.asList(n, included));
+            Assert.fail();
+        } catch (DataIntegrityProblemException e) {
+            // expected
+        }
+        try {
+            ds.addPrimitives(Arrays.asList(n, n));
+            Assert.fail();
+        } catch (DataIntegrityProblemException e) {
+            // expected
+        }
+        Node foreign = new Node(new LatLon(3, 3));
+        new DataSet().addPrimitive(foreign);
+        try {
+            ds.addPrimitives(Arrays.asList(n, foreign));
+            Assert.fail();
+        } catch (DataIntegrityProblemException e) {
+            // expected
+        }
+        Assert.assertEquals(1, ds.allPrimitives().size());
+        Assert.assertEquals(1, ds.getNodes().size());
+        Assert.assertNull(n.getDataSet());
+        Assert.assertNull(ds.getPrimitiveById(foreign));
+        Assert.assertTrue(ds.searchNodes(new BBox(foreign)).isEmpty());
+
+        ds.addPrimitives(Arrays.asList(n));
+        Assert.assertEquals(2, ds.getNodes().size());
+        Assert.assertSame(ds, n.getDataSet());
+    }
+
+    @Test
+    public void testHighlightedPrimitives() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 1));
+        Node n2 = new Node(new LatLon(2, 2));
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        int count = ds.getHighlightUpdateCount();
+        n1.setHighlighted(true);
+        Assert.assertEquals(count + 1, ds.getHighlightUpdateCount());
+        Assert.assertEquals(Collections.singleton(n1), ds.getHighlightedPrimitives());
+        n2.setHighlighted(true);
+        n1.setHighlighted(false);
+        Assert.assertEquals(Collections.singleton(n2), ds.getHighlightedPrimitives());
+        ds.removePrimitive(n2);
+        Assert.assertTrue(ds.getHighlightedPrimitives().isEmpty());
+        // added while highlighted
+        ds.addPrimitive(n2);
+        Assert.assertEquals(Collections.singleton(n2), ds.getHighlightedPrimitives());
+    }
+}
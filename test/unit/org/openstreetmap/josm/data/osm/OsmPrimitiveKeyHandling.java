@@ -148,4 +148,29 @@ public class OsmPrimitiveKeyHandling {
         assertTrue(!n1.hasEqualSemanticAttributes(n2));
     }
 
+    /**
+     * Test that equal tag sets are shared between primitives and changing
+     * the tags of one primitive doesn't affect the other.
+     */
+    @Test
+    public void sharedTagSets() {
+        Node n1 = new Node();
+        n1.put("key.1", "value.1");
+        n1.put("key.2", "value.2");
+
+        Node n2 = new Node();
+        n2.put("key.2", "value.2");
+        n2.put("key.1", "value.1");
+
+        assertTrue(n1.getTagSetIdentity() == n2.getTagSetIdentity());
+        assertTrue(n1.hasSameTags(n2));
+
+        n2.put("key.1", "value.3");
+        assertTrue(n1.get("key.1").equals("value.1"));
+        assertTrue(n2.get("key.1").equals("value.3"));
+        assertTrue(n1.getTagSetIdentity() != n2.getTagSetIdentity());
+        assertTrue(!n1.hasSameTags(n2));
+        assertTrue(new Node().hasSameTags(new Node()));
+    }
+
 }
@@ -31,8 +31,8 @@ public class QuadBucketsTest {
         List<Way> allWays = new ArrayList<Way>(ds.getWays());
         List<Relation> allRelations = new ArrayList<Relation>(ds.getRelations());
 
-        QuadBuckets<Node> nodes = Reflection.field("nodes").ofType(new TypeRef<QuadBuckets<Node>>() {}).in(ds).get();
-        QuadBuckets<Way> ways = Reflection.field("ways").ofType(new TypeRef<QuadBuckets<Way>>() {}).in(ds).get();
+        Collection<Node> nodes = Reflection.field("nodes").ofType(new TypeRef<Collection<Node>>() {}).in(ds).get();
+        Collection<Way> ways = Reflection.field("ways").ofType(new TypeRef<Collection<Way>>() {}).in(ds).get();
         Collection<Relation> relations = Reflection.field("relations").ofType(new TypeRef<Collection<Relation>>() {}).in(ds).get();
 
         int expectedCount = allNodes.size();
@@ -0,0 +1,130 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+public class STRTreeTest {
+
+    @BeforeClass
+    public static void init() {
+        Main.pref = new Preferences();
+    }
+
+    private static List<Node> createNodes(Random random, int count) {
+        List<Node> result = new ArrayList<Node>(count);
+        for (int i=0; i<count; i++) {
+            result.add(new Node(new LatLon(random.nextDouble() * 10, random.nextDouble() * 10)));
+        }
+        return result;
+    }
+
+    private static Set<Node> bruteForce(Iterable<Node> nodes, BBox bbox) {
+        Set<Node> result = new HashSet<Node>();
+        for (Node n : nodes) {
+            if (n.getBBox().intersects(bbox)) {
+                result.add(n);
+            }
+        }
+        return result;
+    }
+
+    private static void checkSearch(STRTree<Node> tree, Random random) {
+        for (int i=0; i<50; i++) {
+            double x = random.nextDouble() * 10;
+            double y = random.nextDouble() * 10;
+            BBox bbox = new BBox(x, y, x + random.nextDouble() * 3, y + random.nextDouble() * 3);
+            Assert.assertEquals(bruteForce(tree, bbox), new HashSet<Node>(tree.search(bbox)));
+        }
+    }
+
+    @Test
+    public void testBulkLoadAndIncrementalChanges() {
+        Random random = new Random(42);
+        STRTree<Node> tree = new STRTree<Node>();
+        List<Node> nodes = createNodes(random, 5000);
+        tree.addAll(nodes);
+        Assert.assertEquals(5000, tree.size());
+        checkSearch(tree, random);
+
+        List<Node> more = createNodes(random, 30);
+        tree.addAll(more);
+        Assert.assertEquals(5030, tree.size());
+        for (Node n : more) {
+            Assert.assertTrue(tree.contains(n));
+        }
+        checkSearch(tree, random);
+
+        for (int i=0; i<4000; i++) {
+            Assert.assertTrue(tree.remove(nodes.get(i)));
+        }
+        Assert.assertEquals(1030, tree.size());
+        Assert.assertFalse(tree.contains(nodes.get(0)));
+        checkSearch(tree, random);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        Random random = new Random(7);
+        STRTree<Node> tree = new STRTree<Node>();
+        tree.addAll(createNodes(random, 1000));
+        int count = 0;
+        for (Iterator<Node> it = tree.iterator(); it.hasNext();) {
+            it.next();
+            if (count++ % 2 == 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(1000, count);
+        Assert.assertEquals(500, tree.size());
+        Assert.assertEquals(500, new ArrayList<Node>(tree).size());
+        checkSearch(tree, random);
+    }
+
+    @Test
+    public void testSnapshot() {
+        Random random = new Random(3);
+        STRTree<Node> tree = new STRTree<Node>();
+        List<Node> nodes = createNodes(random, 2000);
+        tree.addAll(nodes);
+        tree.publishSnapshot();
+        BBox world = new BBox(-180, -90, 180, 90);
+        Assert.assertEquals(2000, tree.searchSnapshot(world).size());
+
+        for (int i=0; i<1000; i++) {
+            tree.remove(nodes.get(i));
+        }
+        tree.addAll(createNodes(random, 10));
+        Assert.assertEquals(1010, tree.search(world).size());
+        Assert.assertEquals(new HashSet<Node>(nodes), new HashSet<Node>(tree.searchSnapshot(world)));
+
+        tree.publishSnapshot();
+        Assert.assertEquals(1010, tree.searchSnapshot(world).size());
+    }
+
+    @Test
+    public void testIteratorRemoveAfterSnapshot() {
+        Random random = new Random(11);
+        STRTree<Node> tree = new STRTree<Node>();
+        tree.addAll(createNodes(random, 1000));
+        tree.publishSnapshot();
+        BBox world = new BBox(-180, -90, 180, 90);
+        for (Iterator<Node> it = tree.iterator(); it.hasNext();) {
+            it.next();
+            it.remove();
+        }
+        Assert.assertEquals(0, tree.size());
+        Assert.assertEquals(1000, tree.searchSnapshot(world).size());
+    }
+}
@@ -0,0 +1,101 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.projection.Mercator;
+
+public class ChangedAreasTest {
+
+    @BeforeClass
+    public static void setUp() {
+        Main.pref = new Preferences();
+        Main.setProjection(new Mercator());
+    }
+
+    private static boolean covers(List<BBox> areas, LatLon ll) {
+        for (BBox bbox : areas) {
+            if (bbox.bounds(ll))
+                return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void testNodeMoved() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(10, 10));
+        Node n2 = new Node(new LatLon(20, 20));
+        Node n3 = new Node(new LatLon(40, 40));
+        Node n4 = new Node(new LatLon(50, 50));
+        Way w1 = new Way();
+        w1.setNodes(Arrays.asList(n1, n2));
+        Way w2 = new Way();
+        w2.setNodes(Arrays.asList(n3, n4));
+        Relation r = new Relation();
+        r.put("type", "multipolygon");
+        r.addMember(new RelationMember("outer", w1));
+        r.addMember(new RelationMember("outer", w2));
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        ds.addPrimitive(n3);
+        ds.addPrimitive(n4);
+        ds.addPrimitive(w1);
+        ds.addPrimitive(w2);
+        ds.addPrimitive(r);
+
+        final List<AbstractDatasetChangedEvent> events = new ArrayList<AbstractDatasetChangedEvent>();
+        ds.addDataSetListener(new DataSetListenerAdapter(new DataSetListenerAdapter.Listener() {
+            @Override
+            public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+                events.add(event);
+            }
+        }));
+        n1.setCoor(new LatLon(5, 5));
+        Assert.assertEquals(1, events.size());
+
+        List<BBox> areas = new ArrayList<BBox>();
+        Assert.assertTrue(ChangedAreas.collect(events.get(0), areas));
+        // old and new position, the way and the multipolygon
+        Assert.assertTrue(covers(areas, new LatLon(10, 10)));
+        Assert.assertTrue(covers(areas, new LatLon(5, 5)));
+        Assert.assertTrue(covers(areas, new LatLon(15, 15)));
+        Assert.assertTrue(covers(areas, new LatLon(45, 45)));
+        Assert.assertFalse(covers(areas, new LatLon(-10, -10)));
+
+        events.clear();
+        w1.setNodes(Arrays.asList(n2, n3));
+        areas.clear();
+        Assert.assertTrue(ChangedAreas.collect(events.get(0), areas));
+        // the old way still ended at n1
+        Assert.assertTrue(covers(areas, new LatLon(5, 5)));
+        Assert.assertTrue(covers(areas, new LatLon(30, 30)));
+    }
+
+    @Test
+    public void testDataChanged() {
+        DataSet ds = new DataSet();
+        List<BBox> areas = new ArrayList<BBox>();
+        Assert.assertFalse(ChangedAreas.collect(new DataChangedEvent(ds), areas));
+        Assert.assertTrue(ChangedAreas.collect(
+                new DataChangedEvent(ds, new ArrayList<AbstractDatasetChangedEvent>()), areas));
+        Assert.assertTrue(areas.isEmpty());
+    }
+}
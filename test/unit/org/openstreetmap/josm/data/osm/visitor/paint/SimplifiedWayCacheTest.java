@@ -0,0 +1,82 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.Mercator;
+
+public class SimplifiedWayCacheTest {
+
+    @BeforeClass
+    public static void setUp() {
+        Main.pref = new Preferences();
+        Main.setProjection(new Mercator());
+    }
+
+    /**
+     * Creates a way along the equator, whose nodes are 0.1 m off, except for a spike of about 1 km.
+     */
+    private static Way createWay(DataSet ds, Node[] nodes) {
+        Way w = new Way();
+        for (int i = 0; i < nodes.length; i++) {
+            double lat = i == 5 ? 0.01 : (i % 2) * 0.000001;
+            nodes[i] = new Node(new LatLon(lat, i * 0.001));
+            ds.addPrimitive(nodes[i]);
+            w.addNode(nodes[i]);
+        }
+        ds.addPrimitive(w);
+        return w;
+    }
+
+    @Test
+    public void testSimplify() {
+        DataSet ds = new DataSet();
+        SimplifiedWayCache cache = SimplifiedWayCache.getInstance();
+        ds.addDataSetListener(cache);
+        Node[] n = new Node[10];
+        Way w = createWay(ds, n);
+
+        // the nodes next to the spike are about 300 m off the lines to its top
+        List<Node> simplified = cache.getNodes(w, 10);
+        Assert.assertEquals(Arrays.asList(n[0], n[4], n[5], n[6], n[9]), simplified);
+        // the same zoom level
+        Assert.assertSame(simplified, cache.getNodes(w, 12));
+        Assert.assertEquals(Arrays.asList(n[0], n[5], n[9]), cache.getNodes(w, 600));
+        // far out, only the end nodes remain
+        Assert.assertEquals(Arrays.asList(n[0], n[9]), cache.getNodes(w, 5000));
+        // zoomed in, no simplification
+        Assert.assertEquals(w.getNodes(), cache.getNodes(w, 0.5));
+
+        // the cache is dropped when a node is moved
+        n[2].setCoor(new LatLon(-0.01, 0.002));
+        Assert.assertEquals(Arrays.asList(n[0], n[2], n[5], n[9]), cache.getNodes(w, 600));
+
+        // and when the nodes of the way change
+        w.removeNode(n[5]);
+        Assert.assertEquals(Arrays.asList(n[0], n[2], n[3], n[9]), cache.getNodes(w, 600));
+    }
+
+    @Test
+    public void testClosedWay() {
+        DataSet ds = new DataSet();
+        SimplifiedWayCache cache = SimplifiedWayCache.getInstance();
+        ds.addDataSetListener(cache);
+        Node[] n = new Node[10];
+        Way w = createWay(ds, n);
+        w.addNode(n[0]);
+
+        // the node farthest away from the first node is always kept
+        Assert.assertEquals(Arrays.asList(n[0], n[5], n[0]), cache.getNodes(w, 5000));
+        Assert.assertEquals(Arrays.asList(n[0], n[5], n[9], n[0]), cache.getNodes(w, 600));
+    }
+}
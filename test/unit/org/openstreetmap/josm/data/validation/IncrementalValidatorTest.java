@@ -0,0 +1,154 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.projection.Mercator;
+import org.openstreetmap.josm.data.validation.tests.DuplicateNode;
+import org.openstreetmap.josm.data.validation.tests.DuplicateRelation;
+import org.openstreetmap.josm.data.validation.tests.UntaggedNode;
+
+public class IncrementalValidatorTest {
+
+    /**
+     * Counts the tested nodes.
+     */
+    public static class CountingTest extends org.openstreetmap.josm.data.validation.Test {
+        private static int visited;
+
+        public CountingTest() {
+            super("Counting test");
+        }
+
+        @Override
+        public void visit(Node n) {
+            visited++;
+        }
+    }
+
+    private DataSet ds;
+    private Node[] nodes;
+    private IncrementalValidator validator;
+
+    @BeforeClass
+    public static void setUpClass() {
+        Main.pref = new Preferences();
+        Main.setProjection(new Mercator());
+    }
+
+    @Before
+    public void setUp() {
+        ds = new DataSet();
+        nodes = new Node[100];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(new LatLon(i / 10 * 0.01, i % 10 * 0.01));
+            if (i % 2 == 0) {
+                nodes[i].put("amenity", "bench");
+            }
+            ds.addPrimitive(nodes[i]);
+        }
+        validator = new IncrementalValidator();
+        ds.addDataSetListener(validator);
+    }
+
+    private static List<org.openstreetmap.josm.data.validation.Test> createTests() {
+        return Arrays.asList(new UntaggedNode(), new DuplicateNode(), new CountingTest());
+    }
+
+    private static Set<String> toStrings(List<TestError> errors) {
+        Set<String> result = new HashSet<String>();
+        for (TestError e : errors) {
+            result.add(e.getTester().getClass().getSimpleName() + " " + e.getCode() + " " + new HashSet<OsmPrimitive>(e.getPrimitives()));
+        }
+        return result;
+    }
+
+    private void assertUpToDate(int maxVisited) {
+        CountingTest.visited = 0;
+        List<TestError> incremental = validator.validate(ds, createTests(), ds.allNonDeletedPrimitives(), null);
+        Assert.assertTrue(CountingTest.visited <= maxVisited);
+        List<TestError> full = ParallelValidator.validate(createTests(), ds.allNonDeletedPrimitives(), null);
+        Assert.assertEquals(toStrings(full), toStrings(incremental));
+    }
+
+    @Test
+    public void testIncrementalValidation() {
+        assertUpToDate(nodes.length);
+        Assert.assertTrue(validator.isValidating(ds));
+        Assert.assertFalse(validator.hasChanges());
+        // nothing changed, nothing to test
+        assertUpToDate(0);
+
+        nodes[1].put("amenity", "bench");
+        Assert.assertTrue(validator.hasChanges());
+        assertUpToDate(5);
+
+        // duplicate node
+        nodes[3].setCoor(nodes[2].getCoor());
+        assertUpToDate(5);
+        nodes[3].setCoor(new LatLon(1, 1));
+        assertUpToDate(5);
+
+        ds.removePrimitive(nodes[5]);
+        assertUpToDate(5);
+
+        Node added = new Node(nodes[8].getCoor());
+        ds.addPrimitive(added);
+        assertUpToDate(5);
+    }
+
+    @Test
+    public void testSelection() {
+        // only the errors of the selection are replied, but the unvalidated primitives are tested
+        List<TestError> errors = validator.validate(ds, createTests(), new ArrayList<OsmPrimitive>(Arrays.asList(nodes[1])), null);
+        Assert.assertEquals(1, errors.size());
+        Assert.assertEquals(Arrays.asList(nodes[1]), new ArrayList<OsmPrimitive>(errors.get(0).getPrimitives()));
+        errors = validator.validate(ds, createTests(), new ArrayList<OsmPrimitive>(Arrays.asList(nodes[1], nodes[3])), null);
+        Assert.assertEquals(2, errors.size());
+
+        // a different set of tests validates again
+        CountingTest.visited = 0;
+        errors = validator.validate(ds, Arrays.<org.openstreetmap.josm.data.validation.Test>asList(new CountingTest()),
+                new ArrayList<OsmPrimitive>(Arrays.asList(nodes[1])), null);
+        Assert.assertTrue(errors.isEmpty());
+        Assert.assertTrue(CountingTest.visited > 0);
+    }
+
+    @Test
+    public void testNonLocalErrors() {
+        Relation[] relations = new Relation[2];
+        for (int i = 0; i < relations.length; i++) {
+            relations[i] = new Relation();
+            relations[i].addMember(new RelationMember("", nodes[0]));
+            relations[i].put("type", "test" + i);
+            ds.addPrimitive(relations[i]);
+        }
+        List<org.openstreetmap.josm.data.validation.Test> tests =
+            Arrays.<org.openstreetmap.josm.data.validation.Test>asList(new DuplicateRelation());
+        Assert.assertEquals(1, validator.validate(ds, tests, ds.allNonDeletedPrimitives(), null).size());
+
+        // the other relation is neither close to the changed one nor linked to it
+        relations[1].put("type", "test0");
+        List<TestError> incremental = validator.validate(ds, tests, ds.allNonDeletedPrimitives(), null);
+        tests = Arrays.<org.openstreetmap.josm.data.validation.Test>asList(new DuplicateRelation());
+        List<TestError> full = ParallelValidator.validate(tests, ds.allNonDeletedPrimitives(), null);
+        Assert.assertEquals(2, full.size());
+        Assert.assertEquals(toStrings(full), toStrings(incremental));
+    }
+}
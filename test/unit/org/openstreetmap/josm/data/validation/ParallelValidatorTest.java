@@ -0,0 +1,78 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.Mercator;
+import org.openstreetmap.josm.data.validation.tests.DuplicateNode;
+import org.openstreetmap.josm.data.validation.tests.DuplicatedWayNodes;
+import org.openstreetmap.josm.data.validation.tests.SelfIntersectingWay;
+import org.openstreetmap.josm.data.validation.tests.UntaggedNode;
+
+public class ParallelValidatorTest {
+
+    private static DataSet ds;
+
+    @BeforeClass
+    public static void setUp() {
+        Main.pref = new Preferences();
+        Main.setProjection(new Mercator());
+        ds = new DataSet();
+        List<Node> nodes = new ArrayList<Node>();
+        for (int i = 0; i < 5000; i++) {
+            // groups of three nodes at the same position
+            Node n = new Node(new LatLon(i / 3 * 0.001, 0));
+            if (i % 5 == 0) {
+                n.put("note", "test");
+            }
+            ds.addPrimitive(n);
+            nodes.add(n);
+            if (i % 10 == 9) {
+                Way w = new Way();
+                w.setNodes(nodes.subList(i - 3, i + 1));
+                if (i % 20 == 9) {
+                    // duplicated way node
+                    w.addNode(n);
+                } else if (i % 30 == 19) {
+                    // self intersection
+                    w.addNode(nodes.get(i - 2));
+                    w.addNode(nodes.get(i - 1));
+                }
+                ds.addPrimitive(w);
+            }
+        }
+    }
+
+    private static List<org.openstreetmap.josm.data.validation.Test> createTests() {
+        return Arrays.asList(new UntaggedNode(), new DuplicateNode(), new DuplicatedWayNodes(), new SelfIntersectingWay());
+    }
+
+    private static List<String> validate(boolean parallel) {
+        Main.pref.put("validator.parallel", parallel);
+        List<String> result = new ArrayList<String>();
+        for (TestError e : ParallelValidator.validate(createTests(), ds.allPrimitives(), null)) {
+            result.add(e.getTester().getClass().getSimpleName() + " " + e.getCode() + " " + e.getPrimitives());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameErrors() {
+        List<String> serial = validate(false);
+        Assert.assertFalse(serial.isEmpty());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(serial, validate(true));
+        }
+    }
+}
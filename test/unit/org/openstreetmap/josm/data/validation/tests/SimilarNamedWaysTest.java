@@ -0,0 +1,38 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation.tests;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimilarNamedWaysTest {
+
+    private static String randomName(Random r, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            // a small alphabet, so the names are often similar
+            sb.append((char) ('a' + r.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testBoundedDistance() {
+        SimilarNamedWays test = new SimilarNamedWays();
+        Assert.assertEquals(0, test.getLevenshteinDistance("Hauptstraße", "Hauptstraße", 2));
+        Assert.assertEquals(1, test.getLevenshteinDistance("Hauptstraße", "Hauptstrase", 2));
+        Assert.assertEquals(2, test.getLevenshteinDistance("Main Street", "Main Streeet ", 2));
+        Assert.assertEquals(3, test.getLevenshteinDistance("Main Street", "Station Road", 2));
+        Assert.assertEquals(3, test.getLevenshteinDistance("Main Street", "Main", 2));
+
+        Random r = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            String s = randomName(r, r.nextInt(12));
+            String t = randomName(r, r.nextInt(12));
+            int max = r.nextInt(4);
+            int expected = Math.min(test.getLevenshteinDistance(s, t), max + 1);
+            Assert.assertEquals(s + " " + t + " " + max, expected, test.getLevenshteinDistance(s, t, max));
+        }
+    }
+}
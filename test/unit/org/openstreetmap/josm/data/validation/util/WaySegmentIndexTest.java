@@ -0,0 +1,94 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.Mercator;
+import org.openstreetmap.josm.data.validation.OsmValidator;
+import org.openstreetmap.josm.data.validation.ParallelValidator;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.data.validation.tests.CrossingWays;
+import org.openstreetmap.josm.data.validation.tests.SimilarNamedWays;
+
+public class WaySegmentIndexTest {
+
+    private static DataSet ds;
+    private static List<OsmPrimitive> primitives;
+    private static Way horizontal, vertical, branch, far, deleted;
+
+    @BeforeClass
+    public static void setUp() {
+        Main.pref = new Preferences();
+        Main.setProjection(new Mercator());
+        OsmValidator.griddetail = 0.01;
+        ds = new DataSet();
+        primitives = new ArrayList<OsmPrimitive>();
+        horizontal = createWay(0, 0, 0, 0.01);
+        horizontal.put("highway", "residential");
+        horizontal.put("name", "Main Street");
+        vertical = createWay(-0.005, 0.005, 0.005, 0.005);
+        vertical.put("highway", "residential");
+        vertical.put("name", "Main Streat");
+        // starts in the same grid cell as horizontal
+        branch = createWay(0, 0.0001, 0.001, 0.0001);
+        branch.put("name", "Main Streeet");
+        far = createWay(1, 1, 1, 1.01);
+        deleted = createWay(0, 0.002, 0.001, 0.002);
+        deleted.setDeleted(true);
+        primitives.addAll(Arrays.asList(horizontal, vertical, branch, far, deleted));
+    }
+
+    private static Way createWay(double lat1, double lon1, double lat2, double lon2) {
+        Node n1 = new Node(new LatLon(lat1, lon1));
+        Node n2 = new Node(new LatLon(lat2, lon2));
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        Way w = new Way();
+        w.setNodes(Arrays.asList(n1, n2));
+        ds.addPrimitive(w);
+        return w;
+    }
+
+    @Test
+    public void testSearchWays() {
+        WaySegmentIndex index = new WaySegmentIndex(primitives);
+        Assert.assertSame(primitives, index.getPrimitives());
+        Assert.assertEquals(new HashSet<Way>(Arrays.asList(horizontal, vertical, branch)),
+                new HashSet<Way>(index.searchWays(new BBox(-0.001, -0.001, 0.011, 0.001))));
+        Assert.assertEquals(Arrays.asList(far), index.searchWays(new BBox(0.9, 0.9, 1.1, 1.1)));
+    }
+
+    @Test
+    public void testEndCells() {
+        WaySegmentIndex index = new WaySegmentIndex(primitives);
+        Assert.assertFalse(index.getEndCells(far).isEmpty());
+        // not usable
+        Assert.assertTrue(index.getEndCells(deleted).isEmpty());
+    }
+
+    @Test
+    public void testSharedByTests() {
+        List<org.openstreetmap.josm.data.validation.Test> tests = Arrays.<org.openstreetmap.josm.data.validation.Test>asList(
+                new CrossingWays(), new SimilarNamedWays());
+        List<TestError> errors = ParallelValidator.validate(tests, primitives, null);
+        Assert.assertEquals(2, errors.size());
+        Assert.assertEquals(new HashSet<OsmPrimitive>(Arrays.asList(horizontal, vertical)),
+                new HashSet<OsmPrimitive>(errors.get(0).getPrimitives()));
+        Assert.assertEquals(new HashSet<OsmPrimitive>(Arrays.asList(horizontal, branch)),
+                new HashSet<OsmPrimitive>(errors.get(1).getPrimitives()));
+    }
+}
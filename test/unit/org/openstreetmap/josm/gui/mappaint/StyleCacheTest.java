@@ -0,0 +1,94 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.gui.mappaint.StyleCache.StyleList;
+
+public class StyleCacheTest {
+
+    private static final int THREADS = 8;
+    private static final int RANGES = 200;
+
+    @BeforeClass
+    public static void setUp() {
+        Main.pref = new Preferences();
+    }
+
+    @Test
+    public void testConcurrentIntern() throws InterruptedException {
+        final StyleList sl = new StyleList(NodeElemStyle.SIMPLE_NODE_ELEMSTYLE);
+        final StyleCache[][] results = new StyleCache[THREADS][RANGES];
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < RANGES; i++) {
+                            // every thread creates equal caches, possibly at the same time
+                            results[thread][i] = StyleCache.EMPTY_STYLECACHE.put(sl, new Range(i, i + 1));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        for (int i = 0; i < RANGES; i++) {
+            Assert.assertSame(results[0][i].getWithRange(i + 0.5).a, sl);
+            for (int t = 1; t < THREADS; t++) {
+                Assert.assertSame(results[0][i], results[t][i]);
+            }
+        }
+    }
+
+    @Test
+    public void testBoundedInternPool() {
+        StyleList sl = new StyleList(NodeElemStyle.SIMPLE_NODE_ELEMSTYLE);
+        Main.pref.putInteger("mappaint.stylecache.intern-pool-size", 10);
+        StyleCache.clearInternPool();
+        try {
+            long hits = StyleCache.getInternPoolHits();
+            long misses = StyleCache.getInternPoolMisses();
+            long evictions = StyleCache.getInternPoolEvictions();
+            StyleCache first = StyleCache.EMPTY_STYLECACHE.put(sl, new Range(0, 1));
+            Assert.assertSame(first, StyleCache.EMPTY_STYLECACHE.put(sl, new Range(0, 1)));
+            Assert.assertEquals(hits + 1, StyleCache.getInternPoolHits());
+            Assert.assertEquals(misses + 1, StyleCache.getInternPoolMisses());
+
+            for (int i = 1; i <= 20; i++) {
+                StyleCache.EMPTY_STYLECACHE.put(sl, new Range(i, i + 1));
+            }
+            Assert.assertEquals(10, StyleCache.getInternPoolSize());
+            Assert.assertEquals(evictions + 11, StyleCache.getInternPoolEvictions());
+            // the least recently used cache has been evicted, equal caches are still equal
+            StyleCache again = StyleCache.EMPTY_STYLECACHE.put(sl, new Range(0, 1));
+            Assert.assertNotSame(first, again);
+            Assert.assertEquals(first, again);
+
+            StyleCache.clearInternPool();
+            Assert.assertEquals(0, StyleCache.getInternPoolSize());
+        } finally {
+            Main.pref.put("mappaint.stylecache.intern-pool-size", null);
+            StyleCache.clearInternPool();
+        }
+    }
+}
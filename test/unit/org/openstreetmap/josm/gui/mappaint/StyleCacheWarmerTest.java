@@ -0,0 +1,69 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.projection.Mercator;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+
+public class StyleCacheWarmerTest {
+
+    @BeforeClass
+    public static void setUp() {
+        Main.pref = new Preferences();
+        Main.setProjection(new Mercator());
+        MapCSSStyleSource source = new MapCSSStyleSource(
+                "node|z15- { symbol-shape: circle; symbol-size: 5; }\n" +
+                "node|z-14 { symbol-shape: square; symbol-size: 3; }\n");
+        source.loadStyleSource();
+        MapPaintStyles.getStyles().add(source);
+        MapPaintStyles.getStyles().clearCached();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        MapPaintStyles.getStyles().clear();
+        MapPaintStyles.getStyles().clearCached();
+    }
+
+    private static boolean isCached(Node n, double scale) {
+        StyleCache sc = n.mappaintStyle;
+        return sc != null && n.mappaintCacheIdx == MapPaintStyles.getStyles().getCacheIdx()
+                && sc.getWithRange(scale).a != null;
+    }
+
+    @Test
+    public void testWarm() throws InterruptedException {
+        DataSet ds = new DataSet();
+        Node inView = new Node(new LatLon(0.001, 0.001));
+        Node nextToView = new Node(new LatLon(0.001, 0.003));
+        Node farAway = new Node(new LatLon(1, 1));
+        ds.addPrimitive(inView);
+        ds.addPrimitive(nextToView);
+        ds.addPrimitive(farAway);
+
+        NavigatableComponent nc = new NavigatableComponent();
+        nc.setBounds(0, 0, 400, 400);
+        nc.zoomTo(Main.getProjection().latlon2eastNorth(new LatLon(0.001, 0.001)),
+                Main.getProjection().latlon2eastNorth(new LatLon(0.01, 0.01)).east() / 2000);
+        double scale = nc.getDist100Pixel();
+
+        new StyleCacheWarmer(ds).warm(nc);
+        for (int i = 0; i < 100 && !isCached(nextToView, scale); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(isCached(inView, scale / 2));
+        Assert.assertTrue(isCached(inView, scale * 2));
+        Assert.assertTrue(isCached(inView, scale));
+        Assert.assertTrue(isCached(nextToView, scale));
+        Assert.assertFalse(isCached(farAway, scale));
+    }
+}
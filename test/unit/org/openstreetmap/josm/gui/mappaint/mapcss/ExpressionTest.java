@@ -0,0 +1,78 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.mappaint.Environment;
+import org.openstreetmap.josm.gui.mappaint.MultiCascade;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.KeyValueCondition;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Condition.Op;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Expression.FunctionExpression;
+import org.openstreetmap.josm.gui.mappaint.mapcss.Expression.LiteralExpression;
+
+public class ExpressionTest {
+
+    @BeforeClass
+    public static void setUp() {
+        Main.pref = new Preferences();
+    }
+
+    private static Expression fn(String name, Expression... args) {
+        return new FunctionExpression(name, Arrays.asList(args));
+    }
+
+    private static Expression lit(Object o) {
+        return new LiteralExpression(o);
+    }
+
+    private static Environment env(Way w) {
+        return new Environment(w, new MultiCascade(), "default", null);
+    }
+
+    @Test
+    public void testConstantFolding() {
+        // constant expressions don't need an environment
+        Assert.assertEquals(7f, fn("plus", lit(3f), fn("times", lit(2f), lit(2f))).evaluate(null));
+        Assert.assertEquals(Color.RED, fn("html2color", lit("#ff0000")).evaluate(null));
+        Assert.assertEquals(2.0, fn("sqrt", lit(4f)).evaluate(null));
+        Assert.assertNull(fn("divided_by", lit(1f), lit(0f)).evaluate(null));
+        Assert.assertNull(fn("no_such_function", lit(1f)).evaluate(null));
+        Assert.assertEquals(0f, fn("minus").evaluate(null));
+    }
+
+    @Test
+    public void testEnvironment() {
+        Way w = new Way();
+        w.put("width", "5");
+        Expression e = fn("times", fn("tag", lit("width")), lit(2f));
+        Assert.assertEquals(10f, e.evaluate(env(w)));
+        w.put("width", "3");
+        Assert.assertEquals(6f, e.evaluate(env(w)));
+
+        Expression cond = fn("cond", fn("has_tag_key", lit("bridge")), lit("yes"), lit("no"));
+        Assert.assertEquals("no", cond.evaluate(env(w)));
+        w.put("bridge", "yes");
+        Assert.assertEquals("yes", cond.evaluate(env(w)));
+
+        Assert.assertEquals(true, fn("and", fn("has_tag_key", lit("bridge")), lit(true)).evaluate(env(w)));
+        Assert.assertEquals(false, fn("or", fn("has_tag_key", lit("tunnel")), lit(false)).evaluate(env(w)));
+    }
+
+    @Test
+    public void testRegexCondition() {
+        Way w = new Way();
+        Condition c = new KeyValueCondition("highway", "^(primary|secondary)$", Op.REGEX);
+        Assert.assertFalse(c.applies(env(w)));
+        w.put("highway", "primary");
+        Assert.assertTrue(c.applies(env(w)));
+        w.put("highway", "primary_link");
+        Assert.assertFalse(c.applies(env(w)));
+    }
+}
@@ -0,0 +1,99 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint.mapcss;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.mappaint.Cascade;
+import org.openstreetmap.josm.gui.mappaint.MultiCascade;
+
+public class MapCSSStyleSourceTest {
+
+    private static final String CSS =
+        "way[highway=residential] { width: 2; }\n" +
+        "way[highway] { z-index: 1; }\n" +
+        "way { opacity: 0.5; }\n" +
+        "*[name] { font-size: 9; }\n" +
+        "node[amenity=cafe] { symbol-size: 7; }\n" +
+        "way[!highway] { width: 1; }\n" +
+        "area[landuse] { fill-opacity: 0.3; }\n" +
+        "relation[type=route] > way { casing-width: 4; }\n" +
+        "way[highway=residential][name], node[name] { width: 3; }\n";
+
+    private static MapCSSStyleSource source;
+
+    @BeforeClass
+    public static void setUp() {
+        Main.pref = new Preferences();
+        source = new MapCSSStyleSource(CSS);
+        source.loadStyleSource();
+        Assert.assertEquals(9, source.rules.size());
+    }
+
+    private static Cascade apply(OsmPrimitive osm) {
+        MultiCascade mc = new MultiCascade();
+        source.apply(mc, osm, 1.0, null, false);
+        return mc.getCascade("default");
+    }
+
+    @Test
+    public void testWays() {
+        Way w = new Way();
+        w.put("highway", "residential");
+        Cascade c = apply(w);
+        Assert.assertEquals(2f, c.get("width", null, Float.class), 0);
+        Assert.assertEquals(1f, c.get("z-index", null, Float.class), 0);
+        Assert.assertEquals(0.5f, c.get("opacity", null, Float.class), 0);
+        Assert.assertNull(c.get("font-size", null, Float.class));
+
+        // the later rule overrides the earlier one
+        w.put("name", "Main Street");
+        c = apply(w);
+        Assert.assertEquals(3f, c.get("width", null, Float.class), 0);
+        Assert.assertEquals(9f, c.get("font-size", null, Float.class), 0);
+
+        Way untagged = new Way();
+        c = apply(untagged);
+        Assert.assertEquals(1f, c.get("width", null, Float.class), 0);
+        Assert.assertEquals(0.5f, c.get("opacity", null, Float.class), 0);
+        Assert.assertNull(c.get("z-index", null, Float.class));
+        Assert.assertNull(c.get("casing-width", null, Float.class));
+
+        Relation route = new Relation();
+        route.put("type", "route");
+        route.addMember(new RelationMember("", untagged));
+        c = apply(untagged);
+        Assert.assertEquals(4f, c.get("casing-width", null, Float.class), 0);
+    }
+
+    @Test
+    public void testNodesAndRelations() {
+        Node n = new Node();
+        n.put("amenity", "cafe");
+        Cascade c = apply(n);
+        Assert.assertEquals(7f, c.get("symbol-size", null, Float.class), 0);
+        Assert.assertNull(c.get("width", null, Float.class));
+        Assert.assertNull(c.get("opacity", null, Float.class));
+
+        n.put("name", "Cafe");
+        c = apply(n);
+        Assert.assertEquals(3f, c.get("width", null, Float.class), 0);
+
+        Relation r = new Relation();
+        r.put("type", "multipolygon");
+        r.put("landuse", "forest");
+        r.put("name", "Forest");
+        c = apply(r);
+        Assert.assertEquals(0.3f, c.get("fill-opacity", null, Float.class), 0);
+        // *[name] doesn't match relations
+        Assert.assertNull(c.get("font-size", null, Float.class));
+        Assert.assertNull(c.get("opacity", null, Float.class));
+    }
+}
@@ -0,0 +1,111 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.WayData;
+
+public class OsmReaderStreamingTest {
+
+    private static final String OSM =
+        "<?xml version='1.0' encoding='UTF-8'?>\n" +
+        "<osm version='0.6' generator='test'>\n" +
+        "  <bounds minlat='0' minlon='0' maxlat='1' maxlon='1'/>\n" +
+        "  <node id='1' version='1' changeset='1' lat='0.1' lon='0.2'><tag k='name' v='a'/></node>\n" +
+        "  <node id='2' version='1' changeset='1' lat='0.3' lon='0.4'/>\n" +
+        "  <way id='10' version='1' changeset='1'><nd ref='1'/><nd ref='2'/><nd ref='3'/><tag k='highway' v='road'/></way>\n" +
+        "  <relation id='20' version='1' changeset='1'><member type='way' ref='10' role='outer'/></relation>\n" +
+        "</osm>\n";
+
+    private static class RecordingSink implements OsmPrimitiveSink {
+        final List<DataSource> sources = new ArrayList<DataSource>();
+        final List<NodeData> nodes = new ArrayList<NodeData>();
+        final List<WayData> ways = new ArrayList<WayData>();
+        final List<List<LatLon>> wayCoordinates = new ArrayList<List<LatLon>>();
+        final List<RelationData> relations = new ArrayList<RelationData>();
+
+        @Override
+        public void addDataSource(DataSource source) {
+            sources.add(source);
+        }
+
+        @Override
+        public void addNode(NodeData node) {
+            nodes.add(node);
+        }
+
+        @Override
+        public void addWay(WayData way, List<LatLon> coordinates) {
+            ways.add(way);
+            wayCoordinates.add(coordinates);
+        }
+
+        @Override
+        public void addRelation(RelationData relation) {
+            relations.add(relation);
+        }
+    }
+
+    @BeforeClass
+    public static void init() {
+        Main.pref = new Preferences();
+    }
+
+    @Test
+    public void testStreamWithLocations() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        OsmReader.parseStream(new ByteArrayInputStream(OSM.getBytes("UTF-8")), sink, new MemoryNodeLocationStore(), null);
+
+        Assert.assertEquals(1, sink.sources.size());
+        Assert.assertEquals(2, sink.nodes.size());
+        Assert.assertEquals("a", sink.nodes.get(0).get("name"));
+
+        Assert.assertEquals(1, sink.ways.size());
+        WayData way = sink.ways.get(0);
+        Assert.assertEquals(10, way.getId());
+        Assert.assertEquals("road", way.get("highway"));
+        Assert.assertEquals(3, way.getNodes().size());
+        List<LatLon> coordinates = sink.wayCoordinates.get(0);
+        Assert.assertTrue(coordinates.get(0).equalsEpsilon(new LatLon(0.1, 0.2)));
+        Assert.assertTrue(coordinates.get(1).equalsEpsilon(new LatLon(0.3, 0.4)));
+        Assert.assertNull(coordinates.get(2));
+
+        Assert.assertEquals(1, sink.relations.size());
+        Assert.assertEquals(1, sink.relations.get(0).getMembersCount());
+        Assert.assertEquals(10, sink.relations.get(0).getMembers().get(0).getMemberId());
+    }
+
+    @Test
+    public void testStreamWithoutLocations() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        OsmReader.parseStream(new ByteArrayInputStream(OSM.getBytes("UTF-8")), sink, null, null);
+        Assert.assertEquals(1, sink.ways.size());
+        Assert.assertNull(sink.wayCoordinates.get(0));
+    }
+
+    @Test
+    public void testMemoryNodeLocationStore() {
+        MemoryNodeLocationStore store = new MemoryNodeLocationStore(4);
+        for (int i=1; i<=10000; i++) {
+            store.put(i * 7919L, new LatLon(i / 1000.0, -i / 1000.0));
+        }
+        store.put(-5, new LatLon(1, 2));
+        Assert.assertEquals(10001, store.size());
+        for (int i=1; i<=10000; i++) {
+            Assert.assertTrue(store.get(i * 7919L).equalsEpsilon(new LatLon(i / 1000.0, -i / 1000.0)));
+        }
+        Assert.assertTrue(store.get(-5).equalsEpsilon(new LatLon(1, 2)));
+        Assert.assertNull(store.get(3));
+    }
+}
@@ -0,0 +1,170 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.Mercator;
+
+public class OsmWriterTest {
+
+    @BeforeClass
+    public static void init() {
+        Main.pref = new Preferences();
+        Main.setProjection(new Mercator());
+    }
+
+    private static DataSet createDataSet() {
+        Random random = new Random(11);
+        DataSet ds = new DataSet();
+        User user = User.createOsmUser(42, "a <user>");
+        List<Node> nodes = new ArrayList<Node>();
+        for (int i=0; i<25000; i++) {
+            Node n = i % 3 == 0 ? new Node() : new Node(i + 1, 1);
+            n.setCoor(new LatLon(Math.round(random.nextDouble() * 1e9) / 1e7, random.nextDouble() * 100));
+            n.setTimestamp(new Date(1300000000000L + i * 1000L));
+            n.setUser(user);
+            if (i % 7 == 0) {
+                n.put("name", "Node \"" + i + "\" & 'co' ä");
+            }
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        for (int i=0; i<2000; i++) {
+            Way w = new Way();
+            w.setNodes(nodes.subList(i * 10, i * 10 + 11));
+            w.put("highway", "residential");
+            ds.addPrimitive(w);
+        }
+        Relation r = new Relation();
+        r.addMember(new RelationMember("a<b", nodes.get(5)));
+        r.put("type", "multipolygon");
+        ds.addPrimitive(r);
+        nodes.get(100).setDeleted(true);
+        return ds;
+    }
+
+    /**
+     * A small data set with the details the XML output depends on: negative and tiny coordinates,
+     * timestamps before 1970, characters to escape, modified, deleted and invisible objects.
+     */
+    private static DataSet createSmallDataSet() {
+        DataSet ds = new DataSet();
+        ds.dataSources.add(new DataSource(new Bounds(-33.9, -70.7, -33.4, -70.5), "test"));
+        User user = User.createOsmUser(7, "Zoë <&\"'> mapper");
+        double[][] coords = {{-33.4569, -70.6483}, {-0.00001, -179.9999999}, {0.0, 0.0},
+                {89.99, 1e-7}, {-85.0511287, 180.0}, {51.5, -0.1275}};
+        long[] times = {1300000000000L, -31536000000L, 951782400000L, 4102444799000L, 0L, 1234567890123L};
+        List<Node> nodes = new ArrayList<Node>();
+        for (int i = 0; i < coords.length; i++) {
+            Node n = new Node(i + 1, i + 2);
+            n.setCoor(new LatLon(coords[i][0], coords[i][1]));
+            if (times[i] != 0) {
+                n.setTimestamp(new Date(times[i]));
+            }
+            if (i % 2 == 0) {
+                n.setUser(user);
+                n.setChangesetId(100 + i);
+            }
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        nodes.get(0).put("name", "Café \"Zum <Löwen>\" & 'Bar'");
+        nodes.get(0).put("note", "line 1\nline 2\ttab\r");
+        nodes.get(1).put("ref", "A>B");
+        nodes.get(2).setModified(true);
+        nodes.get(3).setDeleted(true);
+        nodes.get(5).setVisible(false);
+
+        Way w = new Way(10, 3);
+        w.setNodes(nodes.subList(0, 3));
+        w.put("highway", "residential");
+        w.put("name:ru", "Улица");
+        w.setTimestamp(new Date(1262304000000L));
+        w.setUser(user);
+        w.setModified(true);
+        ds.addPrimitive(w);
+
+        Relation r = new Relation(20, 1);
+        r.addMember(new RelationMember("outer", w));
+        r.addMember(new RelationMember("", nodes.get(4)));
+        r.addMember(new RelationMember("a<b&c", nodes.get(1)));
+        r.put("type", "multipolygon");
+        ds.addPrimitive(r);
+        return ds;
+    }
+
+    private static String write(DataSet ds, int threads) {
+        StringWriter sw = new StringWriter();
+        OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(sw), false, "0.6");
+        w.setThreads(threads);
+        w.header();
+        w.writeContent(ds);
+        w.footer();
+        w.flush();
+        return sw.toString();
+    }
+
+    /**
+     * Compares the output with data_nodist/osmwriter-reference.osm, which has been written
+     * by the OsmWriter before it was optimized.
+     */
+    @Test
+    public void testReferenceOutput() throws IOException {
+        DataSet ds = createSmallDataSet();
+        StringWriter sw = new StringWriter();
+        OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(sw), false, "0.6");
+        w.header();
+        w.writeDataSources(ds);
+        w.writeContent(ds);
+        w.footer();
+        w.flush();
+        Assert.assertEquals(readReference(), sw.toString());
+    }
+
+    private static String readReference() throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream("data_nodist/osmwriter-reference.osm"), "UTF-8");
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                sb.append(buffer, 0, n);
+            }
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testParallelOutputIsIdentical() {
+        DataSet ds = createDataSet();
+        String serial = write(ds, 1);
+        Assert.assertTrue(serial.contains("&quot;"));
+        Assert.assertEquals(serial, write(ds, 4));
+        Assert.assertEquals(serial, write(ds, 2));
+    }
+}
@@ -0,0 +1,130 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelBZip2InputStreamTest {
+
+    private static byte[] createData(int size) {
+        Random random = new Random(11);
+        byte[] data = new byte[size];
+        String[] words = {"<node ", "id='", "lat='", "lon='", "version='1' ", "/>\n", "<tag k='highway' v='residential'/>"};
+        int i = 0;
+        while (i < size) {
+            byte[] w = (words[random.nextInt(words.length)] + random.nextInt(100000)).getBytes();
+            for (int j=0; j<w.length && i < size; j++) {
+                data[i++] = w[j];
+            }
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('B');
+        out.write('Z');
+        CBZip2OutputStream bzout = new CBZip2OutputStream(out, blockSize);
+        bzout.write(data);
+        bzout.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed, int threads) throws IOException {
+        InputStream in = new ByteArrayInputStream(compressed);
+        Assert.assertEquals('B', in.read());
+        Assert.assertEquals('Z', in.read());
+        ParallelBZip2InputStream bzin = new ParallelBZip2InputStream(in, threads);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[10000];
+        int n;
+        while ((n = bzin.read(b, 0, b.length)) != -1) {
+            out.write(b, 0, n);
+        }
+        bzin.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testMultipleBlocks() throws IOException {
+        byte[] data = createData(1500000);
+        byte[] compressed = compress(data, 1);
+        Assert.assertTrue(Arrays.equals(data, decompress(compressed, 4)));
+        Assert.assertTrue(Arrays.equals(data, decompress(compressed, 1)));
+    }
+
+    @Test
+    public void testConcatenatedStreams() throws IOException {
+        byte[] data1 = createData(300000);
+        byte[] data2 = createData(50);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(compress(data1, 1));
+        compressed.write(compress(data2, 9));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data1);
+        expected.write(data2);
+        Assert.assertTrue(Arrays.equals(expected.toByteArray(), decompress(compressed.toByteArray(), 3)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Assert.assertEquals(0, decompress(compress(new byte[0], 9), 2).length);
+    }
+
+    /**
+     * The block header lists the used byte values in groups of 16 as bitmaps. Using only bytes of the
+     * first three groups, chosen so that the bitmaps read 0x1772, 0x4538 and 0x5090, writes the end
+     * of stream magic into the header of every block.
+     */
+    @Test
+    public void testEndOfStreamMagicInBlock() throws IOException {
+        int[] bitmaps = {0x1772, 0x4538, 0x5090};
+        byte[] symbols = new byte[18];
+        int count = 0;
+        for (int group=0; group<bitmaps.length; group++) {
+            for (int i=0; i<16; i++) {
+                if ((bitmaps[group] & (0x8000 >> i)) != 0) {
+                    symbols[count++] = (byte) (group * 16 + i);
+                }
+            }
+        }
+        Assert.assertEquals(symbols.length, count);
+        Random random = new Random(3);
+        byte[] data = new byte[250000];
+        for (int i=0; i<data.length; i++) {
+            // no runs of equal bytes, their run length encoding would use other byte values
+            do {
+                data[i] = symbols[random.nextInt(symbols.length)];
+            } while (i > 0 && data[i] == data[i-1]);
+        }
+        byte[] compressed = compress(data, 1);
+        Assert.assertTrue(countMagic(compressed, 0x177245385090L) > 1);
+        Assert.assertTrue(Arrays.equals(data, decompress(compressed, 2)));
+    }
+
+    private static int countMagic(byte[] data, long magic) {
+        int count = 0;
+        long window = 0;
+        for (int i=0; i<data.length * 8; i++) {
+            window = ((window << 1) | ((data[i >> 3] >> (7 - (i & 7))) & 1)) & 0xffffffffffffL;
+            if (i >= 47 && window == magic) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        byte[] compressed = compress(createData(300000), 1);
+        decompress(Arrays.copyOf(compressed, compressed.length / 2), 2);
+    }
+}
@@ -0,0 +1,74 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.tools.bzip2.CBZip2InputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelBZip2OutputStreamTest {
+
+    private static byte[] createData(int size) {
+        Random random = new Random(5);
+        byte[] data = new byte[size];
+        for (int i=0; i<size; i++) {
+            // runs of equal bytes exercise the run length encoding of bzip2
+            data[i] = (byte) (random.nextInt(10) < 3 && i > 0 ? data[i-1] : 'a' + random.nextInt(20));
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, int blockSize, int threads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('B');
+        out.write('Z');
+        ParallelBZip2OutputStream bzout = new ParallelBZip2OutputStream(out, blockSize, threads);
+        // write in pieces of varying size
+        int off = 0;
+        int len = 1;
+        while (off < data.length) {
+            int n = Math.min(len, data.length - off);
+            bzout.write(data, off, n);
+            off += n;
+            len = len * 3 + 1;
+        }
+        bzout.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[10000];
+        int n;
+        while ((n = in.read(b, 0, b.length)) != -1) {
+            out.write(b, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static void checkRoundTrip(byte[] data, int blockSize, int threads) throws IOException {
+        byte[] compressed = compress(data, blockSize, threads);
+        Assert.assertEquals('B', compressed[0]);
+        Assert.assertEquals('Z', compressed[1]);
+        // a single standard stream, readable without support for concatenated streams
+        InputStream in = new ByteArrayInputStream(compressed, 2, compressed.length - 2);
+        Assert.assertTrue(Arrays.equals(data, readAll(new CBZip2InputStream(in))));
+        in = new ByteArrayInputStream(compressed, 2, compressed.length - 2);
+        Assert.assertTrue(Arrays.equals(data, readAll(new ParallelBZip2InputStream(in, threads))));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        checkRoundTrip(createData(1000000), 1, 4);
+        checkRoundTrip(createData(200000), 9, 2);
+        checkRoundTrip(createData(1), 9, 2);
+        checkRoundTrip(new byte[0], 9, 2);
+    }
+}
@@ -0,0 +1,196 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.Mercator;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+public class PbfReaderTest {
+
+    @BeforeClass
+    public static void init() {
+        Main.pref = new Preferences();
+        Main.setProjection(new Mercator());
+    }
+
+    private static DataSet roundTrip(DataSet ds) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PbfWriter w = new PbfWriter(out);
+        w.writeData(ds);
+        w.close();
+        return PbfReader.parseDataSet(new ByteArrayInputStream(out.toByteArray()), null);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DataSet ds = new DataSet();
+        ds.dataSources.add(new DataSource(new Bounds(1, 2, 3, 4), "test"));
+        User user = User.createOsmUser(4711, "mapper");
+        Node[] nodes = new Node[20000];
+        for (int i=0; i<nodes.length; i++) {
+            nodes[i] = new Node(i + 1, 3);
+            nodes[i].setCoor(new LatLon(1 + i * 1e-5, 2 - i * 1e-5));
+            nodes[i].setUser(user);
+            nodes[i].setChangesetId(42);
+            nodes[i].setTimestamp(new Date(1300000000000L + i * 1000L));
+            if (i % 10 == 0) {
+                nodes[i].put("name", "node " + i);
+            }
+            ds.addPrimitive(nodes[i]);
+        }
+        Way way = new Way(100, 1);
+        way.setNodes(Arrays.asList(nodes[5], nodes[2], nodes[7]));
+        way.put("highway", "residential");
+        ds.addPrimitive(way);
+        Relation relation = new Relation(200, 1);
+        relation.addMember(new RelationMember("outer", way));
+        relation.addMember(new RelationMember("", nodes[0]));
+        ds.addPrimitive(relation);
+
+        DataSet result = roundTrip(ds);
+        Assert.assertEquals(nodes.length, result.getNodes().size());
+        Assert.assertEquals(1, result.dataSources.size());
+        Assert.assertEquals(3, result.dataSources.iterator().next().bounds.getMax().lat(), 1e-7);
+
+        Node n = (Node) result.getPrimitiveById(1001, OsmPrimitiveType.NODE);
+        Assert.assertTrue(n.getCoor().equalsEpsilon(nodes[1000].getCoor()));
+        Assert.assertEquals("node 1000", n.get("name"));
+        Assert.assertEquals(3, n.getVersion());
+        Assert.assertEquals(42, n.getChangesetId());
+        Assert.assertEquals(4711, n.getUser().getId());
+        Assert.assertEquals(nodes[1000].getTimestamp(), n.getTimestamp());
+        Assert.assertFalse(result.getPrimitiveById(1002, OsmPrimitiveType.NODE).hasKeys());
+
+        Way w = (Way) result.getPrimitiveById(100, OsmPrimitiveType.WAY);
+        Assert.assertEquals("residential", w.get("highway"));
+        Assert.assertEquals(3, w.getNodesCount());
+        Assert.assertEquals(6, w.getNodeId(0));
+        Assert.assertEquals(3, w.getNodeId(1));
+        Assert.assertEquals(8, w.getNodeId(2));
+
+        Relation r = (Relation) result.getPrimitiveById(200, OsmPrimitiveType.RELATION);
+        Assert.assertEquals(2, r.getMembersCount());
+        Assert.assertSame(w, r.getMember(0).getMember());
+        Assert.assertEquals("outer", r.getMember(0).getRole());
+        Assert.assertEquals(1, r.getMember(1).getUniqueId());
+    }
+
+    private static Node createNode(long id, int version) {
+        Node n = new Node(id, version);
+        n.setCoor(new LatLon(1, 1));
+        return n;
+    }
+
+    private static void assertNotWritable(DataSet ds) throws Exception {
+        Assert.assertFalse(PbfWriter.canWrite(ds));
+        try {
+            roundTrip(ds);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLocalChanges() throws Exception {
+        DataSet ds = new DataSet();
+        Node unchanged = createNode(1, 1);
+        ds.addPrimitive(unchanged);
+        Assert.assertTrue(PbfWriter.canWrite(ds));
+        Assert.assertEquals(1, roundTrip(ds).getNodes().size());
+
+        Node created = new Node(new LatLon(2, 2));
+        ds.addPrimitive(created);
+        assertNotWritable(ds);
+        ds.removePrimitive(created);
+
+        Node modified = createNode(2, 1);
+        ds.addPrimitive(modified);
+        modified.setModified(true);
+        assertNotWritable(ds);
+        modified.setModified(false);
+        Assert.assertTrue(PbfWriter.canWrite(ds));
+
+        Node deleted = createNode(3, 1);
+        ds.addPrimitive(deleted);
+        deleted.setDeleted(true);
+        assertNotWritable(ds);
+        ds.removePrimitive(deleted);
+
+        // layers are never marked as saved to a PBF file
+        Assert.assertFalse(new OsmPbfExporter().isLossless());
+        Assert.assertTrue(new OsmExporter().isLossless());
+    }
+
+    @Test
+    public void testWithoutMetadata() throws Exception {
+        DataSet ds = new DataSet();
+        ds.addPrimitive(createNode(1, 1));
+        Assert.assertFalse(roundTrip(ds).isUploadDiscouraged());
+
+        // files written without metadata have no versions
+        Node unversioned = createNode(2, 1);
+        NodeData data = unversioned.save();
+        data.setVersion(0);
+        unversioned.load(data);
+        ds.addPrimitive(unversioned);
+        Assert.assertTrue(PbfWriter.canWrite(ds));
+        DataSet result = roundTrip(ds);
+        Assert.assertTrue(result.isUploadDiscouraged());
+        Node n = (Node) result.getPrimitiveById(2, OsmPrimitiveType.NODE);
+        Assert.assertFalse(n.isIncomplete());
+        Assert.assertEquals(0, n.getVersion());
+    }
+
+    @Test
+    public void testPostprocessors() throws Exception {
+        final DataSet[] processed = new DataSet[1];
+        OsmServerReadPostprocessor pp = new OsmServerReadPostprocessor() {
+            @Override
+            public void postprocessDataSet(DataSet ds, ProgressMonitor progress) {
+                processed[0] = ds;
+            }
+        };
+        OsmReader.registerPostprocessor(pp);
+        try {
+            DataSet ds = new DataSet();
+            ds.addPrimitive(createNode(1, 1));
+            DataSet result = roundTrip(ds);
+            Assert.assertSame(result, processed[0]);
+        } finally {
+            OsmReader.deregisterPostprocessor(pp);
+        }
+    }
+
+    @Test(expected = IllegalDataException.class)
+    public void testTruncated() throws Exception {
+        DataSet ds = new DataSet();
+        Node n = new Node(1, 1);
+        n.setCoor(new LatLon(1, 1));
+        ds.addPrimitive(n);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PbfWriter(out).writeData(ds);
+        byte[] data = out.toByteArray();
+        PbfReader.parseDataSet(new ByteArrayInputStream(data, 0, data.length - 5), null);
+    }
+}
@@ -0,0 +1,78 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+
+public class PipelinedOsmReaderTest {
+
+    @BeforeClass
+    public static void init() {
+        Main.pref = new Preferences();
+    }
+
+    private static InputStream createOsm(int ways, boolean broken) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version='1.0' encoding='UTF-8'?>\n<osm version='0.6' generator='test'>\n");
+        sb.append("<bounds minlat='0' minlon='0' maxlat='1' maxlon='1'/>\n");
+        int id = 1;
+        for (int i=0; i<ways; i++) {
+            for (int j=0; j<3; j++) {
+                sb.append("<node id='").append(id + j).append("' version='1' changeset='1' lat='0.").append(i)
+                .append("' lon='0.").append(j).append("'/>\n");
+            }
+            sb.append("<way id='").append(i + 1).append("' version='1' changeset='1'>");
+            for (int j=0; j<3; j++) {
+                sb.append("<nd ref='").append(id + j).append("'/>");
+            }
+            sb.append("<tag k='highway' v='residential'/></way>\n");
+            id += 3;
+        }
+        sb.append("<relation id='1' version='1' changeset='1'><member type='way' ref='1' role=''/></relation>\n");
+        if (broken) {
+            sb.append("<way id='0' version='1'/>\n");
+        }
+        sb.append("</osm>\n");
+        return new ByteArrayInputStream(sb.toString().getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testSameResultAsOsmReader() throws Exception {
+        DataSet expected = OsmReader.parseDataSet(createOsm(5000, false), null);
+        DataSet actual = PipelinedOsmReader.parseDataSet(createOsm(5000, false), null);
+        Assert.assertEquals(expected.getNodes().size(), actual.getNodes().size());
+        Assert.assertEquals(expected.getWays().size(), actual.getWays().size());
+        Assert.assertEquals(1, actual.getRelations().size());
+        Assert.assertEquals(1, actual.dataSources.size());
+        Assert.assertEquals("0.6", actual.getVersion());
+        for (Way w : expected.getWays()) {
+            Way other = (Way) actual.getPrimitiveById(w.getUniqueId(), OsmPrimitiveType.WAY);
+            Assert.assertEquals(w.getNodesCount(), other.getNodesCount());
+            for (int i=0; i<w.getNodesCount(); i++) {
+                Node n = other.getNode(i);
+                Assert.assertEquals(w.getNode(i).getUniqueId(), n.getUniqueId());
+                Assert.assertSame(actual, n.getDataSet());
+                Assert.assertEquals(w.getNode(i).getCoor(), n.getCoor());
+            }
+            Assert.assertEquals("residential", other.get("highway"));
+        }
+        Relation r = (Relation) actual.getPrimitiveById(1, OsmPrimitiveType.RELATION);
+        Assert.assertSame(actual.getPrimitiveById(1, OsmPrimitiveType.WAY), r.getMember(0).getMember());
+    }
+
+    @Test(expected = IllegalDataException.class)
+    public void testParserError() throws Exception {
+        PipelinedOsmReader.parseDataSet(createOsm(2000, true), null);
+    }
+}
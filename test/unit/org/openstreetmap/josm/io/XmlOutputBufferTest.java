@@ -0,0 +1,100 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.josm.tools.DateUtils;
+
+public class XmlOutputBufferTest {
+
+    private static String format(double d) throws Exception {
+        StringWriter sw = new StringWriter();
+        XmlOutputBuffer buffer = new XmlOutputBuffer(sw);
+        buffer.appendDouble(d);
+        buffer.flush();
+        return sw.toString();
+    }
+
+    private static String format(long l) throws Exception {
+        StringWriter sw = new StringWriter();
+        XmlOutputBuffer buffer = new XmlOutputBuffer(sw);
+        buffer.appendLong(l);
+        buffer.flush();
+        return sw.toString();
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        double[] doubles = {0.0, -0.0, 1.0, -1.0, 10.0, 51.5, -0.1234567, 179.9999999, 0.001, 0.0001,
+                1e7, 12345678.9, 1.0/3, Double.NaN, Double.POSITIVE_INFINITY, 90.00000001};
+        for (double d : doubles) {
+            Assert.assertEquals(Double.toString(d), format(d));
+        }
+        Random random = new Random(1);
+        for (int i=0; i<10000; i++) {
+            double d = Math.round((random.nextDouble() * 360 - 180) * 1e7) / 1e7;
+            Assert.assertEquals(Double.toString(d), format(d));
+            d = random.nextDouble() * 180 - 90;
+            Assert.assertEquals(Double.toString(d), format(d));
+        }
+        long[] longs = {0, 1, -1, 9, 10, 123456789012L, -42, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long l : longs) {
+            Assert.assertEquals(Long.toString(l), format(l));
+        }
+    }
+
+    @Test
+    public void testEncoding() throws Exception {
+        String s = "a<b>&'\"\n\r\tc ä€😀";
+        StringWriter sw = new StringWriter();
+        XmlOutputBuffer buffer = new XmlOutputBuffer(sw);
+        buffer.appendEncoded(s);
+        buffer.flush();
+        Assert.assertEquals(XmlWriter.encode(s), sw.toString());
+    }
+
+    @Test
+    public void testUTF8Channel() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        XmlOutputBuffer buffer = new XmlOutputBuffer(Channels.newChannel(bout));
+        Random random = new Random(5);
+        // long enough to drain the buffer several times, also between surrogate pairs
+        for (int i=0; i<50000; i++) {
+            String s;
+            switch (random.nextInt(4)) {
+            case 0: s = "x"; break;
+            case 1: s = "ß"; break;
+            case 2: s = "東"; break;
+            default: s = "😀";
+            }
+            expected.append(s);
+            buffer.write(s);
+        }
+        buffer.close();
+        Assert.assertEquals(expected.toString(), new String(bout.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testTimestamps() throws Exception {
+        Random random = new Random(9);
+        for (int i=0; i<2000; i++) {
+            long millis = (random.nextLong() % 8000000000000L) / 1000 * 1000;
+            if (i % 10 == 0) {
+                millis += 123;
+            }
+            Date date = new Date(millis);
+            StringWriter sw = new StringWriter();
+            XmlOutputBuffer buffer = new XmlOutputBuffer(sw);
+            buffer.appendTimestamp(date);
+            buffer.flush();
+            Assert.assertEquals(DateUtils.fromDate(date), sw.toString());
+        }
+    }
+}
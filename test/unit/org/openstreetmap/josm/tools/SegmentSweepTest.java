@@ -0,0 +1,81 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.tools;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.josm.data.coor.EastNorth;
+
+public class SegmentSweepTest {
+
+    private static boolean overlaps(EastNorth a1, EastNorth a2, EastNorth b1, EastNorth b2) {
+        return Math.max(a1.east(), a2.east()) >= Math.min(b1.east(), b2.east())
+            && Math.max(b1.east(), b2.east()) >= Math.min(a1.east(), a2.east())
+            && Math.max(a1.north(), a2.north()) >= Math.min(b1.north(), b2.north())
+            && Math.max(b1.north(), b2.north()) >= Math.min(a1.north(), a2.north());
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        Random r = new Random(42);
+        int count = 500;
+        EastNorth[] from = new EastNorth[count];
+        EastNorth[] to = new EastNorth[count];
+        for (int i = 0; i < count; i++) {
+            from[i] = new EastNorth(r.nextInt(1000), r.nextInt(1000));
+            // some long segments, some vertical and horizontal ones, touching at the ends
+            int length = i % 10 == 0 ? 500 : 30;
+            to[i] = new EastNorth(i % 7 == 0 ? from[i].east() : from[i].east() + r.nextInt(length),
+                    i % 5 == 0 ? from[i].north() : from[i].north() + r.nextInt(2 * length) - length);
+        }
+        Set<Long> expected = new HashSet<Long>();
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (overlaps(from[i], to[i], from[j], to[j])) {
+                    expected.add((long) i * count + j);
+                }
+            }
+        }
+        final Set<Long> found = new HashSet<Long>();
+        final int c = count;
+        Assert.assertTrue(SegmentSweep.findOverlaps(from, to, 0.0, new SegmentSweep.PairHandler() {
+            @Override
+            public boolean handle(int first, int second) {
+                Assert.assertTrue(first < second);
+                // each pair once
+                Assert.assertTrue(found.add((long) first * c + second));
+                return true;
+            }
+        }));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, found);
+    }
+
+    @Test
+    public void testMarginAndStop() {
+        EastNorth[] from = {new EastNorth(0, 0), new EastNorth(10.5, 0), new EastNorth(0, 1)};
+        EastNorth[] to = {new EastNorth(10, 0), new EastNorth(20, 0), new EastNorth(10, 1)};
+        final int[] pairs = new int[1];
+        SegmentSweep.PairHandler counter = new SegmentSweep.PairHandler() {
+            @Override
+            public boolean handle(int first, int second) {
+                pairs[0]++;
+                return true;
+            }
+        };
+        SegmentSweep.findOverlaps(from, to, 0.0, counter);
+        Assert.assertEquals(0, pairs[0]);
+        SegmentSweep.findOverlaps(from, to, 0.5, counter);
+        Assert.assertEquals(3, pairs[0]);
+
+        Assert.assertFalse(SegmentSweep.findOverlaps(from, to, 0.5, new SegmentSweep.PairHandler() {
+            @Override
+            public boolean handle(int first, int second) {
+                return false;
+            }
+        }));
+    }
+}